@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -30,6 +31,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 
 import org.apache.tika.batch.FileResource;
 import org.apache.tika.batch.FileResourceCrawler;
+import org.apache.tika.io.ParallelDirectoryWalker;
 
 public class FSDirectoryCrawler extends FileResourceCrawler {
 
@@ -37,6 +39,8 @@ public class FSDirectoryCrawler extends FileResourceCrawler {
     private final Path startDirectory;
     private final Comparator<Path> pathComparator = new FileNameComparator();
     private CRAWL_ORDER crawlOrder;
+    private int walkerThreads = 1;
+    private int maxPendingDirectories = ParallelDirectoryWalker.DEFAULT_MAX_PENDING_DIRECTORIES;
 
     public FSDirectoryCrawler(ArrayBlockingQueue<FileResource> fileQueue, int numConsumers, Path root, CRAWL_ORDER crawlOrder) {
         super(fileQueue, numConsumers);
@@ -64,9 +68,54 @@ public class FSDirectoryCrawler extends FileResourceCrawler {
     }
 
     public void start() throws InterruptedException {
+        if (walkerThreads > 1) {
+            addFilesInParallel();
+            return;
+        }
         addFiles(startDirectory);
     }
 
+    /**
+     * With several threads, directories are listed ahead of the queue. In
+     * {@link CRAWL_ORDER#SORTED} order the files are added depth first in
+     * the order of their names, with each subdirectory's files in the place
+     * of its name, rather than after the directory's own files. Otherwise,
+     * the files are added a directory at a time, in the order that the
+     * directories are listed, and in {@link CRAWL_ORDER#RANDOM} order each
+     * directory's files are shuffled. As in the sequential crawl, symbolic
+     * links to directories are followed; links to a directory that contains
+     * them are skipped.
+     */
+    private void addFilesInParallel() throws InterruptedException {
+        ParallelDirectoryWalker walker = new ParallelDirectoryWalker(walkerThreads,
+                maxPendingDirectories, crawlOrder == CRAWL_ORDER.SORTED ? pathComparator : null);
+        walker.setFollowLinks(true);
+        ParallelFileAdder adder = new ParallelFileAdder();
+        try {
+            if (walker.walk(startDirectory, adder)) {
+                adder.addShuffled();
+            }
+        } catch (IOException e) {
+            LOG.warn("FSFileAdder couldn't read {}: {}", startDirectory.toAbsolutePath(),
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param walkerThreads number of threads that list directories
+     */
+    public void setWalkerThreads(int walkerThreads) {
+        this.walkerThreads = walkerThreads;
+    }
+
+    /**
+     * @param maxPendingDirectories maximum number of directory listings that
+     *                              may be read ahead of the queue
+     */
+    public void setMaxPendingDirectories(int maxPendingDirectories) {
+        this.maxPendingDirectories = maxPendingDirectories;
+    }
+
     private void addFiles(Path directory) throws InterruptedException {
 
         if (directory == null) {
@@ -140,6 +189,76 @@ public class FSDirectoryCrawler extends FileResourceCrawler {
         //no-op
     }
 
+    private class ParallelFileAdder implements ParallelDirectoryWalker.Visitor {
+
+        private Path lastDirectory = null;
+        //in RANDOM order, the files of one directory that are shuffled before they are added
+        private final List<Path> shuffled = new ArrayList<>();
+
+        @Override
+        public boolean visitFile(Path f, BasicFileAttributes attrs) throws InterruptedException {
+            if (Thread
+                    .currentThread()
+                    .isInterrupted()) {
+                throw new InterruptedException("file adder interrupted");
+            }
+            if (crawlOrder != CRAWL_ORDER.RANDOM) {
+                return add(f);
+            }
+            //the files are visited a directory at a time
+            if (!shuffled.isEmpty() && !f.getParent().equals(shuffled.get(0).getParent())) {
+                if (!addShuffled()) {
+                    return false;
+                }
+            }
+            shuffled.add(f);
+            return true;
+        }
+
+        /**
+         * Adds the files held back for shuffling
+         *
+         * @return <code>false</code> if the crawler has hit a limit
+         */
+        boolean addShuffled() throws InterruptedException {
+            Collections.shuffle(shuffled);
+            try {
+                for (Path f : shuffled) {
+                    if (!add(f)) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                shuffled.clear();
+            }
+        }
+
+        private boolean add(Path f) throws InterruptedException {
+            if (!Files.isReadable(f)) {
+                LOG.warn("Skipping -- {} -- file/directory is not readable", f.toAbsolutePath());
+                return true;
+            }
+            //in sorted order, a directory's files may be split by its subdirectories
+            if (!f.getParent().equals(lastDirectory)) {
+                lastDirectory = f.getParent();
+                handleFirstFileInDirectory(f);
+            }
+            int added = tryToAdd(new FSFileResource(root, f));
+            if (added == FileResourceCrawler.STOP_NOW) {
+                LOG.debug("crawler has hit a limit: {} : {}", f.toAbsolutePath(), added);
+                return false;
+            }
+            LOG.debug("trying to add: {} : {}", f.toAbsolutePath(), added);
+            return true;
+        }
+
+        @Override
+        public void visitFailed(Path path, IOException e) {
+            LOG.warn("FSFileAdder couldn't read {}: {}", path.toAbsolutePath(), e.getMessage(), e);
+        }
+    }
+
     public enum CRAWL_ORDER {
         SORTED, //alphabetical order; necessary for cross-platform unit tests
         RANDOM, //shuffle
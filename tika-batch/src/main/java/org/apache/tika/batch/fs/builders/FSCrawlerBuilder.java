@@ -37,6 +37,7 @@ import org.apache.tika.batch.fs.FSDirectoryCrawler;
 import org.apache.tika.batch.fs.FSDocumentSelector;
 import org.apache.tika.batch.fs.FSListCrawler;
 import org.apache.tika.extractor.DocumentSelector;
+import org.apache.tika.io.ParallelDirectoryWalker;
 import org.apache.tika.util.PropsUtil;
 import org.apache.tika.util.XMLDOMUtil;
 
@@ -51,6 +52,8 @@ public class FSCrawlerBuilder implements ICrawlerBuilder {
 
 
     private final static String CRAWL_ORDER = "crawlOrder";
+    private final static String CRAWLER_THREADS_ATTR = "crawlerThreads";
+    private final static String MAX_PENDING_DIRECTORIES_ATTR = "maxPendingDirectories";
     private final static String INPUT_DIR_ATTR = "inputDir";
     private final static String INPUT_START_DIR_ATTR = "startDir";
     private final static String MAX_FILE_SIZE_BYTES_ATTR = "maxFileSizeBytes";
@@ -91,11 +94,16 @@ public class FSCrawlerBuilder implements ICrawlerBuilder {
         } else {
             FSDirectoryCrawler.CRAWL_ORDER crawlOrder = getCrawlOrder(attributes.get(CRAWL_ORDER));
             Path startDir = PropsUtil.getPath(attributes.get(INPUT_START_DIR_ATTR), null);
+            FSDirectoryCrawler directoryCrawler;
             if (startDir == null) {
-                crawler = new FSDirectoryCrawler(queue, numConsumers, inputDir, crawlOrder);
+                directoryCrawler = new FSDirectoryCrawler(queue, numConsumers, inputDir, crawlOrder);
             } else {
-                crawler = new FSDirectoryCrawler(queue, numConsumers, inputDir, startDir, crawlOrder);
+                directoryCrawler = new FSDirectoryCrawler(queue, numConsumers, inputDir, startDir, crawlOrder);
             }
+            directoryCrawler.setWalkerThreads(PropsUtil.getInt(attributes.get(CRAWLER_THREADS_ATTR), 1));
+            directoryCrawler.setMaxPendingDirectories(PropsUtil.getInt(attributes.get(MAX_PENDING_DIRECTORIES_ATTR),
+                    ParallelDirectoryWalker.DEFAULT_MAX_PENDING_DIRECTORIES));
+            crawler = directoryCrawler;
         }
 
         crawler.setMaxFilesToConsider(PropsUtil.getInt(attributes.get(MAX_FILES_TO_CONSIDER_ATTR), -1));
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.batch.fs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.batch.FileResource;
+
+public class FSDirectoryCrawlerTest {
+
+    @Test
+    public void testParallel() throws Exception {
+        Path root = Paths.get(FSDirectoryCrawlerTest.class
+                .getResource("/test-input/hierarchical")
+                .toURI());
+        List<String> sequential = crawl(root, FSDirectoryCrawler.CRAWL_ORDER.SORTED, 1);
+        assertEquals(List.of("test1.xml", Paths.get("sub1a", "test2.xml").toString(),
+                Paths.get("sub1a", "sub2a", "test3.xml").toString()), sequential);
+
+        //the subdirectories' files are in the place of their names
+        assertEquals(List.of(Paths.get("sub1a", "sub2a", "test3.xml").toString(),
+                Paths.get("sub1a", "test2.xml").toString(), "test1.xml"),
+                crawl(root, FSDirectoryCrawler.CRAWL_ORDER.SORTED, 3));
+        assertEquals(new HashSet<>(sequential),
+                new HashSet<>(crawl(root, FSDirectoryCrawler.CRAWL_ORDER.OS_ORDER, 3)));
+    }
+
+    @Test
+    public void testRandomParallel(@TempDir Path root) throws Exception {
+        List<String> sorted = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String name = String.format(Locale.ROOT, "%02d.txt", i);
+            Files.createFile(root.resolve(name));
+            sorted.add(name);
+        }
+        List<String> first = crawl(root, FSDirectoryCrawler.CRAWL_ORDER.RANDOM, 3);
+        List<String> second = crawl(root, FSDirectoryCrawler.CRAWL_ORDER.RANDOM, 3);
+        assertEquals(new HashSet<>(sorted), new HashSet<>(first));
+        assertEquals(sorted.size(), first.size());
+        //the odds of two shuffles of 50 files in the same order are negligible
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void testSymlinks(@TempDir Path tmp) throws Exception {
+        Path target = Files.createDirectory(tmp.resolve("target"));
+        Files.createFile(target.resolve("linked.txt"));
+        Path root = Files.createDirectory(tmp.resolve("root"));
+        Files.createFile(root.resolve("a.txt"));
+        Files.createSymbolicLink(root.resolve("link"), target);
+
+        List<String> sequential = crawl(root, FSDirectoryCrawler.CRAWL_ORDER.SORTED, 1);
+        assertEquals(List.of("a.txt", Paths.get("link", "linked.txt").toString()), sequential);
+        assertEquals(sequential, crawl(root, FSDirectoryCrawler.CRAWL_ORDER.SORTED, 3));
+        assertEquals(new HashSet<>(sequential),
+                new HashSet<>(crawl(root, FSDirectoryCrawler.CRAWL_ORDER.OS_ORDER, 3)));
+    }
+
+    private static List<String> crawl(Path root, FSDirectoryCrawler.CRAWL_ORDER order,
+                                      int walkerThreads) {
+        ArrayBlockingQueue<FileResource> queue = new ArrayBlockingQueue<>(100);
+        FSDirectoryCrawler crawler = new FSDirectoryCrawler(queue, 1, root, order);
+        crawler.setDocumentSelector(new FSDocumentSelector(null, null, -1, -1));
+        crawler.setWalkerThreads(walkerThreads);
+        crawler.setMaxPendingDirectories(1);
+        crawler.call();
+        List<String> ids = new ArrayList<>();
+        for (FileResource resource : queue) {
+            if (resource instanceof FSFileResource) {
+                ids.add(resource.getResourceId());
+            }
+        }
+        return ids;
+    }
+}
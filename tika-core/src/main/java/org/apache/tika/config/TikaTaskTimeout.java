@@ -16,9 +16,13 @@
  */
 package org.apache.tika.config;
 
+import java.io.Serializable;
+
 import org.apache.tika.parser.ParseContext;
 
-public class TikaTaskTimeout {
+public class TikaTaskTimeout implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final long timeoutMillis;
 
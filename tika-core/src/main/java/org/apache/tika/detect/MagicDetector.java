@@ -91,6 +91,11 @@ public class MagicDetector implements Detector {
      * starts at this offset.
      */
     private final int offsetRangeEnd;
+    /**
+     * Compiled form of a regex {@link #pattern}, created on first use so that
+     * it is not recompiled on every call to {@link #detect(InputStream, Metadata)}.
+     */
+    private transient volatile Pattern regex;
 
     /**
      * Creates a detector for input documents that have the exact given byte
@@ -374,12 +379,7 @@ public class MagicDetector implements Detector {
             }
 
             if (this.isRegex) {
-                int flags = 0;
-                if (this.isStringIgnoreCase) {
-                    flags = Pattern.CASE_INSENSITIVE;
-                }
-
-                Pattern p = Pattern.compile(new String(this.pattern, UTF_8), flags);
+                Pattern p = getRegex();
 
                 ByteBuffer bb = ByteBuffer.wrap(buffer);
                 CharBuffer result = ISO_8859_1.decode(bb);
@@ -421,10 +421,328 @@ public class MagicDetector implements Detector {
         }
     }
 
+    /**
+     * Variant of {@link #detect(InputStream, Metadata)} that works directly on
+     * the leading bytes of a document. The result is the same as that of
+     * calling {@link #detect(InputStream, Metadata)} with a stream over the
+     * given bytes, but no stream, comparison window or decoded char buffer
+     * needs to be allocated.
+     *
+     * @param data leading bytes of the document, or <code>null</code>
+     * @return the matching media type, or application/octet-stream
+     */
+    public MediaType detect(byte[] data) {
+        if (data == null || data.length < offsetRangeBegin) {
+            return MediaType.OCTET_STREAM;
+        }
+        // Bytes past the end of the data read as zero, just like the
+        // unfilled part of the comparison window in the stream version
+        int window = length + (offsetRangeEnd - offsetRangeBegin);
+        if (this.isRegex) {
+            Matcher m = getRegex().matcher(new ByteCharSequence(data, offsetRangeBegin, window));
+            for (int i = 0; i <= offsetRangeEnd - offsetRangeBegin; i++) {
+                m.region(i, length + i);
+                if (m.lookingAt()) {
+                    return type;
+                }
+            }
+        } else {
+            if (data.length < offsetRangeBegin + length) {
+                return MediaType.OCTET_STREAM;
+            }
+            for (int i = 0; i <= offsetRangeEnd - offsetRangeBegin; i++) {
+                boolean match = true;
+                int masked;
+                for (int j = 0; match && j < length; j++) {
+                    int index = offsetRangeBegin + i + j;
+                    masked = ((index < data.length ? data[index] : 0) & mask[j]);
+                    if (this.isStringIgnoreCase) {
+                        masked = Character.toLowerCase(masked);
+                    }
+                    match = (masked == pattern[j]);
+                }
+                if (match) {
+                    return type;
+                }
+            }
+        }
+        return MediaType.OCTET_STREAM;
+    }
+
+    private Pattern getRegex() {
+        Pattern p = regex;
+        if (p == null) {
+            int flags = 0;
+            if (this.isStringIgnoreCase) {
+                flags = Pattern.CASE_INSENSITIVE;
+            }
+            p = Pattern.compile(new String(this.pattern, UTF_8), flags);
+            regex = p;
+        }
+        return p;
+    }
+
     public int getLength() {
         return this.patternLength;
     }
 
+    /**
+     * Returns the first offset of the comparison window.
+     *
+     * @return first offset (inclusive) of the comparison window
+     */
+    public int getOffsetRangeBegin() {
+        return offsetRangeBegin;
+    }
+
+    /**
+     * Returns the last offset at which a comparison window starts.
+     *
+     * @return last offset (inclusive) of the comparison window
+     */
+    public int getOffsetRangeEnd() {
+        return offsetRangeEnd;
+    }
+
+    /**
+     * Returns the length of each comparison window. For regular expressions
+     * this is the size of the region that is matched, otherwise it is the
+     * same as {@link #getLength()}.
+     *
+     * @return length of the comparison window
+     */
+    public int getWindowLength() {
+        return length;
+    }
+
+    public boolean isRegex() {
+        return isRegex;
+    }
+
+    public boolean isStringIgnoreCase() {
+        return isStringIgnoreCase;
+    }
+
+    /**
+     * Returns a run of bytes that every match has to contain, which makes
+     * it possible to rule out this detector with a cheap substring search.
+     * For byte patterns this is the leading part of the pattern that is not
+     * bit-masked, and it starts somewhere between the first and last offset
+     * of the range; with {@link #isStringIgnoreCase()} it is in lower case
+     * and ASCII letters match either case. For regular expressions it is the
+     * longest run of literal characters the expression always requires, and
+     * it lies somewhere within the comparison windows.
+     *
+     * @return required bytes, or <code>null</code> if none are known
+     */
+    public byte[] getRequiredLiteral() {
+        if (isRegex) {
+            return isStringIgnoreCase ? null : getRequiredLiteral(new String(pattern, UTF_8));
+        }
+        int n = 0;
+        while (n < patternLength && mask[n] == -1) {
+            n++;
+        }
+        return n > 0 ? Arrays.copyOf(pattern, n) : null;
+    }
+
+    /**
+     * Conservatively extracts the longest run of literal characters that
+     * every match of the given regular expression contains. Only top level
+     * characters of an expression without top level alternatives are
+     * considered; groups, classes and escapes just end the current run, and
+     * a character followed by an optional quantifier is dropped from it.
+     */
+    static byte[] getRequiredLiteral(String regex) {
+        StringBuilder best = new StringBuilder();
+        StringBuilder run = new StringBuilder();
+        boolean lastWasLiteral = false;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '?' || c == '*' || c == '{') {
+                // The preceding atom is optional
+                if (lastWasLiteral) {
+                    run.setLength(run.length() - 1);
+                }
+                best = longer(best, run);
+                run.setLength(0);
+                i = c == '{' ? regex.indexOf('}', i) : i;
+                if (i == -1) {
+                    return null;
+                }
+                i++;
+                // Lazy or possessive suffix
+                if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                    i++;
+                }
+                lastWasLiteral = false;
+                continue;
+            }
+            lastWasLiteral = false;
+            if (c == '\\') {
+                best = longer(best, run);
+                run.setLength(0);
+                i = skipEscape(regex, i);
+            } else if (c == '[') {
+                best = longer(best, run);
+                run.setLength(0);
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                best = longer(best, run);
+                run.setLength(0);
+                if (regex.startsWith("(?", i)) {
+                    int j = i + 2;
+                    while (j < regex.length() && (Character.isLetter(regex.charAt(j)) ||
+                            regex.charAt(j) == '-')) {
+                        j++;
+                    }
+                    if (j < regex.length() && regex.charAt(j) == ')') {
+                        // Inline flags for the rest of the expression, which
+                        // could make literals case-insensitive or ignored
+                        String flags = regex.substring(i + 2, j);
+                        if (flags.indexOf('i') != -1 || flags.indexOf('x') != -1 ||
+                                flags.indexOf('u') != -1) {
+                            return null;
+                        }
+                        i = j + 1;
+                        continue;
+                    }
+                }
+                i = skipGroup(regex, i);
+            } else if (c == '|' || c == ')') {
+                return null;
+            } else if (c == '.' || c == '^' || c == '$' || c == '+') {
+                best = longer(best, run);
+                run.setLength(0);
+                i++;
+            } else if (c == 0 || c > 0xFF) {
+                // NULs could come from the zero padding of the window, and
+                // other characters can never match a decoded byte
+                best = longer(best, run);
+                run.setLength(0);
+                i++;
+            } else {
+                run.append(c);
+                lastWasLiteral = true;
+                i++;
+            }
+            if (i < 0) {
+                return null;
+            }
+        }
+        best = longer(best, run);
+        if (best.length() == 0) {
+            return null;
+        }
+        return best.toString().getBytes(ISO_8859_1);
+    }
+
+    private static StringBuilder longer(StringBuilder best, StringBuilder run) {
+        return run.length() > best.length() ? new StringBuilder(run) : best;
+    }
+
+    /**
+     * Returns the index just past the escape sequence at the given index,
+     * or -1 if it can not be skipped safely.
+     */
+    private static int skipEscape(String regex, int i) {
+        if (i + 1 >= regex.length()) {
+            return -1;
+        }
+        char e = regex.charAt(i + 1);
+        i += 2;
+        switch (e) {
+            case 'Q':
+                return -1;
+            case 'x':
+                if (i < regex.length() && regex.charAt(i) == '{') {
+                    int end = regex.indexOf('}', i);
+                    return end == -1 ? -1 : end + 1;
+                }
+                return i + 2;
+            case 'u':
+                return i + 4;
+            case 'c':
+                return i + 1;
+            case 'p':
+            case 'P':
+            case 'k':
+            case 'N':
+                if (i < regex.length() && (regex.charAt(i) == '{' || regex.charAt(i) == '<')) {
+                    int end = regex.indexOf(regex.charAt(i) == '{' ? '}' : '>', i);
+                    return end == -1 ? -1 : end + 1;
+                }
+                return i + 1;
+            default:
+                // Octal escapes and back references
+                while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                    i++;
+                }
+                return i;
+        }
+    }
+
+    /**
+     * Returns the index just past the character class at the given index,
+     * or -1 if it is not terminated.
+     */
+    private static int skipClass(String regex, int i) {
+        int depth = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i = skipEscape(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '[') {
+                depth++;
+                // A leading ] or ^] is a literal
+                if (regex.startsWith("]", i + 1)) {
+                    i++;
+                } else if (regex.startsWith("^]", i + 1)) {
+                    i += 2;
+                }
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index just past the group at the given index, or -1 if it
+     * is not terminated.
+     */
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i = skipEscape(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
     /**
      * Returns a string representation of the Detection Rule.
      * Should sort nicely by type and details, as we sometimes
@@ -435,4 +753,48 @@ public class MagicDetector implements Detector {
         return "Magic Detection for " + type + " looking for " + pattern.length + " bytes = " +
                 Arrays.toString(this.pattern) + " mask = " + Arrays.toString(this.mask);
     }
+
+    /**
+     * Read-only ISO-8859-1 view of a slice of a byte array, padded with
+     * zeros past the end of the array.
+     */
+    private static final class ByteCharSequence implements CharSequence {
+
+        private final byte[] data;
+
+        private final int start;
+
+        private final int length;
+
+        ByteCharSequence(byte[] data, int start, int length) {
+            this.data = data;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            int i = start + index;
+            return i < data.length ? (char) (data[i] & 0xFF) : 0;
+        }
+
+        @Override
+        public CharSequence subSequence(int begin, int end) {
+            return new ByteCharSequence(data, start + begin, end - begin);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                sb.append(charAt(i));
+            }
+            return sb.toString();
+        }
+    }
 }
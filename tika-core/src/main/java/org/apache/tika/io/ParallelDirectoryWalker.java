@@ -0,0 +1,426 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.io;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Walks a directory tree, listing directories and reading the attributes of
+ * their entries on a work-stealing pool of threads. This helps on network
+ * file systems, where listing many small directories one at a time can take
+ * longer than processing the files.
+ * <p>
+ * The {@link Visitor} is called on the thread that called
+ * {@link #walk(Path, Visitor)}, one file at a time, so it needn't be thread
+ * safe. If it blocks, e.g. because the queue that it adds to is full, the
+ * listing stops once the listings that are held have filled up.
+ * <p>
+ * If there is an order, the files are visited depth first with the entries
+ * of each directory in that order, and the listings of the subdirectories
+ * are read ahead of the visitor. Otherwise, the files are visited a
+ * directory at a time, in the order that the directories are listed. In
+ * both cases, at most <code>maxPendingDirectories</code> listings are held
+ * or being read that the visitor hasn't reached.
+ * <p>
+ * Symbolic links aren't followed unless {@link #setFollowLinks(boolean)} is
+ * set. Then a link to a directory is walked like a directory, except for a
+ * link to a directory that contains it, or to a directory that the walk
+ * has already entered on its way to the link, e.g. through another link.
+ * Those are reported to {@link Visitor#visitFailed(Path, IOException)} as a
+ * {@link FileSystemLoopException}.
+ */
+public class ParallelDirectoryWalker {
+
+    public static final int DEFAULT_MAX_PENDING_DIRECTORIES = 1000;
+
+    /**
+     * Visits the files of a walk.
+     */
+    public interface Visitor {
+
+        /**
+         * @return <code>false</code> to stop the walk
+         */
+        boolean visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException, InterruptedException;
+
+        /**
+         * Called for a directory that couldn't be listed, other than the
+         * start directory, or an entry whose attributes couldn't be read.
+         */
+        default void visitFailed(Path path, IOException e)
+                throws IOException, InterruptedException {
+        }
+    }
+
+    private final int parallelism;
+    private final int maxPendingDirectories;
+    private final Comparator<Path> order;
+    private boolean followLinks = false;
+
+    /**
+     * @param parallelism           number of threads that list directories
+     * @param maxPendingDirectories maximum number of listings to hold that the
+     *                              visitor hasn't reached
+     * @param order                 order of the entries of each directory, or
+     *                              <code>null</code> if the order doesn't
+     *                              matter
+     */
+    public ParallelDirectoryWalker(int parallelism, int maxPendingDirectories,
+                                   Comparator<Path> order) {
+        if (parallelism < 1 || maxPendingDirectories < 1) {
+            throw new IllegalArgumentException("parallelism and maxPendingDirectories " +
+                    "must be > 0");
+        }
+        this.parallelism = parallelism;
+        this.maxPendingDirectories = maxPendingDirectories;
+        this.order = order;
+    }
+
+    /**
+     * @param followLinks whether to walk symbolic links to directories;
+     *                    the default is <code>false</code>
+     */
+    public void setFollowLinks(boolean followLinks) {
+        this.followLinks = followLinks;
+    }
+
+    /**
+     * @return <code>false</code> if the visitor stopped the walk
+     * @throws IOException if the start directory can't be listed, or from
+     *                     the visitor
+     */
+    public boolean walk(Path start, Visitor visitor) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism, ParallelDirectoryWalker::newThread,
+                null, false);
+        try {
+            //the directories on the current branch are only tracked
+            //if links can lead back to one of them
+            Branch branch = null;
+            if (followLinks) {
+                branch = new Branch(keyOf(start, Files.readAttributes(start,
+                        BasicFileAttributes.class)), null);
+            }
+            Listing root = list(start, branch);
+            if (root.exception != null) {
+                throw root.exception;
+            }
+            if (order != null) {
+                return visitOrdered(root, visitor, pool, new Semaphore(maxPendingDirectories));
+            }
+            return new UnorderedWalk(visitor, pool).run(root);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private boolean visitOrdered(Listing listing, Visitor visitor, ForkJoinPool pool,
+                                 Semaphore pending) throws IOException, InterruptedException {
+        //read ahead the subdirectories, which are the next to be visited
+        Map<Path, ForkJoinTask<Listing>> readAhead = new HashMap<>();
+        for (Entry entry : listing.entries) {
+            if (entry.isDirectory() && pending.tryAcquire()) {
+                readAhead.put(entry.path, pool.submit(() -> list(entry.path, entry.branch)));
+            }
+        }
+        try {
+            for (Entry entry : listing.entries) {
+                if (entry.exception != null) {
+                    visitor.visitFailed(entry.path, entry.exception);
+                } else if (entry.isDirectory()) {
+                    ForkJoinTask<Listing> task = readAhead.remove(entry.path);
+                    Listing subdirectory;
+                    if (task == null) {
+                        subdirectory = list(entry.path, entry.branch);
+                    } else {
+                        subdirectory = get(task);
+                        pending.release();
+                    }
+                    if (subdirectory.exception != null) {
+                        visitor.visitFailed(entry.path, subdirectory.exception);
+                    } else if (!visitOrdered(subdirectory, visitor, pool, pending)) {
+                        return false;
+                    }
+                } else if (!visitor.visitFile(entry.path, entry.attrs)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            for (ForkJoinTask<Listing> task : readAhead.values()) {
+                task.cancel(false);
+                pending.release();
+            }
+        }
+    }
+
+    private static Listing get(ForkJoinTask<Listing> task) throws InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            //list() doesn't throw
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @param branch the directories from the start to <code>dir</code>, or
+     *               <code>null</code> if links aren't followed
+     */
+    private Listing list(Path dir, Branch branch) {
+        List<Entry> entries = new ArrayList<>();
+        try {
+            List<Path> paths = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    paths.add(path);
+                }
+            }
+            if (order != null) {
+                paths.sort(order);
+            }
+            for (Path path : paths) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(path,
+                            BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (followLinks && attrs.isSymbolicLink()) {
+                        attrs = readLinkTarget(dir, path, attrs);
+                    }
+                    Branch entryBranch = null;
+                    if (branch != null && attrs.isDirectory()) {
+                        Object key = keyOf(path, attrs);
+                        if (branch.contains(key)) {
+                            throw new FileSystemLoopException(path.toString());
+                        }
+                        entryBranch = new Branch(key, branch);
+                    }
+                    entries.add(new Entry(path, attrs, entryBranch, null));
+                } catch (NoSuchFileException e) {
+                    //deleted since the directory was listed
+                } catch (IOException e) {
+                    entries.add(new Entry(path, null, null, e));
+                }
+            }
+        } catch (IOException e) {
+            return new Listing(dir, entries, e);
+        } catch (RuntimeException e) {
+            return new Listing(dir, entries, new IOException(e));
+        }
+        return new Listing(dir, entries, null);
+    }
+
+    /**
+     * @return the attributes of the link's target, or of the link itself if
+     * the target is missing
+     * @throws FileSystemLoopException if the target is a directory that
+     *                                 contains the link
+     */
+    private static BasicFileAttributes readLinkTarget(Path dir, Path link,
+                                                      BasicFileAttributes linkAttrs)
+            throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(link, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            //a broken link
+            return linkAttrs;
+        }
+        if (attrs.isDirectory() && dir.toRealPath().startsWith(link.toRealPath())) {
+            throw new FileSystemLoopException(link.toString());
+        }
+        return attrs;
+    }
+
+    /**
+     * @return the file key of the directory, or its real path if the file
+     * system has no file keys
+     */
+    private static Object keyOf(Path dir, BasicFileAttributes attrs) throws IOException {
+        Object key = attrs.fileKey();
+        return key != null ? key : dir.toRealPath();
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread =
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Tika Directory Walker-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * The visitor's thread submits the tasks that list the subdirectories of
+     * each listing that it takes. A task takes one of
+     * <code>maxPendingDirectories</code> permits, which is released when the
+     * visitor takes its listing. Subdirectories that can't get a permit
+     * wait, as paths, until the visitor has caught up.
+     */
+    private class UnorderedWalk {
+
+        private final Visitor visitor;
+        private final ForkJoinPool pool;
+        private final Semaphore pending = new Semaphore(maxPendingDirectories);
+        //never fills up, since a task holds a permit until its listing is taken
+        private final BlockingQueue<Listing> listed =
+                new ArrayBlockingQueue<>(maxPendingDirectories);
+        private final Deque<Entry> unsubmitted = new ArrayDeque<>();
+        //directories that have been submitted and not yet taken,
+        //only used by the visitor's thread
+        private int outstanding = 0;
+
+        private UnorderedWalk(Visitor visitor, ForkJoinPool pool) {
+            this.visitor = visitor;
+            this.pool = pool;
+        }
+
+        private boolean run(Listing root) throws IOException, InterruptedException {
+            if (!visit(root)) {
+                return false;
+            }
+            while (outstanding > 0) {
+                Listing listing = listed.take();
+                outstanding--;
+                pending.release();
+                if (!visit(listing)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean visit(Listing listing) throws IOException, InterruptedException {
+            if (listing.exception != null) {
+                visitor.visitFailed(listing.dir, listing.exception);
+                submitWaiting();
+                return true;
+            }
+            for (Entry entry : listing.entries) {
+                if (entry.isDirectory()) {
+                    unsubmitted.add(entry);
+                }
+            }
+            submitWaiting();
+            for (Entry entry : listing.entries) {
+                if (entry.exception != null) {
+                    visitor.visitFailed(entry.path, entry.exception);
+                } else if (!entry.isDirectory() &&
+                        !visitor.visitFile(entry.path, entry.attrs)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void submitWaiting() {
+            while (!unsubmitted.isEmpty() && pending.tryAcquire()) {
+                Entry dir = unsubmitted.poll();
+                try {
+                    pool.execute(() -> {
+                        try {
+                            listed.put(list(dir.path, dir.branch));
+                        } catch (InterruptedException e) {
+                            //the walk has stopped
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                    outstanding++;
+                } catch (RejectedExecutionException e) {
+                    pending.release();
+                }
+            }
+        }
+    }
+
+    private static class Listing {
+        private final Path dir;
+        private final List<Entry> entries;
+        private final IOException exception;
+
+        private Listing(Path dir, List<Entry> entries, IOException exception) {
+            this.dir = dir;
+            this.entries = entries;
+            this.exception = exception;
+        }
+    }
+
+    private static class Entry {
+        private final Path path;
+        private final BasicFileAttributes attrs;
+        //the directories from the start to this one, if it is one
+        //and links are followed
+        private final Branch branch;
+        private final IOException exception;
+
+        private Entry(Path path, BasicFileAttributes attrs, Branch branch,
+                      IOException exception) {
+            this.path = path;
+            this.attrs = attrs;
+            this.branch = branch;
+            this.exception = exception;
+        }
+
+        private boolean isDirectory() {
+            return attrs != null && attrs.isDirectory();
+        }
+    }
+
+    /**
+     * The keys of the directories on the path from the start to a directory,
+     * which a link mustn't lead back to. Branches share their parents, so a
+     * listing only adds a node for each of its subdirectories.
+     */
+    private static class Branch {
+        private final Object key;
+        private final Branch parent;
+
+        private Branch(Object key, Branch parent) {
+            this.key = key;
+            this.parent = parent;
+        }
+
+        private boolean contains(Object key) {
+            for (Branch b = this; b != null; b = b.parent) {
+                if (b.key.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
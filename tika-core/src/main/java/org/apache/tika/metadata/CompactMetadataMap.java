@@ -0,0 +1,424 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.metadata;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact storage for the values of a {@link Metadata} instance. Keys and
+ * values are kept in parallel arrays in insertion order, which are scanned
+ * linearly while small and indexed by an open addressing hash table once
+ * they grow. Keys are interned, so that the many metadata instances of a
+ * recursive parse share the same key strings, and value arrays grow with
+ * some headroom so that repeated additions to a key don't copy the values
+ * every time.
+ * <p>
+ * The value arrays returned by {@link #get(Object)} always have the exact
+ * number of values, as with a {@link HashMap}. Instances are serialized as
+ * a {@link HashMap}, so that the serialized form of {@link Metadata} is the
+ * same for both storage layouts.
+ */
+final class CompactMetadataMap extends AbstractMap<String, String[]> implements Serializable {
+
+    private static final long serialVersionUID = -2372245437327223187L;
+
+    /**
+     * Maximum number of keys in the {@link #KEYS} pool.
+     */
+    private static final int MAX_INTERNED_KEYS = 10000;
+
+    /**
+     * Pool of interned keys shared by all instances.
+     */
+    private static final Map<String, String> KEYS = new ConcurrentHashMap<>();
+
+    /**
+     * Number of entries up to which lookups scan the keys linearly.
+     */
+    private static final int MAX_LINEAR = 8;
+
+    private static final String[] NO_KEYS = new String[0];
+
+    private static final String[][] NO_VALUES = new String[0][];
+
+    private static final int[] NO_COUNTS = new int[0];
+
+    private String[] keys = NO_KEYS;
+
+    /**
+     * Values by entry; an array may be longer than the number of values in
+     * it, given by {@link #counts}. A <code>null</code> value array is
+     * allowed, like in a {@link HashMap}.
+     */
+    private String[][] values = NO_VALUES;
+
+    private int[] counts = NO_COUNTS;
+
+    private int size;
+
+    /**
+     * Open addressing index of entry number + 1 (0 marks a free slot) by
+     * key hash, or <code>null</code> while the entries are few.
+     */
+    private int[] table;
+
+    private int modCount;
+
+    private transient Set<Entry<String, String[]>> entrySet;
+
+    /**
+     * Returns the shared instance of the given key.
+     */
+    static String intern(String key) {
+        if (key == null) {
+            return null;
+        }
+        String interned = KEYS.get(key);
+        if (interned != null) {
+            return interned;
+        }
+        if (KEYS.size() < MAX_INTERNED_KEYS) {
+            interned = KEYS.putIfAbsent(key, key);
+            if (interned != null) {
+                return interned;
+            }
+        }
+        return key;
+    }
+
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(Object key) {
+        if (table == null) {
+            // Interned keys usually match by identity
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                if (Objects.equals(keys[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry < 0) {
+                return -1;
+            }
+            String k = keys[entry];
+            if (k == key || Objects.equals(k, key)) {
+                return entry;
+            }
+        }
+    }
+
+    private void index(int entry) {
+        int mask = table.length - 1;
+        int slot = hash(keys[entry]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private void rebuildTable() {
+        if (size <= MAX_LINEAR) {
+            table = null;
+            return;
+        }
+        int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+        if (table == null || table.length != capacity) {
+            table = new int[capacity];
+        } else {
+            Arrays.fill(table, 0);
+        }
+        for (int i = 0; i < size; i++) {
+            index(i);
+        }
+    }
+
+    private int addEntry(String key, String[] value, int count) {
+        if (size == keys.length) {
+            int capacity = size < 4 ? 4 : size + (size >> 1);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        int entry = size++;
+        keys[entry] = intern(key);
+        values[entry] = value;
+        counts[entry] = count;
+        modCount++;
+        if (size > MAX_LINEAR) {
+            if (table == null || size * 2 > table.length) {
+                rebuildTable();
+            } else {
+                index(entry);
+            }
+        }
+        return entry;
+    }
+
+    private String[] valuesOf(int entry) {
+        String[] v = values[entry];
+        if (v != null && v.length != counts[entry]) {
+            // Drop the headroom, as the caller may hold on to the array
+            v = Arrays.copyOf(v, counts[entry]);
+            values[entry] = v;
+        }
+        return v;
+    }
+
+    private void removeEntry(int entry) {
+        int moved = size - entry - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, entry + 1, keys, entry, moved);
+            System.arraycopy(values, entry + 1, values, entry, moved);
+            System.arraycopy(counts, entry + 1, counts, entry, moved);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        counts[size] = 0;
+        modCount++;
+        if (table != null) {
+            rebuildTable();
+        }
+    }
+
+    /**
+     * Appends a value to the values of the given key, which are created if
+     * the key isn't present.
+     */
+    void append(String key, String value) {
+        int entry = indexOf(key);
+        if (entry < 0) {
+            addEntry(key, new String[]{value}, 1);
+            return;
+        }
+        String[] v = values[entry];
+        int count = counts[entry];
+        if (v == null) {
+            values[entry] = new String[]{value};
+            counts[entry] = 1;
+            return;
+        }
+        if (count == v.length) {
+            v = Arrays.copyOf(v, count + (count >> 1) + 1);
+            values[entry] = v;
+        }
+        v[count] = value;
+        counts[entry] = count + 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String[] get(Object key) {
+        int entry = indexOf(key);
+        return entry < 0 ? null : valuesOf(entry);
+    }
+
+    @Override
+    public String[] put(String key, String[] value) {
+        int count = value == null ? 0 : value.length;
+        int entry = indexOf(key);
+        if (entry < 0) {
+            addEntry(key, value, count);
+            return null;
+        }
+        String[] previous = valuesOf(entry);
+        values[entry] = value;
+        counts[entry] = count;
+        return previous;
+    }
+
+    @Override
+    public String[] remove(Object key) {
+        int entry = indexOf(key);
+        if (entry < 0) {
+            return null;
+        }
+        String[] previous = valuesOf(entry);
+        removeEntry(entry);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(counts, 0, size, 0);
+        size = 0;
+        table = null;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<String, String[]>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private Object writeReplace() {
+        return new HashMap<>(this);
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, String[]>> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            CompactMetadataMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Entry<String, String[]>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, String[]>> {
+
+        private int next;
+
+        private int last = -1;
+
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, String[]> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new CompactEntry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeEntry(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * Entry view that reads and writes the values through to the arrays,
+     * which it is only valid for until the map is structurally modified.
+     */
+    private final class CompactEntry implements Entry<String, String[]> {
+
+        private final int entry;
+
+        private final String key;
+
+        private CompactEntry(int entry) {
+            this.entry = entry;
+            this.key = keys[entry];
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String[] getValue() {
+            return valuesOf(entry);
+        }
+
+        @Override
+        public String[] setValue(String[] value) {
+            String[] previous = valuesOf(entry);
+            values[entry] = value;
+            counts[entry] = value == null ? 0 : value.length;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + Arrays.toString(getValue());
+        }
+    }
+}
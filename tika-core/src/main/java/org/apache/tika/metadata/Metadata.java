@@ -54,6 +54,12 @@ public class Metadata
 
         @Override
         public void add(String field, String value, Map<String, String[]> data) {
+            if (value != null && data instanceof CompactMetadataMap) {
+                //append() creates the key if it's missing; get() would
+                //trim the headroom off the values first
+                ((CompactMetadataMap) data).append(field, value);
+                return;
+            }
             String[] values = data.get(field);
             if (values == null) {
                 set(field, value, data);
@@ -92,6 +98,12 @@ public class Metadata
      * already, and will set that into the Metadata object.
      */
     private static final DateUtils DATE_UTILS = new DateUtils();
+    /**
+     * Whether new instances use the compact storage layout, see
+     * {@link #setCompactStorage(boolean)}.
+     */
+    private static volatile boolean compactStorage =
+            Boolean.getBoolean("org.apache.tika.metadata.compact");
     /**
      * A map of all metadata attributes.
      */
@@ -103,7 +115,33 @@ public class Metadata
      * Constructs a new, empty metadata.
      */
     public Metadata() {
-        metadata = new HashMap<>();
+        metadata = compactStorage ? new CompactMetadataMap() : new HashMap<>();
+    }
+
+    /**
+     * Sets whether metadata instances created from now on store their
+     * values in a compact layout, with interned names, instead of a
+     * {@link HashMap}. This reduces the memory held by the metadata of
+     * recursive parses of large containers, in which every embedded
+     * document has its own metadata instance. The layout is not visible
+     * through the API, and the serialized form is the same for both; an
+     * instance read back from its serialized form uses the default layout.
+     * <p>
+     * The default is <code>false</code>, unless the system property
+     * <code>org.apache.tika.metadata.compact</code> is set to <code>true</code>.
+     *
+     * @param compact whether to use the compact layout
+     */
+    public static void setCompactStorage(boolean compact) {
+        compactStorage = compact;
+    }
+
+    /**
+     * @return whether new metadata instances use the compact layout
+     * @see #setCompactStorage(boolean)
+     */
+    public static boolean isCompactStorage() {
+        return compactStorage;
     }
 
     private static DateFormat createDateFormat(String format, TimeZone timezone) {
@@ -115,14 +153,14 @@ public class Metadata
     }
 
     /**
-     * Parses the given date string. This method is synchronized to prevent
-     * concurrent access to the thread-unsafe date formats.
+     * Parses the given date string. The date formats are immutable, so this
+     * doesn't need to be synchronized.
      *
      * @param date date string
      * @return parsed date, or <code>null</code> if the date can't be parsed
      * @see <a href="https://issues.apache.org/jira/browse/TIKA-495">TIKA-495</a>
      */
-    private static synchronized Date parseDate(String date) {
+    private static Date parseDate(String date) {
         return DATE_UTILS.tryToParse(date);
     }
 
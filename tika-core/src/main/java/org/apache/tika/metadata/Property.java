@@ -70,9 +70,7 @@ public final class Property implements Comparable<Property> {
             this.secondaryExtractProperties = null;
 
             // Only store primary properties for lookup, not composites
-            synchronized (PROPERTIES) {
-                PROPERTIES.put(name, this);
-            }
+            PROPERTIES.put(name, this);
         }
     }
 
@@ -122,11 +120,9 @@ public final class Property implements Comparable<Property> {
     public static SortedSet<Property> getProperties(String prefix) {
         SortedSet<Property> set = new TreeSet<>();
         String p = prefix + ":";
-        synchronized (PROPERTIES) {
-            for (Map.Entry<String, Property> entry : PROPERTIES.entrySet()) {
-                if (entry.getKey().startsWith(p)) {
-                    set.add(entry.getValue());
-                }
+        for (Map.Entry<String, Property> entry : PROPERTIES.entrySet()) {
+            if (entry.getKey().startsWith(p)) {
+                set.add(entry.getValue());
             }
         }
         return set;
@@ -0,0 +1,507 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.mime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+import org.apache.tika.detect.MagicDetector;
+
+/**
+ * Compiled form of the registered magics of a {@link MimeTypes} instance.
+ * <p>
+ * Most magics require some literal bytes somewhere in the document header,
+ * e.g. <code>%PDF-</code> at offset 0 or <code>&lt;html</code> within the
+ * first 8k. These required literals are collected from the clause trees of
+ * all magics. Literals at a fixed offset are stored in one byte trie per
+ * offset, all others (offset ranges, case-insensitive strings and the
+ * literal parts of regular expressions) in Aho-Corasick automata. Matching
+ * a document first runs these over the data once, which tells which
+ * literals are present. A magic whose required literals are all absent
+ * cannot match and is skipped without evaluating its clause tree; all other
+ * magics are evaluated as before, in priority order and with the same early
+ * exit once a lower priority is reached. The literals are only a necessary
+ * condition, so the results are exactly those of evaluating every magic in
+ * turn.
+ */
+class MagicIndex {
+
+    private static final byte[] NO_KEYS = new byte[0];
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final int[] NO_OUTPUTS = new int[0];
+
+    /**
+     * The magics, in evaluation order.
+     */
+    private final Magic[] magics;
+
+    /**
+     * For each magic, the ids of the literals of which at least one must be
+     * present for the magic to match, or <code>null</code> if the magic
+     * has to be evaluated regardless.
+     */
+    private final int[][] anchors;
+
+    /**
+     * Offsets at which fixed-offset literals start, in increasing order.
+     */
+    private final int[] offsets;
+
+    /**
+     * Root of the literal trie for each of the {@link #offsets}.
+     */
+    private final Node[] roots;
+
+    /**
+     * Case-sensitive literals that may start anywhere in a range of offsets,
+     * or <code>null</code> if there are none.
+     */
+    private final Automaton ranged;
+
+    /**
+     * ASCII case-insensitive literals, or <code>null</code> if there are none.
+     */
+    private final Automaton ignoreCase;
+
+    /**
+     * Number of distinct literals.
+     */
+    private final int literals;
+
+    MagicIndex(List<Magic> magics) {
+        this.magics = magics.toArray(new Magic[0]);
+        this.anchors = new int[this.magics.length][];
+
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        List<Literal> unique = new ArrayList<>();
+        for (int i = 0; i < this.magics.length; i++) {
+            List<Literal> anchor = getAnchor(this.magics[i].getClause());
+            if (anchor != null) {
+                int[] anchorIds = new int[anchor.size()];
+                for (int j = 0; j < anchorIds.length; j++) {
+                    Literal literal = anchor.get(j);
+                    Integer id = ids.get(literal.toString());
+                    if (id == null) {
+                        id = unique.size();
+                        ids.put(literal.toString(), id);
+                        unique.add(literal);
+                    }
+                    anchorIds[j] = id;
+                }
+                anchors[i] = anchorIds;
+            }
+        }
+
+        Map<Integer, Node> tries = new TreeMap<>();
+        List<Literal> rangedLiterals = new ArrayList<>();
+        List<Integer> rangedIds = new ArrayList<>();
+        List<Literal> ignoreCaseLiterals = new ArrayList<>();
+        List<Integer> ignoreCaseIds = new ArrayList<>();
+        for (int id = 0; id < unique.size(); id++) {
+            Literal literal = unique.get(id);
+            if (literal.ignoreCase) {
+                ignoreCaseLiterals.add(literal);
+                ignoreCaseIds.add(id);
+            } else if (literal.minOffset != literal.maxOffset) {
+                rangedLiterals.add(literal);
+                rangedIds.add(id);
+            } else {
+                Node node = tries.computeIfAbsent(literal.minOffset, k -> new Node());
+                for (byte b : literal.bytes) {
+                    node = node.getOrAddChild(b);
+                }
+                node.id = id;
+            }
+        }
+
+        this.offsets = new int[tries.size()];
+        this.roots = new Node[tries.size()];
+        int n = 0;
+        for (Map.Entry<Integer, Node> entry : tries.entrySet()) {
+            offsets[n] = entry.getKey();
+            roots[n] = entry.getValue();
+            n++;
+        }
+        this.ranged = rangedLiterals.isEmpty() ? null :
+                new Automaton(rangedLiterals, rangedIds, false);
+        this.ignoreCase = ignoreCaseLiterals.isEmpty() ? null :
+                new Automaton(ignoreCaseLiterals, ignoreCaseIds, true);
+        this.literals = unique.size();
+    }
+
+    /**
+     * Returns the literals of which at least one must be present for the
+     * given clause to match, or <code>null</code> if no such set is known.
+     */
+    private static List<Literal> getAnchor(Clause clause) {
+        if (clause instanceof MagicMatch) {
+            Literal literal = getLiteral((MagicMatch) clause);
+            if (literal == null) {
+                return null;
+            }
+            List<Literal> anchor = new ArrayList<>(1);
+            anchor.add(literal);
+            return anchor;
+        } else if (clause instanceof AndClause) {
+            // Any one of the sub-clauses is a necessary condition,
+            // so pick the most selective one
+            List<Literal> best = null;
+            for (Clause child : ((AndClause) clause).getClauses()) {
+                List<Literal> anchor = getAnchor(child);
+                if (anchor != null && (best == null || anchor.size() < best.size())) {
+                    best = anchor;
+                }
+            }
+            return best;
+        } else if (clause instanceof OrClause) {
+            return getUnion(((OrClause) clause).getClauses());
+        } else if (clause instanceof MinShouldMatchClause) {
+            // At least one sub-clause has to match
+            return getUnion(((MinShouldMatchClause) clause).getClauses());
+        }
+        return null;
+    }
+
+    private static List<Literal> getUnion(List<Clause> clauses) {
+        List<Literal> union = new ArrayList<>();
+        for (Clause child : clauses) {
+            List<Literal> anchor = getAnchor(child);
+            if (anchor == null) {
+                return null;
+            }
+            union.addAll(anchor);
+        }
+        return union;
+    }
+
+    private static Literal getLiteral(MagicMatch match) {
+        MagicDetector detector;
+        try {
+            detector = match.getDetector();
+        } catch (IllegalArgumentException e) {
+            // Broken match definitions fail when they are evaluated,
+            // as they always have; just don't index them
+            return null;
+        }
+        byte[] bytes = detector.getRequiredLiteral();
+        if (bytes == null) {
+            return null;
+        }
+        // Comparison windows are zero padded past the end of the data, so
+        // trailing zeros may match without being present in the data
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) {
+            length--;
+        }
+        if (length == 0) {
+            return null;
+        }
+        bytes = Arrays.copyOf(bytes, length);
+
+        int minOffset = detector.getOffsetRangeBegin();
+        int maxOffset = detector.getOffsetRangeEnd();
+        if (detector.isRegex()) {
+            maxOffset += detector.getWindowLength() - length;
+            if (maxOffset < minOffset) {
+                return null;
+            }
+        }
+        return new Literal(minOffset, maxOffset, bytes,
+                !detector.isRegex() && detector.isStringIgnoreCase());
+    }
+
+    /**
+     * Returns the types of the highest priority magics that match the
+     * given data, in the same order as a linear scan over all magics would.
+     *
+     * @param data first few bytes of a document stream
+     * @return matching types, possibly empty
+     */
+    List<MimeType> eval(byte[] data) {
+        boolean[] present = scan(data);
+        List<MimeType> result = new ArrayList<>(1);
+        int currentPriority = -1;
+        for (int i = 0; i < magics.length; i++) {
+            Magic magic = magics[i];
+            if (currentPriority > 0 && currentPriority > magic.getPriority()) {
+                break;
+            }
+            if (mayMatch(anchors[i], present) && magic.eval(data)) {
+                result.add(magic.getType());
+                currentPriority = magic.getPriority();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reference implementation of {@link #eval(byte[])} that evaluates
+     * every magic without consulting the literals.
+     *
+     * @param data first few bytes of a document stream
+     * @return matching types, possibly empty
+     */
+    List<MimeType> evalAll(byte[] data) {
+        List<MimeType> result = new ArrayList<>(1);
+        int currentPriority = -1;
+        for (Magic magic : magics) {
+            if (currentPriority > 0 && currentPriority > magic.getPriority()) {
+                break;
+            }
+            if (magic.eval(data)) {
+                result.add(magic.getType());
+                currentPriority = magic.getPriority();
+            }
+        }
+        return result;
+    }
+
+    private boolean[] scan(byte[] data) {
+        boolean[] present = new boolean[literals];
+        for (int i = 0; i < offsets.length; i++) {
+            Node node = roots[i];
+            for (int pos = offsets[i]; pos < data.length; pos++) {
+                node = node.getChild(data[pos]);
+                if (node == null) {
+                    break;
+                }
+                if (node.id != -1) {
+                    present[node.id] = true;
+                }
+            }
+        }
+        if (ranged != null) {
+            ranged.scan(data, present);
+        }
+        if (ignoreCase != null) {
+            ignoreCase.scan(data, present);
+        }
+        return present;
+    }
+
+    private static boolean mayMatch(int[] anchor, boolean[] present) {
+        if (anchor == null) {
+            return true;
+        }
+        for (int id : anchor) {
+            if (present[id]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bytes that have to start somewhere between two offsets.
+     */
+    private static final class Literal {
+
+        private final int minOffset;
+
+        private final int maxOffset;
+
+        private final byte[] bytes;
+
+        private final boolean ignoreCase;
+
+        Literal(int minOffset, int maxOffset, byte[] bytes, boolean ignoreCase) {
+            this.minOffset = minOffset;
+            this.maxOffset = maxOffset;
+            this.bytes = bytes;
+            this.ignoreCase = ignoreCase;
+        }
+
+        public String toString() {
+            return minOffset + ":" + maxOffset + (ignoreCase ? "i" : "") + Arrays.toString(bytes);
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton that finds all occurrences of a set of
+     * literals in one pass, and marks those that start within their range.
+     */
+    private static final class Automaton {
+
+        private final Node root = new Node();
+
+        /**
+         * Transitions from the root for all 256 byte values, as the root
+         * has far more children than any other node.
+         */
+        private final Node[] rootTransitions = new Node[256];
+
+        private final boolean foldCase;
+
+        private final int[] minOffsets;
+
+        private final int[] maxOffsets;
+
+        private final int[] lengths;
+
+        private final int[] ids;
+
+        /**
+         * First offset to scan.
+         */
+        private final int start;
+
+        /**
+         * Offset past the last byte of any literal occurrence of interest.
+         */
+        private final int limit;
+
+        Automaton(List<Literal> literals, List<Integer> literalIds, boolean foldCase) {
+            this.foldCase = foldCase;
+            int size = literals.size();
+            this.minOffsets = new int[size];
+            this.maxOffsets = new int[size];
+            this.lengths = new int[size];
+            this.ids = new int[size];
+            int start = Integer.MAX_VALUE;
+            long limit = 0;
+            for (int k = 0; k < size; k++) {
+                Literal literal = literals.get(k);
+                minOffsets[k] = literal.minOffset;
+                maxOffsets[k] = literal.maxOffset;
+                lengths[k] = literal.bytes.length;
+                ids[k] = literalIds.get(k);
+                start = Math.min(start, literal.minOffset);
+                limit = Math.max(limit, (long) literal.maxOffset + literal.bytes.length);
+
+                Node node = root;
+                for (byte b : literal.bytes) {
+                    node = node.getOrAddChild(b);
+                }
+                node.outputs = Arrays.copyOf(node.outputs, node.outputs.length + 1);
+                node.outputs[node.outputs.length - 1] = k;
+            }
+            this.start = start;
+            this.limit = (int) Math.min(limit, Integer.MAX_VALUE);
+
+            // Breadth-first computation of the failure links, merging the
+            // outputs of each node's failure node into its own
+            Queue<Node> queue = new ArrayDeque<>();
+            for (int b = 0; b < 256; b++) {
+                Node child = root.getChild((byte) b);
+                if (child != null) {
+                    child.fail = root;
+                    queue.add(child);
+                    rootTransitions[b] = child;
+                } else {
+                    rootTransitions[b] = root;
+                }
+            }
+            while (!queue.isEmpty()) {
+                Node node = queue.remove();
+                for (int i = 0; i < node.keys.length; i++) {
+                    byte b = node.keys[i];
+                    Node child = node.children[i];
+                    Node fail = node.fail;
+                    while (fail != root && fail.getChild(b) == null) {
+                        fail = fail.fail;
+                    }
+                    Node target = fail.getChild(b);
+                    child.fail = target != null ? target : root;
+                    if (child.fail.outputs.length > 0) {
+                        int[] merged = Arrays.copyOf(child.outputs,
+                                child.outputs.length + child.fail.outputs.length);
+                        System.arraycopy(child.fail.outputs, 0, merged, child.outputs.length,
+                                child.fail.outputs.length);
+                        child.outputs = merged;
+                    }
+                    queue.add(child);
+                }
+            }
+        }
+
+        void scan(byte[] data, boolean[] present) {
+            int end = Math.min(data.length, limit);
+            Node state = root;
+            for (int pos = start; pos < end; pos++) {
+                byte b = data[pos];
+                if (foldCase && b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                Node next = state == root ? rootTransitions[b & 0xFF] : state.getChild(b);
+                while (next == null) {
+                    state = state.fail;
+                    next = state == root ? rootTransitions[b & 0xFF] : state.getChild(b);
+                }
+                state = next;
+                for (int k : state.outputs) {
+                    int offset = pos + 1 - lengths[k];
+                    if (offset >= minOffsets[k] && offset <= maxOffsets[k]) {
+                        present[ids[k]] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Trie node. Most nodes have only a handful of children, so they are
+     * kept in small parallel arrays rather than a 256 entry table.
+     */
+    private static final class Node {
+
+        private byte[] keys = NO_KEYS;
+
+        private Node[] children = NO_CHILDREN;
+
+        /**
+         * Id of the literal that ends at this node, or -1.
+         */
+        private int id = -1;
+
+        /**
+         * Automaton only: longest proper suffix of this node that is also
+         * a node, and the literals that end here including via that suffix.
+         */
+        private Node fail;
+
+        private int[] outputs = NO_OUTPUTS;
+
+        Node getChild(byte b) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == b) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node getOrAddChild(byte b) {
+            Node child = getChild(b);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = b;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
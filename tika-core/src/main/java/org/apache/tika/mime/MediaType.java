@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,11 +59,15 @@ public final class MediaType implements Comparable<MediaType>, Serializable {
                     VALID_CHARS + "\\s*");
 
     /**
-     * Set of basic types with normalized "type/subtype" names.
-     * Used to optimize type lookup and to avoid having too many
-     * {@link MediaType} instances in memory.
+     * Maximum number of entries in the {@link #SIMPLE_TYPES} cache.
      */
-    private static final Map<String, MediaType> SIMPLE_TYPES = new HashMap<>();
+    private static final int MAX_SIMPLE_TYPES = 10000;
+
+    /**
+     * Cache of parsed simple media types, i.e. ones without parameters.
+     * A concurrent map so that parse threads don't contend for a lock.
+     */
+    private static final Map<String, MediaType> SIMPLE_TYPES = new ConcurrentHashMap<>();
 
     public static final MediaType OCTET_STREAM = parse("application/octet-stream");
 
@@ -249,22 +254,23 @@ public final class MediaType implements Comparable<MediaType>, Serializable {
         }
 
         // Optimization for the common cases
-        synchronized (SIMPLE_TYPES) {
-            MediaType type = SIMPLE_TYPES.get(string);
-            if (type == null) {
-                int slash = string.indexOf('/');
-                if (slash == -1) {
-                    return null;
-                } else if (SIMPLE_TYPES.size() < 10000 &&
-                        isSimpleName(string.substring(0, slash)) &&
-                        isSimpleName(string.substring(slash + 1))) {
-                    type = new MediaType(string, slash);
-                    SIMPLE_TYPES.put(string, type);
+        MediaType type = SIMPLE_TYPES.get(string);
+        if (type != null) {
+            return type;
+        }
+        int slash = string.indexOf('/');
+        if (slash == -1) {
+            return null;
+        } else if (isSimpleName(string.substring(0, slash)) &&
+                isSimpleName(string.substring(slash + 1))) {
+            type = new MediaType(string, slash);
+            if (SIMPLE_TYPES.size() < MAX_SIMPLE_TYPES) {
+                MediaType previous = SIMPLE_TYPES.putIfAbsent(string, type);
+                if (previous != null) {
+                    type = previous;
                 }
             }
-            if (type != null) {
-                return type;
-            }
+            return type;
         }
 
         Matcher matcher;
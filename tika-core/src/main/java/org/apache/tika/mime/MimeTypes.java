@@ -109,6 +109,11 @@ public final class MimeTypes implements Detector, Serializable {
      * Sorted list of all registered magics
      */
     private final List<Magic> magics = new ArrayList<>();
+    /**
+     * Compiled form of {@link #magics}, built by {@link #init()} or on
+     * first use, and discarded whenever magics are added
+     */
+    private transient volatile MagicIndex magicIndex;
     /**
      * Sorted list of all registered rootXML
      */
@@ -230,17 +235,7 @@ public final class MimeTypes implements Detector, Serializable {
         }
 
         // Then, check for magic bytes
-        List<MimeType> result = new ArrayList<>(1);
-        int currentPriority = -1;
-        for (Magic magic : magics) {
-            if (currentPriority > 0 && currentPriority > magic.getPriority()) {
-                break;
-            }
-            if (magic.eval(data)) {
-                result.add(magic.getType());
-                currentPriority = magic.getPriority();
-            }
-        }
+        List<MimeType> result = getMagicIndex().eval(data);
 
         if (!result.isEmpty()) {
             for (int i = 0; i < result.size(); i++) {
@@ -301,6 +296,15 @@ public final class MimeTypes implements Detector, Serializable {
         }
     }
 
+    MagicIndex getMagicIndex() {
+        MagicIndex index = magicIndex;
+        if (index == null) {
+            index = new MagicIndex(magics);
+            magicIndex = index;
+        }
+        return index;
+    }
+
     /**
      * Reads the first {@link #getMinLength()} bytes from the given stream.
      * If the stream is shorter, then the entire content of the stream is
@@ -480,6 +484,7 @@ public final class MimeTypes implements Detector, Serializable {
         // Update the magics index...
         if (type.hasMagic()) {
             magics.addAll(type.getMagics());
+            magicIndex = null;
         }
 
         // Update the xml (xmlRoot) index...
@@ -490,7 +495,7 @@ public final class MimeTypes implements Detector, Serializable {
 
     /**
      * Called after all configured types have been loaded.
-     * Initializes the magics and xmls sets.
+     * Initializes the magics and xmls sets, and compiles the magics.
      */
     void init() {
         for (MimeType type : types.values()) {
@@ -501,6 +506,7 @@ public final class MimeTypes implements Detector, Serializable {
         }
         Collections.sort(magics);
         Collections.sort(xmls);
+        magicIndex = new MagicIndex(magics);
     }
 
     /**
@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
@@ -55,6 +56,17 @@ public class CompositeParser implements Parser {
      */
     private static final long serialVersionUID = 2192845797749627824L;
 
+    /**
+     * Upper bound on the number of content type strings whose resolved
+     * parser is remembered by a dispatch table.
+     */
+    private static final int MAX_RESOLVED_TYPES = 10000;
+
+    /**
+     * Marks content types that resolved to no component parser.
+     */
+    private static final Parser NO_MATCH = new EmptyParser();
+
     /**
      * Media type registry.
      */
@@ -70,6 +82,20 @@ public class CompositeParser implements Parser {
      */
     private Parser fallback = new EmptyParser();
 
+    /**
+     * True if a subclass overrides {@link #getParsers(ParseContext)}, in
+     * which case that method is consulted on every lookup instead of the
+     * cached dispatch table.
+     */
+    private final boolean customGetParsers;
+
+    /**
+     * The media type to parser mapping of the last lookup. It is reused for
+     * as long as the component parsers, the registry and the type sets the
+     * component parsers report stay the same.
+     */
+    private transient volatile DispatchTable dispatchTable;
+
     public CompositeParser(MediaTypeRegistry registry, List<Parser> parsers,
                            Collection<Class<? extends Parser>> excludeParsers) {
         if (excludeParsers == null || excludeParsers.isEmpty()) {
@@ -83,6 +109,16 @@ public class CompositeParser implements Parser {
             }
         }
         this.registry = registry;
+        this.customGetParsers = overridesGetParsers(getClass());
+    }
+
+    private static boolean overridesGetParsers(Class<?> clazz) {
+        try {
+            return clazz.getMethod("getParsers", ParseContext.class).getDeclaringClass() !=
+                    CompositeParser.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
     }
 
     public CompositeParser(MediaTypeRegistry registry, List<Parser> parsers) {
@@ -98,13 +134,35 @@ public class CompositeParser implements Parser {
     }
 
     public Map<MediaType, Parser> getParsers(ParseContext context) {
-        Map<MediaType, Parser> map = new HashMap<>();
-        for (Parser parser : parsers) {
-            for (MediaType type : parser.getSupportedTypes(context)) {
-                map.put(registry.normalize(type), parser);
-            }
+        return new HashMap<>(getDispatchTable(context).parsers);
+    }
+
+    /**
+     * Returns the parsers from which the media type to parser mapping is
+     * built, in increasing order of precedence: if more than one of them
+     * supports a type, the last one is used.
+     *
+     * @return parsers backing {@link #getParsers(ParseContext)}
+     */
+    protected List<Parser> getDispatchParsers() {
+        return parsers;
+    }
+
+    /**
+     * Returns the media type to parser mapping for the given context. The
+     * mapping is only rebuilt if the component parsers or the registry
+     * changed, or if a component parser reports different supported types
+     * for this context than the ones the mapping was built from. The check
+     * is cheapest for parsers that keep returning the same set instance.
+     */
+    private DispatchTable getDispatchTable(ParseContext context) {
+        List<Parser> dispatchParsers = getDispatchParsers();
+        DispatchTable table = dispatchTable;
+        if (table == null || !table.isValid(registry, dispatchParsers, context)) {
+            table = new DispatchTable(registry, dispatchParsers, context);
+            dispatchTable = table;
         }
-        return map;
+        return table;
     }
 
     private boolean isExcluded(Collection<Class<? extends Parser>> excludeParsers,
@@ -172,6 +230,7 @@ public class CompositeParser implements Parser {
      */
     public void setMediaTypeRegistry(MediaTypeRegistry registry) {
         this.registry = registry;
+        this.dispatchTable = null;
     }
 
     /**
@@ -203,6 +262,7 @@ public class CompositeParser implements Parser {
             this.parsers.add(ParserDecorator
                     .withTypes(entry.getValue(), Collections.singleton(entry.getKey())));
         }
+        this.dispatchTable = null;
     }
 
     /**
@@ -241,12 +301,27 @@ public class CompositeParser implements Parser {
     }
 
     protected Parser getParser(Metadata metadata, ParseContext context) {
-        Map<MediaType, Parser> map = getParsers(context);
         //check for parser override first
         String contentTypeString = metadata.get(TikaCoreProperties.CONTENT_TYPE_PARSER_OVERRIDE);
         if (contentTypeString == null) {
             contentTypeString = metadata.get(Metadata.CONTENT_TYPE);
         }
+        if (customGetParsers) {
+            Parser parser = findParser(registry, getParsers(context), contentTypeString);
+            return parser != null ? parser : fallback;
+        }
+        Parser parser = getDispatchTable(context).getParser(contentTypeString);
+        return parser != null ? parser : fallback;
+    }
+
+    /**
+     * Looks up the parser for the given content type, walking up the type
+     * hierarchy of the registry until a parser is found.
+     *
+     * @return matching parser, or <code>null</code>
+     */
+    private static Parser findParser(MediaTypeRegistry registry, Map<MediaType, Parser> map,
+                                     String contentTypeString) {
         MediaType type = MediaType.parse(contentTypeString);
         if (type != null) {
             // We always work on the normalised, canonical form
@@ -262,11 +337,14 @@ public class CompositeParser implements Parser {
             // Failing that, try for the parent of the type
             type = registry.getSupertype(type);
         }
-        return fallback;
+        return null;
     }
 
     public Set<MediaType> getSupportedTypes(ParseContext context) {
-        return getParsers(context).keySet();
+        if (customGetParsers) {
+            return getParsers(context).keySet();
+        }
+        return getDispatchTable(context).supportedTypes;
     }
 
     /**
@@ -345,4 +423,88 @@ public class CompositeParser implements Parser {
             }
         }
     }
+
+    /**
+     * Immutable media type to parser mapping, together with what it was
+     * built from and a memo of resolved content types.
+     */
+    private static final class DispatchTable {
+
+        private final MediaTypeRegistry registry;
+
+        private final List<Parser> dispatchParsers;
+
+        /**
+         * The supported types reported by each of the dispatch parsers.
+         */
+        private final List<Set<MediaType>> dispatchTypes;
+
+        private final Map<MediaType, Parser> parsers;
+
+        private final Set<MediaType> supportedTypes;
+
+        /**
+         * Resolved parser, or {@link #NO_MATCH}, by content type string.
+         */
+        private final Map<String, Parser> resolved = new ConcurrentHashMap<>();
+
+        private volatile Parser resolvedNull;
+
+        DispatchTable(MediaTypeRegistry registry, List<Parser> dispatchParsers,
+                      ParseContext context) {
+            this.registry = registry;
+            this.dispatchParsers = new ArrayList<>(dispatchParsers);
+            this.dispatchTypes = new ArrayList<>(dispatchParsers.size());
+            Map<MediaType, Parser> map = new HashMap<>();
+            for (Parser parser : this.dispatchParsers) {
+                Set<MediaType> types = parser.getSupportedTypes(context);
+                dispatchTypes.add(types);
+                for (MediaType type : types) {
+                    map.put(registry.normalize(type), parser);
+                }
+            }
+            this.parsers = Collections.unmodifiableMap(map);
+            this.supportedTypes = this.parsers.keySet();
+        }
+
+        boolean isValid(MediaTypeRegistry registry, List<Parser> dispatchParsers,
+                        ParseContext context) {
+            if (registry != this.registry || dispatchParsers.size() != this.dispatchParsers.size()) {
+                return false;
+            }
+            for (int i = 0; i < dispatchParsers.size(); i++) {
+                Parser parser = dispatchParsers.get(i);
+                if (parser != this.dispatchParsers.get(i)) {
+                    return false;
+                }
+                Set<MediaType> types = parser.getSupportedTypes(context);
+                Set<MediaType> previous = dispatchTypes.get(i);
+                if (types != previous && !previous.equals(types)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Parser getParser(String contentTypeString) {
+            Parser parser;
+            if (contentTypeString == null) {
+                parser = resolvedNull;
+            } else {
+                parser = resolved.get(contentTypeString);
+            }
+            if (parser == null) {
+                parser = findParser(registry, parsers, contentTypeString);
+                if (parser == null) {
+                    parser = NO_MATCH;
+                }
+                if (contentTypeString == null) {
+                    resolvedNull = parser;
+                } else if (resolved.size() < MAX_RESOLVED_TYPES) {
+                    resolved.put(contentTypeString, parser);
+                }
+            }
+            return parser != NO_MATCH ? parser : null;
+        }
+    }
 }
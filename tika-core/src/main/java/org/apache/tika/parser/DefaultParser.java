@@ -20,12 +20,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.tika.config.ServiceLoader;
 import org.apache.tika.detect.DefaultEncodingDetector;
 import org.apache.tika.detect.EncodingDetector;
-import org.apache.tika.mime.MediaType;
 import org.apache.tika.mime.MediaTypeRegistry;
 import org.apache.tika.renderer.CompositeRenderer;
 import org.apache.tika.renderer.Renderer;
@@ -116,7 +114,7 @@ public class DefaultParser extends CompositeParser {
         }
         ServiceLoaderUtils.sortLoadedClasses(parsers);
         //reverse the order of parsers so that custom ones come last
-        //this will prevent them from being overwritten in getParsers(ParseContext ..)
+        //this will prevent them from being overwritten in getDispatchParsers()
         Collections.reverse(parsers);
         return parsers;
     }
@@ -148,22 +146,18 @@ public class DefaultParser extends CompositeParser {
     }
 
     @Override
-    public Map<MediaType, Parser> getParsers(ParseContext context) {
-        Map<MediaType, Parser> map = super.getParsers(context);
-
+    protected List<Parser> getDispatchParsers() {
+        List<Parser> parsers = super.getDispatchParsers();
         if (loader != null) {
             // Add dynamic parser service (they always override static ones)
-            MediaTypeRegistry registry = getMediaTypeRegistry();
-            List<Parser> parsers = loader.loadDynamicServiceProviders(Parser.class);
-            Collections.reverse(parsers); // best parser last
-            for (Parser parser : parsers) {
-                for (MediaType type : parser.getSupportedTypes(context)) {
-                    map.put(registry.normalize(type), parser);
-                }
+            List<Parser> dynamic = loader.loadDynamicServiceProviders(Parser.class);
+            if (!dynamic.isEmpty()) {
+                parsers = new ArrayList<>(parsers);
+                Collections.reverse(dynamic); // best parser last
+                parsers.addAll(dynamic);
             }
         }
-
-        return map;
+        return parsers;
     }
 
     @Override
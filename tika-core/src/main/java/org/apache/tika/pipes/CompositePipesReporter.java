@@ -26,6 +26,7 @@ import org.apache.tika.config.Initializable;
 import org.apache.tika.config.InitializableProblemHandler;
 import org.apache.tika.config.Param;
 import org.apache.tika.exception.TikaConfigException;
+import org.apache.tika.pipes.async.LaneWaitResult;
 import org.apache.tika.pipes.pipesiterator.TotalCountResult;
 
 public class CompositePipesReporter extends PipesReporter implements Initializable {
@@ -47,6 +48,20 @@ public class CompositePipesReporter extends PipesReporter implements Initializab
         }
     }
 
+    @Override
+    public void report(ServerRestartResult serverRestartResult) {
+        for (PipesReporter reporter : pipesReporters) {
+            reporter.report(serverRestartResult);
+        }
+    }
+
+    @Override
+    public void report(LaneWaitResult laneWaitResult) {
+        for (PipesReporter reporter : pipesReporters) {
+            reporter.report(laneWaitResult);
+        }
+    }
+
     @Override
     public boolean supportsTotalCount() {
         for (PipesReporter reporter : pipesReporters) {
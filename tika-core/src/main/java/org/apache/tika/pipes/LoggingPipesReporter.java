@@ -20,6 +20,8 @@ package org.apache.tika.pipes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.tika.pipes.async.LaneWaitResult;
+
 /**
  * Simple PipesReporter that logs everything at the debug level.
  */
@@ -31,6 +33,16 @@ public class LoggingPipesReporter extends PipesReporter {
         LOGGER.debug("{} {} {}", t, result, elapsed);
     }
 
+    @Override
+    public void report(ServerRestartResult serverRestartResult) {
+        LOGGER.debug("{}", serverRestartResult);
+    }
+
+    @Override
+    public void report(LaneWaitResult laneWaitResult) {
+        LOGGER.debug("{}", laneWaitResult);
+    }
+
     @Override
     public void error(Throwable t) {
         LOGGER.error("pipes error", t);
@@ -26,22 +26,24 @@ import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +61,13 @@ import org.apache.tika.utils.StringUtils;
  * a single thread for {@link #process(FetchEmitTuple)} processing.
  * See {@link org.apache.tika.pipes.async.AsyncProcessor} for handling
  * multiple PipesClients.
+ * <p>
+ * The exception is if {@link PipesConfigBase#getMaxConcurrentParses()} is
+ * greater than one. Then up to that many threads may share a PipesClient,
+ * and their files are parsed concurrently by the forked PipesServer.
+ * Likewise, in pipelined mode ({@link PipesConfigBase#getPipelineDepth()})
+ * the extra threads send their files early, so that the server can fetch
+ * them while it parses and emit the results in the background.
  */
 public class PipesClient implements Closeable {
 
@@ -66,11 +75,14 @@ public class PipesClient implements Closeable {
     private static final int MAX_BYTES_BEFORE_READY = 20000;
     private static AtomicInteger CLIENT_COUNTER = new AtomicInteger(0);
     private static final long WAIT_ON_DESTROY_MS = 10000;
+    //completes a call that has to be sent again to the restarted server
+    private static final PipesResult RESUBMIT = new PipesResult(PipesResult.STATUS.UNSPECIFIED_CRASH);
     //this synchronizes the creation and/or closing of the executorService
     //there are a number of assumptions throughout that PipesClient is run
     //single threaded
     private final Object[] executorServiceLock = new Object[0];
     private final PipesConfigBase pipesConfig;
+    private final PipesCodec codec;
     private final int pipesClientId;
     private volatile boolean closed = false;
     private ExecutorService executorService = Executors.newFixedThreadPool(1);
@@ -78,10 +90,48 @@ public class PipesClient implements Closeable {
     private DataOutputStream output;
     private DataInputStream input;
     private int filesProcessed = 0;
+    private final PipesReporter pipesReporter;
+
+    //pre-started server to swap in on restarts, if warmSpare is configured
+    private final ExecutorService spareExecutorService;
+    private Future<ServerProcess> spare;
+    private long lastSparePing;
+    private long restarts = 0;
+    private long spareHits = 0;
+
+    //the rest is only used if the server takes on more than one file at a time
+    private final Semaphore requestSlots;
+    private final Object[] multiplexLock = new Object[0];
+    private final AtomicInteger requestCounter = new AtomicInteger(0);
+    private final Map<Integer, Request> requests = new ConcurrentHashMap<>();
+    //guarded by multiplexLock; whether responses are being read from the server
+    private boolean serverAvailable = false;
+    //the call that holds the server's isolation lock, or whose isolated parse failed;
+    //only set by the thread that reads the responses
+    private volatile Request isolatedRequest;
 
     public PipesClient(PipesConfigBase pipesConfig) {
+        this(pipesConfig, PipesReporter.NO_OP_REPORTER);
+    }
+
+    /**
+     * @param pipesConfig
+     * @param pipesReporter reporter for the restarts of the forked PipesServer
+     */
+    public PipesClient(PipesConfigBase pipesConfig, PipesReporter pipesReporter) {
         this.pipesConfig = pipesConfig;
+        this.pipesReporter = pipesReporter;
+        this.codec = PipesCodec.get(pipesConfig.getSerialization());
         this.pipesClientId = CLIENT_COUNTER.getAndIncrement();
+        this.requestSlots = pipesConfig.getMaxFilesInFlight() > 1 ?
+                new Semaphore(pipesConfig.getMaxFilesInFlight()) : null;
+        //one thread starts the spare, the other waits for its ready signal
+        this.spareExecutorService = pipesConfig.isWarmSpare() ?
+                Executors.newFixedThreadPool(2, r -> {
+                    Thread thread = new Thread(r, "Tika PipesClient spare " + pipesClientId);
+                    thread.setDaemon(true);
+                    return thread;
+                }) : null;
     }
 
     public int getFilesProcessed() {
@@ -89,7 +139,15 @@ public class PipesClient implements Closeable {
     }
 
     private boolean ping() {
-        if (process == null || !process.isAlive()) {
+        if (process == null) {
+            return false;
+        }
+        return ping(process, input, output);
+    }
+
+    private static boolean ping(Process process, DataInputStream input,
+                                DataOutputStream output) {
+        if (!process.isAlive()) {
             return false;
         }
         try {
@@ -114,6 +172,18 @@ public class PipesClient implements Closeable {
                 //swallow
             }
         }
+        if (spareExecutorService != null) {
+            //this interrupts a spare that is still starting, which then destroys it
+            spareExecutorService.shutdownNow();
+            Future<ServerProcess> lastSpare = spare;
+            if (lastSpare != null && lastSpare.isDone() && !lastSpare.isCancelled()) {
+                try {
+                    lastSpare.get().destroy();
+                } catch (ExecutionException | InterruptedException e) {
+                    //swallow
+                }
+            }
+        }
         synchronized (executorServiceLock) {
             if (executorService != null) {
                 executorService.shutdownNow();
@@ -123,6 +193,10 @@ public class PipesClient implements Closeable {
     }
 
     public PipesResult process(FetchEmitTuple t) throws IOException, InterruptedException {
+        if (requestSlots != null) {
+            return processConcurrently(t);
+        }
+        keepSpareAlive();
         boolean restart = false;
         if (!ping()) {
             restart = true;
@@ -133,35 +207,259 @@ public class PipesClient implements Closeable {
             restart = true;
         }
         if (restart) {
-            boolean successfulRestart = false;
-            while (!successfulRestart) {
+            restartUntilSuccessful();
+        }
+        filesProcessed++;
+        return actuallyProcess(t);
+    }
+
+    private void restartUntilSuccessful() throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        boolean isRestart = process != null;
+        boolean spareHit = false;
+        boolean successfulRestart = false;
+        while (!successfulRestart) {
+            try {
+                spareHit = restart();
+                successfulRestart = true;
+            } catch (TimeoutException e) {
+                LOG.warn("pipesClientId={}: couldn't restart within {} ms (startupTimeoutMillis)",
+                        pipesClientId, pipesConfig.getStartupTimeoutMillis());
+                Thread.sleep(pipesConfig.getSleepOnStartupTimeoutMillis());
+            }
+        }
+        if (isRestart) {
+            restarts++;
+            if (spareHit) {
+                spareHits++;
+            }
+            pipesReporter.report(new ServerRestartResult(pipesClientId,
+                    System.currentTimeMillis() - start, spareHit, restarts, spareHits));
+        }
+    }
+
+    /**
+     * The spare exits after shutdownClientAfterMillis without requests,
+     * like any server. Ping it while this client is in use.
+     */
+    private void keepSpareAlive() {
+        long shutdownAfter = pipesConfig.getShutdownClientAfterMillis();
+        if (spare == null || !spare.isDone() || shutdownAfter <= 0 ||
+                System.currentTimeMillis() - lastSparePing < shutdownAfter / 2) {
+            return;
+        }
+        lastSparePing = System.currentTimeMillis();
+        ServerProcess serverProcess = getSpareIfStarted();
+        if (serverProcess == null || !serverProcess.ping()) {
+            LOG.warn("pipesClientId={}: spare server is not responding", pipesClientId);
+            if (serverProcess != null) {
+                serverProcess.destroy();
+            }
+            spare = null;
+            startSpare();
+        }
+    }
+
+    private ServerProcess getSpareIfStarted() {
+        try {
+            return spare.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    private void startSpare() {
+        if (spareExecutorService == null || closed) {
+            return;
+        }
+        lastSparePing = System.currentTimeMillis();
+        spare = spareExecutorService.submit(() -> startProcess(spareExecutorService));
+    }
+
+    /**
+     * @return the spare server, if it has started and responds to a ping,
+     * waiting for it if it is still starting
+     */
+    private ServerProcess takeSpare() throws InterruptedException {
+        Future<ServerProcess> future = spare;
+        spare = null;
+        if (future == null) {
+            return null;
+        }
+        try {
+            ServerProcess serverProcess =
+                    future.get(pipesConfig.getStartupTimeoutMillis(), TimeUnit.MILLISECONDS);
+            if (serverProcess.ping()) {
+                return serverProcess;
+            }
+            LOG.warn("pipesClientId={}: spare server is not responding", pipesClientId);
+            serverProcess.destroy();
+        } catch (ExecutionException e) {
+            LOG.warn("pipesClientId=" + pipesClientId + ": couldn't start spare server",
+                    e.getCause());
+        } catch (TimeoutException e) {
+            LOG.warn("pipesClientId={}: spare server didn't start within {} ms", pipesClientId,
+                    pipesConfig.getStartupTimeoutMillis());
+            future.cancel(true);
+        }
+        return null;
+    }
+
+    private PipesResult processConcurrently(FetchEmitTuple t)
+            throws IOException, InterruptedException {
+        requestSlots.acquire();
+        try {
+            while (true) {
+                Request request = sendRequest(t);
+                //the server times out each parse itself, so this only
+                //guards against a server that has stopped responding. In pipelined
+                //mode, the fetch, parse and emit of a file are timed separately, and
+                //the file may wait for the ones ahead of it to be parsed and emitted
+                int depth = pipesConfig.getPipelineDepth();
+                long periods = depth > 0 ? 4 + 2L * depth : 2;
+                long timeoutMillis = periods * pipesConfig.getTimeoutMillis() + WAIT_ON_DESTROY_MS;
                 try {
-                    restart();
-                    successfulRestart = true;
+                    PipesResult result = request.result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                    if (result == RESUBMIT) {
+                        //an isolated parse took the server down; this file wasn't the cause
+                        continue;
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
                 } catch (TimeoutException e) {
-                    LOG.warn("pipesClientId={}: couldn't restart within {} ms (startupTimeoutMillis)",
-                            pipesClientId, pipesConfig.getStartupTimeoutMillis());
-                    Thread.sleep(pipesConfig.getSleepOnStartupTimeoutMillis());
+                    LOG.warn("pipesClientId={} server not responding: {} in {} ms", pipesClientId,
+                            t.getId(), System.currentTimeMillis() - request.start);
+                    synchronized (multiplexLock) {
+                        destroyForcibly();
+                    }
+                    return buildFatalResult(PipesResult.TIMEOUT, request.intermediateResult);
                 }
             }
+        } finally {
+            requestSlots.release();
         }
-        return actuallyProcess(t);
+    }
+
+    private Request sendRequest(FetchEmitTuple t) throws IOException, InterruptedException {
+        synchronized (multiplexLock) {
+            keepSpareAlive();
+            while (!serverAvailable || reachedMaxFilesProcessed()) {
+                if (!requests.isEmpty()) {
+                    //let the current server finish the calls it has
+                    multiplexLock.wait(1000);
+                } else if (serverAvailable) {
+                    LOG.info("pipesClientId={}: restarting server after hitting max files: {}",
+                            pipesClientId, filesProcessed);
+                    destroyForcibly();
+                    //wait for the reader to notice
+                    multiplexLock.wait(1000);
+                } else {
+                    restartUntilSuccessful();
+                    serverAvailable = true;
+                    executorService.execute(this::readResponses);
+                }
+            }
+            Request request = new Request(requestCounter.incrementAndGet(), t);
+            requests.put(request.id, request);
+            filesProcessed++;
+            try {
+                output.write(CALL.getByte());
+                output.writeInt(request.id);
+                codec.writeTuple(output, t);
+                output.flush();
+            } catch (IOException e) {
+                requests.remove(request.id);
+                throw e;
+            }
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("pipesClientId={}: timer -- write tuple: {} ms", pipesClientId,
+                        System.currentTimeMillis() - request.start);
+            }
+            return request;
+        }
+    }
+
+    private boolean reachedMaxFilesProcessed() {
+        return pipesConfig.getMaxFilesProcessedPerProcess() > 0 &&
+                filesProcessed >= pipesConfig.getMaxFilesProcessedPerProcess();
+    }
+
+    /**
+     * Reads the responses from the server and hands them to the calls they
+     * belong to, until the server exits or is shut down. The calls that are
+     * still open then are treated as crashes.
+     */
+    private void readResponses() {
+        try {
+            while (true) {
+                int statusByte = input.read();
+                if (statusByte == -1) {
+                    break;
+                }
+                PipesServer.STATUS status = lookupStatus(statusByte);
+                int id = input.readInt();
+                Request request = requests.get(id);
+                if (request == null) {
+                    throw new IOException("response to an unknown request: " + id);
+                }
+                if (status == PipesServer.STATUS.ISOLATED) {
+                    isolatedRequest = request;
+                    continue;
+                }
+                PipesResult result = readResult(status, request.tuple, request.start);
+                if (result.getStatus() == PipesResult.STATUS.INTERMEDIATE_RESULT) {
+                    request.intermediateResult[0] = result;
+                    continue;
+                }
+                if (result.getStatus() == PipesResult.STATUS.OOM ||
+                        result.getStatus() == PipesResult.STATUS.TIMEOUT) {
+                    result = buildFatalResult(result, request.intermediateResult);
+                } else if (request == isolatedRequest) {
+                    isolatedRequest = null;
+                }
+                complete(request, result);
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                LOG.warn("pipesClientId=" + pipesClientId + ": problem reading from server", e);
+            }
+        } finally {
+            synchronized (multiplexLock) {
+                serverAvailable = false;
+                Request isolated = isolatedRequest;
+                isolatedRequest = null;
+                for (Request request : new ArrayList<>(requests.values())) {
+                    if (isolated != null && request != isolated) {
+                        LOG.info("pipesClientId={} resubmitting {} after the crash of isolated {}",
+                                pipesClientId, request.tuple.getId(), isolated.tuple.getId());
+                        complete(request, RESUBMIT);
+                        continue;
+                    }
+                    LOG.warn("pipesClientId={} crash: {} in {} ms", pipesClientId,
+                            request.tuple.getId(), System.currentTimeMillis() - request.start);
+                    complete(request, buildFatalResult(PipesResult.UNSPECIFIED_CRASH,
+                            request.intermediateResult));
+                }
+                multiplexLock.notifyAll();
+            }
+        }
+    }
+
+    private void complete(Request request, PipesResult result) {
+        synchronized (multiplexLock) {
+            requests.remove(request.id);
+            multiplexLock.notifyAll();
+        }
+        request.result.complete(result);
     }
 
     private PipesResult actuallyProcess(FetchEmitTuple t) throws InterruptedException {
         long start = System.currentTimeMillis();
         final PipesResult[] intermediateResult = new PipesResult[1];
         FutureTask<PipesResult> futureTask = new FutureTask<>(() -> {
-
-            UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
-            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
-                objectOutputStream.writeObject(t);
-            }
-
-            byte[] bytes = bos.toByteArray();
             output.write(CALL.getByte());
-            output.writeInt(bytes.length);
-            output.write(bytes);
+            codec.writeTuple(output, t);
             output.flush();
             if (LOG.isTraceEnabled()) {
                 LOG.trace("pipesClientId={}: timer -- write tuple: {} ms",
@@ -259,6 +557,11 @@ public class PipesClient implements Closeable {
     }
 
     private void destroyForcibly() throws InterruptedException {
+        destroyForcibly(process, input, output);
+    }
+
+    private static void destroyForcibly(Process process, DataInputStream input,
+                                        DataOutputStream output) throws InterruptedException {
         process.destroyForcibly();
         process.waitFor(WAIT_ON_DESTROY_MS, TimeUnit.MILLISECONDS);
         //important to close streams so that threads running in this
@@ -281,12 +584,13 @@ public class PipesClient implements Closeable {
     }
 
     private PipesResult readResults(FetchEmitTuple t, long start) throws IOException {
-
         int statusByte = input.read();
-        long millis = System.currentTimeMillis() - start;
-        PipesServer.STATUS status = null;
+        return readResult(lookupStatus(statusByte), t, start);
+    }
+
+    private static PipesServer.STATUS lookupStatus(int statusByte) throws IOException {
         try {
-            status = lookup(statusByte);
+            return lookup(statusByte);
         } catch (IllegalArgumentException e) {
             String byteString = "-1";
             if (statusByte > -1) {
@@ -294,7 +598,11 @@ public class PipesClient implements Closeable {
             }
             throw new IOException("problem reading response from server: " + byteString, e);
         }
+    }
 
+    private PipesResult readResult(PipesServer.STATUS status, FetchEmitTuple t, long start)
+            throws IOException {
+        long millis = System.currentTimeMillis() - start;
         switch (status) {
             case OOM:
                 LOG.warn("pipesClientId={} oom: {} in {} ms", pipesClientId, t.getId(), millis);
@@ -364,44 +672,25 @@ public class PipesClient implements Closeable {
     }
 
     private PipesResult deserializeEmitData() throws IOException {
-        int length = input.readInt();
-        byte[] bytes = new byte[length];
-        input.readFully(bytes);
-        try (ObjectInputStream objectInputStream = new ObjectInputStream(
-                UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get())) {
-            EmitData emitData = (EmitData) objectInputStream.readObject();
-
-            String stack = emitData.getContainerStackTrace();
-            if (StringUtils.isBlank(stack)) {
-                return new PipesResult(emitData);
-            } else {
-                return new PipesResult(emitData, stack);
-            }
-        } catch (ClassNotFoundException e) {
-            LOG.error("class not found exception deserializing data", e);
-            //this should be catastrophic
-            throw new RuntimeException(e);
+        EmitData emitData = codec.readEmitData(input);
+        String stack = emitData.getContainerStackTrace();
+        if (StringUtils.isBlank(stack)) {
+            return new PipesResult(emitData);
+        } else {
+            return new PipesResult(emitData, stack);
         }
     }
 
     private PipesResult deserializeIntermediateResult(EmitKey emitKey, ParseContext parseContext) throws IOException {
-
-        int length = input.readInt();
-        byte[] bytes = new byte[length];
-        input.readFully(bytes);
-        try (ObjectInputStream objectInputStream = new ObjectInputStream(
-                UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get())) {
-            Metadata metadata = (Metadata) objectInputStream.readObject();
-            EmitData emitData = new EmitData(emitKey, Collections.singletonList(metadata));
-            return new PipesResult(PipesResult.STATUS.INTERMEDIATE_RESULT, emitData, true);
-        } catch (ClassNotFoundException e) {
-            LOG.error("class not found exception deserializing data", e);
-            //this should be catastrophic
-            throw new RuntimeException(e);
-        }
+        Metadata metadata = codec.readMetadata(input);
+        EmitData emitData = new EmitData(emitKey, Collections.singletonList(metadata));
+        return new PipesResult(PipesResult.STATUS.INTERMEDIATE_RESULT, emitData, true);
     }
 
-    private void restart() throws IOException, InterruptedException, TimeoutException {
+    /**
+     * @return whether the spare server was swapped in
+     */
+    private boolean restart() throws IOException, InterruptedException, TimeoutException {
         if (process != null) {
             LOG.debug("process still alive; trying to destroy it");
             destroyForcibly();
@@ -425,9 +714,32 @@ public class PipesClient implements Closeable {
         } else {
             LOG.info("pipesClientId={}: starting process", pipesClientId);
         }
+        ServerProcess serverProcess = takeSpare();
+        boolean spareHit = serverProcess != null;
+        if (spareHit) {
+            LOG.debug("pipesClientId={}: swapped in spare server", pipesClientId);
+        } else {
+            serverProcess = startProcess(executorService);
+        }
+        process = serverProcess.process;
+        input = serverProcess.input;
+        output = serverProcess.output;
+        filesProcessed = 0;
+        startSpare();
+        return spareHit;
+    }
+
+    /**
+     * Starts a server and waits for its ready signal
+     *
+     * @param readyExecutorService executor service to wait for the ready signal in
+     */
+    private ServerProcess startProcess(ExecutorService readyExecutorService)
+            throws IOException, InterruptedException, TimeoutException {
         ProcessBuilder pb = new ProcessBuilder(getCommandline());
         pb.redirectError(ProcessBuilder.Redirect.INHERIT);
 
+        Process process;
         try {
             process = pb.start();
         } catch (Exception e) {
@@ -435,8 +747,8 @@ public class PipesClient implements Closeable {
             LOG.error("failed to start client", e);
             throw new FailedToStartClientException(e);
         }
-        input = new DataInputStream(process.getInputStream());
-        output = new DataOutputStream(process.getOutputStream());
+        ServerProcess serverProcess = new ServerProcess(process);
+        DataInputStream input = serverProcess.input;
 
         //wait for ready signal
         final UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
@@ -467,15 +779,15 @@ public class PipesClient implements Closeable {
             return 1;
         });
         long start = System.currentTimeMillis();
-        executorService.submit(futureTask);
+        readyExecutorService.submit(futureTask);
         try {
             futureTask.get(pipesConfig.getStartupTimeoutMillis(), TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
-            destroyForcibly();
+            serverProcess.destroy();
             throw e;
         } catch (ExecutionException e) {
             LOG.error("pipesClientId=" + pipesClientId + ": couldn't start server", e);
-            destroyForcibly();
+            serverProcess.destroy();
             throw new RuntimeException(e);
         } catch (TimeoutException e) {
             long elapsed = System.currentTimeMillis() - start;
@@ -483,11 +795,12 @@ public class PipesClient implements Closeable {
                             "StartupTimeoutMillis {}; ms elapsed {}; did read >{}<",
                     pipesClientId, pipesConfig.getStartupTimeoutMillis(),
                     elapsed, bos.toString(StandardCharsets.UTF_8));
-            destroyForcibly();
+            serverProcess.destroy();
             throw e;
         } finally {
             futureTask.cancel(true);
         }
+        return serverProcess;
     }
 
     private static String getMsg(String msg, UnsynchronizedByteArrayOutputStream bos) {
@@ -561,7 +874,56 @@ public class PipesClient implements Closeable {
         commandLine.add(Long.toString(pipesConfig.getMaxForEmitBatchBytes()));
         commandLine.add(Long.toString(pipesConfig.getTimeoutMillis()));
         commandLine.add(Long.toString(pipesConfig.getShutdownClientAfterMillis()));
+        commandLine.add(pipesConfig.getSerialization().name());
+        commandLine.add(Integer.toString(pipesConfig.getMaxConcurrentParses()));
+        commandLine.add(Integer.toString(pipesConfig.getPipelineDepth()));
+        if (!pipesConfig.getIsolatedMediaTypes().isEmpty()) {
+            commandLine.add(String.join(",", pipesConfig.getIsolatedMediaTypes()));
+        }
         LOG.debug("pipesClientId={}: commandline: {}", pipesClientId, commandLine);
         return commandLine.toArray(new String[0]);
     }
+
+    /**
+     * A call to a server that takes on more than one file at a time
+     */
+    private static class Request {
+        private final int id;
+        private final FetchEmitTuple tuple;
+        private final long start = System.currentTimeMillis();
+        private final PipesResult[] intermediateResult = new PipesResult[1];
+        private final CompletableFuture<PipesResult> result = new CompletableFuture<>();
+
+        private Request(int id, FetchEmitTuple tuple) {
+            this.id = id;
+            this.tuple = tuple;
+        }
+    }
+
+    /**
+     * A started server and the streams to talk to it
+     */
+    private static class ServerProcess {
+        private final Process process;
+        private final DataInputStream input;
+        private final DataOutputStream output;
+
+        private ServerProcess(Process process) {
+            this.process = process;
+            this.input = new DataInputStream(process.getInputStream());
+            this.output = new DataOutputStream(process.getOutputStream());
+        }
+
+        private boolean ping() {
+            return PipesClient.ping(process, input, output);
+        }
+
+        private void destroy() {
+            try {
+                destroyForcibly(process, input, output);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
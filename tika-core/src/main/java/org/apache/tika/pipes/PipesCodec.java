@@ -0,0 +1,517 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+/**
+ * Writes and reads the messages that the {@link PipesClient} and the
+ * {@link PipesServer} exchange: the {@link FetchEmitTuple} to process, the
+ * intermediate {@link Metadata} and the resulting {@link EmitData}.
+ *
+ * @see PipesConfigBase#setSerialization(String)
+ */
+abstract class PipesCodec {
+
+    static PipesCodec get(PipesConfigBase.SERIALIZATION serialization) {
+        switch (serialization) {
+            case BINARY:
+                return Binary.INSTANCE;
+            case JAVA:
+                return JavaSerialization.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown serialization: " + serialization);
+        }
+    }
+
+    abstract void writeTuple(DataOutputStream output, FetchEmitTuple t) throws IOException;
+
+    abstract FetchEmitTuple readTuple(DataInputStream input) throws IOException;
+
+    abstract void writeMetadata(DataOutputStream output, Metadata metadata) throws IOException;
+
+    abstract Metadata readMetadata(DataInputStream input) throws IOException;
+
+    abstract void writeEmitData(DataOutputStream output, EmitData emitData) throws IOException;
+
+    abstract EmitData readEmitData(DataInputStream input) throws IOException;
+
+    private static void writeSerialized(DataOutputStream output, Object object)
+            throws IOException {
+        UnsynchronizedByteArrayOutputStream bos =
+                UnsynchronizedByteArrayOutputStream.builder().get();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
+            objectOutputStream.writeObject(object);
+        }
+        output.writeInt(bos.size());
+        bos.writeTo(output);
+    }
+
+    private static <T> T readSerialized(DataInputStream input, Class<T> clazz)
+            throws IOException {
+        int length = input.readInt();
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(
+                UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get())) {
+            return clazz.cast(objectInputStream.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("can't find class?!", e);
+        }
+    }
+
+    /**
+     * Each message is a Java-serialized object with an int length prefix.
+     * This is the format that was used before there was a choice.
+     */
+    static final class JavaSerialization extends PipesCodec {
+
+        static final JavaSerialization INSTANCE = new JavaSerialization();
+
+        @Override
+        void writeTuple(DataOutputStream output, FetchEmitTuple t) throws IOException {
+            writeSerialized(output, t);
+        }
+
+        @Override
+        FetchEmitTuple readTuple(DataInputStream input) throws IOException {
+            return readSerialized(input, FetchEmitTuple.class);
+        }
+
+        @Override
+        void writeMetadata(DataOutputStream output, Metadata metadata) throws IOException {
+            writeSerialized(output, metadata);
+        }
+
+        @Override
+        Metadata readMetadata(DataInputStream input) throws IOException {
+            return readSerialized(input, Metadata.class);
+        }
+
+        @Override
+        void writeEmitData(DataOutputStream output, EmitData emitData) throws IOException {
+            writeSerialized(output, emitData);
+        }
+
+        @Override
+        EmitData readEmitData(DataInputStream input) throws IOException {
+            return readSerialized(input, EmitData.class);
+        }
+    }
+
+    /**
+     * Compact binary format. A message is a sequence of frames, each an int
+     * length followed by that many bytes and the last one empty, so that
+     * neither side has to hold the whole message in a buffer. The message
+     * starts with the format version. Strings are written as their length
+     * in chars followed by length-prefixed UTF-8 segments, so that large
+     * extracted texts are encoded and decoded a segment at a time.
+     * <p>
+     * The {@link ParseContext}s, which may hold arbitrary configuration
+     * objects, are still Java-serialized within the message. Metadata write
+     * filters are not carried over.
+     */
+    static final class Binary extends PipesCodec {
+
+        static final Binary INSTANCE = new Binary();
+
+        static final int VERSION = 1;
+
+        /**
+         * Maximum number of bytes per frame.
+         */
+        static final int FRAME_SIZE = 65536;
+
+        /**
+         * Maximum number of chars per string segment.
+         */
+        static final int SEGMENT_CHARS = 8192;
+
+        @Override
+        void writeTuple(DataOutputStream output, FetchEmitTuple t) throws IOException {
+            try (DataOutputStream out = start(output)) {
+                writeString(out, t.getId());
+                FetchKey fetchKey = t.getFetchKey();
+                out.writeBoolean(fetchKey != null);
+                if (fetchKey != null) {
+                    writeString(out, fetchKey.getFetcherName());
+                    writeString(out, fetchKey.getFetchKey());
+                    out.writeLong(fetchKey.getRangeStart());
+                    out.writeLong(fetchKey.getRangeEnd());
+                }
+                writeEmitKey(out, t.getEmitKey());
+                writeMetadataValues(out, t.getMetadata());
+                writeParseContext(out, t.getParseContext());
+                out.writeBoolean(t.getOnParseException() != null);
+                if (t.getOnParseException() != null) {
+                    out.writeByte(t.getOnParseException().ordinal());
+                }
+            }
+        }
+
+        @Override
+        FetchEmitTuple readTuple(DataInputStream input) throws IOException {
+            try (DataInputStream in = startReading(input)) {
+                String id = readString(in);
+                FetchKey fetchKey = null;
+                if (in.readBoolean()) {
+                    String fetcherName = readString(in);
+                    String key = readString(in);
+                    long rangeStart = in.readLong();
+                    long rangeEnd = in.readLong();
+                    fetchKey = new FetchKey(fetcherName, key, rangeStart, rangeEnd);
+                }
+                EmitKey emitKey = readEmitKey(in);
+                Metadata metadata = readMetadataValues(in);
+                ParseContext parseContext = readParseContext(in);
+                FetchEmitTuple.ON_PARSE_EXCEPTION onParseException = null;
+                if (in.readBoolean()) {
+                    onParseException = FetchEmitTuple.ON_PARSE_EXCEPTION.values()[in.readByte()];
+                }
+                return new FetchEmitTuple(id, fetchKey, emitKey, metadata, parseContext,
+                        onParseException);
+            }
+        }
+
+        @Override
+        void writeMetadata(DataOutputStream output, Metadata metadata) throws IOException {
+            try (DataOutputStream out = start(output)) {
+                writeMetadataValues(out, metadata);
+            }
+        }
+
+        @Override
+        Metadata readMetadata(DataInputStream input) throws IOException {
+            try (DataInputStream in = startReading(input)) {
+                return readMetadataValues(in);
+            }
+        }
+
+        @Override
+        void writeEmitData(DataOutputStream output, EmitData emitData) throws IOException {
+            try (DataOutputStream out = start(output)) {
+                writeEmitKey(out, emitData.getEmitKey());
+                List<Metadata> metadataList = emitData.getMetadataList();
+                out.writeInt(metadataList == null ? -1 : metadataList.size());
+                if (metadataList != null) {
+                    for (Metadata metadata : metadataList) {
+                        writeMetadataValues(out, metadata);
+                    }
+                }
+                writeString(out, emitData.getContainerStackTrace());
+                writeParseContext(out, emitData.getParseContext());
+            }
+        }
+
+        @Override
+        EmitData readEmitData(DataInputStream input) throws IOException {
+            try (DataInputStream in = startReading(input)) {
+                EmitKey emitKey = readEmitKey(in);
+                int size = in.readInt();
+                List<Metadata> metadataList = null;
+                if (size >= 0) {
+                    metadataList = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        metadataList.add(readMetadataValues(in));
+                    }
+                }
+                String stack = readString(in);
+                ParseContext parseContext = readParseContext(in);
+                return new EmitData(emitKey, metadataList, stack, parseContext);
+            }
+        }
+
+        private static DataOutputStream start(DataOutputStream output) throws IOException {
+            DataOutputStream out = new DataOutputStream(new FrameOutputStream(output));
+            out.writeByte(VERSION);
+            return out;
+        }
+
+        private static DataInputStream startReading(DataInputStream input) throws IOException {
+            DataInputStream in = new DataInputStream(new FrameInputStream(input));
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported pipes message version: " + version +
+                        "; expected: " + VERSION);
+            }
+            return in;
+        }
+
+        private static void writeEmitKey(DataOutputStream out, EmitKey emitKey)
+                throws IOException {
+            out.writeBoolean(emitKey != null);
+            if (emitKey != null) {
+                writeString(out, emitKey.getEmitterName());
+                writeString(out, emitKey.getEmitKey());
+            }
+        }
+
+        private static EmitKey readEmitKey(DataInputStream in) throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            String emitterName = readString(in);
+            String key = readString(in);
+            return new EmitKey(emitterName, key);
+        }
+
+        private static void writeMetadataValues(DataOutputStream out, Metadata metadata)
+                throws IOException {
+            if (metadata == null) {
+                out.writeInt(-1);
+                return;
+            }
+            String[] names = metadata.names();
+            out.writeInt(names.length);
+            for (String name : names) {
+                writeString(out, name);
+                String[] values = metadata.getValues(name);
+                out.writeInt(values.length);
+                for (String value : values) {
+                    writeString(out, value);
+                }
+            }
+        }
+
+        private static Metadata readMetadataValues(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            if (size < 0) {
+                return null;
+            }
+            Metadata metadata = new Metadata();
+            for (int i = 0; i < size; i++) {
+                String name = readString(in);
+                int count = in.readInt();
+                for (int j = 0; j < count; j++) {
+                    metadata.add(name, readString(in));
+                }
+            }
+            return metadata;
+        }
+
+        private static void writeParseContext(DataOutputStream out, ParseContext parseContext)
+                throws IOException {
+            if (parseContext == null) {
+                out.writeByte(0);
+            } else if (parseContext.isEmpty()) {
+                out.writeByte(1);
+            } else {
+                out.writeByte(2);
+                writeSerialized(out, parseContext);
+            }
+        }
+
+        private static ParseContext readParseContext(DataInputStream in) throws IOException {
+            int type = in.readByte();
+            if (type == 0) {
+                return null;
+            } else if (type == 1) {
+                return new ParseContext();
+            }
+            return readSerialized(in, ParseContext.class);
+        }
+
+        static void writeString(DataOutputStream out, String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+            int length = s.length();
+            out.writeInt(length);
+            int start = 0;
+            while (start < length) {
+                int end = Math.min(length, start + SEGMENT_CHARS);
+                if (end < length && Character.isHighSurrogate(s.charAt(end - 1))) {
+                    // Keep surrogate pairs within a segment
+                    end--;
+                }
+                byte[] bytes = s.substring(start, end).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                start = end;
+            }
+        }
+
+        static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder(length);
+            byte[] bytes = new byte[0];
+            while (sb.length() < length) {
+                int byteLength = in.readInt();
+                if (byteLength <= 0 || byteLength > SEGMENT_CHARS * 3) {
+                    throw new IOException("Invalid string segment length: " + byteLength);
+                }
+                if (bytes.length < byteLength) {
+                    bytes = new byte[byteLength];
+                }
+                in.readFully(bytes, 0, byteLength);
+                sb.append(new String(bytes, 0, byteLength, StandardCharsets.UTF_8));
+            }
+            if (sb.length() != length) {
+                throw new IOException("Expected " + length + " chars but read " + sb.length());
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Writes the bytes as frames of up to {@link Binary#FRAME_SIZE} bytes,
+     * and an empty frame on close. The underlying stream is not closed.
+     */
+    static class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream output;
+
+        private final byte[] buffer = new byte[Binary.FRAME_SIZE];
+
+        private int count;
+
+        private boolean closed;
+
+        FrameOutputStream(DataOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeFrame();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeFrame();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeFrame() throws IOException {
+            output.writeInt(count);
+            output.write(buffer, 0, count);
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (count > 0) {
+                writeFrame();
+            }
+            output.writeInt(0);
+        }
+    }
+
+    /**
+     * Reads the frames written by a {@link FrameOutputStream}. On close,
+     * skips to the end of the message. The underlying stream is not closed.
+     */
+    static class FrameInputStream extends InputStream {
+
+        private final DataInputStream input;
+
+        private int remaining;
+
+        private boolean done;
+
+        FrameInputStream(DataInputStream input) {
+            this.input = input;
+        }
+
+        private boolean nextFrame() throws IOException {
+            while (remaining == 0 && !done) {
+                int length = input.readInt();
+                if (length < 0 || length > Binary.FRAME_SIZE) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                if (length == 0) {
+                    done = true;
+                }
+                remaining = length;
+            }
+            return remaining > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextFrame()) {
+                return -1;
+            }
+            remaining--;
+            return input.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextFrame()) {
+                return -1;
+            }
+            int n = input.read(b, off, Math.min(len, remaining));
+            if (n < 0) {
+                throw new IOException("Unexpected end of stream within a frame");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            while (nextFrame()) {
+                int skipped = input.skipBytes(remaining);
+                if (skipped <= 0) {
+                    throw new IOException("Unexpected end of stream within a frame");
+                }
+                remaining -= skipped;
+            }
+        }
+    }
+}
@@ -21,11 +21,27 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.tika.config.ConfigBase;
 
 public class PipesConfigBase extends ConfigBase {
 
+    /**
+     * How the messages between the PipesClient and the forked PipesServer
+     * are serialized.
+     */
+    public enum SERIALIZATION {
+        /**
+         * Versioned binary frames; large strings are streamed in chunks
+         */
+        BINARY,
+        /**
+         * Java serialization, as was used before there was a choice
+         */
+        JAVA
+    }
+
     /**
      * default size to send back to the PipesClient for batch
      * emitting.  If an extract is larger than this, it will be emitted
@@ -61,6 +77,11 @@ public class PipesConfigBase extends ConfigBase {
     private List<String> forkedJvmArgs = new ArrayList<>();
     private Path tikaConfig;
     private String javaPath = "java";
+    private SERIALIZATION serialization = SERIALIZATION.BINARY;
+    private int maxConcurrentParses = 1;
+    private List<String> isolatedMediaTypes = Collections.emptyList();
+    private int pipelineDepth = 0;
+    private boolean warmSpare = false;
 
     public long getTimeoutMillis() {
         return timeoutMillis;
@@ -189,4 +210,94 @@ public class PipesConfigBase extends ConfigBase {
     public void setStaleFetcherDelaySeconds(int staleFetcherDelaySeconds) {
         this.staleFetcherDelaySeconds = staleFetcherDelaySeconds;
     }
+
+    public SERIALIZATION getSerialization() {
+        return serialization;
+    }
+
+    /**
+     * Serialization of the messages between the PipesClient and the forked
+     * PipesServer: <code>binary</code> (default) or <code>java</code>.
+     *
+     * @param serialization
+     */
+    public void setSerialization(String serialization) {
+        this.serialization = SERIALIZATION.valueOf(serialization.toUpperCase(Locale.ROOT));
+    }
+
+    public int getMaxConcurrentParses() {
+        return maxConcurrentParses;
+    }
+
+    /**
+     * Maximum number of files that a forked PipesServer parses at the same
+     * time. If this is greater than one, that many threads share each
+     * PipesClient and its forked process, which saves the memory of the
+     * extra processes. The default is <code>1</code>, one file at a time.
+     *
+     * @param maxConcurrentParses
+     */
+    public void setMaxConcurrentParses(int maxConcurrentParses) {
+        this.maxConcurrentParses = maxConcurrentParses;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    /**
+     * Number of files that a forked PipesServer takes on beyond the ones it
+     * is parsing. If this is greater than zero, the server runs in pipelined
+     * mode: it fetches the next files while it parses, and hands the results
+     * to a background emitter queue of this size, so that the latency of
+     * remote fetchers and emitters is hidden behind the parsing. That many
+     * more threads share each PipesClient. The default is <code>0</code>,
+     * which fetches, parses and emits each file in turn.
+     *
+     * @param pipelineDepth
+     */
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    /**
+     * @return the number of files that can be in progress in a PipesClient
+     * and its forked PipesServer at the same time
+     */
+    public int getMaxFilesInFlight() {
+        return Math.max(1, maxConcurrentParses) + Math.max(0, pipelineDepth);
+    }
+
+    public List<String> getIsolatedMediaTypes() {
+        return isolatedMediaTypes;
+    }
+
+    /**
+     * Media types (including their subtypes) of files that are parsed while
+     * no other file is being parsed by the same server, if the server parses
+     * more than one file at a time. If such a file crashes the server, it
+     * doesn't take other files down with it: the files that were waiting for
+     * it are sent again to the restarted server.
+     *
+     * @param isolatedMediaTypes
+     */
+    public void setIsolatedMediaTypes(List<String> isolatedMediaTypes) {
+        this.isolatedMediaTypes = Collections.unmodifiableList(new ArrayList<>(isolatedMediaTypes));
+    }
+
+    public boolean isWarmSpare() {
+        return warmSpare;
+    }
+
+    /**
+     * If <code>true</code>, each PipesClient keeps a spare PipesServer
+     * started, which it swaps in when it has to restart its server, so that
+     * the next file doesn't wait for a new JVM and the parsers to load. This
+     * costs the memory of the extra processes.
+     *
+     * @param warmSpare
+     */
+    public void setWarmSpare(boolean warmSpare) {
+        this.warmSpare = warmSpare;
+    }
 }
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PipesParser implements Closeable {
 
@@ -29,35 +30,78 @@ public class PipesParser implements Closeable {
     private final PipesConfig pipesConfig;
     private final List<PipesClient> clients = new ArrayList<>();
     private final ArrayBlockingQueue<PipesClient> clientQueue ;
+    private final AtomicInteger waiting = new AtomicInteger(0);
+    private final AtomicInteger inFlight = new AtomicInteger(0);
 
 
     public PipesParser(PipesConfig pipesConfig) {
         this.pipesConfig = pipesConfig;
-        this.clientQueue = new ArrayBlockingQueue<>(pipesConfig.getNumClients());
+        //fair, so that callers get clients in the order they asked for them
+        this.clientQueue = new ArrayBlockingQueue<>(pipesConfig.getNumClients(), true);
+        //a client whose server takes on several files at a time is shared by that many callers
+        int callersPerClient = pipesConfig.getMaxFilesInFlight();
+        PipesClient client = null;
         for (int i = 0; i < pipesConfig.getNumClients(); i++) {
-            PipesClient client = new PipesClient(pipesConfig);
+            if (i % callersPerClient == 0) {
+                client = new PipesClient(pipesConfig);
+                clients.add(client);
+            }
             clientQueue.offer(client);
-            clients.add(client);
         }
     }
 
     public PipesResult parse(FetchEmitTuple t) throws InterruptedException,
             PipesException, IOException {
+        return parse(t, pipesConfig.getMaxWaitForClientMillis());
+    }
+
+    /**
+     * @param maxWaitForClientMillis how long to wait for a client to be free
+     *                               before giving up with
+     *                               {@link PipesResult#CLIENT_UNAVAILABLE_WITHIN_MS}
+     */
+    public PipesResult parse(FetchEmitTuple t, long maxWaitForClientMillis)
+            throws InterruptedException, PipesException, IOException {
         PipesClient client = null;
+        waiting.incrementAndGet();
+        try {
+            client = clientQueue.poll(maxWaitForClientMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (client == null) {
+            return PipesResult.CLIENT_UNAVAILABLE_WITHIN_MS;
+        }
+        inFlight.incrementAndGet();
         try {
-            client = clientQueue.poll(pipesConfig.getMaxWaitForClientMillis(),
-                    TimeUnit.MILLISECONDS);
-            if (client == null) {
-                return PipesResult.CLIENT_UNAVAILABLE_WITHIN_MS;
-            }
             return client.process(t);
         } finally {
-            if (client != null) {
-                clientQueue.offer(client);
-            }
+            inFlight.decrementAndGet();
+            clientQueue.offer(client);
         }
     }
 
+    /**
+     * @return the number of callers that can parse at once
+     */
+    public int getNumClients() {
+        return pipesConfig.getNumClients();
+    }
+
+    /**
+     * @return the number of callers waiting for a client
+     */
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    /**
+     * @return the number of callers that are parsing
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
     @Override
     public void close() throws IOException {
         List<IOException> exceptions = new ArrayList<>();
@@ -19,6 +19,7 @@ package org.apache.tika.pipes;
 import java.io.Closeable;
 import java.io.IOException;
 
+import org.apache.tika.pipes.async.LaneWaitResult;
 import org.apache.tika.pipes.pipesiterator.TotalCountResult;
 
 /**
@@ -66,6 +67,26 @@ public abstract class PipesReporter implements Closeable {
 
     }
 
+    /**
+     * No-op implementation. Override for custom behavior.
+     * This is called by a PipesClient each time it has restarted
+     * its forked PipesServer.
+     * @param serverRestartResult
+     */
+    public void report(ServerRestartResult serverRestartResult) {
+
+    }
+
+    /**
+     * No-op implementation. Override for custom behavior.
+     * This is called periodically by an AsyncProcessor for
+     * each of its scheduling lanes.
+     * @param laneWaitResult
+     */
+    public void report(LaneWaitResult laneWaitResult) {
+
+    }
+
     /**
      * Override this if your reporter supports total count.
      * @return <code>false</code> as the baseline implementation
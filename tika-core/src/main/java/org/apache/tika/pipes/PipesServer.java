@@ -21,26 +21,39 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
-import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
 import org.apache.tika.config.TikaConfig;
+import org.apache.tika.config.TikaTaskTimeout;
 import org.apache.tika.detect.Detector;
 import org.apache.tika.exception.EncryptedDocumentException;
 import org.apache.tika.exception.TikaConfigException;
@@ -74,6 +87,7 @@ import org.apache.tika.pipes.emitter.StreamEmitter;
 import org.apache.tika.pipes.emitter.TikaEmitterException;
 import org.apache.tika.pipes.extractor.EmbeddedDocumentBytesConfig;
 import org.apache.tika.pipes.extractor.EmittingEmbeddedDocumentBytesHandler;
+import org.apache.tika.pipes.fetcher.AsyncFetcher;
 import org.apache.tika.pipes.fetcher.Fetcher;
 import org.apache.tika.pipes.fetcher.FetcherManager;
 import org.apache.tika.sax.BasicContentHandlerFactory;
@@ -89,6 +103,15 @@ import org.apache.tika.utils.StringUtils;
  * When configuring logging for this class, make absolutely certain
  * not to write to STDOUT.  This class uses STDOUT to communicate with
  * the PipesClient.
+ * <p>
+ * If more than one concurrent parse is allowed, each call carries a request
+ * id, which is written back with every response to that call, and each
+ * parse has its own timeout. Files with one of the isolated media types
+ * are parsed while no other parse is running, so that they don't take
+ * other files down with them if they crash the server.
+ * <p>
+ * In pipelined mode, the files of an {@link AsyncFetcher} are fetched
+ * without holding a thread, and a file's task only starts once it is there.
  */
 public class PipesServer implements Runnable {
 
@@ -105,7 +128,7 @@ public class PipesServer implements Runnable {
         READY, CALL, PING, FAILED_TO_START, FETCHER_NOT_FOUND, EMITTER_NOT_FOUND,
         FETCHER_INITIALIZATION_EXCEPTION, FETCH_EXCEPTION, PARSE_SUCCESS, PARSE_EXCEPTION_NO_EMIT,
         EMIT_SUCCESS, EMIT_SUCCESS_PARSE_EXCEPTION, EMIT_EXCEPTION, OOM, TIMEOUT, EMPTY_OUTPUT,
-        INTERMEDIATE_RESULT;
+        INTERMEDIATE_RESULT, ISOLATED;
 
         byte getByte() {
             return (byte) (ordinal() + 1);
@@ -137,6 +160,19 @@ public class PipesServer implements Runnable {
     private final long maxForEmitBatchBytes;
     private final long serverParseTimeoutMillis;
     private final long serverWaitTimeoutMillis;
+    private final PipesCodec codec;
+    private final int maxConcurrentParses;
+    private final Set<MediaType> isolatedMediaTypes;
+    //the tasks that are running if there can be more than one parse at a time
+    private final Map<Integer, Task> tasks = new ConcurrentHashMap<>();
+    private final ThreadLocal<Task> currentTask = new ThreadLocal<>();
+    //parses hold the read lock, and isolated parses the write lock
+    private final ReadWriteLock isolationLock = new ReentrantReadWriteLock(true);
+    //in pipelined mode, parses hold one of these, and the
+    //results are emitted by a background thread off the queue
+    private final int pipelineDepth;
+    private final Semaphore parseSlots;
+    private final BlockingQueue<Task> emitQueue;
     private Parser autoDetectParser;
     private Parser rMetaParser;
     private TikaConfig tikaConfig;
@@ -144,18 +180,50 @@ public class PipesServer implements Runnable {
     private EmitterManager emitterManager;
     private volatile boolean parsing;
     private volatile long since;
+    //the timeout of the file that is being parsed if there's one parse at a time
+    private volatile long parseTimeoutMillis;
 
 
     public PipesServer(Path tikaConfigPath, InputStream in, PrintStream out,
                        long maxForEmitBatchBytes, long serverParseTimeoutMillis,
                        long serverWaitTimeoutMillis)
             throws IOException, TikaException, SAXException {
+        this(tikaConfigPath, in, out, maxForEmitBatchBytes, serverParseTimeoutMillis,
+                serverWaitTimeoutMillis, PipesConfigBase.SERIALIZATION.BINARY);
+    }
+
+    public PipesServer(Path tikaConfigPath, InputStream in, PrintStream out,
+                       long maxForEmitBatchBytes, long serverParseTimeoutMillis,
+                       long serverWaitTimeoutMillis, PipesConfigBase.SERIALIZATION serialization)
+            throws IOException, TikaException, SAXException {
+        this(tikaConfigPath, in, out, maxForEmitBatchBytes, serverParseTimeoutMillis,
+                serverWaitTimeoutMillis, serialization, 1, 0, Collections.emptySet());
+    }
+
+    public PipesServer(Path tikaConfigPath, InputStream in, PrintStream out,
+                       long maxForEmitBatchBytes, long serverParseTimeoutMillis,
+                       long serverWaitTimeoutMillis, PipesConfigBase.SERIALIZATION serialization,
+                       int maxConcurrentParses, int pipelineDepth,
+                       Set<MediaType> isolatedMediaTypes)
+            throws IOException, TikaException, SAXException {
         this.tikaConfigPath = tikaConfigPath;
         this.input = new DataInputStream(in);
         this.output = new DataOutputStream(out);
         this.maxForEmitBatchBytes = maxForEmitBatchBytes;
         this.serverParseTimeoutMillis = serverParseTimeoutMillis;
+        this.parseTimeoutMillis = serverParseTimeoutMillis;
         this.serverWaitTimeoutMillis = serverWaitTimeoutMillis;
+        this.codec = PipesCodec.get(serialization);
+        this.maxConcurrentParses = maxConcurrentParses;
+        this.isolatedMediaTypes = isolatedMediaTypes;
+        this.pipelineDepth = pipelineDepth;
+        if (pipelineDepth > 0) {
+            this.parseSlots = new Semaphore(Math.max(1, maxConcurrentParses), true);
+            this.emitQueue = new ArrayBlockingQueue<>(pipelineDepth);
+        } else {
+            this.parseSlots = null;
+            this.emitQueue = null;
+        }
         this.parsing = false;
         this.since = System.currentTimeMillis();
     }
@@ -167,10 +235,25 @@ public class PipesServer implements Runnable {
             long maxForEmitBatchBytes = Long.parseLong(args[1]);
             long serverParseTimeoutMillis = Long.parseLong(args[2]);
             long serverWaitTimeoutMillis = Long.parseLong(args[3]);
+            PipesConfigBase.SERIALIZATION serialization = args.length > 4 ?
+                    PipesConfigBase.SERIALIZATION.valueOf(args[4]) :
+                    PipesConfigBase.SERIALIZATION.BINARY;
+            int maxConcurrentParses = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+            int pipelineDepth = args.length > 6 ? Integer.parseInt(args[6]) : 0;
+            Set<MediaType> isolatedMediaTypes = new HashSet<>();
+            if (args.length > 7) {
+                for (String type : args[7].split(",")) {
+                    MediaType mediaType = MediaType.parse(type.trim());
+                    if (mediaType != null) {
+                        isolatedMediaTypes.add(mediaType);
+                    }
+                }
+            }
 
             PipesServer server =
                     new PipesServer(tikaConfig, System.in, System.out, maxForEmitBatchBytes,
-                            serverParseTimeoutMillis, serverWaitTimeoutMillis);
+                            serverParseTimeoutMillis, serverWaitTimeoutMillis, serialization,
+                            maxConcurrentParses, pipelineDepth, isolatedMediaTypes);
             System.setIn(UnsynchronizedByteArrayInputStream.builder().setByteArray(new byte[0]).get());
             System.setOut(System.err);
             Thread watchdog = new Thread(server, "Tika Watchdog");
@@ -187,11 +270,16 @@ public class PipesServer implements Runnable {
     public void run() {
         try {
             while (true) {
+                if (isMultiplexed()) {
+                    checkTasks();
+                    Thread.sleep(checkForTimeoutMs);
+                    continue;
+                }
                 synchronized (lock) {
                     long elapsed = System.currentTimeMillis() - since;
-                    if (parsing && elapsed > serverParseTimeoutMillis) {
+                    if (parsing && elapsed > parseTimeoutMillis) {
                         LOG.warn("timeout server; elapsed {}  with {}", elapsed,
-                                serverParseTimeoutMillis);
+                                parseTimeoutMillis);
                         exit(TIMEOUT_EXIT_CODE);
                     } else if (!parsing && serverWaitTimeoutMillis > 0 &&
                             elapsed > serverWaitTimeoutMillis) {
@@ -206,6 +294,59 @@ public class PipesServer implements Runnable {
         }
     }
 
+    /**
+     * Times out the tasks that have been running for too long. A task that
+     * doesn't stop within another timeout period after it has been
+     * interrupted can't be recovered, so the server then exits.
+     */
+    private void checkTasks() {
+        long now = System.currentTimeMillis();
+        for (Task task : tasks.values()) {
+            if (task.waiting) {
+                continue;
+            }
+            long elapsed = now - task.started;
+            if (elapsed > task.timeoutMillis && !task.timedOut) {
+                synchronized (output) {
+                    if (task.responded) {
+                        continue;
+                    }
+                    LOG.warn("timeout task {}; elapsed {}  with {}", task.tuple.getId(), elapsed,
+                            task.timeoutMillis);
+                    task.timedOut = true;
+                    try {
+                        output.write(STATUS.TIMEOUT.getByte());
+                        output.writeInt(task.id);
+                        output.flush();
+                    } catch (IOException e) {
+                        LOG.error("problem writing data (forking process shutdown?)", e);
+                        exit(1);
+                    }
+                }
+                if (task.thread != null) {
+                    task.thread.interrupt();
+                } else {
+                    task.fetch.cancel(true);
+                }
+            } else if (task.timedOut && elapsed > 2 * task.timeoutMillis) {
+                LOG.warn("timed out task {} did not stop; elapsed {}", task.tuple.getId(),
+                        elapsed);
+                exit(TIMEOUT_EXIT_CODE);
+            }
+        }
+        synchronized (lock) {
+            if (tasks.isEmpty() && serverWaitTimeoutMillis > 0 &&
+                    now - since > serverWaitTimeoutMillis) {
+                LOG.info("closing down from inactivity");
+                exit(0);
+            }
+        }
+    }
+
+    private boolean isMultiplexed() {
+        return maxConcurrentParses > 1 || pipelineDepth > 0;
+    }
+
     public void processRequests() {
         LOG.debug("processing requests");
         //initialize
@@ -228,6 +369,19 @@ public class PipesServer implements Runnable {
             return;
         }
         //main loop
+        ExecutorService executorService = null;
+        if (isMultiplexed()) {
+            executorService = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "Tika Pipes Parse");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (emitQueue != null) {
+            Thread emitThread = new Thread(this::emitQueued, "Tika Pipes Emit");
+            emitThread.setDaemon(true);
+            emitThread.start();
+        }
         try {
             write(STATUS.READY);
             long start = System.currentTimeMillis();
@@ -241,7 +395,18 @@ public class PipesServer implements Runnable {
                         LOG.trace("timer -- ping: {} ms", System.currentTimeMillis() - start);
                     }
                     write(STATUS.PING);
+                    //a ping keeps an idle server, e.g. a client's spare, alive
+                    synchronized (lock) {
+                        since = System.currentTimeMillis();
+                    }
                     start = System.currentTimeMillis();
+                } else if (request == STATUS.CALL.getByte() && executorService != null) {
+                    int id = input.readInt();
+                    FetchEmitTuple t = readFetchEmitTuple();
+                    Task task = new Task(id, t, getParseTimeoutMillis(t));
+                    if (!fetchAsync(task, executorService)) {
+                        executorService.execute(() -> parseTask(task));
+                    }
                 } else if (request == STATUS.CALL.getByte()) {
                     parseOne();
                     if (LOG.isTraceEnabled()) {
@@ -336,6 +501,7 @@ public class PipesServer implements Runnable {
         try {
             long start = System.currentTimeMillis();
             t = readFetchEmitTuple();
+            parseTimeoutMillis = getParseTimeoutMillis(t);
             if (LOG.isTraceEnabled()) {
                 LOG.trace("timer -- read fetchEmitTuple: {} ms",
                         System.currentTimeMillis() - start);
@@ -351,10 +517,243 @@ public class PipesServer implements Runnable {
             synchronized (lock) {
                 parsing = false;
                 since = System.currentTimeMillis();
+                parseTimeoutMillis = serverParseTimeoutMillis;
+            }
+        }
+    }
+
+    /**
+     * A tuple can ask for a shorter timeout than the server's with a
+     * {@link TikaTaskTimeout} in its parse context, e.g. for a caller
+     * with a deadline.
+     */
+    private long getParseTimeoutMillis(FetchEmitTuple t) {
+        if (t == null || t.getParseContext() == null) {
+            return serverParseTimeoutMillis;
+        }
+        return Math.min(serverParseTimeoutMillis,
+                TikaTaskTimeout.getTimeoutMillis(t.getParseContext(), serverParseTimeoutMillis));
+    }
+
+    /**
+     * In pipelined mode, starts the fetch of the task's file if its fetcher
+     * can fetch asynchronously. The task is started on the executor once the
+     * fetch completes; until then, it is timed without a thread.
+     *
+     * @return whether the task will be started when its fetch completes
+     */
+    private boolean fetchAsync(Task task, ExecutorService executorService) {
+        if (parseSlots == null) {
+            return false;
+        }
+        Fetcher fetcher;
+        try {
+            fetcher = fetcherManager.getFetcher(task.tuple.getFetchKey().getFetcherName());
+        } catch (IllegalArgumentException | IOException | TikaException e) {
+            //the task reports this
+            return false;
+        }
+        if (!(fetcher instanceof AsyncFetcher) || !((AsyncFetcher) fetcher).isAsync()) {
+            return false;
+        }
+        task.fetchMetadata = new Metadata();
+        task.started = System.currentTimeMillis();
+        try {
+            task.fetch = ((AsyncFetcher) fetcher).fetchAsync(
+                    task.tuple.getFetchKey().getFetchKey(), task.fetchMetadata,
+                    task.tuple.getParseContext());
+        } catch (IOException | TikaException e) {
+            task.fetch = CompletableFuture.failedFuture(e);
+        }
+        task.waiting = false;
+        tasks.put(task.id, task);
+        task.fetch.whenComplete((stream, t) -> {
+            if (task.timedOut) {
+                IOUtils.closeQuietly(stream);
+                finish(task);
+            } else {
+                executorService.execute(() -> parseTask(task));
+            }
+        });
+        return true;
+    }
+
+    private void parseTask(Task task) {
+        task.thread = Thread.currentThread();
+        tasks.put(task.id, task);
+        currentTask.set(task);
+        if (parseSlots == null) {
+            lock(task, isolationLock.readLock());
+        } else {
+            //in pipelined mode, the file is fetched before the task waits for a parse slot
+            task.started = System.currentTimeMillis();
+            task.waiting = false;
+        }
+        try {
+            actuallyParse(task.tuple);
+        } catch (OutOfMemoryError e) {
+            handleOOM(task.tuple.getId(), e);
+        } catch (Throwable t) {
+            LOG.error("parse task error: " + task.tuple.getId(), t);
+            exit(1);
+        } finally {
+            if (parseSlots == null) {
+                task.heldLock.unlock();
+            }
+            currentTask.remove();
+            if (task.emit == null) {
+                finish(task);
+            }
+        }
+    }
+
+    private void finish(Task task) {
+        tasks.remove(task.id);
+        synchronized (lock) {
+            since = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * In pipelined mode, spools the file to a temporary file (unless it is
+     * one already) before the task waits for a parse slot, so that fetching
+     * overlaps with the parses that are running.
+     */
+    private InputStream prefetch(InputStream stream, Metadata metadata) throws IOException {
+        if (parseSlots == null || currentTask.get() == null) {
+            return stream;
+        }
+        TikaInputStream tis = TikaInputStream.get(stream, metadata);
+        try {
+            tis.getPath();
+        } catch (IOException e) {
+            tis.close();
+            throw e;
+        }
+        return tis;
+    }
+
+    private void acquireParseSlot() {
+        Task task = currentTask.get();
+        if (parseSlots == null || task == null) {
+            return;
+        }
+        task.waiting = true;
+        parseSlots.acquireUninterruptibly();
+        task.hasParseSlot = true;
+        lock(task, isolationLock.readLock());
+    }
+
+    /**
+     * Releases the parse slot of the current task, if it holds one; the
+     * emit that follows is timed separately.
+     */
+    private void releaseParseSlot() {
+        Task task = currentTask.get();
+        if (task == null || !task.hasParseSlot) {
+            return;
+        }
+        task.heldLock.unlock();
+        task.heldLock = null;
+        task.hasParseSlot = false;
+        parseSlots.release();
+        task.started = System.currentTimeMillis();
+    }
+
+    /**
+     * In pipelined mode, hands the emit of a parsed file to the background
+     * emitter, and waits while its queue is full.
+     *
+     * @return whether the emit was queued
+     */
+    private boolean queueEmit(Runnable emit) {
+        Task task = currentTask.get();
+        if (emitQueue == null || task == null) {
+            return false;
+        }
+        task.emit = emit;
+        task.waiting = true;
+        try {
+            emitQueue.put(task);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.emit = null;
+            task.waiting = false;
+            return false;
+        }
+    }
+
+    /**
+     * Runs the queued emits in the background, and responds to each of the
+     * calls once its file has been emitted.
+     */
+    private void emitQueued() {
+        while (true) {
+            Task task;
+            try {
+                task = emitQueue.take();
+            } catch (InterruptedException e) {
+                //a timed out emit was interrupted after it finished
+                continue;
+            }
+            task.thread = Thread.currentThread();
+            task.started = System.currentTimeMillis();
+            task.waiting = false;
+            currentTask.set(task);
+            try {
+                task.emit.run();
+            } catch (OutOfMemoryError e) {
+                handleOOM(task.tuple.getId(), e);
+            } catch (Throwable t) {
+                LOG.error("emit task error: " + task.tuple.getId(), t);
+                exit(1);
+            } finally {
+                currentTask.remove();
+                finish(task);
+                //clear the interrupt of a timeout
+                Thread.interrupted();
             }
         }
     }
 
+    /**
+     * If the current task is parsing a file with an isolated media type,
+     * waits until it can parse it while no other parse is running.
+     */
+    private void isolateIfNeeded(MediaType mediaType) {
+        Task task = currentTask.get();
+        if (task == null || isolatedMediaTypes.isEmpty() || !isIsolated(mediaType)) {
+            return;
+        }
+        LOG.debug("isolating {} ({})", task.tuple.getId(), mediaType);
+        task.heldLock.unlock();
+        lock(task, isolationLock.writeLock());
+        //if the server crashes now, the client knows which call took it down
+        write(STATUS.ISOLATED);
+    }
+
+    /**
+     * Waiting for an isolated parse to finish, or for the other parses to
+     * finish before an isolated parse, doesn't count towards the timeout.
+     */
+    private void lock(Task task, Lock lock) {
+        task.waiting = true;
+        lock.lock();
+        task.heldLock = lock;
+        task.started = System.currentTimeMillis();
+        task.waiting = false;
+    }
+
+    private boolean isIsolated(MediaType mediaType) {
+        for (MediaType isolated : isolatedMediaTypes) {
+            if (tikaConfig.getMediaTypeRegistry().isInstanceOf(mediaType, isolated)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void actuallyParse(FetchEmitTuple t) {
 
         long start = System.currentTimeMillis();
@@ -371,10 +770,14 @@ public class PipesServer implements Runnable {
 
         start = System.currentTimeMillis();
         MetadataListAndEmbeddedBytes parseData = null;
-
+        boolean queued = false;
         try {
             //this can be null if there is a fetch exception
-            parseData = parseFromTuple(t, fetcher);
+            try {
+                parseData = parseFromTuple(t, fetcher);
+            } finally {
+                releaseParseSlot();
+            }
 
             if (LOG.isTraceEnabled()) {
                 LOG.trace("timer -- to parse: {} ms", System.currentTimeMillis() - start);
@@ -385,15 +788,31 @@ public class PipesServer implements Runnable {
                 return;
             }
 
-            emitParseData(t, parseData);
-        } finally {
-            if (parseData != null && parseData.hasEmbeddedDocumentByteStore() &&
-                    parseData.getEmbeddedDocumentBytesHandler() instanceof Closeable) {
+            MetadataListAndEmbeddedBytes parsed = parseData;
+            queued = queueEmit(() -> {
                 try {
-                    ((Closeable) parseData.getEmbeddedDocumentBytesHandler()).close();
-                } catch (IOException e) {
-                    LOG.warn("problem closing embedded document byte store", e);
+                    emitParseData(t, parsed);
+                } finally {
+                    closeEmbeddedDocumentBytesHandler(parsed);
                 }
+            });
+            if (!queued) {
+                emitParseData(t, parseData);
+            }
+        } finally {
+            if (!queued) {
+                closeEmbeddedDocumentBytesHandler(parseData);
+            }
+        }
+    }
+
+    private void closeEmbeddedDocumentBytesHandler(MetadataListAndEmbeddedBytes parseData) {
+        if (parseData != null && parseData.hasEmbeddedDocumentByteStore() &&
+                parseData.getEmbeddedDocumentBytesHandler() instanceof Closeable) {
+            try {
+                ((Closeable) parseData.getEmbeddedDocumentBytesHandler()).close();
+            } catch (IOException e) {
+                LOG.warn("problem closing embedded document byte store", e);
             }
         }
     }
@@ -483,7 +902,8 @@ public class PipesServer implements Runnable {
     protected MetadataListAndEmbeddedBytes parseFromTuple(FetchEmitTuple t, Fetcher fetcher) {
 
         Metadata metadata = new Metadata();
-        try (InputStream stream = fetcher.fetch(t.getFetchKey().getFetchKey(), metadata, t.getParseContext())) {
+        try (InputStream stream = prefetch(fetch(t, fetcher, metadata), metadata)) {
+            acquireParseSlot();
             return parseWithStream(t, stream, metadata);
         } catch (SecurityException e) {
             LOG.error("security exception " + t.getId(), e);
@@ -496,6 +916,37 @@ public class PipesServer implements Runnable {
         return null;
     }
 
+    /**
+     * Takes the file of the current task if it was fetched asynchronously;
+     * otherwise, fetches it now.
+     */
+    private InputStream fetch(FetchEmitTuple t, Fetcher fetcher, Metadata metadata)
+            throws TikaException, IOException {
+        Task task = currentTask.get();
+        if (task == null || task.fetch == null) {
+            return fetcher.fetch(t.getFetchKey().getFetchKey(), metadata, t.getParseContext());
+        }
+        InputStream stream;
+        try {
+            stream = task.fetch.join();
+        } catch (CancellationException e) {
+            throw new TikaException("fetch cancelled", e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof TikaException) {
+                throw (TikaException) e.getCause();
+            }
+            throw new TikaException("problem fetching", e.getCause());
+        }
+        for (String name : task.fetchMetadata.names()) {
+            for (String value : task.fetchMetadata.getValues(name)) {
+                metadata.add(name, value);
+            }
+        }
+        return stream;
+    }
+
     private String getNoFetcherMsg(String fetcherName) {
         StringBuilder sb = new StringBuilder();
         sb.append("Fetcher '").append(fetcherName).append("'");
@@ -704,6 +1155,7 @@ public class PipesServer implements Runnable {
             MediaType mt = detector.detect(tis, metadata);
             metadata.set(Metadata.CONTENT_TYPE, mt.toString());
             metadata.set(TikaCoreProperties.CONTENT_TYPE_PARSER_OVERRIDE, mt.toString());
+            isolateIfNeeded(mt);
         } catch (IOException e) {
             LOG.warn("problem detecting: " + t.getId(), e);
         }
@@ -741,19 +1193,10 @@ public class PipesServer implements Runnable {
 
     private FetchEmitTuple readFetchEmitTuple() {
         try {
-            int length = input.readInt();
-            byte[] bytes = new byte[length];
-            input.readFully(bytes);
-            try (ObjectInputStream objectInputStream = new ObjectInputStream(
-                    UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get())) {
-                return (FetchEmitTuple) objectInputStream.readObject();
-            }
+            return codec.readTuple(input);
         } catch (IOException e) {
             LOG.error("problem reading tuple", e);
             exit(1);
-        } catch (ClassNotFoundException e) {
-            LOG.error("can't find class?!", e);
-            exit(1);
         }
         //unreachable, no?!
         return null;
@@ -794,29 +1237,11 @@ public class PipesServer implements Runnable {
 
 
     private void writeIntermediate(EmitKey emitKey, Metadata metadata) {
-        try {
-            UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
-            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
-                objectOutputStream.writeObject(metadata);
-            }
-            write(STATUS.INTERMEDIATE_RESULT, bos.toByteArray());
-        } catch (IOException e) {
-            LOG.error("problem writing intermediate data (forking process shutdown?)", e);
-            exit(1);
-        }
+        write(STATUS.INTERMEDIATE_RESULT, out -> codec.writeMetadata(out, metadata));
     }
 
     private void write(EmitData emitData) {
-        try {
-            UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
-            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
-                objectOutputStream.writeObject(emitData);
-            }
-            write(STATUS.PARSE_SUCCESS, bos.toByteArray());
-        } catch (IOException e) {
-            LOG.error("problem writing emit data (forking process shutdown?)", e);
-            exit(1);
-        }
+        write(STATUS.PARSE_SUCCESS, out -> codec.writeEmitData(out, emitData));
     }
 
     private void write(STATUS status, String msg) {
@@ -825,25 +1250,76 @@ public class PipesServer implements Runnable {
     }
 
     private void write(STATUS status, byte[] bytes) {
-        try {
-            int len = bytes.length;
-            output.write(status.getByte());
-            output.writeInt(len);
-            output.write(bytes);
-            output.flush();
-        } catch (IOException e) {
-            LOG.error("problem writing data (forking process shutdown?)", e);
-            exit(1);
-        }
+        write(status, out -> {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        });
     }
 
     private void write(STATUS status) {
-        try {
-            output.write(status.getByte());
-            output.flush();
-        } catch (IOException e) {
-            LOG.error("problem writing data (forking process shutdown?)", e);
-            exit(1);
+        write(status, (Payload) null);
+    }
+
+    /**
+     * Writes a response, with the request id of the current task if there
+     * is one. Nothing more is written for a task once it has timed out or
+     * has sent its final response.
+     */
+    private void write(STATUS status, Payload payload) {
+        Task task = currentTask.get();
+        synchronized (output) {
+            if (task != null) {
+                if (task.timedOut || task.responded) {
+                    return;
+                }
+                task.responded = status != STATUS.INTERMEDIATE_RESULT && status != STATUS.ISOLATED;
+            }
+            try {
+                output.write(status.getByte());
+                if (task != null) {
+                    output.writeInt(task.id);
+                }
+                if (payload != null) {
+                    payload.write(output);
+                }
+                output.flush();
+            } catch (IOException e) {
+                LOG.error("problem writing data (forking process shutdown?)", e);
+                exit(1);
+            }
+        }
+    }
+
+    private interface Payload {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * A call that is parsed concurrently with others
+     */
+    private static class Task {
+        private final int id;
+        private final FetchEmitTuple tuple;
+        private final long timeoutMillis;
+        private volatile Thread thread;
+        private volatile long started;
+        private volatile boolean timedOut;
+        //a task waits for its first lock before it starts
+        private volatile boolean waiting = true;
+        //guarded by the output
+        private boolean responded;
+        private Lock heldLock;
+        //only used in pipelined mode
+        private boolean hasParseSlot;
+        private volatile Runnable emit;
+        //set if the file is fetched asynchronously, before the task has a thread
+        private volatile CompletableFuture<InputStream> fetch;
+        private Metadata fetchMetadata;
+
+        private Task(int id, FetchEmitTuple tuple, long timeoutMillis) {
+            this.id = id;
+            this.tuple = tuple;
+            this.timeoutMillis = timeoutMillis;
         }
     }
 
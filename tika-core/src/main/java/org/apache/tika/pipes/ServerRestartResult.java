@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+/**
+ * Reported by a {@link PipesClient} each time it has restarted its forked
+ * {@link PipesServer}.
+ */
+public class ServerRestartResult {
+
+    private final int pipesClientId;
+    private final long latencyMillis;
+    private final boolean spareHit;
+    private final long restarts;
+    private final long spareHits;
+
+    public ServerRestartResult(int pipesClientId, long latencyMillis, boolean spareHit,
+                               long restarts, long spareHits) {
+        this.pipesClientId = pipesClientId;
+        this.latencyMillis = latencyMillis;
+        this.spareHit = spareHit;
+        this.restarts = restarts;
+        this.spareHits = spareHits;
+    }
+
+    public int getPipesClientId() {
+        return pipesClientId;
+    }
+
+    /**
+     * @return how long the file that is processed next waited for the restart
+     */
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * @return whether a warm spare server was swapped in
+     */
+    public boolean isSpareHit() {
+        return spareHit;
+    }
+
+    /**
+     * @return the number of restarts of this client so far
+     */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * @return the number of restarts of this client so far that swapped in a spare
+     */
+    public long getSpareHits() {
+        return spareHits;
+    }
+
+    public double getSpareHitRatio() {
+        return restarts == 0 ? 0 : (double) spareHits / restarts;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerRestartResult{" + "pipesClientId=" + pipesClientId + ", latencyMillis=" +
+                latencyMillis + ", spareHit=" + spareHit + ", restarts=" + restarts +
+                ", spareHits=" + spareHits + '}';
+    }
+}
@@ -20,6 +20,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.pipes.PipesConfigBase;
@@ -35,6 +39,13 @@ public class AsyncConfig extends PipesConfigBase {
 
     private boolean emitIntermediateResults = false;
 
+    private List<String> laneThresholds = Collections.emptyList();
+    private List<String> laneWorkers = Collections.emptyList();
+    private List<String> largeMediaTypes = Collections.emptyList();
+    private long maxLaneWaitMillis = 300000;
+
+    private Path journalPath = null;
+
     private PipesReporter pipesReporter = PipesReporter.NO_OP_REPORTER;
 
     public static AsyncConfig load(Path p) throws IOException, TikaConfigException {
@@ -117,4 +128,79 @@ public class AsyncConfig extends PipesConfigBase {
     public boolean isEmitIntermediateResults() {
         return emitIntermediateResults;
     }
+
+    public List<String> getLaneThresholds() {
+        return laneThresholds;
+    }
+
+    /**
+     * Ascending file sizes in bytes that split the FetchEmitTuple queue into
+     * lanes: <code>n</code> thresholds make <code>n + 1</code> lanes, and a
+     * file goes into the first lane whose threshold it is smaller than. Each
+     * lane has its own share of the workers, so that large files don't hold
+     * up small ones. The default is a single lane.
+     *
+     * @param laneThresholds
+     */
+    public void setLaneThresholds(List<String> laneThresholds) {
+        this.laneThresholds = Collections.unmodifiableList(new ArrayList<>(laneThresholds));
+    }
+
+    public List<String> getLaneWorkers() {
+        return laneWorkers;
+    }
+
+    /**
+     * Number of workers (out of {@link #getNumClients()}) for each lane.
+     * Workers take files from the other lanes when their own is empty. By
+     * default, the workers are spread evenly over the lanes.
+     *
+     * @param laneWorkers
+     */
+    public void setLaneWorkers(List<String> laneWorkers) {
+        this.laneWorkers = Collections.unmodifiableList(new ArrayList<>(laneWorkers));
+    }
+
+    public List<String> getLargeMediaTypes() {
+        return largeMediaTypes;
+    }
+
+    /**
+     * Media types (including their subtypes) of files that go into the last
+     * lane if their size isn't known.
+     *
+     * @param largeMediaTypes
+     */
+    public void setLargeMediaTypes(List<String> largeMediaTypes) {
+        this.largeMediaTypes = Collections.unmodifiableList(new ArrayList<>(largeMediaTypes));
+    }
+
+    public long getMaxLaneWaitMillis() {
+        return maxLaneWaitMillis;
+    }
+
+    /**
+     * Files that have waited longer than this in their lane are taken by
+     * the next free worker, whatever its lane, so that no lane starves.
+     *
+     * @param maxLaneWaitMillis
+     */
+    public void setMaxLaneWaitMillis(long maxLaneWaitMillis) {
+        this.maxLaneWaitMillis = maxLaneWaitMillis;
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    /**
+     * Path of a journal of the completed tuples. If this is set, the tuples
+     * that were completed before a restart are skipped, so that a crawl can
+     * be resumed where it stopped. The default is no journal.
+     *
+     * @param journalPath
+     */
+    public void setJournalPath(String journalPath) {
+        this.journalPath = Paths.get(journalPath);
+    }
 }
@@ -50,14 +50,21 @@ public class AsyncEmitter implements Callable<Integer> {
     private final AsyncConfig asyncConfig;
     private final EmitterManager emitterManager;
     private final ArrayBlockingQueue<EmitData> emitDataQueue;
+    private final CompletionJournal journal;
 
     Instant lastEmitted = Instant.now();
 
     public AsyncEmitter(AsyncConfig asyncConfig, ArrayBlockingQueue<EmitData> emitData,
                         EmitterManager emitterManager) {
+        this(asyncConfig, emitData, emitterManager, null);
+    }
+
+    AsyncEmitter(AsyncConfig asyncConfig, ArrayBlockingQueue<EmitData> emitData,
+                 EmitterManager emitterManager, CompletionJournal journal) {
         this.asyncConfig = asyncConfig;
         this.emitDataQueue = emitData;
         this.emitterManager = emitterManager;
+        this.journal = journal;
     }
 
     @Override
@@ -119,8 +126,7 @@ public class AsyncEmitter implements Callable<Integer> {
             int emitted = 0;
             LOG.debug("about to emit {} files, {} estimated bytes", size, estimatedSize);
             for (Map.Entry<String, List<EmitData>> e : map.entrySet()) {
-                Emitter emitter = emitterManager.getEmitter(e.getKey());
-                tryToEmit(emitter, e.getValue());
+                tryToEmit(e.getKey(), e.getValue());
                 emitted += e.getValue().size();
             }
 
@@ -131,13 +137,35 @@ public class AsyncEmitter implements Callable<Integer> {
             lastEmitted = Instant.now();
         }
 
-        private void tryToEmit(Emitter emitter, List<EmitData> cachedEmitData) {
+        private void tryToEmit(String emitterName, List<EmitData> cachedEmitData) {
 
+            boolean success = false;
             try {
-                emitter.emit(cachedEmitData);
-            } catch (IOException | TikaEmitterException e) {
-                LOG.warn("emitter class ({}): {}", emitter.getClass(),
-                        ExceptionUtils.getStackTrace(e));
+                Emitter emitter = emitterManager.getEmitter(emitterName);
+                try {
+                    emitter.emit(cachedEmitData);
+                    success = true;
+                } catch (IOException | TikaEmitterException e) {
+                    LOG.warn("emitter class ({}): {}", emitter.getClass(),
+                            ExceptionUtils.getStackTrace(e));
+                }
+            } finally {
+                //also if the emitter threw a RuntimeException, so that no
+                //pending record is left behind
+                recordEmitted(cachedEmitData, success);
+            }
+        }
+
+        private void recordEmitted(List<EmitData> cachedEmitData, boolean success) {
+            if (journal != null) {
+                try {
+                    journal.emitted(cachedEmitData, success);
+                } catch (IOException e) {
+                    //the emit itself is done; these are only processed again on resume
+                    LOG.warn("couldn't write {} emitted results to the completion journal",
+                            cachedEmitData.size(), e);
+                    asyncConfig.getPipesReporter().error(e);
+                }
             }
         }
     }
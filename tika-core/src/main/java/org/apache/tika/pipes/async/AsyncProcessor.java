@@ -19,6 +19,8 @@ package org.apache.tika.pipes.async;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
@@ -28,6 +30,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -57,13 +60,18 @@ public class AsyncProcessor implements Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(AsyncProcessor.class);
 
-    private final ArrayBlockingQueue<FetchEmitTuple> fetchEmitTuples;
+    private static final long LANE_REPORT_INTERVAL_MS = 10000;
+
+    private final LaneScheduler fetchEmitTuples;
     private final ArrayBlockingQueue<EmitData> emitData;
     private final ExecutorCompletionService<Integer> executorCompletionService;
     private final ExecutorService executorService;
     private final AsyncConfig asyncConfig;
     private final AtomicLong totalProcessed = new AtomicLong(0);
+    private final AtomicLong totalSkipped = new AtomicLong(0);
+    private final CompletionJournal journal;
     private static long MAX_OFFER_WAIT_MS = 120000;
+    private static final long MAX_CLOSE_WAIT_MS = 60000;
     private volatile int numParserThreadsFinished = 0;
     private volatile int numEmitterThreadsFinished = 0;
     private boolean addedEmitterSemaphores = false;
@@ -75,7 +83,9 @@ public class AsyncProcessor implements Closeable {
 
     public AsyncProcessor(Path tikaConfigPath, PipesIterator pipesIterator) throws TikaException, IOException {
         this.asyncConfig = AsyncConfig.load(tikaConfigPath);
-        this.fetchEmitTuples = new ArrayBlockingQueue<>(asyncConfig.getQueueSize());
+        this.fetchEmitTuples = new LaneScheduler(asyncConfig);
+        this.journal = asyncConfig.getJournalPath() == null ? null :
+                new CompletionJournal(asyncConfig.getJournalPath());
         this.emitData = new ArrayBlockingQueue<>(100);
         //+1 is the watcher thread
         this.executorService = Executors.newFixedThreadPool(
@@ -90,10 +100,15 @@ public class AsyncProcessor implements Closeable {
                         asyncConfig.getTikaConfig().toAbsolutePath());
             }
             this.executorCompletionService.submit(() -> {
+                long lastLaneReport = System.currentTimeMillis();
                 while (true) {
                     try {
                         Thread.sleep(500);
                         checkActive();
+                        if (System.currentTimeMillis() - lastLaneReport > LANE_REPORT_INTERVAL_MS) {
+                            reportLanes();
+                            lastLaneReport = System.currentTimeMillis();
+                        }
                     } catch (InterruptedException e) {
                         return WATCHER_FUTURE_CODE;
                     }
@@ -105,24 +120,44 @@ public class AsyncProcessor implements Closeable {
                 startCounter((TotalCounter) pipesIterator);
             }
 
+            //a client whose server takes on several files at a time is shared by that many workers
+            int workersPerClient = asyncConfig.getMaxFilesInFlight();
+            PipesClient pipesClient = null;
+            AtomicInteger clientWorkers = null;
             for (int i = 0; i < asyncConfig.getNumClients(); i++) {
+                if (i % workersPerClient == 0) {
+                    pipesClient = new PipesClient(asyncConfig, asyncConfig.getPipesReporter());
+                    clientWorkers = new AtomicInteger(
+                            Math.min(workersPerClient, asyncConfig.getNumClients() - i));
+                }
                 executorCompletionService.submit(
-                        new FetchEmitWorker(asyncConfig, fetchEmitTuples, emitData));
+                        new FetchEmitWorker(asyncConfig, fetchEmitTuples,
+                                fetchEmitTuples.getHomeLane(i), emitData, pipesClient,
+                                clientWorkers));
             }
 
             EmitterManager emitterManager = EmitterManager.load(asyncConfig.getTikaConfig());
             for (int i = 0; i < asyncConfig.getNumEmitters(); i++) {
                 executorCompletionService.submit(
-                        new AsyncEmitter(asyncConfig, emitData, emitterManager));
+                        new AsyncEmitter(asyncConfig, emitData, emitterManager, journal));
             }
         } catch (Exception e) {
             LOG.error("problem initializing AsyncProcessor", e);
             executorService.shutdownNow();
+            if (journal != null) {
+                journal.close();
+            }
             asyncConfig.getPipesReporter().error(e);
             throw e;
         }
     }
 
+    private void reportLanes() {
+        for (LaneWaitResult laneWaitResult : fetchEmitTuples.getLaneWaitResults()) {
+            asyncConfig.getPipesReporter().report(laneWaitResult);
+        }
+    }
+
     private void startCounter(TotalCounter totalCounter) {
         Thread counterThread = new Thread(() -> {
             totalCounter.startTotalCount();
@@ -155,18 +190,20 @@ public class AsyncProcessor implements Closeable {
             throw new OfferLargerThanQueueSize(newFetchEmitTuples.size(),
                     asyncConfig.getQueueSize());
         }
+        if (journal != null) {
+            List<FetchEmitTuple> notDone = new ArrayList<>(newFetchEmitTuples.size());
+            for (FetchEmitTuple t : newFetchEmitTuples) {
+                if (!skipIfDone(t)) {
+                    notDone.add(t);
+                }
+            }
+            newFetchEmitTuples = notDone;
+        }
         long start = System.currentTimeMillis();
         long elapsed = System.currentTimeMillis() - start;
         while (elapsed < offerMs) {
-            if (fetchEmitTuples.remainingCapacity() > newFetchEmitTuples.size()) {
-                try {
-                    fetchEmitTuples.addAll(newFetchEmitTuples);
-                    return true;
-                } catch (IllegalStateException e) {
-                    //this means that the add all failed because the queue couldn't
-                    //take the full list
-                    LOG.debug("couldn't add full list", e);
-                }
+            if (fetchEmitTuples.offerAll(newFetchEmitTuples)) {
+                return true;
             }
             Thread.sleep(100);
             elapsed = System.currentTimeMillis() - start;
@@ -187,9 +224,25 @@ public class AsyncProcessor implements Closeable {
                     "Can't call offer after calling close() or " + "shutdownNow()");
         }
         checkActive();
+        if (skipIfDone(t)) {
+            return true;
+        }
         return fetchEmitTuples.offer(t, offerMs, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * @return whether the tuple was completed before a restart,
+     * according to the journal
+     */
+    private boolean skipIfDone(FetchEmitTuple t) {
+        if (journal == null || t == PipesIterator.COMPLETED_SEMAPHORE || !journal.isDone(t)) {
+            return false;
+        }
+        LOG.trace("skipping {}, which is done", t.getId());
+        totalSkipped.incrementAndGet();
+        return true;
+    }
+
     public void finished() throws InterruptedException {
         for (int i = 0; i < asyncConfig.getNumClients(); i++) {
             boolean offered = fetchEmitTuples.offer(PipesIterator.COMPLETED_SEMAPHORE,
@@ -251,6 +304,19 @@ public class AsyncProcessor implements Closeable {
     @Override
     public void close() throws IOException {
         executorService.shutdownNow();
+        //workers and emitters that are finishing a tuple still record it in the journal
+        try {
+            if (!executorService.awaitTermination(MAX_CLOSE_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("workers and emitters didn't stop within {} ms; tuples that " +
+                        "they complete from now on will be processed again on resume", MAX_CLOSE_WAIT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reportLanes();
+        if (journal != null) {
+            journal.close();
+        }
         asyncConfig.getPipesReporter().close();
     }
 
@@ -258,26 +324,42 @@ public class AsyncProcessor implements Closeable {
         return totalProcessed.get();
     }
 
+    /**
+     * @return the number of tuples that were skipped because the journal
+     * shows that they were completed before
+     */
+    public long getTotalSkipped() {
+        return totalSkipped.get();
+    }
+
     private class FetchEmitWorker implements Callable<Integer> {
 
         private final AsyncConfig asyncConfig;
-        private final ArrayBlockingQueue<FetchEmitTuple> fetchEmitTuples;
+        private final LaneScheduler fetchEmitTuples;
+        private final int lane;
         private final ArrayBlockingQueue<EmitData> emitDataQueue;
+        private final PipesClient pipesClient;
+        //the number of workers that still use the pipesClient
+        private final AtomicInteger clientWorkers;
 
         private FetchEmitWorker(AsyncConfig asyncConfig,
-                                ArrayBlockingQueue<FetchEmitTuple> fetchEmitTuples,
-                                ArrayBlockingQueue<EmitData> emitDataQueue) {
+                                LaneScheduler fetchEmitTuples, int lane,
+                                ArrayBlockingQueue<EmitData> emitDataQueue,
+                                PipesClient pipesClient, AtomicInteger clientWorkers) {
             this.asyncConfig = asyncConfig;
             this.fetchEmitTuples = fetchEmitTuples;
+            this.lane = lane;
             this.emitDataQueue = emitDataQueue;
+            this.pipesClient = pipesClient;
+            this.clientWorkers = clientWorkers;
         }
 
         @Override
         public Integer call() throws Exception {
 
-            try (PipesClient pipesClient = new PipesClient(asyncConfig)) {
+            try {
                 while (true) {
-                    FetchEmitTuple t = fetchEmitTuples.poll(1, TimeUnit.SECONDS);
+                    FetchEmitTuple t = fetchEmitTuples.poll(lane, 1, TimeUnit.SECONDS);
                     if (t == null) {
                         //skip
                         if (LOG.isTraceEnabled()) {
@@ -303,11 +385,25 @@ public class AsyncProcessor implements Closeable {
                         }
                         long offerStart = System.currentTimeMillis();
 
-                        if (shouldEmit(result)) {
+                        boolean emit = shouldEmit(result);
+                        boolean awaitEmit = journal != null && emit && !result.isIntermediate();
+                        if (awaitEmit) {
+                            journal.awaitEmit(t, result);
+                        } else if (journal != null) {
+                            record(t, result);
+                        }
+                        if (emit) {
                             LOG.trace("adding result to emitter queue: " + result.getEmitData());
-                            boolean offered = emitDataQueue.offer(result.getEmitData(),
-                                    MAX_OFFER_WAIT_MS,
-                                    TimeUnit.MILLISECONDS);
+                            boolean offered = false;
+                            try {
+                                offered = emitDataQueue.offer(result.getEmitData(),
+                                        MAX_OFFER_WAIT_MS, TimeUnit.MILLISECONDS);
+                            } finally {
+                                if (!offered && awaitEmit) {
+                                    //no emitter will take it, so it isn't emitted
+                                    notEmitted(t, result.getEmitData());
+                                }
+                            }
                             if (! offered) {
                                 throw new RuntimeException("Couldn't offer emit data to queue " +
                                         "within " + MAX_OFFER_WAIT_MS + " ms");
@@ -322,6 +418,32 @@ public class AsyncProcessor implements Closeable {
                         totalProcessed.incrementAndGet();
                     }
                 }
+            } finally {
+                if (clientWorkers.decrementAndGet() == 0) {
+                    pipesClient.close();
+                }
+            }
+        }
+
+        /**
+         * A journal write error is reported, and the tuple is processed
+         * again after a restart; it doesn't stop the worker.
+         */
+        private void record(FetchEmitTuple t, PipesResult result) {
+            try {
+                journal.record(t, result);
+            } catch (IOException e) {
+                LOG.warn("couldn't record {} in the completion journal", t.getId(), e);
+                asyncConfig.getPipesReporter().error(e);
+            }
+        }
+
+        private void notEmitted(FetchEmitTuple t, EmitData emitData) {
+            try {
+                journal.emitted(Collections.singletonList(emitData), false);
+            } catch (IOException e) {
+                LOG.warn("couldn't record {} in the completion journal", t.getId(), e);
+                asyncConfig.getPipesReporter().error(e);
             }
         }
 
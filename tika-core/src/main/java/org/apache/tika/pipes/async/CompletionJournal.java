@@ -0,0 +1,648 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+/**
+ * Append-only journal of the tuples that an {@link AsyncProcessor} has
+ * completed, so that a restarted processor can skip them. Each record holds
+ * the fetch key, the status and a content fingerprint (the digest of the
+ * container document, if a digester is configured) of a tuple.
+ * <p>
+ * A tuple is done once it has a status that processing it again wouldn't
+ * change, such as a successful emit, a parse exception or a timeout. Results
+ * that the processor's emitters batch up are only recorded once they have
+ * been emitted. Crashes, fetch exceptions and emit exceptions are recorded
+ * too, but their tuples are processed again after a restart.
+ * <p>
+ * The done keys are indexed by a 63-bit hash in an open addressing table,
+ * with the offset of their record in the journal, which takes 21 to 43 bytes
+ * per key, a fraction of what a set of the key strings would take. A hit is
+ * confirmed against the key in that record, so a hash collision can't skip
+ * a tuple that isn't done. The journal is compacted, when it is opened and
+ * whenever enough of its records are obsolete, to one record per key: its
+ * completion, or else its first failure.
+ * <p>
+ * Records are flushed to the file system as they are written, so that they
+ * survive the JVM; they are only forced to the disk on compaction and close.
+ */
+class CompletionJournal implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompletionJournal.class);
+
+    private static final int MAGIC = 0x544b4a4e;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final long MIN_OBSOLETE_FOR_COMPACTION = 10000;
+
+    static final Set<PipesResult.STATUS> DONE = EnumSet.of(PipesResult.STATUS.EMPTY_OUTPUT,
+            PipesResult.STATUS.PARSE_EXCEPTION_NO_EMIT, PipesResult.STATUS.PARSE_EXCEPTION_EMIT,
+            PipesResult.STATUS.PARSE_SUCCESS, PipesResult.STATUS.PARSE_SUCCESS_WITH_EXCEPTION,
+            PipesResult.STATUS.OOM, PipesResult.STATUS.TIMEOUT, PipesResult.STATUS.EMIT_SUCCESS,
+            PipesResult.STATUS.EMIT_SUCCESS_PARSE_EXCEPTION);
+
+    private final Path path;
+    private final long hashMask;
+    //the done keys, with the offset of a record of each
+    private final KeyIndex done = new KeyIndex(true);
+    private final KeyIndex failed = new KeyIndex(false);
+    //results that wait for an AsyncEmitter to emit them
+    private final Map<EmitData, Pending> pending = new IdentityHashMap<>();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private DataOutputStream output;
+    //reads back the records that the done keys are confirmed against
+    private FileChannel reader;
+    //offset of the next record
+    private long position;
+    private long records;
+    private long obsolete;
+
+    CompletionJournal(Path path) throws IOException {
+        this(path, -1L);
+    }
+
+    /**
+     * @param hashMask mask applied to the key hashes, which tests can use to
+     *                 make keys collide
+     */
+    CompletionJournal(Path path, long hashMask) throws IOException {
+        this.path = path;
+        this.hashMask = hashMask;
+        if (Files.isRegularFile(path) && Files.size(path) > 0) {
+            load();
+            if (obsolete > 0) {
+                compact();
+            }
+        } else {
+            if (path.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+            }
+            try (DataOutputStream header = new DataOutputStream(Files.newOutputStream(path))) {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+            }
+        }
+        open();
+        LOG.info("completion journal {}: {} done, {} failed", path, done.size(), failed.size());
+    }
+
+    synchronized boolean isDone(FetchEmitTuple t) {
+        FetchKey fetchKey = t.getFetchKey();
+        if (fetchKey == null) {
+            return false;
+        }
+        long offset = done.get(hash(fetchKey));
+        return offset >= 0 && matches(offset, fetchKey);
+    }
+
+    /**
+     * @return whether the record at the offset is one of the fetch key's,
+     * and not of another key with the same hash
+     */
+    private boolean matches(long offset, FetchKey fetchKey) {
+        if (reader == null) {
+            return false;
+        }
+        try {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(length, offset);
+            int n = length.getInt(0);
+            if (n < 0 || n > (1 << 24)) {
+                return false;
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(n);
+            readFully(bytes, offset + 4);
+            Record record = new Record(bytes.array());
+            if (record.fetcherName == null || record.fetchKey == null) {
+                return false;
+            }
+            return record.fetcherName.equals(fetchKey.getFetcherName()) &&
+                    record.fetchKey.equals(fetchKey.getFetchKey()) &&
+                    record.rangeStart == fetchKey.getRangeStart() &&
+                    record.rangeEnd == fetchKey.getRangeEnd();
+        } catch (IOException e) {
+            LOG.warn("couldn't read the record of {} at {} in the completion journal",
+                    fetchKey.getFetchKey(), offset, e);
+            return false;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (reader.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("record at " + offset + " is incomplete");
+            }
+        }
+    }
+
+    synchronized long getDoneCount() {
+        return done.size();
+    }
+
+    /**
+     * @return the number of results that wait for an {@link AsyncEmitter}
+     */
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    synchronized void record(FetchEmitTuple t, PipesResult result) throws IOException {
+        String fingerprint = result.getEmitData() == null ? null :
+                getFingerprint(result.getEmitData().getMetadataList());
+        record(t.getFetchKey(), result.getStatus(), fingerprint);
+    }
+
+    /**
+     * Holds back the record of a result that is handed to an
+     * {@link AsyncEmitter}, until it has been emitted.
+     */
+    synchronized void awaitEmit(FetchEmitTuple t, PipesResult result) {
+        pending.put(result.getEmitData(), new Pending(t.getFetchKey(), result.getStatus()));
+    }
+
+    /**
+     * Records the results that an {@link AsyncEmitter} has tried to emit.
+     * If the emit failed, they are processed again after a restart.
+     */
+    synchronized void emitted(List<EmitData> emitData, boolean success) throws IOException {
+        for (EmitData data : emitData) {
+            Pending p = pending.remove(data);
+            if (p != null) {
+                record(p.fetchKey, success ? p.status : PipesResult.STATUS.EMIT_EXCEPTION,
+                        getFingerprint(data.getMetadataList()));
+            }
+        }
+    }
+
+    private void record(FetchKey fetchKey, PipesResult.STATUS status, String fingerprint)
+            throws IOException {
+        if (fetchKey == null) {
+            return;
+        }
+        if (output == null) {
+            LOG.warn("journal is closed; not recording {} for {}", status, fetchKey.getFetchKey());
+            return;
+        }
+        boolean isDone = DONE.contains(status);
+        long hash = hash(fetchKey);
+        index(hash, isDone, position);
+        records++;
+        byte[] bytes = encode(fetchKey, status.name(), fingerprint, System.currentTimeMillis());
+        writeRecord(output, bytes);
+        output.flush();
+        position += bytes.length + 8;
+        if (obsolete >= MIN_OBSOLETE_FOR_COMPACTION && obsolete * 4 >= records) {
+            compact();
+            open();
+        }
+    }
+
+    private void index(long hash, boolean isDone, long offset) {
+        if (isDone) {
+            if (!done.add(hash, offset) || failed.contains(hash)) {
+                //a duplicate, or the key's failure record is now obsolete
+                obsolete++;
+            }
+        } else if (done.contains(hash) || !failed.add(hash, -1)) {
+            obsolete++;
+        }
+    }
+
+    private static String getFingerprint(List<Metadata> metadataList) {
+        if (metadataList == null || metadataList.isEmpty()) {
+            return null;
+        }
+        Metadata metadata = metadataList.get(0);
+        String prefix = TikaCoreProperties.TIKA_META_PREFIX + "digest" +
+                TikaCoreProperties.NAMESPACE_PREFIX_DELIMITER;
+        for (String name : metadata.names()) {
+            if (name.startsWith(prefix)) {
+                return name.substring(prefix.length()) + ":" + metadata.get(name);
+            }
+        }
+        return null;
+    }
+
+    private void load() throws IOException {
+        long end;
+        try (DataInputStream input = openForReading()) {
+            end = HEADER_BYTES;
+            Record record;
+            while ((record = readRecord(input)) != null) {
+                index(hash(record), DONE.contains(record.status()), end);
+                records++;
+                end += record.length;
+            }
+        }
+        if (end < Files.size(path)) {
+            LOG.warn("truncating the incomplete last record of the completion journal {} at {}",
+                    path, end);
+            try (FileChannel c = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                c.truncate(end);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with one record per key, replacing the old one
+     * once the new one is on disk.
+     */
+    synchronized void compact() throws IOException {
+        close();
+        long start = System.currentTimeMillis();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        long kept = 0;
+        long keptEnd = HEADER_BYTES;
+        done.clearMarks();
+        failed.clearMarks();
+        try (DataInputStream input = openForReading();
+                FileChannel tmpChannel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                DataOutputStream tmpOutput = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(tmpChannel)))) {
+            tmpOutput.writeInt(MAGIC);
+            tmpOutput.writeInt(VERSION);
+            Record record;
+            while ((record = readRecord(input)) != null) {
+                long hash = hash(record);
+                boolean keep;
+                if (DONE.contains(record.status())) {
+                    keep = done.mark(hash);
+                    if (keep) {
+                        done.set(hash, keptEnd);
+                    }
+                } else {
+                    keep = !done.contains(hash) && failed.mark(hash);
+                }
+                if (keep) {
+                    writeRecord(tmpOutput, record.payload);
+                    kept++;
+                    keptEnd += record.length;
+                }
+            }
+            tmpOutput.flush();
+            tmpChannel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("compacted completion journal {} from {} to {} records in {} ms", path, records,
+                kept, System.currentTimeMillis() - start);
+        records = kept;
+        obsolete = 0;
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        position = channel.size();
+        reader = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    private DataInputStream openForReading() throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(path)));
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("not a completion journal: " + path);
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported completion journal version " + version + ": " +
+                        path);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        return input;
+    }
+
+    private byte[] encode(FetchKey fetchKey, String status, String fingerprint, long timestamp)
+            throws IOException {
+        payload.reset();
+        DataOutputStream out = new DataOutputStream(payload);
+        writeString(out, fetchKey.getFetcherName());
+        writeString(out, fetchKey.getFetchKey());
+        out.writeLong(fetchKey.getRangeStart());
+        out.writeLong(fetchKey.getRangeEnd());
+        writeString(out, status);
+        writeString(out, fingerprint);
+        out.writeLong(timestamp);
+        out.flush();
+        return payload.toByteArray();
+    }
+
+    private void writeRecord(DataOutputStream out, byte[] bytes) throws IOException {
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * @return the next record, or <code>null</code> at the end of the journal
+     * or at an incomplete or corrupt record, which a crash can leave behind
+     */
+    private Record readRecord(DataInputStream input) throws IOException {
+        try {
+            int length = input.readInt();
+            if (length < 0 || length > (1 << 24)) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            int checksum = input.readInt();
+            crc.reset();
+            crc.update(bytes, 0, bytes.length);
+            if (checksum != (int) crc.getValue()) {
+                return null;
+            }
+            return new Record(bytes);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    long hash(FetchKey fetchKey) {
+        return hash(fetchKey.getFetcherName(), fetchKey.getFetchKey(), fetchKey.getRangeStart(),
+                fetchKey.getRangeEnd()) & hashMask;
+    }
+
+    private long hash(Record record) {
+        return hash(record.fetcherName, record.fetchKey, record.rangeStart, record.rangeEnd) &
+                hashMask;
+    }
+
+    private static long hash(String fetcherName, String fetchKey, long rangeStart,
+                             long rangeEnd) {
+        String key = fetcherName + '\u0000' + fetchKey + '\u0000' + rangeStart + '-' + rangeEnd;
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        //MurmurHash64A
+        final long m = 0xc6a4a7935bd1e995L;
+        long h = 0x9747b28cL ^ (bytes.length * m);
+        int i = 0;
+        for (; i + 8 <= bytes.length; i += 8) {
+            long k = (bytes[i] & 0xffL) | (bytes[i + 1] & 0xffL) << 8 |
+                    (bytes[i + 2] & 0xffL) << 16 | (bytes[i + 3] & 0xffL) << 24 |
+                    (bytes[i + 4] & 0xffL) << 32 | (bytes[i + 5] & 0xffL) << 40 |
+                    (bytes[i + 6] & 0xffL) << 48 | (bytes[i + 7] & 0xffL) << 56;
+            k *= m;
+            k ^= k >>> 47;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+        int remaining = bytes.length - i;
+        if (remaining > 0) {
+            for (int j = remaining - 1; j >= 0; j--) {
+                h ^= (bytes[i + j] & 0xffL) << (8 * j);
+            }
+            h *= m;
+        }
+        h ^= h >>> 47;
+        h *= m;
+        h ^= h >>> 47;
+        return h;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.flush();
+            channel.force(true);
+        } finally {
+            output.close();
+            output = null;
+            channel = null;
+            reader.close();
+            reader = null;
+        }
+    }
+
+    private static class Pending {
+        private final FetchKey fetchKey;
+        private final PipesResult.STATUS status;
+
+        private Pending(FetchKey fetchKey, PipesResult.STATUS status) {
+            this.fetchKey = fetchKey;
+            this.status = status;
+        }
+    }
+
+    private static class Record {
+        private final byte[] payload;
+        private final String fetcherName;
+        private final String fetchKey;
+        private final long rangeStart;
+        private final long rangeEnd;
+        private final String status;
+        //including the length and checksum
+        private final long length;
+
+        private Record(byte[] payload) throws IOException {
+            this.payload = payload;
+            this.length = payload.length + 8;
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            this.fetcherName = readString(in);
+            this.fetchKey = readString(in);
+            this.rangeStart = in.readLong();
+            this.rangeEnd = in.readLong();
+            this.status = readString(in);
+        }
+
+        private PipesResult.STATUS status() {
+            try {
+                return PipesResult.STATUS.valueOf(status);
+            } catch (IllegalArgumentException e) {
+                return PipesResult.STATUS.UNSPECIFIED_CRASH;
+            }
+        }
+    }
+
+    /**
+     * Set of 63-bit hashes in an open addressing table, optionally with a
+     * value for each. The top bit of an entry marks the keys that have been
+     * written during a compaction.
+     */
+    private static class KeyIndex {
+        private static final long MARK = Long.MIN_VALUE;
+        private long[] table = new long[1024];
+        private long[] values;
+        private long size;
+
+        KeyIndex(boolean withValues) {
+            values = withValues ? new long[table.length] : null;
+        }
+
+        private static long key(long hash) {
+            long key = hash & Long.MAX_VALUE;
+            return key == 0 ? 1 : key;
+        }
+
+        private int slot(long key) {
+            int mask = table.length - 1;
+            int slot = (int) (key ^ (key >>> 32)) & mask;
+            while (table[slot] != 0 && (table[slot] & Long.MAX_VALUE) != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        long size() {
+            return size;
+        }
+
+        boolean contains(long hash) {
+            return table[slot(key(hash))] != 0;
+        }
+
+        /**
+         * @return the hash's value, or -1 if it isn't in the set
+         */
+        long get(long hash) {
+            int slot = slot(key(hash));
+            return table[slot] == 0 ? -1 : values[slot];
+        }
+
+        /**
+         * Sets the value of a hash that is in the set.
+         */
+        void set(long hash, long value) {
+            int slot = slot(key(hash));
+            if (table[slot] != 0) {
+                values[slot] = value;
+            }
+        }
+
+        /**
+         * @return whether the hash was added; a hash that is already in
+         * the set keeps its value
+         */
+        boolean add(long hash, long value) {
+            long key = key(hash);
+            int slot = slot(key);
+            if (table[slot] != 0) {
+                return false;
+            }
+            table[slot] = key;
+            if (values != null) {
+                values[slot] = value;
+            }
+            if (++size * 4 > (long) table.length * 3) {
+                grow();
+            }
+            return true;
+        }
+
+        /**
+         * Marks a key that is in the set.
+         *
+         * @return whether the key wasn't marked yet
+         */
+        boolean mark(long hash) {
+            int slot = slot(key(hash));
+            if (table[slot] == 0 || (table[slot] & MARK) != 0) {
+                return false;
+            }
+            table[slot] |= MARK;
+            return true;
+        }
+
+        void clearMarks() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] &= Long.MAX_VALUE;
+            }
+        }
+
+        private void grow() {
+            if (table.length >= 1 << 30) {
+                throw new IllegalStateException("too many keys: " + size);
+            }
+            long[] old = table;
+            long[] oldValues = values;
+            table = new long[old.length * 2];
+            values = oldValues == null ? null : new long[table.length];
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] != 0) {
+                    int slot = slot(old[i] & Long.MAX_VALUE);
+                    table[slot] = old[i];
+                    if (values != null) {
+                        values[slot] = oldValues[i];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.mime.MimeTypes;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.pipes.pipesiterator.PipesIterator;
+
+/**
+ * Queue of the tuples of an {@link AsyncProcessor}, which puts them into
+ * lanes by their size, so that a batch of large files doesn't keep every
+ * worker busy while small files wait behind them.
+ * <p>
+ * The size of a tuple is the length of its fetch range or the
+ * <code>Content-Length</code> in its metadata. If neither is known, the
+ * tuple goes into the last lane if its <code>Content-Type</code>, or the
+ * type that its fetch key's file name suggests, is one of the
+ * {@link AsyncConfig#getLargeMediaTypes()}, and into the first lane
+ * otherwise.
+ * <p>
+ * A tuple is placed when it is offered, by what the pipes iterator knows
+ * about it. The file is only fetched later, in the forked PipesServer, so
+ * a tuple isn't moved to another lane once its fetched size is known.
+ * Iterators that should place tuples by size must set the
+ * <code>Content-Length</code> or the fetch range, as the file system and
+ * S3 iterators do.
+ * <p>
+ * Each worker has a home lane, which it takes tuples from in order. If its
+ * lane is empty, it steals the tuple that has waited longest in the other
+ * lanes. A tuple that has waited longer than
+ * {@link AsyncConfig#getMaxLaneWaitMillis()} is taken by the next worker
+ * that is free, whatever its lane, so that no lane starves.
+ * <p>
+ * The capacity, {@link AsyncConfig#getQueueSize()}, is shared by the lanes.
+ */
+class LaneScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LaneScheduler.class);
+
+    private final long[] thresholds;
+    private final int[] homeLanes;
+    private final Lane[] lanes;
+    private final int capacity;
+    private final long maxWaitMillis;
+    private final List<MediaType> largeMediaTypes = new ArrayList<>();
+    private final MimeTypes mimeTypes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    //guarded by lock
+    private int size = 0;
+    private int completedSemaphores = 0;
+
+    LaneScheduler(AsyncConfig asyncConfig) {
+        List<String> laneThresholds = asyncConfig.getLaneThresholds();
+        this.thresholds = new long[laneThresholds.size()];
+        for (int i = 0; i < thresholds.length; i++) {
+            thresholds[i] = Long.parseLong(laneThresholds.get(i).trim());
+            if (i > 0 && thresholds[i] <= thresholds[i - 1]) {
+                throw new IllegalArgumentException("lane thresholds must be ascending: " +
+                        laneThresholds);
+            }
+        }
+        this.lanes = new Lane[thresholds.length + 1];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i);
+        }
+        this.homeLanes = assignHomeLanes(asyncConfig.getNumClients(), lanes.length,
+                asyncConfig.getLaneWorkers());
+        this.capacity = asyncConfig.getQueueSize();
+        this.maxWaitMillis = asyncConfig.getMaxLaneWaitMillis();
+        for (String type : asyncConfig.getLargeMediaTypes()) {
+            MediaType mediaType = MediaType.parse(type.trim());
+            if (mediaType != null) {
+                largeMediaTypes.add(mediaType);
+            }
+        }
+        this.mimeTypes = largeMediaTypes.isEmpty() || lanes.length == 1 ? null :
+                MimeTypes.getDefaultMimeTypes();
+    }
+
+    private static int[] assignHomeLanes(int numWorkers, int numLanes, List<String> laneWorkers) {
+        int[] homeLanes = new int[numWorkers];
+        if (laneWorkers.isEmpty()) {
+            //spread the workers evenly over the lanes
+            for (int i = 0; i < numWorkers; i++) {
+                homeLanes[i] = i % numLanes;
+            }
+            return homeLanes;
+        }
+        if (laneWorkers.size() != numLanes) {
+            throw new IllegalArgumentException("there must be a number of workers for each of " +
+                    "the " + numLanes + " lanes: " + laneWorkers);
+        }
+        int worker = 0;
+        for (int lane = 0; lane < numLanes; lane++) {
+            int n = Integer.parseInt(laneWorkers.get(lane).trim());
+            for (int i = 0; i < n && worker < numWorkers; i++) {
+                homeLanes[worker++] = lane;
+            }
+        }
+        //any workers left over belong to the first lane
+        return homeLanes;
+    }
+
+    int getNumLanes() {
+        return lanes.length;
+    }
+
+    int getHomeLane(int worker) {
+        return homeLanes[worker];
+    }
+
+    int getLane(FetchEmitTuple t) {
+        if (lanes.length == 1) {
+            return 0;
+        }
+        long size = getSize(t);
+        if (size < 0) {
+            return isLargeMediaType(t) ? lanes.length - 1 : 0;
+        }
+        for (int i = 0; i < thresholds.length; i++) {
+            if (size < thresholds[i]) {
+                return i;
+            }
+        }
+        return lanes.length - 1;
+    }
+
+    private static long getSize(FetchEmitTuple t) {
+        FetchKey fetchKey = t.getFetchKey();
+        if (fetchKey != null && fetchKey.hasRange()) {
+            return fetchKey.getRangeEnd() - fetchKey.getRangeStart() + 1;
+        }
+        Metadata metadata = t.getMetadata();
+        String length = metadata == null ? null : metadata.get(Metadata.CONTENT_LENGTH);
+        if (length != null) {
+            try {
+                return Long.parseLong(length.trim());
+            } catch (NumberFormatException e) {
+                LOG.debug("bad content length {} for {}", length, t.getId());
+            }
+        }
+        return -1;
+    }
+
+    private boolean isLargeMediaType(FetchEmitTuple t) {
+        if (mimeTypes == null) {
+            return false;
+        }
+        MediaType mediaType = null;
+        if (t.getMetadata() != null && t.getMetadata().get(Metadata.CONTENT_TYPE) != null) {
+            mediaType = MediaType.parse(t.getMetadata().get(Metadata.CONTENT_TYPE));
+        } else if (t.getFetchKey() != null && t.getFetchKey().getFetchKey() != null) {
+            Metadata nameOnly = new Metadata();
+            nameOnly.set(TikaCoreProperties.RESOURCE_NAME_KEY, t.getFetchKey().getFetchKey());
+            try {
+                mediaType = mimeTypes.detect(null, nameOnly);
+            } catch (IOException e) {
+                //can't happen without a stream
+                LOG.debug("couldn't detect type of {}", t.getId(), e);
+            }
+        }
+        if (mediaType == null) {
+            return false;
+        }
+        MediaTypeRegistry registry = mimeTypes.getMediaTypeRegistry();
+        for (MediaType large : largeMediaTypes) {
+            if (registry.isInstanceOf(mediaType, large)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the {@link PipesIterator#COMPLETED_SEMAPHORE}, which is taken by
+     * a worker only once all the lanes are empty, or a tuple, waiting for
+     * room if the queue is full.
+     */
+    boolean offer(FetchEmitTuple t, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            if (t == PipesIterator.COMPLETED_SEMAPHORE) {
+                completedSemaphores++;
+                notEmpty.signalAll();
+                return true;
+            }
+            while (size >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            add(t, System.currentTimeMillis());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds all of the tuples if there is room for them, and none otherwise.
+     */
+    boolean offerAll(List<FetchEmitTuple> tuples) {
+        lock.lock();
+        try {
+            if (capacity - size < tuples.size()) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            for (FetchEmitTuple t : tuples) {
+                add(t, now);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(FetchEmitTuple t, long now) {
+        lanes[getLane(t)].queue.add(new Queued(t, now));
+        size++;
+        notEmpty.signalAll();
+    }
+
+    int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next tuple for a worker of the given lane.
+     *
+     * @return the next tuple, the {@link PipesIterator#COMPLETED_SEMAPHORE} if
+     * there are no more, or <code>null</code> if none was available in time
+     */
+    FetchEmitTuple poll(int homeLane, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (completedSemaphores > 0) {
+                    completedSemaphores--;
+                    return PipesIterator.COMPLETED_SEMAPHORE;
+                }
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return take(homeLane, System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FetchEmitTuple take(int homeLane, long now) {
+        Lane oldest = null;
+        for (Lane lane : lanes) {
+            Queued head = lane.queue.peek();
+            if (head != null && (oldest == null || head.since < oldest.queue.peek().since)) {
+                oldest = lane;
+            }
+        }
+        Lane lane;
+        if (now - oldest.queue.peek().since > maxWaitMillis && oldest != lanes[homeLane]) {
+            lane = oldest;
+            lane.aged++;
+        } else if (!lanes[homeLane].queue.isEmpty()) {
+            lane = lanes[homeLane];
+        } else {
+            lane = oldest;
+            lane.stolen++;
+        }
+        Queued queued = lane.queue.poll();
+        long waited = now - queued.since;
+        lane.taken++;
+        lane.totalWaitMillis += waited;
+        lane.maxWaitMillis = Math.max(lane.maxWaitMillis, waited);
+        size--;
+        notFull.signalAll();
+        return queued.tuple;
+    }
+
+    List<LaneWaitResult> getLaneWaitResults() {
+        lock.lock();
+        try {
+            List<LaneWaitResult> results = new ArrayList<>(lanes.length);
+            for (Lane lane : lanes) {
+                long minBytes = lane.lane == 0 ? 0 : thresholds[lane.lane - 1];
+                long maxBytes = lane.lane < thresholds.length ? thresholds[lane.lane] : -1;
+                results.add(new LaneWaitResult(lane.lane, minBytes, maxBytes, lane.queue.size(),
+                        lane.taken, lane.stolen, lane.aged, lane.totalWaitMillis,
+                        lane.maxWaitMillis));
+            }
+            return results;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Lane {
+        private final int lane;
+        private final ArrayDeque<Queued> queue = new ArrayDeque<>();
+        private long taken;
+        private long stolen;
+        private long aged;
+        private long totalWaitMillis;
+        private long maxWaitMillis;
+
+        private Lane(int lane) {
+            this.lane = lane;
+        }
+    }
+
+    private static class Queued {
+        private final FetchEmitTuple tuple;
+        private final long since;
+
+        private Queued(FetchEmitTuple tuple, long since) {
+            this.tuple = tuple;
+            this.since = since;
+        }
+    }
+}
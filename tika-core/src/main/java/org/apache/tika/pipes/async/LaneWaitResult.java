@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+/**
+ * Queue wait statistics of one of the scheduling lanes of an
+ * {@link AsyncProcessor}, which are reported periodically. The counts and
+ * times are totals since the processor was started.
+ */
+public class LaneWaitResult {
+
+    private final int lane;
+    private final long minBytes;
+    private final long maxBytes;
+    private final int queued;
+    private final long taken;
+    private final long stolen;
+    private final long aged;
+    private final long totalWaitMillis;
+    private final long maxWaitMillis;
+
+    public LaneWaitResult(int lane, long minBytes, long maxBytes, int queued, long taken,
+                          long stolen, long aged, long totalWaitMillis, long maxWaitMillis) {
+        this.lane = lane;
+        this.minBytes = minBytes;
+        this.maxBytes = maxBytes;
+        this.queued = queued;
+        this.taken = taken;
+        this.stolen = stolen;
+        this.aged = aged;
+        this.totalWaitMillis = totalWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public int getLane() {
+        return lane;
+    }
+
+    /**
+     * @return the smallest file size (inclusive) of this lane
+     */
+    public long getMinBytes() {
+        return minBytes;
+    }
+
+    /**
+     * @return the largest file size (exclusive) of this lane, or <code>-1</code>
+     * if it isn't bounded
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of tuples that are waiting in this lane
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return the number of tuples that have been taken from this lane
+     */
+    public long getTaken() {
+        return taken;
+    }
+
+    /**
+     * @return the number of tuples that have been taken from this lane by
+     * workers of other lanes, because their own lanes were empty
+     */
+    public long getStolen() {
+        return stolen;
+    }
+
+    /**
+     * @return the number of tuples that have been taken from this lane ahead
+     * of the others because they had waited too long
+     */
+    public long getAged() {
+        return aged;
+    }
+
+    public long getTotalWaitMillis() {
+        return totalWaitMillis;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public double getMeanWaitMillis() {
+        return taken == 0 ? 0 : (double) totalWaitMillis / taken;
+    }
+
+    @Override
+    public String toString() {
+        return "LaneWaitResult{" + "lane=" + lane + ", minBytes=" + minBytes + ", maxBytes=" +
+                maxBytes + ", queued=" + queued + ", taken=" + taken + ", stolen=" + stolen +
+                ", aged=" + aged + ", totalWaitMillis=" + totalWaitMillis + ", maxWaitMillis=" +
+                maxWaitMillis + '}';
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+
+/**
+ * This class fetches without holding a thread while it waits for the
+ * source. A pipelined {@link org.apache.tika.pipes.PipesServer} uses it to
+ * start the fetches of the files it has been sent, and only hands a file to
+ * a thread once it is there.
+ */
+public interface AsyncFetcher extends Fetcher {
+
+    /**
+     * @return whether {@link #fetchAsync} can be used with this fetcher's
+     * configuration; if not, callers fall back to the blocking fetch
+     */
+    boolean isAsync();
+
+    /**
+     * The metadata may be updated up until the future completes. The future
+     * fails with the {@link IOException} or {@link TikaException} that the
+     * blocking fetch would have thrown.
+     */
+    CompletableFuture<InputStream> fetchAsync(String fetchKey, Metadata metadata,
+                                              ParseContext parseContext)
+            throws TikaException, IOException;
+}
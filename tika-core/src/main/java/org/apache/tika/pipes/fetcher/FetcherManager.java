@@ -28,6 +28,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.apache.tika.config.ConfigBase;
 import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.pipes.fetcher.cache.CachingFetcher;
 
 /**
  * Utility class to hold multiple fetchers.
@@ -57,6 +58,17 @@ public class FetcherManager extends ConfigBase {
             }
             fetcherMap.put(fetcher.getName(), fetcher);
         }
+        for (Fetcher fetcher : fetchers) {
+            if (fetcher instanceof CachingFetcher) {
+                CachingFetcher cachingFetcher = (CachingFetcher) fetcher;
+                Fetcher delegate = fetcherMap.get(cachingFetcher.getDelegateFetcherName());
+                if (delegate == null || delegate instanceof CachingFetcher) {
+                    throw new TikaConfigException("Can't find a fetcher to cache for " +
+                            fetcher.getName() + ": " + cachingFetcher.getDelegateFetcherName());
+                }
+                cachingFetcher.setDelegate(delegate);
+            }
+        }
     }
 
     public Fetcher getFetcher(String fetcherName) throws IOException, TikaException {
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher;
+
+import java.io.IOException;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+
+/**
+ * A fetcher that can tell which version of a file it would fetch without
+ * fetching it, e.g. from its ETag, version id or modification time. This
+ * lets a {@link org.apache.tika.pipes.fetcher.cache.CachingFetcher} check
+ * that what it has cached is current.
+ */
+public interface VersionedFetcher extends Fetcher {
+
+    /**
+     * @return a string that changes whenever the file changes, or
+     * <code>null</code> if that isn't known for this file
+     */
+    String getVersion(String fetchKey, Metadata metadata, ParseContext parseContext)
+            throws TikaException, IOException;
+}
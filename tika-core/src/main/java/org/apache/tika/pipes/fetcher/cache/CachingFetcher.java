@@ -0,0 +1,746 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.config.Field;
+import org.apache.tika.config.Initializable;
+import org.apache.tika.config.InitializableProblemHandler;
+import org.apache.tika.config.Param;
+import org.apache.tika.exception.TikaConfigException;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.HexCoDec;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.fetcher.AbstractFetcher;
+import org.apache.tika.pipes.fetcher.Fetcher;
+import org.apache.tika.pipes.fetcher.RangeFetcher;
+import org.apache.tika.pipes.fetcher.VersionedFetcher;
+
+/**
+ * Keeps what another fetcher has fetched in a directory on the local disk,
+ * so that fetching the same key again needn't go back to the source.
+ * <p>
+ * The other fetcher is named by <code>delegateFetcherName</code> and is
+ * looked up in the same {@link org.apache.tika.pipes.fetcher.FetcherManager}.
+ * A cached file is only used if it is still current. If the other fetcher
+ * is a {@link VersionedFetcher}, it is asked for the file's version, which
+ * must match the version of the cached file. Otherwise, or if it doesn't
+ * know the file's version, the cached file is only used if it was fetched
+ * less than <code>maxAgeMillis</code> ago; by default, it isn't used at all.
+ * <p>
+ * Files are stored by the SHA-256 of their contents, so that keys with the
+ * same contents share them, with a small entry per key that names the
+ * file and holds the metadata that the other fetcher added. The least
+ * recently used files and entries, by their modification times, are deleted
+ * once they take up more than <code>maxCacheBytes</code>. If several threads
+ * fetch the same key at once, only one of them fetches it from the other
+ * fetcher.
+ * <p>
+ * The directory can be shared by several processes, such as the forked
+ * PipesServers of an AsyncProcessor. Each process downloads into its own
+ * temporary directory, <code>tmp/&lt;pid&gt;-&lt;n&gt;</code>, and only the
+ * temporary directories of processes that have died are swept. A process keeps an
+ * estimate of the size of the cache, the size that it last scanned plus
+ * what it has added since. Once that is over <code>maxCacheBytes</code>,
+ * or it has added a sixteenth of <code>maxCacheBytes</code>, it scans the
+ * directory and evicts under a lock on the <code>lock</code> file, so the
+ * cache can grow past its limit by at most that much per process. Only
+ * fetches within a process wait for each other; two processes can fetch the
+ * same key at once, which stores the same file twice.
+ * <p>
+ * The hits, misses and bytes saved of all processes are added up in the
+ * <code>stats.properties</code> file of the directory every
+ * {@value #STATS_EVERY} lookups and on each scan; see
+ * {@link #readStats(Path)}.
+ * <p>
+ * Ranges aren't cached; they are fetched from the other fetcher if it is a
+ * {@link RangeFetcher}.
+ */
+public class CachingFetcher extends AbstractFetcher implements Initializable, RangeFetcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingFetcher.class);
+
+    public static final long DEFAULT_MAX_CACHE_BYTES = 10L * 1024 * 1024 * 1024;
+
+    private static final int MAGIC = 0x544b4345;
+    private static final int VERSION = 1;
+    private static final String BLOBS = "blobs";
+    private static final String KEYS = "keys";
+    private static final String TMP = "tmp";
+    private static final String LOCK = "lock";
+    private static final String STATS = "stats.properties";
+    //how often to log the statistics
+    private static final long LOG_EVERY = 1000;
+    //how often to add the statistics to the stats file
+    static final long STATS_EVERY = 100;
+    //fraction of maxCacheBytes that a process may add between scans
+    private static final long SCAN_FRACTION = 16;
+
+    //a FileLock is held by the JVM, so the instances in a JVM that share a
+    //directory take turns on one of these first
+    private static final Map<Path, Object> DIRECTORY_LOCKS = new ConcurrentHashMap<>();
+    //the temporary directories of the instances in this JVM
+    private static final Set<Path> LIVE_TMP_DIRECTORIES = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger TMP_DIRECTORY_COUNT = new AtomicInteger(0);
+
+    private String delegateFetcherName;
+    private Path cacheDirectory;
+    private long maxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
+    private long maxAgeMillis = -1;
+
+    private Fetcher delegate;
+    private Path tmpDirectory;
+
+    //guards the estimate of the cache's size
+    private final Object sizeLock = new Object();
+    //the size when the directory was last scanned, plus what this process has added since
+    private long cacheBytes = 0;
+    private long addedSinceScan = 0;
+    private final Map<String, CountDownLatch> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong bytesSaved = new AtomicLong(0);
+    //what has been added to the stats file, guarded by the directory lock
+    private long writtenHits = 0;
+    private long writtenMisses = 0;
+    private long writtenBytesSaved = 0;
+
+    @Override
+    public InputStream fetch(String fetchKey, Metadata metadata, ParseContext parseContext)
+            throws IOException, TikaException {
+        String entryName = sha256(delegateFetcherName + "\u0000" + fetchKey);
+        try {
+            while (true) {
+                InputStream cached = getCached(entryName, fetchKey, metadata, parseContext);
+                if (cached != null) {
+                    hits.incrementAndGet();
+                    return cached;
+                }
+                CountDownLatch latch = new CountDownLatch(1);
+                CountDownLatch other = inFlight.putIfAbsent(entryName, latch);
+                if (other != null) {
+                    //another thread is fetching this key; use what it fetches
+                    other.await();
+                    continue;
+                }
+                try {
+                    misses.incrementAndGet();
+                    return fetchAndCache(entryName, fetchKey, metadata, parseContext);
+                } finally {
+                    inFlight.remove(entryName);
+                    latch.countDown();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted waiting for " + fetchKey);
+        } finally {
+            long lookups = hits.get() + misses.get();
+            if (lookups > 0 && lookups % LOG_EVERY == 0) {
+                LOG.info("{}: hits={} misses={} hitRatio={} bytesSaved={}", getName(),
+                        hits.get(), misses.get(), getHitRatio(), bytesSaved.get());
+            }
+            if (lookups > 0 && lookups % STATS_EVERY == 0) {
+                try {
+                    withDirectoryLock(this::writeStats);
+                } catch (IOException e) {
+                    LOG.warn("couldn't write the cache statistics of {}", getName(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public InputStream fetch(String fetchKey, long startOffset, long endOffset, Metadata metadata,
+                             ParseContext parseContext) throws IOException, TikaException {
+        if (!(delegate instanceof RangeFetcher)) {
+            throw new IllegalArgumentException("Can't fetch a range from a fetcher that is " +
+                    "not a RangeFetcher: " + delegateFetcherName);
+        }
+        return ((RangeFetcher) delegate).fetch(fetchKey, startOffset, endOffset, metadata,
+                parseContext);
+    }
+
+    /**
+     * @return the cached file if it is current, or <code>null</code>
+     */
+    private InputStream getCached(String entryName, String fetchKey, Metadata metadata,
+                                  ParseContext parseContext) throws IOException, TikaException {
+        Path entryPath = cacheDirectory.resolve(KEYS).resolve(entryName);
+        Entry entry = readEntry(entryPath, fetchKey);
+        if (entry == null || !isCurrent(entry, fetchKey, metadata, parseContext)) {
+            return null;
+        }
+        Path blob = getBlobPath(entry.hash);
+        TikaInputStream tis;
+        try {
+            tis = TikaInputStream.get(blob);
+        } catch (NoSuchFileException e) {
+            //evicted, possibly by another process
+            return null;
+        }
+        //moves them to the end of the order of use
+        touch(entryPath);
+        touch(blob);
+        for (Map.Entry<String, String[]> e : entry.metadata.entrySet()) {
+            metadata.remove(e.getKey());
+            for (String value : e.getValue()) {
+                metadata.add(e.getKey(), value);
+            }
+        }
+        bytesSaved.addAndGet(entry.length);
+        return tis;
+    }
+
+    private boolean isCurrent(Entry entry, String fetchKey, Metadata metadata,
+                              ParseContext parseContext) throws IOException, TikaException {
+        if (entry.version != null && delegate instanceof VersionedFetcher) {
+            String version = ((VersionedFetcher) delegate).getVersion(fetchKey, metadata,
+                    parseContext);
+            if (version != null) {
+                return version.equals(entry.version);
+            }
+        }
+        return maxAgeMillis >= 0 && System.currentTimeMillis() - entry.fetched <= maxAgeMillis;
+    }
+
+    private InputStream fetchAndCache(String entryName, String fetchKey, Metadata metadata,
+                                      ParseContext parseContext)
+            throws IOException, TikaException {
+        long fetched = System.currentTimeMillis();
+        //asked before fetching, so that a change in between is picked up next time
+        String version = null;
+        if (delegate instanceof VersionedFetcher) {
+            version = ((VersionedFetcher) delegate).getVersion(fetchKey, metadata, parseContext);
+        }
+        Map<String, String[]> before = snapshot(metadata);
+        Path tmp = Files.createTempFile(tmpDirectory, "fetch", "");
+        try {
+            MessageDigest digest = newDigest();
+            long length;
+            try (InputStream is = new DigestInputStream(
+                    delegate.fetch(fetchKey, metadata, parseContext), digest);
+                    OutputStream os = Files.newOutputStream(tmp)) {
+                length = IOUtils.copyLarge(is, os);
+            }
+            String hash = new String(HexCoDec.encode(digest.digest()));
+            Map<String, String[]> added = new HashMap<>();
+            for (Map.Entry<String, String[]> e : snapshot(metadata).entrySet()) {
+                if (!Arrays.equals(e.getValue(), before.get(e.getKey()))) {
+                    added.put(e.getKey(), e.getValue());
+                }
+            }
+            Path blob = getBlobPath(hash);
+            Path entryPath = cacheDirectory.resolve(KEYS).resolve(entryName);
+            long addedBytes = 0;
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                try {
+                    //atomic, so that other processes never see part of it
+                    Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+                    addedBytes += length;
+                } catch (FileAlreadyExistsException e) {
+                    //another process has just cached the same contents
+                }
+            }
+            //else the same contents are already cached for another key
+            touch(blob);
+            addedBytes += writeEntry(entryPath,
+                    new Entry(fetchKey, version, fetched, hash, length, added));
+            touch(entryPath);
+            TikaInputStream tis = TikaInputStream.get(blob);
+            added(addedBytes);
+            return tis;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Map<String, String[]> snapshot(Metadata metadata) {
+        Map<String, String[]> snapshot = new HashMap<>();
+        for (String name : metadata.names()) {
+            snapshot.put(name, metadata.getValues(name));
+        }
+        return snapshot;
+    }
+
+    private Path getBlobPath(String hash) {
+        return cacheDirectory.resolve(BLOBS).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * Adds to the estimate of the cache's size, and scans the directory if
+     * the estimate is over the limit or enough has been added since the last
+     * scan, for what other processes have added.
+     */
+    private void added(long bytes) throws IOException {
+        synchronized (sizeLock) {
+            cacheBytes += bytes;
+            addedSinceScan += bytes;
+            if (cacheBytes <= maxCacheBytes && addedSinceScan <= maxCacheBytes / SCAN_FRACTION) {
+                return;
+            }
+        }
+        withDirectoryLock(this::scanAndEvict);
+    }
+
+    private interface LockedAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs the action while holding the lock on the directory, which is
+     * shared with the other processes that use it.
+     */
+    private void withDirectoryLock(LockedAction action) throws IOException {
+        Object monitor = DIRECTORY_LOCKS.computeIfAbsent(cacheDirectory.toAbsolutePath(),
+                k -> new Object());
+        synchronized (monitor) {
+            try (FileChannel channel = FileChannel.open(cacheDirectory.resolve(LOCK),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock lock = channel.lock()) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files, by their modification times,
+     * until the cache is within its limit. Must hold the directory lock.
+     */
+    private void scanAndEvict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Map<Path, BasicFileAttributes> attrs = new HashMap<>();
+        long total = 0;
+        for (String dir : new String[]{BLOBS, KEYS}) {
+            try (Stream<Path> walk = Files.walk(cacheDirectory.resolve(dir))) {
+                for (Path p : (Iterable<Path>) walk::iterator) {
+                    BasicFileAttributes a;
+                    try {
+                        a = Files.readAttributes(p, BasicFileAttributes.class);
+                    } catch (NoSuchFileException e) {
+                        //replaced or evicted since it was listed
+                        continue;
+                    }
+                    if (a.isRegularFile()) {
+                        files.add(p);
+                        attrs.put(p, a);
+                        total += a.size();
+                    }
+                }
+            }
+        }
+        if (total > maxCacheBytes) {
+            files.sort(Comparator.comparing(p -> attrs.get(p).lastModifiedTime()));
+            for (Path p : files) {
+                if (total <= maxCacheBytes) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    //e.g. still open on a file system that doesn't allow that
+                    LOG.debug("couldn't evict {}", p, e);
+                    continue;
+                }
+                total -= attrs.get(p).size();
+            }
+        }
+        synchronized (sizeLock) {
+            cacheBytes = total;
+            addedSinceScan = 0;
+        }
+        writeStats();
+    }
+
+    /**
+     * Adds what this process has counted since it last wrote them to the
+     * statistics of all processes. Must hold the directory lock.
+     */
+    private void writeStats() throws IOException {
+        long hits = this.hits.get();
+        long misses = this.misses.get();
+        long bytesSaved = this.bytesSaved.get();
+        if (hits == writtenHits && misses == writtenMisses && bytesSaved == writtenBytesSaved) {
+            return;
+        }
+        Properties stats = readStats(cacheDirectory);
+        add(stats, "hits", hits - writtenHits);
+        add(stats, "misses", misses - writtenMisses);
+        add(stats, "bytesSaved", bytesSaved - writtenBytesSaved);
+        Path tmp = Files.createTempFile(tmpDirectory, "stats", "");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                stats.store(os, "statistics of all the processes that use this cache");
+            }
+            Files.move(tmp, cacheDirectory.resolve(STATS), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        writtenHits = hits;
+        writtenMisses = misses;
+        writtenBytesSaved = bytesSaved;
+    }
+
+    private static void add(Properties stats, String name, long delta) {
+        long value = Long.parseLong(stats.getProperty(name, "0"));
+        stats.setProperty(name, Long.toString(value + delta));
+    }
+
+    /**
+     * @return the hits, misses and bytesSaved of all the processes that have
+     * used the cache directory, as last written by them
+     */
+    public static Properties readStats(Path cacheDirectory) throws IOException {
+        Properties stats = new Properties();
+        try (InputStream is = Files.newInputStream(cacheDirectory.resolve(STATS))) {
+            stats.load(is);
+        } catch (NoSuchFileException e) {
+            //nothing written yet
+        }
+        return stats;
+    }
+
+    private static void touch(Path path) {
+        //the order of use for eviction, also by other processes and after a
+        //restart; new files are touched too, so that all the times are from
+        //the same, finer, clock
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            LOG.debug("couldn't touch {}", path, e);
+        }
+    }
+
+    private long writeEntry(Path path, Entry entry) throws IOException {
+        //in this process's directory, so that processes that write the same entry don't collide
+        Path tmp = Files.createTempFile(tmpDirectory, "entry", "");
+        try (DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            writeString(os, entry.fetchKey);
+            os.writeBoolean(entry.version != null);
+            if (entry.version != null) {
+                writeString(os, entry.version);
+            }
+            os.writeLong(entry.fetched);
+            writeString(os, entry.hash);
+            os.writeLong(entry.length);
+            os.writeInt(entry.metadata.size());
+            for (Map.Entry<String, String[]> e : entry.metadata.entrySet()) {
+                writeString(os, e.getKey());
+                os.writeInt(e.getValue().length);
+                for (String value : e.getValue()) {
+                    writeString(os, value);
+                }
+            }
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return Files.size(path);
+    }
+
+    /**
+     * @return the entry, or <code>null</code> if there isn't one for this key
+     */
+    private static Entry readEntry(Path path, String fetchKey) throws IOException {
+        try (DataInputStream is = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+                return null;
+            }
+            String key = readString(is);
+            if (!key.equals(fetchKey)) {
+                return null;
+            }
+            String version = is.readBoolean() ? readString(is) : null;
+            long fetched = is.readLong();
+            String hash = readString(is);
+            long length = is.readLong();
+            int size = is.readInt();
+            Map<String, String[]> metadata = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                String name = readString(is);
+                String[] values = new String[is.readInt()];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = readString(is);
+                }
+                metadata.put(name, values);
+            }
+            return new Entry(key, version, fetched, hash, length, metadata);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("couldn't read cache entry {}; fetching again", path, e);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream os, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        os.writeInt(bytes.length);
+        os.write(bytes);
+    }
+
+    private static String readString(DataInputStream is) throws IOException {
+        byte[] bytes = new byte[is.readInt()];
+        is.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String sha256(String s) {
+        return new String(HexCoDec.encode(newDigest().digest(s.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Called by the {@link org.apache.tika.pipes.fetcher.FetcherManager}
+     * with the fetcher named by <code>delegateFetcherName</code>.
+     */
+    public void setDelegate(Fetcher delegate) {
+        this.delegate = delegate;
+    }
+
+    public Fetcher getDelegate() {
+        return delegate;
+    }
+
+    public String getDelegateFetcherName() {
+        return delegateFetcherName;
+    }
+
+    @Field
+    public void setDelegateFetcherName(String delegateFetcherName) {
+        this.delegateFetcherName = delegateFetcherName;
+    }
+
+    @Field
+    public void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = Paths.get(cacheDirectory);
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * @param maxCacheBytes the size above which the least recently used
+     *                      files are deleted
+     */
+    @Field
+    public void setMaxCacheBytes(long maxCacheBytes) {
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    /**
+     * @param maxAgeMillis how long to use a cached file whose version isn't
+     *                     known; -1, the default, never uses it
+     */
+    @Field
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        long hits = this.hits.get();
+        long lookups = hits + misses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return number of bytes that were read from the cache rather than
+     * fetched
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return estimate of the number of bytes that the cache takes up on
+     * disk: the size when the directory was last scanned, plus what this
+     * process has added since
+     */
+    public long getCacheBytes() {
+        synchronized (sizeLock) {
+            return cacheBytes;
+        }
+    }
+
+    @Override
+    public void initialize(Map<String, Param> params) throws TikaConfigException {
+        if (cacheDirectory == null) {
+            return;
+        }
+        try {
+            for (String dir : new String[]{BLOBS, KEYS, TMP}) {
+                Files.createDirectories(cacheDirectory.resolve(dir));
+            }
+            long pid = ProcessHandle.current().pid();
+            withDirectoryLock(() -> {
+                sweepTmp(pid);
+                Path dir = cacheDirectory.resolve(TMP)
+                        .resolve(pid + "-" + TMP_DIRECTORY_COUNT.getAndIncrement());
+                tmpDirectory = Files.createDirectories(dir);
+                LIVE_TMP_DIRECTORIES.add(tmpDirectory.toAbsolutePath());
+                scanAndEvict();
+            });
+        } catch (IOException e) {
+            throw new TikaConfigException("couldn't open cache directory " + cacheDirectory, e);
+        }
+    }
+
+    /**
+     * Deletes what was left over from fetches that didn't finish: the
+     * temporary directories of processes that have died, and those with this
+     * process's pid that no instance in this JVM uses, which a process that
+     * had the same pid may have left. The directories of live processes are
+     * left alone, since they may be downloading into them.
+     */
+    private void sweepTmp(long pid) throws IOException {
+        try (Stream<Path> dirs = Files.list(cacheDirectory.resolve(TMP))) {
+            for (Path dir : (Iterable<Path>) dirs::iterator) {
+                String name = dir.getFileName().toString();
+                long owner;
+                try {
+                    owner = Long.parseLong(name.substring(0, Math.max(0, name.indexOf('-'))));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                boolean stale;
+                if (owner == pid) {
+                    stale = !LIVE_TMP_DIRECTORIES.contains(dir.toAbsolutePath());
+                } else {
+                    stale = !ProcessHandle.of(owner).map(ProcessHandle::isAlive).orElse(false);
+                }
+                if (stale) {
+                    deleteDirectory(dir);
+                }
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            List<Path> paths = new ArrayList<>();
+            walk.forEach(paths::add);
+            //children before their parents
+            Collections.reverse(paths);
+            for (Path p : paths) {
+                Files.deleteIfExists(p);
+            }
+        } catch (NoSuchFileException e) {
+            //swept by another process
+        }
+    }
+
+    @Override
+    public void checkInitialization(InitializableProblemHandler problemHandler)
+            throws TikaConfigException {
+        if (delegateFetcherName == null || delegateFetcherName.isBlank()) {
+            throw new TikaConfigException("'delegateFetcherName' must be set");
+        }
+        if (cacheDirectory == null) {
+            throw new TikaConfigException("'cacheDirectory' must be set");
+        }
+        if (maxCacheBytes < 1) {
+            throw new TikaConfigException("'maxCacheBytes' must be > 0");
+        }
+    }
+
+    private static class Entry {
+        private final String fetchKey;
+        private final String version;
+        private final long fetched;
+        private final String hash;
+        private final long length;
+        private final Map<String, String[]> metadata;
+
+        private Entry(String fetchKey, String version, long fetched, String hash, long length,
+                      Map<String, String[]> metadata) {
+            this.fetchKey = fetchKey;
+            this.version = version;
+            this.fetched = fetched;
+            this.hash = hash;
+            this.length = length;
+            this.metadata = metadata;
+        }
+    }
+}
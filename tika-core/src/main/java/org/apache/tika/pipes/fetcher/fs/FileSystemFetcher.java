@@ -43,9 +43,10 @@ import org.apache.tika.metadata.Property;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.fetcher.AbstractFetcher;
+import org.apache.tika.pipes.fetcher.VersionedFetcher;
 import org.apache.tika.pipes.fetcher.fs.config.FileSystemFetcherConfig;
 
-public class FileSystemFetcher extends AbstractFetcher implements Initializable {
+public class FileSystemFetcher extends AbstractFetcher implements Initializable, VersionedFetcher {
     public FileSystemFetcher() {
     }
 
@@ -68,6 +69,34 @@ public class FileSystemFetcher extends AbstractFetcher implements Initializable
 
     @Override
     public InputStream fetch(String fetchKey, Metadata metadata, ParseContext parseContext) throws IOException, TikaException {
+        Path p = resolve(fetchKey);
+
+        metadata.set(TikaCoreProperties.SOURCE_PATH, fetchKey);
+        updateFileSystemMetadata(p, metadata);
+
+        if (!Files.isRegularFile(p)) {
+            if (basePath != null && !Files.isDirectory(basePath)) {
+                throw new IOException("BasePath is not a directory: " + basePath);
+            } else {
+                throw new FileNotFoundException(p.toAbsolutePath().toString());
+            }
+        }
+
+        return TikaInputStream.get(p, metadata);
+    }
+
+    /**
+     * @return the file's size and modification time
+     */
+    @Override
+    public String getVersion(String fetchKey, Metadata metadata, ParseContext parseContext)
+            throws IOException {
+        BasicFileAttributes attrs =
+                Files.readAttributes(resolve(fetchKey), BasicFileAttributes.class);
+        return attrs.size() + "-" + attrs.lastModifiedTime().toMillis();
+    }
+
+    private Path resolve(String fetchKey) throws IOException {
         if (fetchKey.contains("\u0000")) {
             throw new IllegalArgumentException("Path must not contain 'u0000'. " +
                     "Please review the life decisions that led you to requesting " +
@@ -83,19 +112,7 @@ public class FileSystemFetcher extends AbstractFetcher implements Initializable
         } else {
             p = Paths.get(fetchKey);
         }
-
-        metadata.set(TikaCoreProperties.SOURCE_PATH, fetchKey);
-        updateFileSystemMetadata(p, metadata);
-
-        if (!Files.isRegularFile(p)) {
-            if (basePath != null && !Files.isDirectory(basePath)) {
-                throw new IOException("BasePath is not a directory: " + basePath);
-            } else {
-                throw new FileNotFoundException(p.toAbsolutePath().toString());
-            }
-        }
-
-        return TikaInputStream.get(p, metadata);
+        return p;
     }
 
     private void updateFileSystemMetadata(Path p, Metadata metadata) throws IOException {
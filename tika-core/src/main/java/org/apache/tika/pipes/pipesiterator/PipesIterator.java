@@ -28,6 +28,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -77,7 +78,8 @@ public abstract class PipesIterator extends ConfigBase
     private int writeLimit = -1;
     private int maxEmbeddedResources = -1;
 
-    private int added = 0;
+    //iterators may add from several threads
+    private final AtomicInteger added = new AtomicInteger(0);
     private FutureTask<Integer> futureTask;
 
     public static PipesIterator build(Path tikaConfigFile) throws IOException,
@@ -169,7 +171,7 @@ public abstract class PipesIterator extends ConfigBase
     public Integer call() throws Exception {
         enqueue();
         tryToAdd(COMPLETED_SEMAPHORE);
-        return added;
+        return added.get();
     }
 
     protected HandlerConfig getHandlerConfig() {
@@ -181,7 +183,7 @@ public abstract class PipesIterator extends ConfigBase
     protected abstract void enqueue() throws IOException, TimeoutException, InterruptedException;
 
     protected void tryToAdd(FetchEmitTuple p) throws InterruptedException, TimeoutException {
-        added++;
+        added.incrementAndGet();
         boolean offered = queue.offer(p, maxWaitMs, TimeUnit.MILLISECONDS);
         if (!offered) {
             throw new TimeoutException("timed out while offering");
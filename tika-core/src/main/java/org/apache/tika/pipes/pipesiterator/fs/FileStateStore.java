@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.pipesiterator.fs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The files that a {@link FileSystemPipesIterator} found on its previous
+ * run, with their sizes, modification times and, optionally, file keys
+ * (inodes).
+ * <p>
+ * The records are kept in the order of the walk, which visits the entries
+ * of each directory sorted by name, so that the previous run's records can
+ * be merged with the current walk as it goes without holding either of
+ * them in memory. The new records are written to a temporary file, which
+ * replaces the previous one only once the walk has completed.
+ * <p>
+ * This is not thread safe.
+ */
+class FileStateStore implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileStateStore.class);
+
+    private static final int MAGIC = 0x544b4653;
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final Path tmp;
+    private final char separator;
+    private DataInputStream previous;
+    private Entry head;
+    private final DataOutputStream current;
+    private boolean committed = false;
+
+    FileStateStore(Path path, Path basePath) throws IOException {
+        this.path = path;
+        this.tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        this.separator = basePath.getFileSystem().getSeparator().charAt(0);
+        String base = basePath.toAbsolutePath().normalize().toString();
+        if (Files.isRegularFile(path)) {
+            openPrevious(base);
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        current = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+        current.writeInt(MAGIC);
+        current.writeInt(VERSION);
+        writeString(current, base);
+    }
+
+    private void openPrevious(String base) throws IOException {
+        previous = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+        try {
+            if (previous.readInt() != MAGIC || previous.readInt() != VERSION) {
+                LOG.warn("{} isn't a file state store that I can read; treating all files as new",
+                        path);
+                closePrevious();
+                return;
+            }
+            String previousBase = readString(previous);
+            if (!base.equals(previousBase)) {
+                LOG.warn("{} was written for {}, not {}; treating all files as new", path,
+                        previousBase, base);
+                closePrevious();
+                return;
+            }
+            advance();
+        } catch (IOException e) {
+            closePrevious();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the first of the previous run's files if it sorts before the
+     * given path, which means that the walk didn't find it this time.
+     *
+     * @param relPath the path that the walk has reached, or <code>null</code>
+     *                once the walk has completed
+     * @return the path of the deleted file, or <code>null</code> if there are
+     * no more before the given path
+     */
+    String pollDeleted(String relPath) throws IOException {
+        if (head == null || (relPath != null && compare(head.relPath, relPath) >= 0)) {
+            return null;
+        }
+        String deleted = head.relPath;
+        advance();
+        return deleted;
+    }
+
+    /**
+     * Records a file that the walk found. The deleted files before it must
+     * have been polled.
+     *
+     * @return whether the file is new or has changed since the previous run
+     */
+    boolean update(String relPath, long size, long modified, String fileKey)
+            throws IOException {
+        boolean changed = true;
+        if (head != null && head.relPath.equals(relPath)) {
+            changed = head.size != size || head.modified != modified ||
+                    !Objects.equals(head.fileKey, fileKey);
+            advance();
+        }
+        write(relPath, size, modified, fileKey);
+        return changed;
+    }
+
+    /**
+     * Keeps the previous run's records of a file or directory which couldn't
+     * be read this time, so that its files aren't taken to have been
+     * deleted. The deleted files before it must have been polled.
+     */
+    void keep(String relPath) throws IOException {
+        String prefix = relPath + separator;
+        while (head != null && (head.relPath.equals(relPath) || head.relPath.startsWith(prefix))) {
+            write(head.relPath, head.size, head.modified, head.fileKey);
+            advance();
+        }
+    }
+
+    /**
+     * Replaces the previous run's records with this run's. All deleted
+     * files must have been polled.
+     */
+    void commit() throws IOException {
+        closePrevious();
+        current.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        closePrevious();
+        current.close();
+        Files.deleteIfExists(tmp);
+    }
+
+    /**
+     * Compares two relative paths in the order of the walk, which is the
+     * order of their names, directory by directory.
+     */
+    int compare(String a, String b) {
+        int len = Math.min(a.length(), b.length());
+        for (int i = 0; i < len; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                //the end of a name sorts before any character
+                if (ca == separator) {
+                    return -1;
+                } else if (cb == separator) {
+                    return 1;
+                }
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    private void write(String relPath, long size, long modified, String fileKey)
+            throws IOException {
+        writeString(current, relPath);
+        current.writeLong(size);
+        current.writeLong(modified);
+        current.writeBoolean(fileKey != null);
+        if (fileKey != null) {
+            writeString(current, fileKey);
+        }
+    }
+
+    private void advance() throws IOException {
+        try {
+            String relPath = readString(previous);
+            long size = previous.readLong();
+            long modified = previous.readLong();
+            String fileKey = previous.readBoolean() ? readString(previous) : null;
+            head = new Entry(relPath, size, modified, fileKey);
+        } catch (EOFException e) {
+            closePrevious();
+        }
+    }
+
+    private void closePrevious() throws IOException {
+        head = null;
+        if (previous != null) {
+            previous.close();
+            previous = null;
+        }
+    }
+
+    private static void writeString(DataOutputStream os, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        os.writeInt(bytes.length);
+        os.write(bytes);
+    }
+
+    private static String readString(DataInputStream is) throws IOException {
+        byte[] bytes = new byte[is.readInt()];
+        is.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Entry {
+        private final String relPath;
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+
+        private Entry(String relPath, long size, long modified, String fileKey) {
+            this.relPath = relPath;
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+        }
+    }
+}
@@ -24,7 +24,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -37,7 +39,10 @@ import org.apache.tika.config.InitializableProblemHandler;
 import org.apache.tika.config.Param;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.exception.TikaConfigException;
+import org.apache.tika.io.ParallelDirectoryWalker;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.Property;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.FetchEmitTuple;
 import org.apache.tika.pipes.HandlerConfig;
@@ -48,17 +53,74 @@ import org.apache.tika.pipes.pipesiterator.PipesIterator;
 import org.apache.tika.pipes.pipesiterator.TotalCountResult;
 import org.apache.tika.pipes.pipesiterator.TotalCounter;
 
+/**
+ * Iterates over the files under a base directory.
+ * <p>
+ * If a <code>statePath</code> is set, this runs incrementally: it records
+ * the size, modification time and, if <code>useFileKey</code> is set, the
+ * file key (inode) of each file that it finds, and on the next run it only
+ * adds the files that are new or have changed. If
+ * <code>emitTombstones</code> is also set, it makes a tuple for each file
+ * that has been deleted since the previous run, with {@link #DELETED} set in
+ * its metadata. These can't be fetched, so they aren't added to the queue;
+ * they are handed to the {@link DeletedFileHandler}, which by default only
+ * logs them.
+ * <p>
+ * The total count is the number of files that the walk finds, as in the
+ * other modes, and not the number of files that are added;
+ * {@link #getAddedCount()} has that.
+ * <p>
+ * The state is replaced once the walk has completed, so files that are
+ * added during a run that doesn't complete are added again on the next run.
+ * It records which files have been handed on, not which have been
+ * processed; use it with the {@link AsyncProcessor}'s journal to skip files
+ * that were handed on but not processed.
+ */
 public class FileSystemPipesIterator extends PipesIterator
         implements TotalCounter, Initializable, Closeable {
 
+    /**
+     * Set in the metadata of the tuples of files that have been deleted
+     * since the previous run.
+     */
+    public static final Property DELETED =
+            Property.internalBoolean(TikaCoreProperties.TIKA_META_PREFIX + "deleted");
+
     private static final Logger LOG = LoggerFactory.getLogger(AsyncProcessor.class);
 
+    private static final Comparator<Path> FILE_NAME_ORDER =
+            Comparator.comparing(p -> p.getFileName().toString());
+
+    /**
+     * Handles the tuples of files that have been deleted since the
+     * previous incremental run, e.g. by deleting their records from an index.
+     * It is called on the thread that walks the tree, in between the files
+     * that are added to the queue.
+     */
+    public interface DeletedFileHandler {
+        void deleted(FetchEmitTuple tombstone) throws IOException;
+    }
+
 
     private Path basePath;
     private boolean countTotal = false;
+    private Path statePath;
+    private boolean useFileKey = false;
+    private boolean emitTombstones = false;
+    private int walkerThreads = 1;
+    private int maxPendingDirectories = ParallelDirectoryWalker.DEFAULT_MAX_PENDING_DIRECTORIES;
+    private boolean sortedWalk = false;
+    private DeletedFileHandler deletedFileHandler =
+            tombstone -> LOG.info("deleted since the previous run: {}", tombstone.getId());
 
     private FileCountWorker fileCountWorker;
 
+    //counts of the incremental walk
+    private final AtomicLong found = new AtomicLong(0);
+    private final AtomicLong added = new AtomicLong(0);
+    private final AtomicLong deleted = new AtomicLong(0);
+    private volatile TotalCountResult.STATUS walkStatus = TotalCountResult.STATUS.NOT_COMPLETED;
+
     public FileSystemPipesIterator() {
     }
 
@@ -79,7 +141,15 @@ public class FileSystemPipesIterator extends PipesIterator
         }
 
         try {
-            Files.walkFileTree(basePath, new FSFileVisitor(getFetcherName(), getEmitterName()));
+            if (statePath != null) {
+                enqueueChanged();
+            } else if (walkerThreads > 1) {
+                new ParallelDirectoryWalker(walkerThreads, maxPendingDirectories,
+                        sortedWalk ? FILE_NAME_ORDER : null).walk(basePath, new FileAdder());
+            } else {
+                Files.walkFileTree(basePath,
+                        new FSFileVisitor(getFetcherName(), getEmitterName()));
+            }
         } catch (IOException e) {
             Throwable cause = e.getCause();
             if (cause != null && cause instanceof TimeoutException) {
@@ -89,6 +159,52 @@ public class FileSystemPipesIterator extends PipesIterator
         }
     }
 
+    /**
+     * The walk is sorted by name, which is the order of the records in the
+     * {@link FileStateStore}.
+     */
+    private void enqueueChanged() throws InterruptedException, IOException {
+        try (FileStateStore state = new FileStateStore(statePath, basePath)) {
+            ChangedFileAdder adder = new ChangedFileAdder(state);
+            new ParallelDirectoryWalker(Math.max(1, walkerThreads), maxPendingDirectories,
+                    FILE_NAME_ORDER).walk(basePath, adder);
+            adder.addDeleted(null);
+            state.commit();
+            walkStatus = TotalCountResult.STATUS.COMPLETED;
+            LOG.info("found {} files in {}; added {} new or changed files, and {} were deleted",
+                    found.get(), basePath, added.get(), deleted.get());
+        } catch (IOException | RuntimeException e) {
+            walkStatus = TotalCountResult.STATUS.EXCEPTION;
+            throw e;
+        }
+    }
+
+    private void add(String relPath, Metadata metadata) throws IOException, InterruptedException {
+        try {
+            tryToAdd(newTuple(relPath, metadata));
+        } catch (TimeoutException e) {
+            throw new IOException(e);
+        }
+        added.incrementAndGet();
+    }
+
+    /**
+     * The size lets an AsyncProcessor put the file into a lane by its size
+     * before it is fetched.
+     */
+    private static Metadata sizeOf(BasicFileAttributes attrs) {
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_LENGTH, Long.toString(attrs.size()));
+        return metadata;
+    }
+
+    private FetchEmitTuple newTuple(String relPath, Metadata metadata) {
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(HandlerConfig.class, getHandlerConfig());
+        return new FetchEmitTuple(relPath, new FetchKey(getFetcherName(), relPath),
+                new EmitKey(getEmitterName(), relPath), metadata, parseContext,
+                getOnParseException());
+    }
 
     @Override
     public void checkInitialization(InitializableProblemHandler problemHandler)
@@ -101,7 +217,8 @@ public class FileSystemPipesIterator extends PipesIterator
 
     @Override
     public void initialize(Map<String, Param> params) throws TikaConfigException {
-        if (countTotal) {
+        //the incremental walk counts the files that it adds as it goes
+        if (countTotal && statePath == null) {
             fileCountWorker = new FileCountWorker(basePath);
         }
     }
@@ -110,9 +227,81 @@ public class FileSystemPipesIterator extends PipesIterator
     public void setCountTotal(boolean countTotal) {
         this.countTotal = countTotal;
     }
+
+    /**
+     * @param statePath file in which to record the files that were found, so
+     *                  that the next run only adds new or changed files
+     */
+    @Field
+    public void setStatePath(String statePath) {
+        this.statePath = Paths.get(statePath);
+    }
+
+    /**
+     * @param useFileKey whether a file whose file key (inode) has changed
+     *                   counts as changed, even if its size and modification
+     *                   time haven't, e.g. if it was replaced by a copy that
+     *                   kept them
+     */
+    @Field
+    public void setUseFileKey(boolean useFileKey) {
+        this.useFileKey = useFileKey;
+    }
+
+    /**
+     * @param emitTombstones whether to hand a tuple with {@link #DELETED} set
+     *                       to the {@link DeletedFileHandler} for each file
+     *                       that was deleted since the previous run
+     */
+    @Field
+    public void setEmitTombstones(boolean emitTombstones) {
+        this.emitTombstones = emitTombstones;
+    }
+
+    public void setDeletedFileHandler(DeletedFileHandler deletedFileHandler) {
+        this.deletedFileHandler = deletedFileHandler;
+    }
+
+    /**
+     * @return the number of new or changed files that the incremental walk
+     * has added so far
+     */
+    public long getAddedCount() {
+        return added.get();
+    }
+
+    /**
+     * @param walkerThreads number of threads that list directories; if this
+     *                      is more than one, or in incremental mode, the
+     *                      walk doesn't follow symbolic links
+     */
+    @Field
+    public void setWalkerThreads(int walkerThreads) {
+        this.walkerThreads = walkerThreads;
+    }
+
+    /**
+     * @param maxPendingDirectories maximum number of directory listings that
+     *                              the walker may read ahead
+     */
+    @Field
+    public void setMaxPendingDirectories(int maxPendingDirectories) {
+        this.maxPendingDirectories = maxPendingDirectories;
+    }
+
+    /**
+     * @param sortedWalk whether a walk with several threads adds the files in
+     *                   the order of their paths. The incremental walk is
+     *                   always sorted.
+     */
+    @Field
+    public void setSortedWalk(boolean sortedWalk) {
+        this.sortedWalk = sortedWalk;
+    }
+
     @Override
     public void startTotalCount() {
-        if (! countTotal) {
+        if (! countTotal || statePath != null) {
             return;
         }
         fileCountWorker.startTotalCount();
@@ -123,6 +312,9 @@ public class FileSystemPipesIterator extends PipesIterator
         if (! countTotal) {
             return TotalCountResult.UNSUPPORTED;
         }
+        if (statePath != null) {
+            return new TotalCountResult(found.get(), walkStatus);
+        }
         return fileCountWorker.getTotalCount();
     }
 
@@ -133,6 +325,65 @@ public class FileSystemPipesIterator extends PipesIterator
         }
     }
 
+    private class FileAdder implements ParallelDirectoryWalker.Visitor {
+
+        @Override
+        public boolean visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException, InterruptedException {
+            add(basePath.relativize(file).toString(), sizeOf(attrs));
+            return true;
+        }
+    }
+
+    private class ChangedFileAdder implements ParallelDirectoryWalker.Visitor {
+
+        private final FileStateStore state;
+
+        private ChangedFileAdder(FileStateStore state) {
+            this.state = state;
+        }
+
+        @Override
+        public boolean visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException, InterruptedException {
+            String relPath = basePath.relativize(file).toString();
+            addDeleted(relPath);
+            found.incrementAndGet();
+            Object fileKey = useFileKey ? attrs.fileKey() : null;
+            if (state.update(relPath, attrs.size(),
+                    attrs.lastModifiedTime().to(TimeUnit.MICROSECONDS),
+                    fileKey == null ? null : fileKey.toString())) {
+                add(relPath, sizeOf(attrs));
+            }
+            return true;
+        }
+
+        @Override
+        public void visitFailed(Path path, IOException e)
+                throws IOException, InterruptedException {
+            LOG.warn("couldn't read {}; keeping its previous state", path, e);
+            String relPath = basePath.relativize(path).toString();
+            addDeleted(relPath);
+            state.keep(relPath);
+        }
+
+        /**
+         * Hands on the tombstones of the files of the previous run that sort
+         * before the given path, or all that remain if it's <code>null</code>.
+         */
+        private void addDeleted(String relPath) throws IOException {
+            String deletedPath;
+            while ((deletedPath = state.pollDeleted(relPath)) != null) {
+                deleted.incrementAndGet();
+                if (emitTombstones) {
+                    Metadata metadata = new Metadata();
+                    metadata.set(DELETED, true);
+                    deletedFileHandler.deleted(newTuple(deletedPath, metadata));
+                }
+            }
+        }
+    }
+
     private class FSFileVisitor implements FileVisitor<Path> {
 
         private final String fetcherName;
@@ -157,7 +408,7 @@ public class FileSystemPipesIterator extends PipesIterator
                 ParseContext parseContext = new ParseContext();
                 parseContext.set(HandlerConfig.class, getHandlerConfig());
                 tryToAdd(new FetchEmitTuple(relPath, new FetchKey(fetcherName, relPath),
-                        new EmitKey(emitterName, relPath), new Metadata(), parseContext,
+                        new EmitKey(emitterName, relPath), sizeOf(attrs), parseContext,
                         getOnParseException()));
             } catch (TimeoutException e) {
                 throw new IOException(e);
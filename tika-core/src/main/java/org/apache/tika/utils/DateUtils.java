@@ -16,10 +16,22 @@
  */
 package org.apache.tika.utils;
 
-import java.text.DateFormat;
-import java.text.DateFormatSymbols;
-import java.text.SimpleDateFormat;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.format.SignStyle;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -50,21 +62,15 @@ public class DateUtils {
      * default mapping would result in "2012-02-16" for UTC-8).
      */
     public static final TimeZone MIDDAY = TimeZone.getTimeZone("GMT-12:00");
+
     /**
      * So we can return Date objects for these, this is the
      * list (in preference order) of the various ISO-8601
      * variants that we try when processing a date based
-     * property.
+     * property. The formatters are immutable, so the list
+     * can be shared by all threads.
      */
-    private final List<DateFormat> iso8601InputFormats = loadDateFormats();
-
-    private static DateFormat createDateFormat(String format, TimeZone timezone) {
-        final SimpleDateFormat sdf = new SimpleDateFormat(format, new DateFormatSymbols(Locale.US));
-        if (timezone != null) {
-            sdf.setTimeZone(timezone);
-        }
-        return sdf;
-    }
+    private static final List<InputFormat> ISO_8601_INPUT_FORMATS = loadDateFormats();
 
     /**
      * Returns a ISO 8601 representation of the given date in UTC,
@@ -120,20 +126,23 @@ public class DateUtils {
         return calendar.toInstant().truncatedTo(ChronoUnit.SECONDS).toString();
     }
 
-    private List<DateFormat> loadDateFormats() {
-        List<DateFormat> dateFormats = new ArrayList<>();
+    private static List<InputFormat> loadDateFormats() {
+        List<InputFormat> dateFormats = new ArrayList<>();
         // yyyy-mm-ddThh...
-        dateFormats.add(createDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", UTC));   // UTC/Zulu
-        dateFormats.add(createDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", null));    // With timezone
-        dateFormats.add(createDateFormat("yyyy-MM-dd'T'HH:mm:ss", null));     // Without timezone
+        dateFormats.add(new InputFormat('-', 'T', "'Z'", ZoneOffset.UTC));   // UTC/Zulu
+        dateFormats.add(new InputFormat('-', 'T', "Z", null));    // With timezone
+        dateFormats.add(new InputFormat('-', 'T', "z", null));    // With zone name, PST
+        dateFormats.add(new InputFormat('-', 'T', "zzzz", null)); // With full zone name
+        dateFormats.add(new InputFormat('-', 'T', null, null));   // Without timezone
         // yyyy-mm-dd hh...
-        dateFormats.add(createDateFormat("yyyy-MM-dd' 'HH:mm:ss'Z'", UTC));   // UTC/Zulu
-        dateFormats.add(createDateFormat("yyyy-MM-dd' 'HH:mm:ssZ", null));    // With timezone
-        dateFormats.add(createDateFormat("yyyy-MM-dd' 'HH:mm:ss", null));     // Without timezone
+        dateFormats.add(new InputFormat('-', ' ', "'Z'", ZoneOffset.UTC));   // UTC/Zulu
+        dateFormats.add(new InputFormat('-', ' ', "Z", null));    // With timezone
+        dateFormats.add(new InputFormat('-', ' ', "z", null));    // With zone name, PST
+        dateFormats.add(new InputFormat('-', ' ', "zzzz", null)); // With full zone name
+        dateFormats.add(new InputFormat('-', ' ', null, null));   // Without timezone
         // Date without time, set to Midday UTC
-        dateFormats.add(createDateFormat("yyyy-MM-dd", MIDDAY));       // Normal date format
-        dateFormats.add(createDateFormat("yyyy:MM:dd",
-                MIDDAY));              // Image (IPTC/EXIF) format
+        dateFormats.add(new InputFormat('-', MIDDAY.toZoneId()));   // Normal date format
+        dateFormats.add(new InputFormat(':', MIDDAY.toZoneId()));   // Image (IPTC/EXIF) format
 
         return dateFormats;
     }
@@ -141,28 +150,137 @@ public class DateUtils {
     /**
      * Tries to parse the date string; returns null if no parse was possible.
      * <p>
-     * This is not thread safe!  Wrap in synchronized or create new {@link DateUtils}
-     * for each class.
+     * Like {@link java.text.DateFormat#parse(String)}, which was used
+     * before, the formats are matched against the start of the string
+     * and out of range field values roll over into the next larger field.
+     * This method is thread safe and non-blocking.
      *
      * @param dateString
      * @return
      */
     public Date tryToParse(String dateString) {
         // Java doesn't like timezones in the form ss+hh:mm
-        // It only likes the hhmm form, without the colon
+        // It only likes the hhmm form, without the colon.
+        // GMT+hh:mm is a zone name, which keeps its colon
         int n = dateString.length();
-        if (dateString.charAt(n - 3) == ':' &&
-                (dateString.charAt(n - 6) == '+' || dateString.charAt(n - 6) == '-')) {
+        if (n >= 7 && dateString.charAt(n - 3) == ':' &&
+                (dateString.charAt(n - 6) == '+' || dateString.charAt(n - 6) == '-') &&
+                Character.isDigit(dateString.charAt(n - 7))) {
             dateString = dateString.substring(0, n - 3) + dateString.substring(n - 2);
         }
 
-        for (DateFormat df : iso8601InputFormats) {
-            try {
-                return df.parse(dateString);
-            } catch (java.text.ParseException e) {
-                //swallow
+        for (InputFormat format : ISO_8601_INPUT_FORMATS) {
+            Date date = format.parse(dateString);
+            if (date != null) {
+                return date;
             }
         }
         return null;
     }
+
+    /**
+     * One of the accepted ISO-8601 variants, with the time zone to assume
+     * when the string doesn't specify one.
+     */
+    private static final class InputFormat {
+
+        private final DateTimeFormatter formatter;
+
+        /**
+         * Zone for strings without an offset, or <code>null</code> for
+         * the system default.
+         */
+        private final ZoneId zone;
+
+        private final boolean dateOnly;
+
+        /**
+         * Date and time format, yyyy-MM-dd'T'HH:mm:ss and the like.
+         *
+         * @param dateSeparator between the date fields
+         * @param separator     between the date and the time
+         * @param offset        offset pattern, or <code>null</code> if none. Like
+         *                      in a {@link java.text.SimpleDateFormat}, "Z" is an
+         *                      RFC 822 offset, "z" a short zone name such as PST
+         *                      or GMT+01:00, and "zzzz" a full zone name
+         * @param zone          time zone if not given by the offset pattern
+         */
+        InputFormat(char dateSeparator, char separator, String offset, ZoneId zone) {
+            DateTimeFormatterBuilder builder = dateBuilder(dateSeparator)
+                    .appendLiteral(separator)
+                    .appendValue(ChronoField.HOUR_OF_DAY, 1, 10, SignStyle.NORMAL)
+                    .appendLiteral(':')
+                    .appendValue(ChronoField.MINUTE_OF_HOUR, 1, 10, SignStyle.NORMAL)
+                    .appendLiteral(':')
+                    .appendValue(ChronoField.SECOND_OF_MINUTE, 1, 10, SignStyle.NORMAL);
+            if ("'Z'".equals(offset)) {
+                builder.appendLiteral('Z');
+            } else if ("z".equals(offset)) {
+                builder.appendZoneText(TextStyle.SHORT);
+            } else if ("zzzz".equals(offset)) {
+                builder.appendZoneText(TextStyle.FULL);
+            } else if (offset != null) {
+                builder.appendOffset("+HHMM", "+0000");
+            }
+            this.formatter = builder.toFormatter(Locale.US)
+                    .withResolverStyle(ResolverStyle.LENIENT);
+            this.zone = zone;
+            this.dateOnly = false;
+        }
+
+        /**
+         * Date only format, yyyy-MM-dd and the like.
+         *
+         * @param dateSeparator between the date fields
+         * @param zone          time zone of the start of the day
+         */
+        InputFormat(char dateSeparator, ZoneId zone) {
+            this.formatter = dateBuilder(dateSeparator).toFormatter(Locale.US)
+                    .withResolverStyle(ResolverStyle.LENIENT);
+            this.zone = zone;
+            this.dateOnly = true;
+        }
+
+        private static DateTimeFormatterBuilder dateBuilder(char separator) {
+            return new DateTimeFormatterBuilder()
+                    .appendValue(ChronoField.YEAR, 1, 10, SignStyle.NORMAL)
+                    .appendLiteral(separator)
+                    .appendValue(ChronoField.MONTH_OF_YEAR, 1, 10, SignStyle.NORMAL)
+                    .appendLiteral(separator)
+                    .appendValue(ChronoField.DAY_OF_MONTH, 1, 10, SignStyle.NORMAL);
+        }
+
+        /**
+         * @return parsed date, or <code>null</code> if the start of the
+         * string doesn't match this format
+         */
+        Date parse(String string) {
+            // DateFormat skipped leading whitespace, so we do too
+            int start = 0;
+            while (start < string.length() && Character.isWhitespace(string.charAt(start))) {
+                start++;
+            }
+            // Check for a match first, which unlike parse() doesn't
+            // throw an exception if there is none
+            if (formatter.parseUnresolved(string, new ParsePosition(start)) == null) {
+                return null;
+            }
+            try {
+                TemporalAccessor parsed = formatter.parse(string, new ParsePosition(start));
+                ZonedDateTime dateTime;
+                ZoneId parsedZone = parsed.query(TemporalQueries.zone());
+                if (dateOnly) {
+                    dateTime = LocalDate.from(parsed).atStartOfDay(zone);
+                } else if (parsedZone != null) {
+                    dateTime = LocalDateTime.from(parsed).atZone(parsedZone);
+                } else {
+                    dateTime = LocalDateTime.from(parsed)
+                            .atZone(zone != null ? zone : ZoneId.systemDefault());
+                }
+                return Date.from(dateTime.toInstant());
+            } catch (DateTimeException | ArithmeticException e) {
+                return null;
+            }
+        }
+    }
 }
@@ -20,6 +20,7 @@ import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_16BE;
 import static java.nio.charset.StandardCharsets.UTF_16LE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.BufferedInputStream;
@@ -205,6 +206,35 @@ public class MagicDetectorTest {
         assertDetect(detector, testMT, data.getBytes(US_ASCII));
     }
 
+    @Test
+    public void testRequiredLiteral() throws Exception {
+        MediaType testMT = new MediaType("application", "test");
+        assertLiteral("%PDF-", MagicDetector.parse(testMT, "string", "0", "%PDF-", null));
+        assertLiteral("ab", MagicDetector.parse(testMT, "string", "0", "abcd", "0xFFFF00FF"));
+        assertLiteral("abc", MagicDetector.parse(testMT, "stringignorecase", "0:10", "ABC", null));
+        assertLiteral(null, MagicDetector.parse(testMT, "string", "0", "abc", "0x00FF"));
+
+        assertEquals("%AI5_FileFormat ", literal("[\\r\\n]%AI5_FileFormat [1-4][\\r\\n]"));
+        assertEquals("SECTION", literal("(999\\r?\\n[^\\r\\n]{0,64}\\s+)?0\\r?\\nSECTION\\r?\\n"));
+        assertEquals("<html", literal("(?s)\\s*<htmlx?"));
+        assertEquals("ab", literal("ab+cd*e?"));
+        assertEquals("longer", literal("x\\x41longer\\.y"));
+        assertNull(literal("(?i)<html"));
+        assertNull(literal("abc|def"));
+        assertNull(literal("\\Qabc\\E"));
+        assertNull(literal("[a-z]+"));
+    }
+
+    private static String literal(String regex) {
+        byte[] literal = MagicDetector.getRequiredLiteral(regex);
+        return literal == null ? null : new String(literal, US_ASCII);
+    }
+
+    private static void assertLiteral(String expected, MagicDetector detector) {
+        byte[] literal = detector.getRequiredLiteral();
+        assertEquals(expected, literal == null ? null : new String(literal, US_ASCII));
+    }
+
     private void assertDetect(Detector detector, MediaType type, String data) {
         byte[] bytes = data.getBytes(US_ASCII);
         assertDetect(detector, type, bytes);
@@ -220,6 +250,11 @@ public class MagicDetectorTest {
                 assertEquals(aByte, (byte) stream.read());
             }
             assertEquals(-1, stream.read());
+
+            // The byte array variant must agree with the stream one
+            if (detector instanceof MagicDetector) {
+                assertEquals(type, ((MagicDetector) detector).detect(bytes));
+            }
         } catch (IOException e) {
             fail("Unexpected exception from MagicDetector");
         }
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ParallelDirectoryWalkerTest {
+
+    private static final Comparator<Path> ORDER =
+            Comparator.comparing(p -> p.getFileName().toString());
+
+    @TempDir
+    private Path root;
+
+    private List<Path> sorted;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        sorted = new ArrayList<>();
+        create(root, 3);
+    }
+
+    //files and directories interleaved by name, depth first
+    private void create(Path dir, int depth) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            Path file = Files.createFile(dir.resolve(i + ".txt"));
+            sorted.add(file);
+            if (depth > 0) {
+                create(Files.createDirectory(dir.resolve(i + "d")), depth - 1);
+            }
+        }
+    }
+
+    @Test
+    public void testOrdered() throws Exception {
+        for (int pending : new int[]{1, 3, 1000}) {
+            List<Path> visited = new ArrayList<>();
+            assertTrue(new ParallelDirectoryWalker(4, pending, ORDER).walk(root,
+                    (file, attrs) -> visited.add(file)));
+            assertEquals(sorted, visited);
+        }
+    }
+
+    @Test
+    public void testUnordered() throws Exception {
+        for (int pending : new int[]{1, 1000}) {
+            List<Path> visited = new ArrayList<>();
+            assertTrue(new ParallelDirectoryWalker(4, pending, null).walk(root,
+                    (file, attrs) -> visited.add(file)));
+            assertEquals(sorted.size(), visited.size());
+            assertEquals(new HashSet<>(sorted), new HashSet<>(visited));
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            Set<Path> files = walk.filter(Files::isRegularFile).collect(Collectors.toSet());
+            assertEquals(files, new HashSet<>(sorted));
+        }
+    }
+
+    @Test
+    public void testUnorderedWide() throws Exception {
+        Path wide = Files.createDirectory(root.resolve("wide"));
+        Set<Path> files = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            Path dir = Files.createDirectory(wide.resolve("d" + i));
+            files.add(Files.createFile(dir.resolve("f.txt")));
+            files.add(Files.createFile(Files.createDirectory(dir.resolve("sub"))
+                    .resolve("g.txt")));
+        }
+        //more subdirectories than permits, with a visitor that lags behind
+        Set<Path> visited = new HashSet<>();
+        assertTrue(new ParallelDirectoryWalker(4, 2, null).walk(wide, (file, attrs) -> {
+            if (visited.size() % 50 == 0) {
+                Thread.sleep(20);
+            }
+            return visited.add(file);
+        }));
+        assertEquals(files, visited);
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        for (Comparator<Path> order : Arrays.asList(ORDER, null)) {
+            List<Path> visited = new ArrayList<>();
+            assertFalse(new ParallelDirectoryWalker(2, 2, order).walk(root, (file, attrs) -> {
+                visited.add(file);
+                return visited.size() < 5;
+            }));
+            assertEquals(5, visited.size());
+        }
+    }
+
+    @Test
+    public void testFollowLinks() throws Exception {
+        Path target = Files.createDirectory(root.resolve("target"));
+        Path linked = Files.createFile(target.resolve("linked.txt"));
+        Path dir = Files.createDirectory(root.resolve("walked"));
+        Files.createSymbolicLink(dir.resolve("link"), target);
+        Files.createSymbolicLink(dir.resolve("loop"), root);
+        for (Comparator<Path> order : Arrays.asList(ORDER, null)) {
+            List<Path> visited = new ArrayList<>();
+            List<Path> failed = new ArrayList<>();
+            ParallelDirectoryWalker walker = new ParallelDirectoryWalker(2, 2, order);
+            ParallelDirectoryWalker.Visitor visitor = new ParallelDirectoryWalker.Visitor() {
+                @Override
+                public boolean visitFile(Path file, BasicFileAttributes attrs) {
+                    return visited.add(file);
+                }
+
+                @Override
+                public void visitFailed(Path path, IOException e) {
+                    assertTrue(e instanceof FileSystemLoopException);
+                    failed.add(path);
+                }
+            };
+            assertTrue(walker.walk(dir, visitor));
+            //links are visited as files by default
+            assertEquals(new HashSet<>(Arrays.asList(dir.resolve("link"), dir.resolve("loop"))),
+                    new HashSet<>(visited));
+
+            visited.clear();
+            walker.setFollowLinks(true);
+            assertTrue(walker.walk(dir, visitor));
+            assertEquals(List.of(dir.resolve("link").resolve(linked.getFileName())), visited);
+            assertEquals(List.of(dir.resolve("loop")), failed);
+        }
+    }
+
+    @Test
+    public void testLinkCycle() throws Exception {
+        //neither link leads to a directory that contains it, but each
+        //leads back to the directory that the other is in
+        Path cycle = Files.createDirectory(root.resolve("cycle"));
+        Path x = Files.createDirectory(cycle.resolve("x"));
+        Path y = Files.createDirectory(cycle.resolve("y"));
+        Files.createFile(x.resolve("x.txt"));
+        Files.createFile(y.resolve("y.txt"));
+        Files.createSymbolicLink(x.resolve("a"), y);
+        Files.createSymbolicLink(y.resolve("b"), x);
+        for (Comparator<Path> order : Arrays.asList(ORDER, null)) {
+            Set<Path> visited = new HashSet<>();
+            Set<Path> failed = new HashSet<>();
+            ParallelDirectoryWalker walker = new ParallelDirectoryWalker(2, 2, order);
+            walker.setFollowLinks(true);
+            assertTrue(walker.walk(cycle, new ParallelDirectoryWalker.Visitor() {
+                @Override
+                public boolean visitFile(Path file, BasicFileAttributes attrs) {
+                    return visited.add(file);
+                }
+
+                @Override
+                public void visitFailed(Path path, IOException e) {
+                    assertTrue(e instanceof FileSystemLoopException);
+                    failed.add(path);
+                }
+            }));
+            assertEquals(Set.of(x.resolve("x.txt"), x.resolve("a").resolve("y.txt"),
+                    y.resolve("y.txt"), y.resolve("b").resolve("x.txt")), visited);
+            assertEquals(Set.of(x.resolve("a").resolve("b"), y.resolve("b").resolve("a")),
+                    failed);
+        }
+    }
+
+    @Test
+    public void testMissingStart() {
+        assertThrows(IOException.class, () -> new ParallelDirectoryWalker(2, 2, ORDER)
+                .walk(root.resolve("missing"), (file, attrs) -> true));
+    }
+}
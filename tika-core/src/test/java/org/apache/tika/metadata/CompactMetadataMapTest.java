@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.writefilter.StandardWriteFilterFactory;
+
+public class CompactMetadataMapTest {
+
+    @AfterEach
+    public void tearDown() {
+        Metadata.setCompactStorage(false);
+    }
+
+    @Test
+    public void testSameAsHashMap() {
+        Random random = new Random(42);
+        CompactMetadataMap compact = new CompactMetadataMap();
+        Map<String, String[]> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            // Enough keys to switch between linear scans and the hash table
+            String key = "key" + random.nextInt(random.nextBoolean() ? 6 : 40);
+            int op = random.nextInt(10);
+            if (op < 4) {
+                String[] value = {"v" + i};
+                assertArrayEquals(expected.put(key, value), compact.put(key, value));
+            } else if (op < 7) {
+                String value = "a" + i;
+                String[] values = expected.get(key);
+                if (values == null) {
+                    expected.put(key, new String[]{value});
+                } else {
+                    String[] appended = new String[values.length + 1];
+                    System.arraycopy(values, 0, appended, 0, values.length);
+                    appended[values.length] = value;
+                    expected.put(key, appended);
+                }
+                compact.append(key, value);
+            } else if (op < 9) {
+                assertArrayEquals(expected.remove(key), compact.remove(key));
+            } else {
+                Iterator<Map.Entry<String, String[]>> it = compact.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, String[]> entry = it.next();
+                    if (random.nextInt(10) == 0) {
+                        it.remove();
+                        expected.remove(entry.getKey());
+                    }
+                }
+            }
+            assertEquals(expected.size(), compact.size());
+            assertArrayEquals(expected.get(key), compact.get(key));
+            assertEquals(expected.containsKey(key), compact.containsKey(key));
+        }
+        assertEquals(expected.keySet(), compact.keySet());
+        for (Map.Entry<String, String[]> entry : compact.entrySet()) {
+            assertArrayEquals(expected.get(entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Test
+    public void testValuesNotShared() {
+        CompactMetadataMap compact = new CompactMetadataMap();
+        compact.append("key", "a");
+        compact.append("key", "b");
+        String[] values = compact.get("key");
+        assertArrayEquals(new String[]{"a", "b"}, values);
+        compact.append("key", "c");
+        assertArrayEquals(new String[]{"a", "b"}, values);
+        assertArrayEquals(new String[]{"a", "b", "c"}, compact.get("key"));
+    }
+
+    @Test
+    public void testInternedKeys() {
+        CompactMetadataMap a = new CompactMetadataMap();
+        CompactMetadataMap b = new CompactMetadataMap();
+        a.put(new String("X-Custom:key"), new String[]{"a"});
+        b.put(new String("X-Custom:key"), new String[]{"b"});
+        assertSame(a.keySet().iterator().next(), b.keySet().iterator().next());
+    }
+
+    @Test
+    public void testMetadata() throws Exception {
+        Metadata.setCompactStorage(true);
+        Metadata compact = new Metadata();
+        Metadata.setCompactStorage(false);
+        Metadata plain = new Metadata();
+        for (Metadata m : new Metadata[]{compact, plain}) {
+            m.add(TikaCoreProperties.SUBJECT, "one");
+            m.add(TikaCoreProperties.SUBJECT, "two");
+            m.set(TikaCoreProperties.TITLE, "title");
+            m.add("custom", "a");
+            m.add("custom", "b");
+            m.remove("custom");
+            m.set(Metadata.CONTENT_TYPE, "text/plain");
+        }
+        assertEquals(plain, compact);
+        assertEquals(plain.hashCode(), compact.hashCode());
+        assertArrayEquals(new String[]{"one", "two"}, compact.getValues(TikaCoreProperties.SUBJECT));
+        assertFalse(compact.isMultiValued(TikaCoreProperties.TITLE));
+        assertTrue(compact.isMultiValued(TikaCoreProperties.SUBJECT));
+        assertNull(compact.get("custom"));
+
+        // Serialized like a HashMap based instance
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(compact);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(plain, in.readObject());
+        }
+    }
+
+    @Test
+    public void testWriteFilter() throws Exception {
+        Metadata.setCompactStorage(true);
+        Metadata metadata = new Metadata();
+        metadata.add("custom", "a");
+        metadata.add("custom", "b");
+        StandardWriteFilterFactory factory = new StandardWriteFilterFactory();
+        factory.setMaxValuesPerField(2);
+        metadata.setMetadataWriteFilter(factory.newInstance());
+        metadata.add("custom", "c");
+        assertArrayEquals(new String[]{"a", "b"}, metadata.getValues("custom"));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.metadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tika.mime.MediaType;
+
+/**
+ * Measures the throughput of the operations that every parse thread runs
+ * through - media type parsing, property lookups and date parsing - with
+ * an increasing number of threads. Without contention the throughput
+ * grows with the number of threads, up to the number of cores.
+ * <p>
+ * Optional arguments: the maximum number of threads (default: twice the
+ * number of processors) and the duration of each run in milliseconds
+ * (default: 2000).
+ */
+public class ContentionBenchmark {
+
+    private static final String[] MEDIA_TYPES = {"text/plain", "application/pdf",
+            "text/html; charset=UTF-8", "application/vnd.ms-excel", "image/png",
+            "application/xhtml+xml", "message/rfc822", "application/zip"};
+
+    private static final String[] DATES = {"2012-02-03T10:11:12Z", "2012-02-03T10:11:12+05:30",
+            "2012-02-03 10:11:12", "2012-02-03", "2012:02:03"};
+
+    private interface Operation {
+        int run(int i);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) :
+                2 * Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+
+        benchmark("MediaType.parse", maxThreads, millis,
+                i -> MediaType.parse(MEDIA_TYPES[i % MEDIA_TYPES.length]).hashCode());
+        benchmark("Property.get", maxThreads, millis,
+                i -> Property.get(TikaCoreProperties.CREATED.getName()).hashCode());
+        benchmark("Metadata.getDate", maxThreads, millis, i -> {
+            Metadata m = new Metadata();
+            m.set(TikaCoreProperties.CREATED, DATES[i % DATES.length]);
+            return m.getDate(TikaCoreProperties.CREATED).hashCode();
+        });
+    }
+
+    private static void benchmark(String name, int maxThreads, long millis,
+                                  Operation operation) throws Exception {
+        // Warm up
+        run(1, millis / 2, operation);
+        System.out.println(name);
+        double single = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double opsPerMs = (double) run(threads, millis, operation) / millis;
+            if (threads == 1) {
+                single = opsPerMs;
+            }
+            System.out.printf(Locale.ROOT, "  %3d threads: %12.1f ops/ms (%5.2fx)%n", threads,
+                    opsPerMs, opsPerMs / single);
+        }
+    }
+
+    private static long run(int threads, long millis, Operation operation)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong total = new AtomicLong();
+        long[] sink = new long[1];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long deadline = System.nanoTime() + millis * 1000000L;
+                long count = 0;
+                long hash = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 100; i++) {
+                        hash += operation.run(seed + i);
+                    }
+                    count += 100;
+                }
+                total.addAndGet(count);
+                if (hash == 42) {
+                    // Keeps the results alive
+                    sink[0] = hash;
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return total.get();
+    }
+}
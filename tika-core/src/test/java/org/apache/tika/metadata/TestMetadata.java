@@ -366,6 +366,57 @@ public class TestMetadata extends TikaTest {
         assertEquals(12 * hour, meta.getDate(TikaCoreProperties.CREATED).getTime());
     }
 
+    /**
+     * The date parsing keeps the leniency of the {@link DateFormat}s
+     * that were used before: trailing text is ignored, and out of range
+     * values roll over.
+     */
+    @Test
+    public void testGetDateLenient() {
+        Metadata meta = new Metadata();
+        long hour = 60 * 60 * 1000;
+
+        meta.set(TikaCoreProperties.CREATED, "1970-01-01 and some text");
+        assertEquals(12 * hour, meta.getDate(TikaCoreProperties.CREATED).getTime());
+
+        meta.set(TikaCoreProperties.CREATED, "1969-12-32");
+        assertEquals(12 * hour, meta.getDate(TikaCoreProperties.CREATED).getTime());
+
+        meta.set(TikaCoreProperties.CREATED, "1970-1-1T0:0:61Z");
+        assertEquals(61000, meta.getDate(TikaCoreProperties.CREATED).getTime());
+
+        meta.set(TikaCoreProperties.CREATED, "1970");
+        assertNull(meta.getDate(TikaCoreProperties.CREATED));
+    }
+
+    /**
+     * Like the "Z" pattern of the {@link DateFormat}s that were used
+     * before, general time zones are accepted as well as offsets.
+     */
+    @Test
+    public void testGetDateZoneNames() {
+        Metadata meta = new Metadata();
+        long hour = 60 * 60 * 1000;
+
+        meta.set(TikaCoreProperties.CREATED, "1970-01-01T00:00:01PST");
+        assertEquals(8 * hour + 1000, meta.getDate(TikaCoreProperties.CREATED).getTime());
+
+        meta.set(TikaCoreProperties.CREATED, "1970-01-01 00:00:01PST");
+        assertEquals(8 * hour + 1000, meta.getDate(TikaCoreProperties.CREATED).getTime());
+
+        meta.set(TikaCoreProperties.CREATED, "1970-01-01T01:00:01GMT+01:00");
+        assertEquals(1000, meta.getDate(TikaCoreProperties.CREATED).getTime());
+
+        meta.set(TikaCoreProperties.CREATED, "1970-01-01T00:00:01GMT");
+        assertEquals(1000, meta.getDate(TikaCoreProperties.CREATED).getTime());
+
+        meta.set(TikaCoreProperties.CREATED, "1970-01-01T00:00:01UTC");
+        assertEquals(1000, meta.getDate(TikaCoreProperties.CREATED).getTime());
+
+        meta.set(TikaCoreProperties.CREATED, "1970-01-01T00:00:01Pacific Standard Time");
+        assertEquals(8 * hour + 1000, meta.getDate(TikaCoreProperties.CREATED).getTime());
+    }
+
     /**
      * Some documents, like jpegs, might have date in unspecified time zone
      * which should be handled like strings but verified to have parseable ISO 8601 format
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.mime;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.tika.config.TikaConfig;
+
+/**
+ * Compares the compiled {@link MagicIndex} with the linear scan over all
+ * magics. Pass directories or files to use as the corpus; the default is
+ * the test documents of the parsers module.
+ */
+public class MagicIndexBenchmark {
+
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        MimeTypes mimeTypes = TikaConfig.getDefaultConfig().getMimeRepository();
+        List<byte[]> headers = new ArrayList<>();
+        if (args.length > 0) {
+            for (String arg : args) {
+                collect(mimeTypes, new File(arg), headers);
+            }
+        } else {
+            collect(mimeTypes, new File("../tika-parsers/src/test/resources/test-documents"),
+                    headers);
+            collect(mimeTypes, new File("src/test/resources/org/apache/tika/mime"), headers);
+        }
+        MagicIndex index = mimeTypes.getMagicIndex();
+
+        // Warm up both paths before timing them
+        run(index, headers, false, ROUNDS / 10);
+        run(index, headers, true, ROUNDS / 10);
+
+        long linear = run(index, headers, false, ROUNDS);
+        long compiled = run(index, headers, true, ROUNDS);
+        long n = (long) ROUNDS * headers.size();
+        System.out.printf(Locale.ROOT, "%d headers, %d rounds%n", headers.size(), ROUNDS);
+        System.out.printf(Locale.ROOT, "linear scan:   %8dns per detection%n", linear / n);
+        System.out.printf(Locale.ROOT, "compiled:      %8dns per detection%n", compiled / n);
+        System.out.printf(Locale.ROOT, "speedup:       %8.2fx%n", (double) linear / compiled);
+    }
+
+    private static long run(MagicIndex index, List<byte[]> headers, boolean compiled,
+                            int rounds) {
+        int matches = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (byte[] header : headers) {
+                matches += compiled ? index.eval(header).size() : index.evalAll(header).size();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (matches < 0) {
+            // Keeps the results alive
+            System.out.println(matches);
+        }
+        return elapsed;
+    }
+
+    private static void collect(MimeTypes mimeTypes, File file, List<byte[]> headers)
+            throws Exception {
+        if (file.isHidden()) {
+            // ignore
+        } else if (file.isFile()) {
+            try (InputStream input = Files.newInputStream(file.toPath())) {
+                byte[] header = mimeTypes.readMagicHeader(input);
+                if (header.length > 0) {
+                    headers.add(header);
+                }
+            }
+        } else if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collect(mimeTypes, child, headers);
+                }
+            }
+        }
+    }
+}
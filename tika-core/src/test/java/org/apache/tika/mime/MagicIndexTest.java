@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.mime;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.config.TikaConfig;
+
+/**
+ * Checks that the compiled {@link MagicIndex} gives exactly the same
+ * results as evaluating every magic in turn.
+ */
+public class MagicIndexTest {
+
+    private static MimeTypes MIME_TYPES;
+
+    @BeforeAll
+    public static void setUp() {
+        MIME_TYPES = TikaConfig.getDefaultConfig().getMimeRepository();
+    }
+
+    @Test
+    public void testTestFiles() throws Exception {
+        File dir = new File(MagicIndexTest.class.getResource("/org/apache/tika/mime").toURI());
+        File[] files = dir.listFiles();
+        assertFalse(files == null || files.length == 0);
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            byte[] data;
+            try (InputStream stream = Files.newInputStream(file.toPath())) {
+                data = MIME_TYPES.readMagicHeader(stream);
+            }
+            // Also try truncated headers, which exercise the short-data paths
+            for (int length = 1; length < data.length; length *= 2) {
+                assertConsistent(file.getName(), Arrays.copyOf(data, length));
+            }
+            assertConsistent(file.getName(), data);
+        }
+    }
+
+    @Test
+    public void testSignatures() throws Exception {
+        String[] prefixes = {"%PDF-1.4\n", "PK\u0003\u0004", "<?xml version=\"1.0\"?><html>",
+                "<!DOCTYPE html><html>", "GIF89a", "\u0089PNG\r\n\u001a\n", "{\\rtf1",
+                "From: someone@example.com\r\n", "#!/bin/sh\n",
+                "\u00d0\u00cf\u0011\u00e0\u00a1\u00b1\u001a\u00e1",
+                "Received: from", "BZh91AY&SY", "\u001f\u008b\b", "RIFF\u0000\u0000\u0000\u0000WAVE"};
+        Random random = new Random(42);
+        for (String prefix : prefixes) {
+            byte[] head = prefix.getBytes(ISO_8859_1);
+            for (int length : new int[]{head.length, 64, 1024}) {
+                byte[] data = new byte[Math.max(length, head.length)];
+                random.nextBytes(data);
+                System.arraycopy(head, 0, data, 0, head.length);
+                assertConsistent(prefix, data);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomData() throws Exception {
+        Random random = new Random(1234);
+        for (int i = 0; i < 200; i++) {
+            byte[] data = new byte[1 + random.nextInt(4096)];
+            random.nextBytes(data);
+            if (i % 2 == 0) {
+                // Mostly printable, like text files
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = (byte) (0x20 + (data[j] & 0x3f));
+                }
+            }
+            assertConsistent("random " + i, data);
+        }
+    }
+
+    @Test
+    public void testEmbeddedStrings() throws Exception {
+        // Strings that magics look for within a range of offsets, or
+        // regardless of case, or as part of a regular expression
+        String[] strings = {"<html xmlns=", "<HTML", "\nMessage-ID:", "\nmessage-id: ",
+                "Content-Type: text/plain", "\r%AI5_FileFormat 3\r", "0\nSECTION\n2\nHEADER\n",
+                "User-Agent: *\nDisallow: /", "%PDF-1.7", "W\u0000o\u0000r\u0000d\u0000"};
+        Random random = new Random(5678);
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(ISO_8859_1);
+            for (int i = 0; i < 20; i++) {
+                byte[] data = new byte[bytes.length + random.nextInt(3000)];
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = (byte) (0x20 + random.nextInt(0x5f));
+                }
+                int offset = random.nextInt(data.length - bytes.length + 1);
+                System.arraycopy(bytes, 0, data, offset, bytes.length);
+                assertConsistent(string + " at " + offset, data);
+            }
+        }
+    }
+
+    private void assertConsistent(String name, byte[] data) {
+        MagicIndex index = MIME_TYPES.getMagicIndex();
+        List<MimeType> expected = index.evalAll(data);
+        assertEquals(expected, index.eval(data), name + " (" + data.length + " bytes)");
+    }
+}
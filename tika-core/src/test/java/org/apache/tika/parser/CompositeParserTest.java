@@ -18,6 +18,7 @@ package org.apache.tika.parser;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.io.ByteArrayInputStream;
 import java.util.Collections;
@@ -150,4 +151,57 @@ public class CompositeParserTest {
         assertEquals("True", metadata.get("BMP"));
         assertEquals("True", metadata.get("Alias"));
     }
+
+    @Test
+    @SuppressWarnings("serial")
+    public void testDispatchTableUpdates() throws Exception {
+        MediaType html = MediaType.text("html");
+        Parser plain = new EmptyParser() {
+            public Set<MediaType> getSupportedTypes(ParseContext context) {
+                return Collections.singleton(MediaType.TEXT_PLAIN);
+            }
+        };
+        // Supports HTML only if asked to by the parse context
+        Parser optional = new EmptyParser() {
+            public Set<MediaType> getSupportedTypes(ParseContext context) {
+                return context.get(String.class) != null ? Collections.singleton(html) :
+                        Collections.emptySet();
+            }
+        };
+        CompositeParser composite =
+                new CompositeParser(MediaTypeRegistry.getDefaultRegistry(), plain, optional);
+        ParseContext context = new ParseContext();
+
+        Set<MediaType> types = composite.getSupportedTypes(context);
+        assertEquals(Collections.singleton(MediaType.TEXT_PLAIN), types);
+        assertSame(types, composite.getSupportedTypes(context));
+        assertSame(plain, composite.getParser(metadata("text/plain"), context));
+        // Subtypes are resolved through the registry
+        assertSame(plain, composite.getParser(metadata("text/html; charset=UTF-8"), context));
+        assertSame(composite.getFallback(), composite.getParser(metadata("image/png"), context));
+        assertSame(composite.getFallback(), composite.getParser(new Metadata(), context));
+
+        // A change in the types a component parser supports is picked up
+        context.set(String.class, "html");
+        assertEquals(2, composite.getSupportedTypes(context).size());
+        assertSame(optional, composite.getParser(metadata("text/html; charset=UTF-8"), context));
+        assertSame(plain, composite.getParser(metadata("text/plain"), context));
+
+        // As is a change of the component parsers
+        composite.setParsers(Collections.singletonMap(MediaType.image("png"), plain));
+        assertSame(composite.getFallback(), composite.getParser(metadata("text/plain"), context));
+        assertEquals(plain, ((ParserDecorator) composite
+                .getParser(metadata("image/png"), context)).getWrappedParser());
+
+        // The returned mapping is a copy that may be modified freely
+        Map<MediaType, Parser> parsers = composite.getParsers(context);
+        parsers.clear();
+        assertEquals(1, composite.getParsers(context).size());
+    }
+
+    private static Metadata metadata(String contentType) {
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, contentType);
+        return metadata;
+    }
 }
@@ -19,7 +19,11 @@ package org.apache.tika.pipes;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.junit.jupiter.api.Assertions;
@@ -27,6 +31,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.xml.sax.SAXException;
 
+import org.apache.tika.config.TikaTaskTimeout;
 import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
@@ -39,6 +44,7 @@ import org.apache.tika.metadata.listfilter.MetadataListFilter;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.emitter.EmitKey;
 import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.pipes.fetcher.MockAsyncFetcher;
 
 public class PipesClientTest {
     String fetcherName = "fs";
@@ -94,4 +100,227 @@ public class PipesClientTest {
         Metadata metadata = pipesResult.getEmitData().getMetadataList().get(0);
         Assertions.assertEquals(4, Integer.parseInt(metadata.get("X-TIKA:attachment_count")));
     }
+
+    @Test
+    public void testConcurrentParses() throws Exception {
+        PipesConfig pipesConfig = PipesConfig.load(Paths.get("src", "test", "resources", "org",
+                "apache", "tika", "pipes", "tika-sample-config.xml"));
+        pipesConfig.setMaxConcurrentParses(3);
+        pipesConfig.setTimeoutMillis(4000);
+        List<PipesResult> results = processConcurrently(pipesConfig,
+                "mock/hang.xml", "mock/embedded.xml", "mock/embedded.xml", "mock/embedded.xml");
+        Assertions.assertEquals(PipesResult.STATUS.TIMEOUT, results.get(0).getStatus());
+        for (int i = 1; i < results.size(); i++) {
+            Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, results.get(i).getStatus());
+            Assertions.assertEquals(5, results.get(i).getEmitData().getMetadataList().size());
+        }
+    }
+
+    @Test
+    public void testIsolatedMediaTypes() throws Exception {
+        PipesConfig pipesConfig = PipesConfig.load(Paths.get("src", "test", "resources", "org",
+                "apache", "tika", "pipes", "tika-sample-config.xml"));
+        pipesConfig.setMaxConcurrentParses(2);
+        pipesConfig.setTimeoutMillis(4000);
+        pipesConfig.setIsolatedMediaTypes(List.of("application/mock+xml"));
+        List<PipesResult> results = processConcurrently(pipesConfig,
+                "mock/hang.xml", "mock/embedded.xml", "mock/embedded.xml");
+        Assertions.assertEquals(PipesResult.STATUS.TIMEOUT, results.get(0).getStatus());
+        Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, results.get(1).getStatus());
+        Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, results.get(2).getStatus());
+    }
+
+    @Test
+    public void testIsolatedCrash() throws Exception {
+        PipesConfig pipesConfig = PipesConfig.load(Paths.get("src", "test", "resources", "org",
+                "apache", "tika", "pipes", "tika-sample-config.xml"));
+        pipesConfig.setMaxConcurrentParses(3);
+        pipesConfig.setIsolatedMediaTypes(List.of("application/mock+xml"));
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try (PipesClient client = new PipesClient(pipesConfig)) {
+            //start the server, so that the pdfs are sent while the isolated file is parsed
+            Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS,
+                    client.process(tuple(testPdfFile)).getStatus());
+            List<Future<PipesResult>> futures = new ArrayList<>();
+            for (String file : new String[]{"mock/system_exit.xml", testPdfFile, testPdfFile}) {
+                futures.add(executorService.submit(() -> client.process(tuple(file))));
+                Thread.sleep(200);
+            }
+            //the pdfs wait for the isolated parse, and are sent again after it takes the server down
+            Assertions.assertEquals(PipesResult.STATUS.UNSPECIFIED_CRASH, futures.get(0).get().getStatus());
+            Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, futures.get(1).get().getStatus());
+            Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, futures.get(2).get().getStatus());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private FetchEmitTuple tuple(String file) {
+        return new FetchEmitTuple(file, new FetchKey(fetcherName, file), new EmitKey(),
+                new Metadata(), new ParseContext(), FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP);
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        PipesConfig pipesConfig = PipesConfig.load(Paths.get("src", "test", "resources", "org",
+                "apache", "tika", "pipes", "tika-sample-config.xml"));
+        pipesConfig.setPipelineDepth(2);
+        pipesConfig.setTimeoutMillis(4000);
+        //the other files are fetched while the first one is parsed, and
+        //waiting for the parse slot doesn't count towards their timeouts
+        List<PipesResult> results = processConcurrently(pipesConfig,
+                "mock/hang.xml", "mock/embedded.xml", "mock/embedded.xml");
+        Assertions.assertEquals(PipesResult.STATUS.TIMEOUT, results.get(0).getStatus());
+        for (int i = 1; i < results.size(); i++) {
+            Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, results.get(i).getStatus());
+            Assertions.assertEquals(5, results.get(i).getEmitData().getMetadataList().size());
+        }
+    }
+
+    @Test
+    public void testPipelinedEmit() throws Exception {
+        PipesConfig pipesConfig = PipesConfig.load(Paths.get("src", "test", "resources", "org",
+                "apache", "tika", "pipes", "tika-slow-emitter-config.xml"));
+        pipesConfig.setPipelineDepth(2);
+        //the emits run in the background, one at a time, while the next
+        //files are parsed, and each call gets the status of its own emit
+        String[] emitKeys = {"a", "fail-b", "c", "d"};
+        ExecutorService executorService = Executors.newFixedThreadPool(emitKeys.length);
+        try (PipesClient client = new PipesClient(pipesConfig)) {
+            List<Future<PipesResult>> futures = new ArrayList<>();
+            for (String emitKey : emitKeys) {
+                futures.add(executorService.submit(() -> client.process(
+                        new FetchEmitTuple(emitKey, new FetchKey(fetcherName, "mock/embedded.xml"),
+                                new EmitKey("slow", emitKey), new Metadata(), new ParseContext(),
+                                FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP))));
+            }
+            for (int i = 0; i < emitKeys.length; i++) {
+                PipesResult result = futures.get(i).get();
+                if (emitKeys[i].startsWith("fail")) {
+                    Assertions.assertEquals(PipesResult.STATUS.EMIT_EXCEPTION, result.getStatus());
+                    Assertions.assertTrue(result.getMessage().contains("failed to emit fail-b"),
+                            result.getMessage());
+                } else {
+                    Assertions.assertEquals(PipesResult.STATUS.EMIT_SUCCESS, result.getStatus(),
+                            emitKeys[i]);
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTaskTimeout() throws Exception {
+        //a tuple's task timeout cuts its parse short of the pipes timeoutMillis
+        for (int maxConcurrentParses : new int[]{1, 2}) {
+            PipesConfig pipesConfig = PipesConfig.load(Paths.get("src", "test", "resources", "org",
+                    "apache", "tika", "pipes", "tika-sample-config.xml"));
+            pipesConfig.setMaxConcurrentParses(maxConcurrentParses);
+            ParseContext parseContext = new ParseContext();
+            parseContext.set(TikaTaskTimeout.class, new TikaTaskTimeout(2000));
+            try (PipesClient client = new PipesClient(pipesConfig)) {
+                long start = System.currentTimeMillis();
+                PipesResult pipesResult = client.process(
+                        new FetchEmitTuple("mock/hang.xml", new FetchKey(fetcherName, "mock/hang.xml"),
+                                new EmitKey(), new Metadata(), parseContext,
+                                FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP));
+                Assertions.assertEquals(PipesResult.STATUS.TIMEOUT, pipesResult.getStatus());
+                Assertions.assertTrue(System.currentTimeMillis() - start < 30000);
+            }
+        }
+    }
+
+    @Test
+    public void testPipelinedAsyncFetch() throws Exception {
+        PipesConfig pipesConfig = PipesConfig.load(Paths.get("src", "test", "resources", "org",
+                "apache", "tika", "pipes", "tika-async-fetcher-config.xml"));
+        pipesConfig.setPipelineDepth(2);
+        String[] files = {"mock/embedded.xml", "mock/embedded.xml", "mock/embedded.xml",
+                "mock/does-not-exist.xml"};
+        ExecutorService executorService = Executors.newFixedThreadPool(files.length);
+        try (PipesClient client = new PipesClient(pipesConfig)) {
+            List<Future<PipesResult>> futures = new ArrayList<>();
+            for (String file : files) {
+                futures.add(executorService.submit(() -> client.process(
+                        new FetchEmitTuple(file, new FetchKey("async", file), new EmitKey(),
+                                new Metadata(), new ParseContext(),
+                                FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP))));
+            }
+            //the fetcher's blocking fetch throws, so these went through its fetchAsync
+            for (int i = 0; i < 3; i++) {
+                PipesResult result = futures.get(i).get();
+                Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, result.getStatus());
+                Assertions.assertEquals(5, result.getEmitData().getMetadataList().size());
+                Assertions.assertEquals("true", result.getEmitData().getMetadataList().get(0)
+                        .get(MockAsyncFetcher.ASYNC_FETCHED));
+            }
+            Assertions.assertEquals(PipesResult.STATUS.FETCH_EXCEPTION, futures.get(3).get().getStatus());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private List<PipesResult> processConcurrently(PipesConfig pipesConfig, String... files)
+            throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(files.length);
+        try (PipesClient client = new PipesClient(pipesConfig)) {
+            List<Future<PipesResult>> futures = new ArrayList<>();
+            for (String file : files) {
+                futures.add(executorService.submit(() -> client.process(
+                        new FetchEmitTuple(file, new FetchKey(fetcherName, file), new EmitKey(),
+                                new Metadata(), new ParseContext(),
+                                FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP))));
+                //the first file is sent first
+                Thread.sleep(200);
+            }
+            List<PipesResult> results = new ArrayList<>();
+            for (Future<PipesResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWarmSpare() throws Exception {
+        PipesConfig pipesConfig = PipesConfig.load(Paths.get("src", "test", "resources", "org",
+                "apache", "tika", "pipes", "tika-sample-config.xml"));
+        pipesConfig.setMaxFilesProcessedPerProcess(1);
+        pipesConfig.setWarmSpare(true);
+        List<ServerRestartResult> restarts = new ArrayList<>();
+        PipesReporter reporter = new PipesReporter() {
+            @Override
+            public void report(FetchEmitTuple t, PipesResult result, long elapsed) {
+            }
+
+            @Override
+            public void report(ServerRestartResult serverRestartResult) {
+                restarts.add(serverRestartResult);
+            }
+
+            @Override
+            public void error(Throwable t) {
+            }
+
+            @Override
+            public void error(String msg) {
+            }
+        };
+        try (PipesClient client = new PipesClient(pipesConfig, reporter)) {
+            for (int i = 0; i < 3; i++) {
+                PipesResult pipesResult = client.process(
+                        new FetchEmitTuple("mock/embedded.xml",
+                                new FetchKey(fetcherName, "mock/embedded.xml"), new EmitKey(),
+                                new Metadata(), new ParseContext(),
+                                FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP));
+                Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, pipesResult.getStatus());
+            }
+        }
+        Assertions.assertEquals(2, restarts.size());
+        Assertions.assertTrue(restarts.get(1).isSpareHit());
+        Assertions.assertEquals(2, restarts.get(1).getRestarts());
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+public class PipesCodecTest {
+
+    @Test
+    public void testTuple() throws Exception {
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(String.class, "context value");
+        Metadata metadata = new Metadata();
+        metadata.add("key", "a");
+        metadata.add("key", "b");
+        FetchEmitTuple[] tuples = new FetchEmitTuple[]{
+                new FetchEmitTuple("id", new FetchKey("fs", "path/file.pdf", 10, 100),
+                        new EmitKey("fs", "path/file.pdf.json"), metadata, parseContext,
+                        FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP),
+                new FetchEmitTuple("id2", new FetchKey("fs", "file"), new EmitKey()),
+                new FetchEmitTuple(null, null, null, null, null, null)
+        };
+        for (PipesConfigBase.SERIALIZATION serialization : PipesConfigBase.SERIALIZATION.values()) {
+            PipesCodec codec = PipesCodec.get(serialization);
+            for (FetchEmitTuple t : tuples) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                codec.writeTuple(new DataOutputStream(bytes), t);
+                FetchEmitTuple read = codec.readTuple(input(bytes));
+                assertEquals(t, read, serialization.name());
+                if (t.getFetchKey() != null) {
+                    assertEquals(t.getFetchKey().getRangeStart(), read.getFetchKey().getRangeStart());
+                    assertEquals(t.getFetchKey().getRangeEnd(), read.getFetchKey().getRangeEnd());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmitData() throws Exception {
+        Random random = new Random(42);
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 500000) {
+            // Mix of one, two, three and four byte UTF-8 sequences
+            content.append("text ").append('é').append('中').appendCodePoint(0x1F600 + random.nextInt(50));
+        }
+        List<Metadata> metadataList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.TIKA_CONTENT, content.substring(i));
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, "file" + i);
+            metadata.add(TikaCoreProperties.SUBJECT, "one");
+            metadata.add(TikaCoreProperties.SUBJECT, "");
+            metadataList.add(metadata);
+        }
+        EmitData emitData = new EmitData(new EmitKey("fs", "key"), metadataList, "stack trace");
+        for (PipesConfigBase.SERIALIZATION serialization : PipesConfigBase.SERIALIZATION.values()) {
+            PipesCodec codec = PipesCodec.get(serialization);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            codec.writeEmitData(output, emitData);
+            codec.writeMetadata(output, metadataList.get(1));
+            DataInputStream input = input(bytes);
+            EmitData read = codec.readEmitData(input);
+            assertEquals(emitData.getEmitKey(), read.getEmitKey());
+            assertEquals(metadataList, read.getMetadataList());
+            assertEquals("stack trace", read.getContainerStackTrace());
+            assertEquals(emitData.getParseContext(), read.getParseContext());
+            assertEquals(metadataList.get(1), codec.readMetadata(input));
+            assertEquals(-1, input.read());
+        }
+    }
+
+    @Test
+    public void testVersion() throws Exception {
+        PipesCodec codec = PipesCodec.get(PipesConfigBase.SERIALIZATION.BINARY);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.writeMetadata(new DataOutputStream(bytes), new Metadata());
+        byte[] message = bytes.toByteArray();
+        // The version follows the length of the first frame
+        message[4] = (byte) (PipesCodec.Binary.VERSION + 1);
+        assertThrows(IOException.class, () -> codec.readMetadata(
+                new DataInputStream(new ByteArrayInputStream(message))));
+    }
+
+    private static DataInputStream input(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+public class CompletionJournalTest {
+
+    @TempDir
+    private Path tmpDir;
+
+    @Test
+    public void testResume() throws Exception {
+        Path path = tmpDir.resolve("journal");
+        FetchEmitTuple parsed = tuple("parsed");
+        FetchEmitTuple emitted = tuple("emitted");
+        FetchEmitTuple emitFailed = tuple("emit-failed");
+        FetchEmitTuple notEmitted = tuple("not-emitted");
+        FetchEmitTuple crashed = tuple("crashed");
+        FetchEmitTuple ranged = new FetchEmitTuple("ranged", new FetchKey("fs", "parsed", 0, 99),
+                new EmitKey());
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            journal.record(parsed, PipesResult.EMIT_SUCCESS);
+            journal.record(crashed, PipesResult.UNSPECIFIED_CRASH);
+            PipesResult emittedResult = result();
+            PipesResult emitFailedResult = result();
+            journal.awaitEmit(emitted, emittedResult);
+            journal.awaitEmit(emitFailed, emitFailedResult);
+            journal.awaitEmit(notEmitted, result());
+            journal.emitted(List.of(emittedResult.getEmitData()), true);
+            journal.emitted(List.of(emitFailedResult.getEmitData()), false);
+            assertTrue(journal.isDone(parsed));
+            assertTrue(journal.isDone(emitted));
+            assertFalse(journal.isDone(emitFailed));
+        }
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            assertEquals(2, journal.getDoneCount());
+            assertTrue(journal.isDone(parsed));
+            assertTrue(journal.isDone(emitted));
+            assertFalse(journal.isDone(emitFailed));
+            assertFalse(journal.isDone(notEmitted));
+            assertFalse(journal.isDone(crashed));
+            assertFalse(journal.isDone(ranged));
+        }
+    }
+
+    @Test
+    public void testIncompleteRecord() throws Exception {
+        Path path = tmpDir.resolve("journal");
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            journal.record(tuple("a"), PipesResult.EMIT_SUCCESS);
+        }
+        long size = Files.size(path);
+        //as if the JVM had died while writing a record
+        Files.write(path, new byte[]{0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            assertTrue(journal.isDone(tuple("a")));
+            assertEquals(size, Files.size(path));
+            journal.record(tuple("b"), PipesResult.TIMEOUT);
+        }
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            assertTrue(journal.isDone(tuple("a")));
+            assertTrue(journal.isDone(tuple("b")));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        Path path = tmpDir.resolve("journal");
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            journal.record(tuple("a"), PipesResult.EMIT_SUCCESS);
+            journal.record(tuple("b"), PipesResult.UNSPECIFIED_CRASH);
+        }
+        long compacted = Files.size(path);
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            for (int i = 0; i < 10; i++) {
+                journal.record(tuple("b"), PipesResult.UNSPECIFIED_CRASH);
+                journal.record(tuple("a"), PipesResult.EMIT_SUCCESS);
+            }
+        }
+        assertTrue(Files.size(path) > compacted);
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            assertEquals(compacted, Files.size(path));
+            journal.record(tuple("b"), PipesResult.EMIT_SUCCESS);
+            assertTrue(journal.isDone(tuple("b")));
+        }
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            assertEquals(2, journal.getDoneCount());
+        }
+    }
+
+    @Test
+    public void testHashCollision() throws Exception {
+        Path path = tmpDir.resolve("journal");
+        //every key has the same hash
+        try (CompletionJournal journal = new CompletionJournal(path, 0)) {
+            journal.record(tuple("a"), PipesResult.EMIT_SUCCESS);
+            assertTrue(journal.isDone(tuple("a")));
+            assertFalse(journal.isDone(tuple("b")));
+            journal.record(tuple("b"), PipesResult.EMIT_SUCCESS);
+        }
+        try (CompletionJournal journal = new CompletionJournal(path, 0)) {
+            assertTrue(journal.isDone(tuple("a")));
+            //b's record collided, so it is processed again rather than skipped
+            assertFalse(journal.isDone(tuple("b")));
+            assertFalse(journal.isDone(tuple("c")));
+            for (int i = 0; i < 10; i++) {
+                journal.record(tuple("a"), PipesResult.EMIT_SUCCESS);
+            }
+            journal.compact();
+        }
+        try (CompletionJournal journal = new CompletionJournal(path, 0)) {
+            //the offset of a's record moved with the compaction
+            assertTrue(journal.isDone(tuple("a")));
+            assertFalse(journal.isDone(tuple("c")));
+        }
+    }
+
+    @Test
+    public void testNotEmitted() throws Exception {
+        Path path = tmpDir.resolve("journal");
+        try (CompletionJournal journal = new CompletionJournal(path)) {
+            PipesResult result = result();
+            journal.awaitEmit(tuple("a"), result);
+            assertEquals(1, journal.getPendingCount());
+            journal.emitted(List.of(result.getEmitData()), false);
+            assertEquals(0, journal.getPendingCount());
+            assertFalse(journal.isDone(tuple("a")));
+        }
+    }
+
+    private static FetchEmitTuple tuple(String fetchKey) {
+        return new FetchEmitTuple(fetchKey, new FetchKey("fs", fetchKey), new EmitKey());
+    }
+
+    private static PipesResult result() {
+        Metadata metadata = new Metadata();
+        metadata.set("X-TIKA:digest:SHA256", "abc");
+        return new PipesResult(new EmitData(new EmitKey("fs", "key"), List.of(metadata)));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.pipes.pipesiterator.PipesIterator;
+import org.apache.tika.pipes.pipesiterator.fs.FileSystemPipesIterator;
+import org.apache.tika.utils.ProcessUtils;
+
+public class LaneSchedulerTest {
+
+    @Test
+    public void testLanes() throws Exception {
+        AsyncConfig asyncConfig = new AsyncConfig();
+        asyncConfig.setNumClients(4);
+        asyncConfig.setLaneThresholds(List.of("1000", "1000000"));
+        asyncConfig.setLaneWorkers(List.of("2", "1", "1"));
+        asyncConfig.setLargeMediaTypes(List.of("application/vnd.ms-outlook-pst"));
+        LaneScheduler scheduler = new LaneScheduler(asyncConfig);
+        assertEquals(3, scheduler.getNumLanes());
+        assertEquals(0, scheduler.getHomeLane(1));
+        assertEquals(1, scheduler.getHomeLane(2));
+        assertEquals(2, scheduler.getHomeLane(3));
+
+        assertEquals(0, scheduler.getLane(tuple("a.txt", 999)));
+        assertEquals(1, scheduler.getLane(tuple("a.txt", 1000)));
+        assertEquals(2, scheduler.getLane(tuple("a.txt", 5000000)));
+        assertEquals(1, scheduler.getLane(new FetchEmitTuple("ranged",
+                new FetchKey("fs", "a.txt", 0, 9999), new EmitKey())));
+        //no size, so the media type decides
+        assertEquals(0, scheduler.getLane(tuple("a.txt", -1)));
+        assertEquals(2, scheduler.getLane(tuple("mail.pst", -1)));
+        assertEquals(0, scheduler.getLane(tuple("mail.pst", 10)));
+    }
+
+    @Test
+    public void testStealingAndAging() throws Exception {
+        AsyncConfig asyncConfig = new AsyncConfig();
+        asyncConfig.setNumClients(2);
+        asyncConfig.setLaneThresholds(List.of("1000"));
+        asyncConfig.setMaxLaneWaitMillis(200);
+        LaneScheduler scheduler = new LaneScheduler(asyncConfig);
+
+        FetchEmitTuple large = tuple("large", 5000);
+        FetchEmitTuple small = tuple("small", 10);
+        assertTrue(scheduler.offerAll(List.of(large, small)));
+        //small files don't wait behind large ones
+        assertSame(small, scheduler.poll(0, 1, TimeUnit.SECONDS));
+        //an idle lane steals
+        assertSame(large, scheduler.poll(0, 1, TimeUnit.SECONDS));
+        assertNull(scheduler.poll(0, 10, TimeUnit.MILLISECONDS));
+
+        assertTrue(scheduler.offer(large, 1, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        assertTrue(scheduler.offer(small, 1, TimeUnit.SECONDS));
+        //the large file has waited too long
+        assertSame(large, scheduler.poll(0, 1, TimeUnit.SECONDS));
+        assertSame(small, scheduler.poll(0, 1, TimeUnit.SECONDS));
+
+        List<LaneWaitResult> results = scheduler.getLaneWaitResults();
+        assertEquals(2, results.size());
+        assertEquals(2, results.get(0).getTaken());
+        assertEquals(2, results.get(1).getTaken());
+        assertEquals(1, results.get(1).getStolen());
+        assertEquals(1, results.get(1).getAged());
+        assertTrue(results.get(1).getMaxWaitMillis() >= 300);
+        assertEquals(1000, results.get(1).getMinBytes());
+        assertEquals(-1, results.get(1).getMaxBytes());
+    }
+
+    @Test
+    public void testCapacityAndCompletion() throws Exception {
+        AsyncConfig asyncConfig = new AsyncConfig();
+        asyncConfig.setNumClients(2);
+        asyncConfig.setQueueSize(2);
+        asyncConfig.setLaneThresholds(List.of("1000"));
+        LaneScheduler scheduler = new LaneScheduler(asyncConfig);
+        FetchEmitTuple large = tuple("large", 5000);
+        FetchEmitTuple small = tuple("small", 10);
+        assertFalse(scheduler.offerAll(List.of(large, small, small)));
+        assertTrue(scheduler.offerAll(List.of(large, small)));
+        assertEquals(0, scheduler.remainingCapacity());
+        assertFalse(scheduler.offer(small, 10, TimeUnit.MILLISECONDS));
+
+        //the workers only stop once the lanes are empty
+        for (int i = 0; i < 2; i++) {
+            assertTrue(scheduler.offer(PipesIterator.COMPLETED_SEMAPHORE, 10,
+                    TimeUnit.MILLISECONDS));
+        }
+        assertSame(large, scheduler.poll(1, 1, TimeUnit.SECONDS));
+        assertSame(small, scheduler.poll(1, 1, TimeUnit.SECONDS));
+        assertSame(PipesIterator.COMPLETED_SEMAPHORE, scheduler.poll(0, 1, TimeUnit.SECONDS));
+        assertSame(PipesIterator.COMPLETED_SEMAPHORE, scheduler.poll(1, 1, TimeUnit.SECONDS));
+        assertNull(scheduler.poll(1, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testFileSystemCrawl(@TempDir Path inputDir, @TempDir Path configDir)
+            throws Exception {
+        String small = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>" +
+                "<mock><write element=\"p\">small</write></mock>";
+        String large = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>" +
+                "<mock><write element=\"p\">" + "large ".repeat(500) + "</write></mock>";
+        for (int i = 0; i < 3; i++) {
+            Files.write(inputDir.resolve("small-" + i + ".xml"), small.getBytes(StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < 2; i++) {
+            Files.write(inputDir.resolve("large-" + i + ".xml"), large.getBytes(StandardCharsets.UTF_8));
+        }
+        Path tikaConfigPath = configDir.resolve("tika-config.xml");
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?><properties>" +
+                "<emitters><emitter class=\"org.apache.tika.pipes.async.MockEmitter\">" +
+                "<name>mock</name></emitter></emitters>" +
+                "<fetchers><fetcher class=\"org.apache.tika.pipes.fetcher.fs.FileSystemFetcher\">" +
+                "<name>mock</name><basePath>" +
+                ProcessUtils.escapeCommandLine(inputDir.toAbsolutePath().toString()) +
+                "</basePath></fetcher></fetchers>" +
+                "<async><pipesReporter class=\"org.apache.tika.pipes.async.MockReporter\"/>" +
+                "<tikaConfig>" +
+                ProcessUtils.escapeCommandLine(tikaConfigPath.toAbsolutePath().toString()) +
+                "</tikaConfig><forkedJvmArgs><arg>-Xmx512m</arg></forkedJvmArgs>" +
+                "<laneThresholds><threshold>1000</threshold></laneThresholds>" +
+                "<numClients>2</numClients></async></properties>";
+        Files.write(tikaConfigPath, xml.getBytes(StandardCharsets.UTF_8));
+        MockEmitter.EMIT_DATA.clear();
+        MockReporter.RESULTS.clear();
+        MockReporter.LANE_RESULTS.clear();
+
+        //the iterator sets the files' sizes, which put them into lanes
+        FileSystemPipesIterator it = new FileSystemPipesIterator(inputDir);
+        it.setFetcherName("mock");
+        it.setEmitterName("mock");
+        AsyncProcessor processor = new AsyncProcessor(tikaConfigPath);
+        for (FetchEmitTuple t : it) {
+            processor.offer(t, 1000);
+        }
+        for (int i = 0; i < 2; i++) {
+            processor.offer(PipesIterator.COMPLETED_SEMAPHORE, 1000);
+        }
+        while (processor.checkActive()) {
+            Thread.sleep(100);
+        }
+        processor.close();
+        assertEquals(5, MockReporter.RESULTS.size());
+
+        //the lanes are reported once more on close, with the totals
+        List<LaneWaitResult> results = new ArrayList<>(MockReporter.LANE_RESULTS);
+        LaneWaitResult smallLane = results.get(results.size() - 2);
+        LaneWaitResult largeLane = results.get(results.size() - 1);
+        assertEquals(0, smallLane.getLane());
+        assertEquals(3, smallLane.getTaken());
+        assertEquals(1, largeLane.getLane());
+        assertEquals(2, largeLane.getTaken());
+    }
+
+    private static FetchEmitTuple tuple(String name, long length) {
+        Metadata metadata = new Metadata();
+        if (length > -1) {
+            metadata.set(Metadata.CONTENT_LENGTH, Long.toString(length));
+        }
+        return new FetchEmitTuple(name, new FetchKey("fs", name), new EmitKey(), metadata);
+    }
+}
@@ -27,6 +27,8 @@ public class MockReporter extends PipesReporter {
 
     static ArrayBlockingQueue<PipesResult> RESULTS = new ArrayBlockingQueue<>(10000);
 
+    static ArrayBlockingQueue<LaneWaitResult> LANE_RESULTS = new ArrayBlockingQueue<>(10000);
+
     private String endpoint;
 
     @Override
@@ -34,6 +36,11 @@ public class MockReporter extends PipesReporter {
         RESULTS.add(result);
     }
 
+    @Override
+    public void report(LaneWaitResult laneWaitResult) {
+        LANE_RESULTS.add(laneWaitResult);
+    }
+
     @Override
     public void error(Throwable t) {
 
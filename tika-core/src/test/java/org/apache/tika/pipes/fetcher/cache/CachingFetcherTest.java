@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.exception.TikaConfigException;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.fetcher.Fetcher;
+import org.apache.tika.pipes.fetcher.FetcherManager;
+import org.apache.tika.pipes.fetcher.fs.FileSystemFetcher;
+
+public class CachingFetcherTest {
+
+    @TempDir
+    private Path tmpDir;
+
+    private Path docs;
+
+    private CountingFetcher fs;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        docs = Files.createDirectory(tmpDir.resolve("docs"));
+        fs = new CountingFetcher();
+        fs.setName("fs");
+        fs.setBasePath(docs.toString());
+    }
+
+    @Test
+    public void testHitsAndVersions() throws Exception {
+        write("a.txt", "hello world");
+        CachingFetcher fetcher = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        assertEquals("hello world", fetch(fetcher, "a.txt"));
+        Metadata metadata = new Metadata();
+        assertEquals("hello world", fetch(fetcher, "a.txt", metadata));
+        assertEquals("a.txt", metadata.get(TikaCoreProperties.SOURCE_PATH));
+        assertEquals("a.txt", metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY));
+        assertEquals(1, fs.fetches.get());
+        assertEquals(1, fetcher.getHits());
+        assertEquals(1, fetcher.getMisses());
+        assertEquals(11, fetcher.getBytesSaved());
+
+        //the file's version changes
+        write("a.txt", "goodbye world");
+        assertEquals("goodbye world", fetch(fetcher, "a.txt"));
+        assertEquals(2, fs.fetches.get());
+
+        //the cache survives a restart
+        fetcher = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        assertEquals("goodbye world", fetch(fetcher, "a.txt"));
+        assertEquals(2, fs.fetches.get());
+        assertEquals(1, fetcher.getHits());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        String contents = String.join("", Collections.nCopies(100, "x"));
+        for (String name : new String[]{"a", "b", "c"}) {
+            write(name, name + contents);
+        }
+        CachingFetcher fetcher = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        fetch(fetcher, "a");
+        //room for two files and their entries
+        fetcher.setMaxCacheBytes(fetcher.getCacheBytes() * 5 / 2);
+        fetch(fetcher, "b");
+        fetch(fetcher, "a");
+        fetch(fetcher, "c");
+        assertEquals(3, fs.fetches.get());
+        //b was the least recently used
+        fetch(fetcher, "a");
+        assertEquals(3, fs.fetches.get());
+        fetch(fetcher, "b");
+        assertEquals(4, fs.fetches.get());
+        assertEquals(2, fetcher.getHits());
+    }
+
+    @Test
+    public void testConcurrentFetches() throws Exception {
+        write("a.txt", "hello world");
+        CountDownLatch release = new CountDownLatch(1);
+        fs.block = release;
+        CachingFetcher fetcher = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> fetch(fetcher, "a.txt")));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("hello world", result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, fs.fetches.get());
+        assertEquals(3, fetcher.getHits());
+    }
+
+    @Test
+    public void testFetcherManager() throws Exception {
+        CachingFetcher fetcher = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        fetcher.setDelegate(null);
+        new FetcherManager(List.of(fetcher, fs));
+        assertSame(fs, fetcher.getDelegate());
+
+        CachingFetcher missing = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        missing.setDelegateFetcherName("missing");
+        assertThrows(TikaConfigException.class, () -> new FetcherManager(List.of(missing, fs)));
+    }
+
+    @Test
+    public void testSharedDirectory() throws Exception {
+        String contents = String.join("", Collections.nCopies(100, "x"));
+        for (String name : new String[]{"a", "b", "c"}) {
+            write(name, name + contents);
+        }
+        //as if they were two forked processes
+        CachingFetcher first = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        fetch(first, "a");
+        long oneFile = first.getCacheBytes();
+        first.setMaxCacheBytes(oneFile * 5 / 2);
+        CachingFetcher second = newCachingFetcher(oneFile * 5 / 2);
+        //the second sees what the first has cached
+        assertEquals(oneFile, second.getCacheBytes());
+        fetch(second, "a");
+        assertEquals(1, fs.fetches.get());
+        fetch(second, "b");
+        fetch(first, "c");
+        assertEquals(3, fs.fetches.get());
+        //the first scanned what both have cached, and evicted what the second
+        //used before b, to make room for c
+        assertTrue(cacheBytesOnDisk() <= oneFile * 5 / 2);
+        assertEquals(cacheBytesOnDisk(), first.getCacheBytes());
+        //the second uses what the first cached
+        fetch(second, "c");
+        assertEquals(3, fs.fetches.get());
+    }
+
+    @Test
+    public void testSweepTmp() throws Exception {
+        Path tmp = Files.createDirectories(tmpDir.resolve("cache/tmp"));
+        //a process that has died, and a live one: the parent of this JVM
+        Path dead = Files.createDirectories(tmp.resolve("999999999-0"));
+        Files.createFile(dead.resolve("fetch123"));
+        long parent = ProcessHandle.current().parent().map(ProcessHandle::pid).orElse(1L);
+        Path live = Files.createDirectories(tmp.resolve(parent + "-0"));
+        Files.createFile(live.resolve("fetch456"));
+        CachingFetcher first = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        assertFalse(Files.exists(dead));
+        assertTrue(Files.exists(live.resolve("fetch456")));
+
+        //another instance in this JVM leaves the first's directory alone
+        write("a.txt", "hello world");
+        newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        assertEquals("hello world", fetch(first, "a.txt"));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        write("a.txt", "hello world");
+        CachingFetcher first = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        CachingFetcher second = newCachingFetcher(CachingFetcher.DEFAULT_MAX_CACHE_BYTES);
+        for (int i = 0; i < CachingFetcher.STATS_EVERY; i++) {
+            fetch(first, "a.txt");
+            fetch(second, "a.txt");
+        }
+        Properties stats = CachingFetcher.readStats(tmpDir.resolve("cache"));
+        assertEquals(Long.toString(2 * CachingFetcher.STATS_EVERY - 1),
+                stats.getProperty("hits"));
+        assertEquals("1", stats.getProperty("misses"));
+    }
+
+    private long cacheBytesOnDisk() throws IOException {
+        long total = 0;
+        for (String dir : new String[]{"blobs", "keys"}) {
+            try (Stream<Path> walk = Files.walk(tmpDir.resolve("cache").resolve(dir))) {
+                for (Path p : (Iterable<Path>) walk::iterator) {
+                    if (Files.isRegularFile(p)) {
+                        total += Files.size(p);
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    private CachingFetcher newCachingFetcher(long maxCacheBytes) throws TikaConfigException {
+        CachingFetcher fetcher = new CachingFetcher();
+        fetcher.setName("cached");
+        fetcher.setDelegateFetcherName("fs");
+        fetcher.setCacheDirectory(tmpDir.resolve("cache").toString());
+        fetcher.setMaxCacheBytes(maxCacheBytes);
+        fetcher.setDelegate(fs);
+        fetcher.initialize(Collections.emptyMap());
+        return fetcher;
+    }
+
+    private void write(String name, String contents) throws IOException {
+        Path path = docs.resolve(name);
+        FileTime modified = Files.exists(path) ?
+                FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 1000) : null;
+        Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+        if (modified != null) {
+            Files.setLastModifiedTime(path, modified);
+        }
+    }
+
+    private static String fetch(Fetcher fetcher, String key) throws Exception {
+        return fetch(fetcher, key, new Metadata());
+    }
+
+    private static String fetch(Fetcher fetcher, String key, Metadata metadata)
+            throws Exception {
+        try (InputStream is = fetcher.fetch(key, metadata, new ParseContext())) {
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class CountingFetcher extends FileSystemFetcher {
+
+        private final AtomicInteger fetches = new AtomicInteger(0);
+        private volatile CountDownLatch block;
+
+        @Override
+        public InputStream fetch(String fetchKey, Metadata metadata, ParseContext parseContext)
+                throws IOException, TikaException {
+            fetches.incrementAndGet();
+            if (block != null) {
+                try {
+                    block.await();
+                } catch (InterruptedException e) {
+                    throw new TikaException("interrupted", e);
+                }
+            }
+            return super.fetch(fetchKey, metadata, parseContext);
+        }
+    }
+}
@@ -16,21 +16,30 @@
  */
 package org.apache.tika.pipes.pipesiterator;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 
 import org.apache.tika.pipes.FetchEmitTuple;
 import org.apache.tika.pipes.pipesiterator.fs.FileSystemPipesIterator;
@@ -38,6 +47,9 @@ import org.apache.tika.pipes.pipesiterator.fs.FileSystemPipesIterator;
 
 public class FileSystemPipesIteratorTest {
 
+    @TempDir
+    private Path tmpDir;
+
     public static List<Path> listFiles(Path path) throws IOException {
 
         List<Path> result;
@@ -66,6 +78,18 @@ public class FileSystemPipesIteratorTest {
         it.setFetcherName(fetcherName);
         it.setQueueSize(2);
 
+        assertIterates(truthSet, it);
+
+        //list the directories in parallel
+        FileSystemPipesIterator parallel = new FileSystemPipesIterator(root);
+        parallel.setFetcherName(fetcherName);
+        parallel.setQueueSize(2);
+        parallel.setWalkerThreads(4);
+        parallel.setMaxPendingDirectories(2);
+        assertIterates(truthSet, parallel);
+    }
+
+    private static void assertIterates(Set<String> truthSet, PipesIterator it) {
         Set<String> iteratorSet = new HashSet<>();
         for (FetchEmitTuple p : it) {
             iteratorSet.add(p.getFetchKey().getFetchKey());
@@ -78,4 +102,80 @@ public class FileSystemPipesIteratorTest {
             assertTrue(truthSet.contains(i), "missing in truth set " + i);
         }
     }
+
+    @Test
+    public void testIncremental() throws Exception {
+        Path root = Files.createDirectories(tmpDir.resolve("root"));
+        Path state = tmpDir.resolve("state/files");
+        write(root.resolve("a.txt"), "a");
+        write(root.resolve("a-b.txt"), "a-b");
+        write(root.resolve("a/b.txt"), "b");
+        write(root.resolve("a/c/d.txt"), "d");
+        write(root.resolve("z.txt"), "z");
+
+        Map<String, Boolean> added = run(root, state);
+        assertEquals(5, added.size());
+        assertEquals(Set.of("a.txt", "a-b.txt", rel(root, "a/b.txt"), rel(root, "a/c/d.txt"),
+                "z.txt"), added.keySet());
+
+        //nothing has changed
+        assertEquals(0, run(root, state).size());
+
+        write(root.resolve("a/b.txt"), "bb");
+        Files.setLastModifiedTime(root.resolve("z.txt"), FileTime.fromMillis(1000));
+        Files.delete(root.resolve("a/c/d.txt"));
+        Files.delete(root.resolve("a-b.txt"));
+        write(root.resolve("a/c.txt"), "c");
+        write(root.resolve("y.txt"), "y");
+        added = run(root, state);
+        Map<String, Boolean> expected = new HashMap<>();
+        expected.put(rel(root, "a/b.txt"), false);
+        expected.put("z.txt", false);
+        expected.put(rel(root, "a/c.txt"), false);
+        expected.put("y.txt", false);
+        expected.put(rel(root, "a/c/d.txt"), true);
+        expected.put("a-b.txt", true);
+        assertEquals(expected, added);
+
+        assertEquals(0, run(root, state).size());
+    }
+
+    private static Map<String, Boolean> run(Path root, Path state) throws Exception {
+        FileSystemPipesIterator it = new FileSystemPipesIterator(root);
+        it.setFetcherName("fs");
+        it.setEmitterName("fs");
+        it.setStatePath(state.toString());
+        it.setEmitTombstones(true);
+        it.setUseFileKey(true);
+        it.setCountTotal(true);
+        it.setWalkerThreads(3);
+        //the handler is called on the thread that walks the tree
+        Map<String, Boolean> added = new ConcurrentHashMap<>();
+        //tombstones go to the handler, and never to the fetchers
+        it.setDeletedFileHandler(t -> {
+            assertNotNull(t.getMetadata().get(FileSystemPipesIterator.DELETED));
+            added.put(t.getFetchKey().getFetchKey(), true);
+        });
+        long changed = 0;
+        for (FetchEmitTuple t : it) {
+            assertNull(t.getMetadata().get(FileSystemPipesIterator.DELETED));
+            added.put(t.getFetchKey().getFetchKey(), false);
+            changed++;
+        }
+        assertEquals(changed, it.getAddedCount());
+        TotalCountResult total = it.getTotalCount();
+        assertEquals(TotalCountResult.STATUS.COMPLETED, total.getStatus());
+        //all the files, not just the changed ones
+        assertEquals(listFiles(root).size(), total.getTotalCount());
+        return added;
+    }
+
+    private static String rel(Path root, String path) {
+        return root.relativize(root.resolve(path)).toString();
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -45,6 +45,7 @@ public class TikaGrpcServer {
     private static final Logger LOGGER = LoggerFactory.getLogger(TikaGrpcServer.class);
     public static final int TIKA_SERVER_GRPC_DEFAULT_PORT = 50052;
     private Server server;
+    private TikaGrpcServerImpl tikaGrpcServerImpl;
     @Parameter(names = {"-p", "--port"}, description = "The grpc server port", help = true)
     private Integer port = TIKA_SERVER_GRPC_DEFAULT_PORT;
 
@@ -97,9 +98,10 @@ public class TikaGrpcServer {
         }
         File tikaConfigFile = new File(tikaConfigXml.getAbsolutePath());
         healthStatusManager.setStatus(TikaGrpcServer.class.getSimpleName(), ServingStatus.SERVING);
+        tikaGrpcServerImpl = new TikaGrpcServerImpl(tikaConfigFile.getAbsolutePath());
         server = Grpc
                 .newServerBuilderForPort(port, creds)
-                .addService(new TikaGrpcServerImpl(tikaConfigFile.getAbsolutePath()))
+                .addService(tikaGrpcServerImpl)
                 .addService(healthStatusManager.getHealthService())
                 .addService(ProtoReflectionServiceV1.newInstance())
                 .build()
@@ -126,6 +128,9 @@ public class TikaGrpcServer {
                     .shutdown()
                     .awaitTermination(30, TimeUnit.SECONDS);
         }
+        if (tikaGrpcServerImpl != null) {
+            tikaGrpcServerImpl.close();
+        }
     }
 
     /**
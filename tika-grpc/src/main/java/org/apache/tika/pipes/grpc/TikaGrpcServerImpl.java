@@ -26,6 +26,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Transformer;
@@ -41,6 +46,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchemaGenerator;
 import com.google.rpc.Status;
+import io.grpc.Context;
+import io.grpc.Deadline;
 import io.grpc.protobuf.StatusProto;
 import io.grpc.stub.StreamObserver;
 import org.apache.commons.io.FileUtils;
@@ -59,6 +66,8 @@ import org.apache.tika.GetFetcherConfigJsonSchemaReply;
 import org.apache.tika.GetFetcherConfigJsonSchemaRequest;
 import org.apache.tika.GetFetcherReply;
 import org.apache.tika.GetFetcherRequest;
+import org.apache.tika.GetPipesStatsReply;
+import org.apache.tika.GetPipesStatsRequest;
 import org.apache.tika.ListFetchersReply;
 import org.apache.tika.ListFetchersRequest;
 import org.apache.tika.SaveFetcherReply;
@@ -66,12 +75,14 @@ import org.apache.tika.SaveFetcherRequest;
 import org.apache.tika.TikaGrpc;
 import org.apache.tika.config.Initializable;
 import org.apache.tika.config.Param;
+import org.apache.tika.config.TikaTaskTimeout;
 import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.FetchEmitTuple;
-import org.apache.tika.pipes.PipesClient;
 import org.apache.tika.pipes.PipesConfig;
+import org.apache.tika.pipes.PipesException;
+import org.apache.tika.pipes.PipesParser;
 import org.apache.tika.pipes.PipesResult;
 import org.apache.tika.pipes.emitter.EmitKey;
 import org.apache.tika.pipes.fetcher.AbstractFetcher;
@@ -91,8 +102,20 @@ class TikaGrpcServerImpl extends TikaGrpc.TikaImplBase {
      * FetcherID is key, The pair is the Fetcher object and the Metadata
      */
     PipesConfig pipesConfig;
-    PipesClient pipesClient;
+    /**
+     * Pool of pipes clients; there are pipesConfig's numClients of them
+     */
+    PipesParser pipesParser;
     ExpiringFetcherStore expiringFetcherStore;
+    /**
+     * Runs the requests from bi-directional streams so that one stream's
+     * requests are processed in parallel
+     */
+    ExecutorService streamExecutorService;
+    /**
+     * Requests from bi-directional streams that haven't started yet
+     */
+    private final AtomicInteger streamQueueDepth = new AtomicInteger(0);
 
     String tikaConfigPath;
 
@@ -110,7 +133,13 @@ class TikaGrpcServerImpl extends TikaGrpc.TikaImplBase {
             tikaConfigPath = tikaConfigFile.getAbsolutePath();
         }
         pipesConfig = PipesConfig.load(tikaConfigFile.toPath());
-        pipesClient = new PipesClient(pipesConfig);
+        pipesParser = new PipesParser(pipesConfig);
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        streamExecutorService = Executors.newFixedThreadPool(pipesConfig.getNumClients(), r -> {
+            Thread t = new Thread(r, "tika-grpc-stream-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
 
         expiringFetcherStore = new ExpiringFetcherStore(pipesConfig.getStaleFetcherTimeoutSeconds(),
                 pipesConfig.getStaleFetcherDelaySeconds());
@@ -182,10 +211,29 @@ class TikaGrpcServerImpl extends TikaGrpc.TikaImplBase {
     @Override
     public StreamObserver<FetchAndParseRequest> fetchAndParseBiDirectionalStreaming(
             StreamObserver<FetchAndParseReply> responseObserver) {
+        SerializingStreamObserver<FetchAndParseReply> replies =
+                new SerializingStreamObserver<>(responseObserver);
         return new StreamObserver<>() {
+            //the requests that haven't been replied to, plus one until the client completes
+            private final AtomicInteger outstanding = new AtomicInteger(1);
+
             @Override
             public void onNext(FetchAndParseRequest fetchAndParseRequest) {
-                fetchAndParseImpl(fetchAndParseRequest, responseObserver);
+                outstanding.incrementAndGet();
+                streamQueueDepth.incrementAndGet();
+                //carry the call's deadline over to the executor thread
+                streamExecutorService.execute(Context.current().wrap(() -> {
+                    streamQueueDepth.decrementAndGet();
+                    try {
+                        fetchAndParseImpl(fetchAndParseRequest, replies);
+                    } catch (RuntimeException e) {
+                        LOG.error("Parse error occurred", e);
+                        replies.onError(io.grpc.Status.INTERNAL.withDescription(e.getMessage())
+                                .withCause(e).asRuntimeException());
+                    } finally {
+                        done();
+                    }
+                }));
             }
 
             @Override
@@ -195,7 +243,13 @@ class TikaGrpcServerImpl extends TikaGrpc.TikaImplBase {
 
             @Override
             public void onCompleted() {
-                responseObserver.onCompleted();
+                done();
+            }
+
+            private void done() {
+                if (outstanding.decrementAndGet() == 0) {
+                    replies.onCompleted();
+                }
             }
         };
     }
@@ -230,8 +284,15 @@ class TikaGrpcServerImpl extends TikaGrpc.TikaImplBase {
                                 .getClass().getName())
                         .setJson(additionalFetchConfigJson));
             }
-            PipesResult pipesResult = pipesClient.process(new FetchEmitTuple(request.getFetchKey(),
-                    new FetchKey(fetcher.getName(), request.getFetchKey()), new EmitKey(), tikaMetadata, parseContext, FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP));
+            Deadline deadline = Context.current().getDeadline();
+            if (deadline != null) {
+                //don't keep a pipes client busy for a caller that has gone
+                parseContext.set(TikaTaskTimeout.class,
+                        new TikaTaskTimeout(Math.max(1, deadline.timeRemaining(TimeUnit.MILLISECONDS))));
+            }
+            PipesResult pipesResult = pipesParser.parse(new FetchEmitTuple(request.getFetchKey(),
+                    new FetchKey(fetcher.getName(), request.getFetchKey()), new EmitKey(), tikaMetadata, parseContext, FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP),
+                    getMaxWaitForClientMillis());
             FetchAndParseReply.Builder fetchReplyBuilder =
                     FetchAndParseReply.newBuilder()
                                       .setFetchKey(request.getFetchKey())
@@ -250,13 +311,40 @@ class TikaGrpcServerImpl extends TikaGrpc.TikaImplBase {
                 }
             }
             responseObserver.onNext(fetchReplyBuilder.build());
-        } catch (IOException e) {
+        } catch (IOException | PipesException e) {
             throw new RuntimeException(e);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * A request doesn't wait for a pipes client past its deadline. Once it
+     * has a client, the parse is bounded by the time that was left of the
+     * deadline when the request was sent, or the pipes timeoutMillis if
+     * that is shorter.
+     */
+    private long getMaxWaitForClientMillis() {
+        long maxWait = pipesConfig.getMaxWaitForClientMillis();
+        Deadline deadline = Context.current().getDeadline();
+        if (deadline != null) {
+            maxWait = Math.max(0, Math.min(maxWait, deadline.timeRemaining(TimeUnit.MILLISECONDS)));
+        }
+        return maxWait;
+    }
+
+    @Override
+    public void getPipesStats(GetPipesStatsRequest request,
+                              StreamObserver<GetPipesStatsReply> responseObserver) {
+        responseObserver.onNext(GetPipesStatsReply
+                .newBuilder()
+                .setNumClients(pipesParser.getNumClients())
+                .setQueueDepth(pipesParser.getQueueDepth() + streamQueueDepth.get())
+                .setInFlight(pipesParser.getInFlight())
+                .build());
+        responseObserver.onCompleted();
+    }
+
     @SuppressWarnings("raw")
     @Override
     public void saveFetcher(SaveFetcherRequest request,
@@ -412,4 +500,49 @@ class TikaGrpcServerImpl extends TikaGrpc.TikaImplBase {
     private boolean deleteFetcher(String fetcherName) {
         return expiringFetcherStore.deleteFetcher(fetcherName);
     }
+
+    /**
+     * Stops running requests from bi-directional streams. The ones that have
+     * started get the pipes timeoutMillis to finish.
+     */
+    void close() throws InterruptedException {
+        streamExecutorService.shutdown();
+        if (!streamExecutorService.awaitTermination(pipesConfig.getTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+            streamExecutorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Stream observers aren't thread safe. This lets several threads reply
+     * on one stream and drops anything after the stream is closed.
+     */
+    private static class SerializingStreamObserver<T> implements StreamObserver<T> {
+        private final StreamObserver<T> delegate;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        SerializingStreamObserver(StreamObserver<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void onNext(T value) {
+            if (!closed.get()) {
+                delegate.onNext(value);
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            if (closed.compareAndSet(false, true)) {
+                delegate.onError(throwable);
+            }
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            if (closed.compareAndSet(false, true)) {
+                delegate.onCompleted();
+            }
+        }
+    }
 }
@@ -33,7 +33,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.asarkar.grpc.test.GrpcCleanupExtension;
 import com.asarkar.grpc.test.Resources;
@@ -62,6 +65,8 @@ import org.apache.tika.FetchAndParseReply;
 import org.apache.tika.FetchAndParseRequest;
 import org.apache.tika.GetFetcherReply;
 import org.apache.tika.GetFetcherRequest;
+import org.apache.tika.GetPipesStatsReply;
+import org.apache.tika.GetPipesStatsRequest;
 import org.apache.tika.SaveFetcherReply;
 import org.apache.tika.SaveFetcherRequest;
 import org.apache.tika.TikaGrpc;
@@ -226,6 +231,7 @@ public class TikaGrpcServerTest {
         List<FetchAndParseReply> successes = Collections.synchronizedList(new ArrayList<>());
         List<FetchAndParseReply> errors = Collections.synchronizedList(new ArrayList<>());
         AtomicBoolean finished = new AtomicBoolean(false);
+        CountDownLatch completed = new CountDownLatch(1);
 
         StreamObserver<FetchAndParseReply> replyStreamObserver = new StreamObserver<>() {
             @Override
@@ -247,6 +253,7 @@ public class TikaGrpcServerTest {
             public void onCompleted() {
                 LOG.info("Stream completed");
                 finished.set(true);
+                completed.countDown();
             }
         };
 
@@ -277,10 +284,100 @@ public class TikaGrpcServerTest {
                     .setFetchKey("does not exist")
                     .build());
             requestStreamObserver.onCompleted();
+            //the requests are processed in parallel, off the calling thread
+            assertTrue(completed.await(60, TimeUnit.SECONDS));
             assertEquals(NUM_TEST_DOCS, successes.size());
             assertEquals(1, errors.size());
             assertTrue(finished.get());
+
+            GetPipesStatsReply stats =
+                    blockingStub.getPipesStats(GetPipesStatsRequest.newBuilder().build());
+            assertEquals(2, stats.getNumClients());
+            assertEquals(0, stats.getQueueDepth());
+            assertEquals(0, stats.getInFlight());
+        } finally {
+            FileUtils.deleteDirectory(testDocumentFolder);
+        }
+    }
+
+    @Test
+    public void testBiStreamInFlight(Resources resources) throws Exception {
+        String serverName = InProcessServerBuilder.generateName();
+        TikaGrpcServerImpl tikaGrpcServerImpl = new TikaGrpcServerImpl(tikaConfigXml.getAbsolutePath());
+        Server server = InProcessServerBuilder
+                .forName(serverName)
+                .directExecutor()
+                .addService(tikaGrpcServerImpl)
+                .build()
+                .start();
+        resources.register(server, Duration.ofSeconds(10));
+
+        ManagedChannel channel = InProcessChannelBuilder
+                .forName(serverName)
+                .directExecutor()
+                .build();
+        resources.register(channel, Duration.ofSeconds(10));
+        TikaGrpc.TikaBlockingStub blockingStub = TikaGrpc.newBlockingStub(channel);
+        TikaGrpc.TikaStub tikaStub = TikaGrpc.newStub(channel);
+
+        String fetcherId = createFetcherId(2);
+        blockingStub.saveFetcher(SaveFetcherRequest
+                .newBuilder()
+                .setFetcherId(fetcherId)
+                .setFetcherClass(FileSystemFetcher.class.getName())
+                .setFetcherConfigJson(OBJECT_MAPPER.writeValueAsString(ImmutableMap
+                        .builder()
+                        .put("basePath", new File("target").getAbsolutePath())
+                        .build()))
+                .build());
+
+        AtomicInteger numReplies = new AtomicInteger(0);
+        CountDownLatch completed = new CountDownLatch(1);
+        StreamObserver<FetchAndParseRequest> requestStreamObserver =
+                tikaStub.fetchAndParseBiDirectionalStreaming(new StreamObserver<>() {
+                    @Override
+                    public void onNext(FetchAndParseReply fetchAndParseReply) {
+                        numReplies.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        fail(throwable);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        completed.countDown();
+                    }
+                });
+
+        File testDocumentFolder = new File("target/in-flight-" + UUID.randomUUID());
+        assertTrue(testDocumentFolder.mkdir());
+        try {
+            for (int i = 0; i < NUM_TEST_DOCS; ++i) {
+                File testFile = new File(testDocumentFolder, "test-" + i + ".html");
+                FileUtils.writeStringToFile(testFile, "<html><body>test " + i + "</body></html>", StandardCharsets.UTF_8);
+                requestStreamObserver.onNext(FetchAndParseRequest
+                        .newBuilder()
+                        .setFetcherId(fetcherId)
+                        .setFetchKey(testFile.getAbsolutePath())
+                        .build());
+            }
+            requestStreamObserver.onCompleted();
+            //the pipes clients start their forked processes on the first requests,
+            //so both requests are in flight for a while if they run in parallel
+            int maxInFlight = 0;
+            long deadline = System.currentTimeMillis() + 60000;
+            while (!completed.await(10, TimeUnit.MILLISECONDS)) {
+                assertTrue(System.currentTimeMillis() < deadline, "stream didn't complete");
+                GetPipesStatsReply stats =
+                        blockingStub.getPipesStats(GetPipesStatsRequest.newBuilder().build());
+                maxInFlight = Math.max(maxInFlight, stats.getInFlight());
+            }
+            assertEquals(NUM_TEST_DOCS, numReplies.get());
+            assertEquals(NUM_TEST_DOCS, maxInFlight);
         } finally {
+            tikaGrpcServerImpl.close();
             FileUtils.deleteDirectory(testDocumentFolder);
         }
     }
@@ -144,6 +144,10 @@ public class TikaAsyncCLI {
             }
             long elapsed = System.currentTimeMillis() - start;
             LOG.info("Successfully finished processing {} files in {} ms", processor.getTotalProcessed(), elapsed);
+            if (processor.getTotalSkipped() > 0) {
+                LOG.info("Skipped {} files that the journal shows were processed before",
+                        processor.getTotalSkipped());
+            }
 
         }
     }
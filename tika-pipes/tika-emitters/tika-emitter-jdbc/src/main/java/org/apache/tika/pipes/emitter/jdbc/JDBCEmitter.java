@@ -36,6 +36,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
@@ -63,6 +68,11 @@ import org.apache.tika.utils.StringUtils;
  * It is currently NOT thread safe because of the shared prepared statement,
  * and depending on the jdbc implementation because of the shared connection.
  * <p>
+ * With {@link #setBulkLoad(boolean)}, {@link #emit(List)} writes
+ * multi-row inserts over a pool of connections in parallel instead.
+ * See {@link #setBulkLoad(boolean)} for the requirements on the insert
+ * statement.
+ * <p>
  * As of the 2.5.0 release, this is ALPHA version.  There may be breaking changes
  * in the future.
  */
@@ -91,6 +101,8 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
     //This is necessary for testing and if someone specifies multiple
     //different jdbc emitters.
     private static Set<String> TABLES_CREATED = new HashSet<>();
+    private static final Pattern VALUES_PATTERN = Pattern.compile("(?i)\\bvalues\\s*\\(");
+    private static final AtomicInteger BULK_POOL_COUNTER = new AtomicInteger(0);
     private String connectionString;
 
     private Optional<String> postConnectionString = Optional.empty();
@@ -100,6 +112,14 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
 
     private int maxRetries = 0;
 
+    private boolean bulkLoad = false;
+    private int bulkWriters = 4;
+    private int rowsPerStatement = 100;
+    private int commitInterval = 10000;
+    private int[] bulkTypes;
+    private List<BulkWriter> bulkWriterPool;
+    private ExecutorService bulkExecutorService;
+
     //used only for specification of column name/string definition of
     //keys
     private Map<String, String> keys;
@@ -173,6 +193,65 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
         this.maxRetries = maxRetries;
     }
 
+    /**
+     * Load batches from {@link #emit(List)} with multi-row inserts over
+     * a pool of {@link #setBulkWriters(int)} connections in parallel.
+     * <p>
+     * The VALUES tuple of the insert statement is repeated for each row,
+     * e.g. <code>insert into test (path, k1) values (?,?)</code> becomes
+     * <code>insert into test (path, k1) values (?,?), (?,?), ...</code>,
+     * so the insert must be a single-tuple VALUES statement. Anything after
+     * the tuple, e.g. <code>on conflict (path) do update set ...</code>, is
+     * kept.
+     * <p>
+     * A failed statement is rolled back and retried on a new connection
+     * along with everything else since the writer's last commit, and if
+     * one writer gives up, the others' rows may already be committed. For
+     * retries to be idempotent, the insert should be an upsert, e.g.
+     * <code>merge into ... key (path) values (?,?)</code> on H2 or
+     * <code>insert ... on conflict (path) do update ...</code> on
+     * Postgres and SQLite.
+     *
+     * @param bulkLoad
+     */
+    @Field
+    public void setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    /**
+     * Number of connections that write in parallel in bulk load mode.
+     *
+     * @param bulkWriters
+     */
+    @Field
+    public void setBulkWriters(int bulkWriters) {
+        this.bulkWriters = bulkWriters;
+    }
+
+    /**
+     * Number of rows in each multi-row insert in bulk load mode. Note that
+     * dbs limit the number of parameters in a statement, e.g. 32766 in
+     * recent versions of SQLite and 65535 in Postgres.
+     *
+     * @param rowsPerStatement
+     */
+    @Field
+    public void setRowsPerStatement(int rowsPerStatement) {
+        this.rowsPerStatement = rowsPerStatement;
+    }
+
+    /**
+     * In bulk load mode, each writer commits after at least this many rows
+     * and at the end of each batch.
+     *
+     * @param commitInterval
+     */
+    @Field
+    public void setCommitInterval(int commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
     /**
      * This sql will be called immediately after the connection is made. This was
      * initially added for setting pragmas on sqlite3, but may be used for other
@@ -276,6 +355,10 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
 
     @Override
     public void emit(List<? extends EmitData> emitData) throws IOException, TikaEmitterException {
+        if (bulkLoad) {
+            emitBulk(emitData);
+            return;
+        }
         int tries = 0;
         Exception ex = null;
         while (tries++ <= maxRetries) {
@@ -294,6 +377,110 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
         throw new TikaEmitterException("Couldn't emit " + emitData.size() + " records.", ex);
     }
 
+    private synchronized void emitBulk(List<? extends EmitData> emitData)
+            throws TikaEmitterException {
+        long start = System.currentTimeMillis();
+        List<List<Object[]>> chunks = new ArrayList<>();
+        List<Object[]> chunk = new ArrayList<>();
+        int rows = 0;
+        for (EmitData d : emitData) {
+            for (Object[] row : toRows(d.getEmitKey().getEmitKey(), d.getMetadataList())) {
+                if (chunk.size() >= rowsPerStatement) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<>();
+                }
+                chunk.add(row);
+                rows++;
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        AtomicInteger next = new AtomicInteger(0);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < Math.min(bulkWriterPool.size(), chunks.size()); i++) {
+            BulkWriter writer = bulkWriterPool.get(i);
+            futures.add(bulkExecutorService.submit(() -> {
+                writer.write(chunks, next);
+                return null;
+            }));
+        }
+        Throwable t = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TikaEmitterException("interrupted", e);
+            } catch (ExecutionException e) {
+                t = (t == null) ? e.getCause() : t;
+            }
+        }
+        if (t != null) {
+            throw new TikaEmitterException("Couldn't emit " + emitData.size() + " records.", t);
+        }
+        LOGGER.debug("took {}ms to bulk load {} rows", System.currentTimeMillis() - start, rows);
+    }
+
+    //the values of the rows are calculated in the calling thread
+    //because the date formats are not thread safe
+    private List<Object[]> toRows(String emitKey, List<Metadata> metadataList) {
+        List<Object[]> rows = new ArrayList<>();
+        int n = (attachmentStrategy == AttachmentStrategy.FIRST_ONLY) ? 1 : metadataList.size();
+        for (int i = 0; i < n && i < metadataList.size(); i++) {
+            Object[] row = new Object[bulkTypes.length];
+            int col = 0;
+            row[col++] = emitKey;
+            if (attachmentStrategy == AttachmentStrategy.ALL) {
+                row[col++] = i;
+            }
+            for (ColumnDefinition columnDefinition : columns) {
+                row[col++] = getValue(emitKey, columnDefinition, i, metadataList);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Repeats the VALUES tuple of a single row insert statement.
+     *
+     * @throws IllegalArgumentException if there's no VALUES tuple
+     */
+    static String expandValues(String insert, int rows) {
+        Matcher m = VALUES_PATTERN.matcher(insert);
+        if (!m.find()) {
+            throw new IllegalArgumentException("couldn't find 'values (' in: " + insert);
+        }
+        int start = m.end() - 1;
+        int end = -1;
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = start; i < insert.length() && end < 0; i++) {
+            char c = insert.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')' && --depth == 0) {
+                end = i + 1;
+            }
+        }
+        if (end < 0) {
+            throw new IllegalArgumentException("couldn't find the end of the values in: " +
+                    insert);
+        }
+        String tuple = insert.substring(start, end);
+        StringBuilder sb = new StringBuilder(insert.substring(0, start));
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(tuple);
+        }
+        return sb.append(insert.substring(end)).toString();
+    }
+
     private void emitNow(List<? extends EmitData> emitData) throws SQLException {
         if (attachmentStrategy == AttachmentStrategy.FIRST_ONLY) {
             for (EmitData d : emitData) {
@@ -377,43 +564,51 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
     }
 
     private void createConnection() throws SQLException {
-        connection = DriverManager.getConnection(connectionString);
+        connection = openConnection();
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(connectionString);
         connection.setAutoCommit(false);
         if (postConnectionString.isPresent()) {
             try (Statement st = connection.createStatement()) {
                 st.execute(postConnectionString.get());
             }
         }
+        return connection;
     }
 
     private void updateValue(String emitKey, PreparedStatement insertStatement, int i,
                              ColumnDefinition columnDefinition, int metadataListIndex,
                              List<Metadata> metadataList)
             throws SQLException {
+        setValue(insertStatement, i, columnDefinition.getType(),
+                getValue(emitKey, columnDefinition, metadataListIndex, metadataList));
+    }
+
+    private Object getValue(String emitKey, ColumnDefinition columnDefinition,
+                            int metadataListIndex, List<Metadata> metadataList) {
         Metadata metadata = metadataList.get(metadataListIndex);
         String val = getVal(metadata, columnDefinition);
         switch (columnDefinition.getType()) {
             case Types.VARCHAR:
-                updateVarchar(emitKey, columnDefinition, insertStatement, i, val);
-                break;
+                if (val == null) {
+                    return null;
+                }
+                return stringNormalizer.normalize(emitKey, columnDefinition.getColumnName(), val,
+                        columnDefinition.getPrecision());
             case Types.BOOLEAN:
-                updateBoolean(insertStatement, i, val);
-                break;
+                return StringUtils.isBlank(val) ? null : Boolean.parseBoolean(val);
             case Types.INTEGER:
-                updateInteger(insertStatement, i, val);
-                break;
+                return StringUtils.isBlank(val) ? null : Integer.parseInt(val);
             case Types.BIGINT:
-                updateLong(insertStatement, i, val);
-                break;
+                return StringUtils.isBlank(val) ? null : Long.parseLong(val);
             case Types.FLOAT:
-                updateFloat(insertStatement, i, val);
-                break;
+                return StringUtils.isBlank(val) ? null : Float.parseFloat(val);
             case Types.DOUBLE:
-                updateDouble(insertStatement, i, val);
-                break;
+                return StringUtils.isBlank(val) ? null : Double.parseDouble(val);
             case Types.TIMESTAMP:
-                updateTimestamp(insertStatement, i, val, dateFormats);
-                break;
+                return parseTimestamp(val, dateFormats);
             default:
                 throw new IllegalArgumentException(
                         "Can only process:" + getHandledTypes() +
@@ -453,81 +648,53 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
         return sb.toString();
     }
 
-    private void updateDouble(PreparedStatement insertStatement, int i, String val)
-            throws SQLException {
-        if (StringUtils.isBlank(val)) {
-            insertStatement.setNull(i, Types.DOUBLE);
-            return;
-        }
-        Double d = Double.parseDouble(val);
-        insertStatement.setDouble(i, d);
-    }
-
-    private void updateVarchar(String emitKey, ColumnDefinition columnDefinition, PreparedStatement insertStatement,
-                               int i,
-                               String val) throws SQLException {
-        if (val == null) {
-            insertStatement.setNull(i, Types.VARCHAR);
-            return;
-        }
-        String normalized = stringNormalizer.normalize(emitKey,
-                columnDefinition.getColumnName(), val, columnDefinition.getPrecision());
-        insertStatement.setString(i, normalized);
-    }
-
-    private void updateTimestamp(PreparedStatement insertStatement, int i, String val,
-                                 DateFormat[] dateFormats) throws SQLException {
+    private static Timestamp parseTimestamp(String val, DateFormat[] dateFormats) {
         if (StringUtils.isBlank(val)) {
-            insertStatement.setNull(i, Types.TIMESTAMP);
-            return;
+            return null;
         }
 
         for (DateFormat df : dateFormats) {
             try {
                 Date d = df.parse(val);
-                insertStatement.setTimestamp(i, new Timestamp(d.getTime()));
-                return;
+                return new Timestamp(d.getTime());
             } catch (ParseException e) {
                 //ignore
             }
         }
-        LOGGER.warn("Couldn't parse {}" + val);
-        insertStatement.setNull(i, Types.TIMESTAMP);
-    }
-
-    private void updateFloat(PreparedStatement insertStatement, int i, String val)
-            throws SQLException {
-        if (StringUtils.isBlank(val)) {
-            insertStatement.setNull(i, Types.FLOAT);
-        } else {
-            insertStatement.setFloat(i, Float.parseFloat(val));
-        }
-    }
-
-    private void updateLong(PreparedStatement insertStatement, int i, String val)
-            throws SQLException {
-        if (StringUtils.isBlank(val)) {
-            insertStatement.setNull(i, Types.BIGINT);
-        } else {
-            insertStatement.setLong(i, Long.parseLong(val));
-        }
+        LOGGER.warn("Couldn't parse {}", val);
+        return null;
     }
 
-    private void updateInteger(PreparedStatement insertStatement, int i, String val)
+    private static void setValue(PreparedStatement insertStatement, int i, int type, Object val)
             throws SQLException {
-        if (StringUtils.isBlank(val)) {
-            insertStatement.setNull(i, Types.INTEGER);
-        } else {
-            insertStatement.setInt(i, Integer.parseInt(val));
+        if (val == null) {
+            insertStatement.setNull(i, type);
+            return;
         }
-    }
-
-    private void updateBoolean(PreparedStatement insertStatement, int i, String val)
-            throws SQLException {
-        if (StringUtils.isBlank(val)) {
-            insertStatement.setNull(i, Types.BOOLEAN);
-        } else {
-            insertStatement.setBoolean(i, Boolean.parseBoolean(val));
+        switch (type) {
+            case Types.VARCHAR:
+                insertStatement.setString(i, (String) val);
+                break;
+            case Types.BOOLEAN:
+                insertStatement.setBoolean(i, (Boolean) val);
+                break;
+            case Types.INTEGER:
+                insertStatement.setInt(i, (Integer) val);
+                break;
+            case Types.BIGINT:
+                insertStatement.setLong(i, (Long) val);
+                break;
+            case Types.FLOAT:
+                insertStatement.setFloat(i, (Float) val);
+                break;
+            case Types.DOUBLE:
+                insertStatement.setDouble(i, (Double) val);
+                break;
+            case Types.TIMESTAMP:
+                insertStatement.setTimestamp(i, (Timestamp) val);
+                break;
+            default:
+                throw new IllegalArgumentException("unexpected type: " + type);
         }
     }
 
@@ -566,6 +733,49 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
         } catch (SQLException e) {
             throw new TikaConfigException("can't create insert statement", e);
         }
+        if (bulkLoad) {
+            initBulkLoad();
+        }
+    }
+
+    private void initBulkLoad() throws TikaConfigException {
+        if (bulkWriters < 1 || rowsPerStatement < 1 || commitInterval < 1) {
+            throw new TikaConfigException(
+                    "bulkWriters, rowsPerStatement and commitInterval must be > 0");
+        }
+        String bulkInsert;
+        try {
+            bulkInsert = expandValues(insert, rowsPerStatement);
+        } catch (IllegalArgumentException e) {
+            throw new TikaConfigException("bulk load requires an insert with a single " +
+                    "VALUES tuple", e);
+        }
+        int offset = (attachmentStrategy == AttachmentStrategy.ALL) ? 2 : 1;
+        bulkTypes = new int[columns.size() + offset];
+        bulkTypes[0] = Types.VARCHAR;
+        if (attachmentStrategy == AttachmentStrategy.ALL) {
+            bulkTypes[1] = Types.INTEGER;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            bulkTypes[i + offset] = columns.get(i).getType();
+        }
+        bulkWriterPool = new ArrayList<>();
+        try {
+            for (int i = 0; i < bulkWriters; i++) {
+                bulkWriterPool.add(new BulkWriter(bulkInsert));
+            }
+        } catch (SQLException e) {
+            throw new TikaConfigException("couldn't open bulk load connections: " +
+                    connectionString, e);
+        }
+        int pool = BULK_POOL_COUNTER.incrementAndGet();
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        bulkExecutorService = Executors.newFixedThreadPool(bulkWriters, r -> {
+            Thread t = new Thread(r,
+                    "jdbc-emitter-bulk-" + pool + "-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     private void setStringNormalizer() {
@@ -599,6 +809,12 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
         } catch (SQLException e) {
             LOGGER.warn("problem closing insert", e);
         }
+        if (bulkWriterPool != null) {
+            bulkExecutorService.shutdownNow();
+            for (BulkWriter writer : bulkWriterPool) {
+                writer.close();
+            }
+        }
         try {
             connection.close();
         } catch (SQLException e) {
@@ -611,6 +827,116 @@ public class JDBCEmitter extends AbstractEmitter implements Initializable, Close
                 "'boolean', 'int', 'long', 'float', 'double' and 'timestamp'";
     }
 
+    /**
+     * One of the connections used in bulk load mode, with its prepared
+     * statement for full multi-row inserts.
+     */
+    private class BulkWriter {
+
+        private final String bulkInsert;
+        private Connection connection;
+        private PreparedStatement bulkStatement;
+
+        private BulkWriter(String bulkInsert) throws SQLException {
+            this.bulkInsert = bulkInsert;
+            connect();
+        }
+
+        /**
+         * Takes chunks of rows until there are none left, committing
+         * every {@link #commitInterval} rows and at the end.
+         */
+        private void write(List<List<Object[]>> chunks, AtomicInteger next)
+                throws SQLException {
+            List<List<Object[]>> uncommitted = new ArrayList<>();
+            int rows = 0;
+            int i;
+            while ((i = next.getAndIncrement()) < chunks.size()) {
+                uncommitted.add(chunks.get(i));
+                rows += chunks.get(i).size();
+                if (rows >= commitInterval) {
+                    commit(uncommitted);
+                    uncommitted.clear();
+                    rows = 0;
+                }
+            }
+            commit(uncommitted);
+        }
+
+        private void commit(List<List<Object[]>> chunks) throws SQLException {
+            if (chunks.isEmpty()) {
+                return;
+            }
+            int tries = 0;
+            while (true) {
+                try {
+                    for (List<Object[]> chunk : chunks) {
+                        execute(chunk);
+                    }
+                    connection.commit();
+                    return;
+                } catch (SQLException e) {
+                    if (tries++ >= maxRetries) {
+                        rollback();
+                        throw e;
+                    }
+                    LOGGER.warn("bulk load failed; retrying on a new connection", e);
+                    close();
+                    connect();
+                }
+            }
+        }
+
+        private void execute(List<Object[]> chunk) throws SQLException {
+            if (chunk.size() == rowsPerStatement) {
+                bind(bulkStatement, chunk);
+                bulkStatement.executeUpdate();
+                return;
+            }
+            try (PreparedStatement st = connection.prepareStatement(
+                    expandValues(insert, chunk.size()))) {
+                bind(st, chunk);
+                st.executeUpdate();
+            }
+        }
+
+        private void bind(PreparedStatement st, List<Object[]> chunk) throws SQLException {
+            st.clearParameters();
+            int col = 0;
+            for (Object[] row : chunk) {
+                for (int i = 0; i < row.length; i++) {
+                    setValue(st, ++col, bulkTypes[i], row[i]);
+                }
+            }
+        }
+
+        private void connect() throws SQLException {
+            connection = openConnection();
+            bulkStatement = connection.prepareStatement(bulkInsert);
+        }
+
+        private void rollback() {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                LOGGER.warn("exception rolling back", e);
+            }
+        }
+
+        private void close() {
+            try {
+                bulkStatement.close();
+            } catch (SQLException e) {
+                LOGGER.warn("exception closing bulk insert", e);
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOGGER.warn("exception closing bulk load connection", e);
+            }
+        }
+    }
+
     private static class StringNormalizer {
 
         String normalize(String emitKey, String columnName, String s, int maxLength) {
@@ -41,6 +41,8 @@ import org.junit.jupiter.api.io.TempDir;
 
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
 import org.apache.tika.pipes.emitter.Emitter;
 import org.apache.tika.pipes.emitter.EmitterManager;
 
@@ -255,6 +257,58 @@ public class JDBCEmitterTest {
         assertEquals(3, rows);
     }
 
+    @Test
+    public void testBulkLoad(@TempDir Path tmpDir) throws Exception {
+        Files.createDirectories(tmpDir.resolve("db"));
+        Path dbDir = tmpDir.resolve("db/h2");
+        Path config = tmpDir.resolve("tika-config.xml");
+        String connectionString = "jdbc:h2:file:" + dbDir.toAbsolutePath();
+
+        writeConfig("/configs/tika-config-jdbc-emitter-bulk.xml",
+                connectionString, config);
+
+        EmitterManager emitterManager = EmitterManager.load(config);
+        Emitter emitter = emitterManager.getEmitter();
+        //two full statements and a partial one
+        for (String k2 : new String[]{"first", "second"}) {
+            List<EmitData> emitData = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                emitData.add(new EmitData(new EmitKey("", "id" + i),
+                        Collections.singletonList(m("k1", "true", "k2", k2, "k3",
+                                Integer.toString(i), "k6", "2022-11-04T17:10:15Z"))));
+            }
+            emitter.emit(emitData);
+        }
+
+        //the second emit replaced the rows from the first
+        try (Connection connection = DriverManager.getConnection(connectionString)) {
+            try (Statement st = connection.createStatement()) {
+                try (ResultSet rs = st.executeQuery("select path, k2, k3, k6 from test")) {
+                    int rows = 0;
+                    while (rs.next()) {
+                        assertEquals("id" + rs.getInt(3), rs.getString(1));
+                        assertEquals("second", rs.getString(2));
+                        assertTrue(rs.getTimestamp(4) != null);
+                        rows++;
+                    }
+                    assertEquals(250, rows);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExpandValues() throws Exception {
+        assertEquals("insert into t (a, b) values (?,?), (?,?), (?,?);",
+                JDBCEmitter.expandValues("insert into t (a, b) values (?,?);", 3));
+        assertEquals("insert into t (a, b) VALUES (?, lower(?)), (?, lower(?)) " +
+                        "on conflict (a) do update set b = excluded.b",
+                JDBCEmitter.expandValues("insert into t (a, b) VALUES (?, lower(?)) " +
+                        "on conflict (a) do update set b = excluded.b", 2));
+        assertEquals("insert into t (a) values ('x)', ?), ('x)', ?)",
+                JDBCEmitter.expandValues("insert into t (a) values ('x)', ?)", 2));
+    }
+
     private void writeConfig(String srcConfig, String dbDir, Path config) throws IOException {
         String xml = IOUtils.resourceToString(srcConfig, StandardCharsets.UTF_8);
         xml = xml.replace("CONNECTION_STRING", dbDir);
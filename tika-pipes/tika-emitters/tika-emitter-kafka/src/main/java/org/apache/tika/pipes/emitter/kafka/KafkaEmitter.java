@@ -18,17 +18,28 @@ package org.apache.tika.pipes.emitter.kafka;
 
 import static org.apache.tika.config.TikaConfig.mustNotBeEmpty;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,17 +52,21 @@ import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.emitter.AbstractEmitter;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
 import org.apache.tika.pipes.emitter.TikaEmitterException;
 
 /**
  * Emits the now-parsed documents into a specified Apache Kafka topic.
  */
-public class KafkaEmitter extends AbstractEmitter implements Initializable {
+public class KafkaEmitter extends AbstractEmitter implements Initializable, Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaEmitter.class);
 
     private static final ObjectMapper OM = new ObjectMapper();
 
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
+
     String topic;
     String bootstrapServers;
 
@@ -77,7 +92,13 @@ public class KafkaEmitter extends AbstractEmitter implements Initializable {
     String keySerializer;
     String valueSerializer;
 
+    boolean async = false;
+    int serializerThreads = 4;
+    int maxInFlightRecords = 10000;
+
     private Producer<String, String> producer;
+    private ExecutorService serializerService;
+    private Semaphore inFlight;
 
     @Field
     public void setBootstrapServers(String bootstrapServers) {
@@ -193,28 +214,150 @@ public class KafkaEmitter extends AbstractEmitter implements Initializable {
         this.topic = topic;
     }
 
+    /**
+     * If <code>true</code>, {@link #emit(List)} serializes the documents on
+     * a pool of {@link #setSerializerThreads(int)} threads, sends them
+     * without waiting for each in turn, and then flushes the producer. It
+     * returns only after every record has been acknowledged according to
+     * {@link #setAcks(String)}, and it throws an exception if any of them
+     * failed. Payloads are compressed by the producer with
+     * {@link #setCompressionType(String)}.
+     * <p>
+     * Otherwise, documents are serialized on the calling thread and
+     * <code>emit</code> doesn't wait for acknowledgements.
+     *
+     * @param async
+     */
+    @Field
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    @Field
+    public void setSerializerThreads(int serializerThreads) {
+        this.serializerThreads = serializerThreads;
+    }
+
+    /**
+     * In async mode, the maximum number of records that have been sent but
+     * not yet acknowledged. Sends block once this is reached.
+     *
+     * @param maxInFlightRecords
+     */
+    @Field
+    public void setMaxInFlightRecords(int maxInFlightRecords) {
+        this.maxInFlightRecords = maxInFlightRecords;
+    }
+
     @Override
     public void emit(String emitKey, List<Metadata> metadataList, ParseContext parseContext)
             throws IOException, TikaEmitterException {
         if (metadataList == null || metadataList.isEmpty()) {
             throw new TikaEmitterException("metadata list must not be null or of size 0");
         }
+        if (async) {
+            emit(Collections.singletonList(new EmitData(new EmitKey(getName(), emitKey),
+                    metadataList, null, parseContext)));
+            return;
+        }
         for (Metadata metadata : metadataList) {
             LOGGER.debug("about to emit to target topic: ({}) path:({})", topic, emitKey);
+            producer.send(new ProducerRecord<>(topic, emitKey, toJson(metadata)));
+        }
+    }
 
-            Map<String, Object> fields = new HashMap<>();
-            for (String n : metadata.names()) {
-                String[] vals = metadata.getValues(n);
-                if (vals.length > 1) {
-                    LOGGER.warn("Can only write the first value for key {}. I see {} values.",
-                            n,
-                            vals.length);
+    @Override
+    public void emit(List<? extends EmitData> emitData) throws IOException, TikaEmitterException {
+        if (!async) {
+            super.emit(emitData);
+            return;
+        }
+        List<Future<List<CompletableFuture<RecordMetadata>>>> sends = new ArrayList<>();
+        for (EmitData d : emitData) {
+            sends.add(serializerService.submit(
+                    () -> send(d.getEmitKey().getEmitKey(), d.getMetadataList())));
+        }
+        List<String> failures = new ArrayList<>();
+        Throwable firstFailure = null;
+        try {
+            waitForSends(sends);
+            //don't wait for linger.ms for the acks
+            producer.flush();
+            for (int i = 0; i < sends.size(); i++) {
+                try {
+                    for (CompletableFuture<RecordMetadata> ack : sends.get(i).get()) {
+                        ack.get();
+                    }
+                } catch (ExecutionException e) {
+                    failures.add(emitData.get(i).getEmitKey().getEmitKey());
+                    firstFailure = (firstFailure == null) ? e.getCause() : firstFailure;
                 }
-                fields.put(n, vals[0]);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TikaEmitterException("interrupted while waiting for acks", e);
+        }
+        if (!failures.isEmpty()) {
+            LOGGER.warn("failed to send {} of {} documents", failures.size(), emitData.size(),
+                    firstFailure);
+            throw new TikaEmitterException("failed to send " + failures.size() + " of " +
+                    emitData.size() + " documents, e.g. " + failures.get(0), firstFailure);
+        }
+    }
+
+    private static void waitForSends(List<? extends Future<?>> sends)
+            throws InterruptedException {
+        for (Future<?> send : sends) {
+            try {
+                send.get();
+            } catch (ExecutionException e) {
+                //reported by the caller
+            }
+        }
+    }
+
+    private List<CompletableFuture<RecordMetadata>> send(String emitKey,
+                                                         List<Metadata> metadataList)
+            throws IOException, TikaEmitterException, InterruptedException {
+        if (metadataList == null || metadataList.isEmpty()) {
+            throw new TikaEmitterException("metadata list must not be null or of size 0");
+        }
+        List<CompletableFuture<RecordMetadata>> acks = new ArrayList<>();
+        for (Metadata metadata : metadataList) {
+            String json = toJson(metadata);
+            CompletableFuture<RecordMetadata> ack = new CompletableFuture<>();
+            inFlight.acquire();
+            try {
+                producer.send(new ProducerRecord<>(topic, emitKey, json), (md, e) -> {
+                    inFlight.release();
+                    if (e != null) {
+                        ack.completeExceptionally(e);
+                    } else {
+                        ack.complete(md);
+                    }
+                });
+            } catch (RuntimeException e) {
+                //the callback isn't called if send throws
+                inFlight.release();
+                throw e;
+            }
+            acks.add(ack);
+        }
+        return acks;
+    }
 
-            producer.send(new ProducerRecord<>(topic, emitKey, OM.writeValueAsString(fields)));
+    private static String toJson(Metadata metadata) throws IOException {
+        Map<String, Object> fields = new HashMap<>();
+        for (String n : metadata.names()) {
+            String[] vals = metadata.getValues(n);
+            if (vals.length > 1) {
+                LOGGER.warn("Can only write the first value for key {}. I see {} values.",
+                        n,
+                        vals.length);
+            }
+            fields.put(n, vals[0]);
         }
+        return OM.writeValueAsString(fields);
     }
 
     private void safePut(Properties props, String key, Object val) {
@@ -266,7 +409,28 @@ public class KafkaEmitter extends AbstractEmitter implements Initializable {
         safePut(props, ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
                 serializerClass(valueSerializer, StringSerializer.class));
 
-        producer = new KafkaProducer<>(props);
+        producer = buildProducer(props);
+
+        if (async) {
+            if (serializerThreads < 1 || maxInFlightRecords < 1) {
+                throw new TikaConfigException("serializerThreads and maxInFlightRecords " +
+                        "must be > 0");
+            }
+            inFlight = new Semaphore(maxInFlightRecords);
+            int pool = POOL_COUNTER.incrementAndGet();
+            AtomicInteger threadCounter = new AtomicInteger(0);
+            serializerService = Executors.newFixedThreadPool(serializerThreads, r -> {
+                Thread t = new Thread(r, "kafka-emitter-serializer-" + pool + "-" +
+                        threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    //this is package private so that tests can use a mock producer
+    Producer<String, String> buildProducer(Properties props) {
+        return new KafkaProducer<>(props);
     }
 
     private Object serializerClass(String className, Class defaultClass) {
@@ -285,4 +449,14 @@ public class KafkaEmitter extends AbstractEmitter implements Initializable {
         mustNotBeEmpty("server", this.bootstrapServers);
     }
 
+    @Override
+    public void close() throws IOException {
+        if (serializerService != null) {
+            serializerService.shutdownNow();
+        }
+        if (producer != null) {
+            producer.close();
+        }
+    }
+
 }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.emitter.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.emitter.TikaEmitterException;
+
+public class KafkaEmitterTest {
+
+    @Test
+    public void testAsync() throws Exception {
+        MockProducer<String, String> producer = newProducer(true);
+        KafkaEmitter emitter = newEmitter(producer, 10);
+        emitter.emit(emitData("a", "b", "c"));
+        List<String> keys = new ArrayList<>();
+        for (ProducerRecord<String, String> r : producer.history()) {
+            assertEquals("tika", r.topic());
+            assertTrue(r.value().contains("\"" + TikaCoreProperties.RESOURCE_NAME_KEY.getName() + "\""));
+            keys.add(r.key());
+        }
+        Collections.sort(keys);
+        assertEquals(List.of("a", "b", "c"), keys);
+
+        emitter.close();
+        assertTrue(producer.closed());
+    }
+
+    @Test
+    public void testFailedSend() throws Exception {
+        MockProducer<String, String> producer = new MockProducer<>(false, null,
+                new StringSerializer(), new StringSerializer()) {
+            @Override
+            public synchronized void flush() {
+                //the first record isn't acknowledged
+                errorNext(new KafkaException("broker is down"));
+                super.flush();
+            }
+        };
+        KafkaEmitter emitter = newEmitter(producer, 10);
+        TikaEmitterException e = assertThrows(TikaEmitterException.class,
+                () -> emitter.emit(emitData("a", "b")));
+        assertTrue(e.getMessage().contains("failed to send 1 of 2 documents, e.g. a"));
+        assertTrue(e.getCause() instanceof KafkaException);
+        emitter.close();
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        MockProducer<String, String> producer = newProducer(false);
+        KafkaEmitter emitter = newEmitter(producer, 2);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> emit = executor.submit(() -> {
+                emitter.emit(emitData("a", "b", "c"));
+                return null;
+            });
+            long deadline = System.currentTimeMillis() + 30000;
+            while (producer.history().size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            //the third send waits for an ack
+            Thread.sleep(200);
+            assertEquals(2, producer.history().size());
+            assertFalse(emit.isDone());
+
+            assertTrue(producer.completeNext());
+            emit.get(30, TimeUnit.SECONDS);
+            assertEquals(3, producer.history().size());
+        } finally {
+            executor.shutdownNow();
+            emitter.close();
+        }
+    }
+
+    private static MockProducer<String, String> newProducer(boolean autoComplete) {
+        return new MockProducer<>(autoComplete, null, new StringSerializer(),
+                new StringSerializer());
+    }
+
+    private static KafkaEmitter newEmitter(Producer<String, String> producer,
+                                           int maxInFlightRecords) throws Exception {
+        KafkaEmitter emitter = new KafkaEmitter() {
+            @Override
+            Producer<String, String> buildProducer(Properties props) {
+                return producer;
+            }
+        };
+        emitter.setName("kafka");
+        emitter.setTopic("tika");
+        emitter.setBootstrapServers("localhost:9092");
+        emitter.setAsync(true);
+        emitter.setSerializerThreads(1);
+        emitter.setMaxInFlightRecords(maxInFlightRecords);
+        emitter.initialize(Collections.emptyMap());
+        return emitter;
+    }
+
+    private static List<EmitData> emitData(String... keys) {
+        List<EmitData> emitData = new ArrayList<>();
+        for (String key : keys) {
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, key);
+            emitData.add(new EmitData(new EmitKey("kafka", key),
+                    Collections.singletonList(metadata), null, new ParseContext()));
+        }
+        return emitData;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.emitter.opensearch;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One action in a bulk request: the action line and the document source.
+ */
+public class BulkItem {
+
+    private final String id;
+    private final String action;
+    private final String source;
+    private final int length;
+
+    public BulkItem(String id, String action, String source) {
+        this.id = id;
+        this.action = action;
+        this.source = source;
+        //+2 for the new lines
+        this.length = action.getBytes(StandardCharsets.UTF_8).length +
+                source.getBytes(StandardCharsets.UTF_8).length + 2;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the number of bytes this takes up in the body of a bulk request
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkItem{" + "id='" + id + '\'' + ", length=" + length + '}';
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.emitter.opensearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.client.TikaClientException;
+
+/**
+ * Splits bulk items into requests of at most <code>maxBulkDocs</code> items
+ * and <code>maxBulkBytes</code> bytes and sends them in parallel. Items that
+ * fail with a 429 or a 5xx are retried on their own with exponential backoff;
+ * other failures are reported once all the requests have finished. The number
+ * of concurrent requests is halved each time OpenSearch pushes back with a 429
+ * and grows again by one with each request that goes through.
+ * <p>
+ * {@link #index(List)} blocks until every item has been indexed or has
+ * failed, so the emitter's callers see the same semantics as with a single
+ * bulk request. This is thread safe.
+ */
+class OpenSearchBulkProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OpenSearchBulkProcessor.class);
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final OpenSearchClient client;
+    private final int maxBulkDocs;
+    private final long maxBulkBytes;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final boolean compress;
+    private final AdaptiveLimiter limiter;
+    private final ExecutorService executorService;
+
+    OpenSearchBulkProcessor(OpenSearchClient client, int maxBulkDocs, long maxBulkBytes,
+                            int maxConcurrentRequests, int maxRetries, long retryBackoffMillis,
+                            boolean compress) {
+        this.client = client;
+        this.maxBulkDocs = maxBulkDocs;
+        this.maxBulkBytes = maxBulkBytes;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.compress = compress;
+        this.limiter = new AdaptiveLimiter(maxConcurrentRequests);
+        int pool = POOL_COUNTER.incrementAndGet();
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.executorService = Executors.newFixedThreadPool(maxConcurrentRequests, r -> {
+            Thread t = new Thread(r,
+                    "opensearch-emitter-bulk-" + pool + "-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void index(List<BulkItem> items) throws IOException, TikaClientException {
+        List<BulkItem> pending = items;
+        List<String> failures = new ArrayList<>();
+        int attempt = 0;
+        while (!pending.isEmpty()) {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (List<BulkItem> chunk : partition(pending)) {
+                limiter.acquire();
+                futures.add(executorService.submit(() -> send(chunk)));
+            }
+            List<BulkItem> retryable = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                Result result = waitFor(future);
+                retryable.addAll(result.retryable);
+                failures.addAll(result.failures);
+            }
+            if (retryable.isEmpty()) {
+                break;
+            }
+            if (attempt >= maxRetries) {
+                for (BulkItem item : retryable) {
+                    failures.add(item.getId() + ": gave up after " + (attempt + 1) + " attempts");
+                }
+                break;
+            }
+            long backoff = retryBackoffMillis << Math.min(attempt, 20);
+            LOG.debug("retrying {} bulk items in {}ms", retryable.size(), backoff);
+            sleep(backoff);
+            pending = retryable;
+            attempt++;
+        }
+        if (!failures.isEmpty()) {
+            throw new TikaClientException("failed to index " + failures.size() + " of " +
+                    items.size() + " documents; first failure: " + failures.get(0));
+        }
+    }
+
+    private List<List<BulkItem>> partition(List<BulkItem> items) {
+        List<List<BulkItem>> chunks = new ArrayList<>();
+        List<BulkItem> chunk = new ArrayList<>();
+        long bytes = 0;
+        for (BulkItem item : items) {
+            if (!chunk.isEmpty() &&
+                    (chunk.size() >= maxBulkDocs || bytes + item.getLength() > maxBulkBytes)) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                bytes = 0;
+            }
+            chunk.add(item);
+            bytes += item.getLength();
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private Result send(List<BulkItem> chunk) {
+        Result result = new Result();
+        try {
+            JsonResponse response = client.postBulk(toBody(chunk), compress);
+            if (response.getStatus() == TOO_MANY_REQUESTS || response.getStatus() >= 500) {
+                LOG.warn("bulk request of {} items failed with {}; will retry", chunk.size(),
+                        response.getStatus());
+                result.throttled = response.getStatus() == TOO_MANY_REQUESTS;
+                result.retryable.addAll(chunk);
+            } else if (response.getStatus() != 200) {
+                for (BulkItem item : chunk) {
+                    result.failures.add(item.getId() + ": " + response.getMsg());
+                }
+            } else if (response.getJson().path("errors").asBoolean(false)) {
+                readItems(chunk, response.getJson().path("items"), result);
+            }
+        } catch (IOException e) {
+            LOG.warn("bulk request of {} items failed; will retry", chunk.size(), e);
+            result.retryable.addAll(chunk);
+        } finally {
+            limiter.release(result.throttled);
+        }
+        return result;
+    }
+
+    private static void readItems(List<BulkItem> chunk, JsonNode items, Result result) {
+        //the items in the response are in the same order as in the request
+        for (int i = 0; i < chunk.size(); i++) {
+            BulkItem item = chunk.get(i);
+            JsonNode node = items.path(i);
+            if (node.size() > 0) {
+                //{"index": {...}} or {"update": {...}}
+                node = node.elements().next();
+            }
+            int status = node.path("status").asInt(-1);
+            if (status >= 200 && status < 300) {
+                continue;
+            }
+            if (status == TOO_MANY_REQUESTS || status >= 500) {
+                result.throttled |= status == TOO_MANY_REQUESTS;
+                result.retryable.add(item);
+            } else {
+                result.failures.add(item.getId() + ": " + status + " " + node.path("error"));
+            }
+        }
+    }
+
+    private byte[] toBody(List<BulkItem> chunk) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = compress ? new GZIPOutputStream(bos) : bos) {
+            for (BulkItem item : chunk) {
+                os.write(item.getAction().getBytes(StandardCharsets.UTF_8));
+                os.write('\n');
+                os.write(item.getSource().getBytes(StandardCharsets.UTF_8));
+                os.write('\n');
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    int getConcurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    private static Result waitFor(Future<Result> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for bulk requests", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while backing off", e);
+        }
+    }
+
+    private static class Result {
+        private final List<BulkItem> retryable = new ArrayList<>();
+        private final List<String> failures = new ArrayList<>();
+        private boolean throttled = false;
+    }
+
+    /**
+     * Additive increase, multiplicative decrease of the number of bulk
+     * requests in flight.
+     */
+    private static class AdaptiveLimiter {
+
+        private final int max;
+        private int limit;
+        private int inFlight = 0;
+
+        AdaptiveLimiter(int max) {
+            this.max = max;
+            this.limit = max;
+        }
+
+        synchronized void acquire() throws IOException {
+            while (inFlight >= limit) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting to send a bulk request", e);
+                }
+            }
+            inFlight++;
+        }
+
+        synchronized void release(boolean throttled) {
+            inFlight--;
+            if (throttled) {
+                int next = Math.max(1, limit / 2);
+                if (next < limit) {
+                    LOG.info("OpenSearch is pushing back; allowing {} concurrent bulk requests",
+                            next);
+                }
+                limit = next;
+            } else if (limit < max) {
+                limit++;
+            }
+            notifyAll();
+        }
+
+        synchronized int getLimit() {
+            return limit;
+        }
+    }
+}
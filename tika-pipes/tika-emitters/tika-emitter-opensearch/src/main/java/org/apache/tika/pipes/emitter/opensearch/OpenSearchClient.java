@@ -22,6 +22,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -33,6 +34,7 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
@@ -102,6 +104,27 @@ public class OpenSearchClient {
 
     private void appendDoc(String emitKey, List<Metadata> metadataList, StringBuilder json)
             throws IOException {
+        for (BulkItem item : getBulkItems(emitKey, metadataList)) {
+            json.append(item.getAction()).append("\n");
+            json.append(item.getSource()).append("\n");
+        }
+    }
+
+    /**
+     * @return the bulk actions that index these documents, one for the
+     * container and one for each embedded document
+     */
+    public List<BulkItem> getBulkItems(List<? extends EmitData> emitData) throws IOException {
+        List<BulkItem> items = new ArrayList<>();
+        for (EmitData d : emitData) {
+            items.addAll(getBulkItems(d.getEmitKey().getEmitKey(), d.getMetadataList()));
+        }
+        return items;
+    }
+
+    public List<BulkItem> getBulkItems(String emitKey, List<Metadata> metadataList)
+            throws IOException {
+        List<BulkItem> items = new ArrayList<>();
         int i = 0;
         String routing = (attachmentStrategy == OpenSearchEmitter.AttachmentStrategy.PARENT_CHILD) ?
                 emitKey : null;
@@ -112,16 +135,17 @@ public class OpenSearchClient {
                 id.append("-").append(UUID.randomUUID());
             }
             String indexJson = metadataToJsonWriter.getBulkJson(id.toString(), routing);
-            json.append(indexJson).append("\n");
+            String source;
             if (i == 0) {
-                json.append(metadataToJsonWriter.writeContainer(metadata, attachmentStrategy));
+                source = metadataToJsonWriter.writeContainer(metadata, attachmentStrategy);
             } else {
-                json.append(metadataToJsonWriter.writeEmbedded(metadata, attachmentStrategy, emitKey,
-                        embeddedFileFieldName));
+                source = metadataToJsonWriter.writeEmbedded(metadata, attachmentStrategy, emitKey,
+                        embeddedFileFieldName);
             }
-            json.append("\n");
+            items.add(new BulkItem(id.toString(), indexJson, source));
             i++;
         }
+        return items;
     }
 
     //Only here for testing. These may disappear without notice in the future.
@@ -140,12 +164,32 @@ public class OpenSearchClient {
                 attachmentStrategy, emitKey, embeddedFileFieldName);
     }
 
+    /**
+     * Posts a bulk request body, which is newline delimited json.
+     *
+     * @param gzipped whether the body has been gzipped
+     */
+    public JsonResponse postBulk(byte[] body, boolean gzipped) throws IOException {
+        HttpPost httpRequest = new HttpPost(openSearchUrl + "/_bulk");
+        httpRequest.setEntity(new ByteArrayEntity(body));
+        httpRequest.setHeader("Content-type", "application/x-ndjson");
+        if (gzipped) {
+            httpRequest.setHeader("Content-Encoding", "gzip");
+        }
+        return post(httpRequest);
+    }
+
     public JsonResponse postJson(String url, String json) throws IOException {
         HttpPost httpRequest = new HttpPost(url);
         StringEntity entity = new StringEntity(json, StandardCharsets.UTF_8);
         httpRequest.setEntity(entity);
-        httpRequest.setHeader("Accept", "application/json");
         httpRequest.setHeader("Content-type", "application/json; charset=utf-8");
+        return post(httpRequest);
+    }
+
+    private JsonResponse post(HttpPost httpRequest) throws IOException {
+        //both the bulk and the json endpoints answer with json
+        httpRequest.setHeader("Accept", "application/json");
         //At one point, this was required because of connection already
         // bound exceptions on windows :(
         //httpPost.setHeader("Connection", "close");
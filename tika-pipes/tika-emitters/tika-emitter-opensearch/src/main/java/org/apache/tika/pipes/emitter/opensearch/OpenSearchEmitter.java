@@ -55,6 +55,11 @@ public class OpenSearchEmitter extends AbstractEmitter implements Initializable
     }
 
     public static String DEFAULT_EMBEDDED_FILE_FIELD_NAME = "embedded";
+    public static final int DEFAULT_MAX_BULK_DOCS = 1000;
+    public static final long DEFAULT_MAX_BULK_BYTES = 10 * 1024 * 1024;
+    public static final int DEFAULT_MAX_CONCURRENT_BULK_REQUESTS = 4;
+    public static final int DEFAULT_MAX_BULK_RETRIES = 3;
+    public static final long DEFAULT_BULK_RETRY_BACKOFF_MILLIS = 500;
     private static final Logger LOG = LoggerFactory.getLogger(OpenSearchEmitter.class);
     private AttachmentStrategy attachmentStrategy = AttachmentStrategy.PARENT_CHILD;
 
@@ -65,6 +70,13 @@ public class OpenSearchEmitter extends AbstractEmitter implements Initializable
     private OpenSearchClient openSearchClient;
     private final HttpClientFactory httpClientFactory;
     private String embeddedFileFieldName = DEFAULT_EMBEDDED_FILE_FIELD_NAME;
+    private int maxBulkDocs = DEFAULT_MAX_BULK_DOCS;
+    private long maxBulkBytes = DEFAULT_MAX_BULK_BYTES;
+    private int maxConcurrentBulkRequests = DEFAULT_MAX_CONCURRENT_BULK_REQUESTS;
+    private int maxBulkRetries = DEFAULT_MAX_BULK_RETRIES;
+    private long bulkRetryBackoffMillis = DEFAULT_BULK_RETRY_BACKOFF_MILLIS;
+    private boolean compressBulkRequests = false;
+    private OpenSearchBulkProcessor bulkProcessor;
 
     public OpenSearchEmitter() throws TikaConfigException {
         httpClientFactory = new HttpClientFactory();
@@ -78,7 +90,7 @@ public class OpenSearchEmitter extends AbstractEmitter implements Initializable
         }
         try {
             LOG.debug("about to emit {} docs", emitData.size());
-            openSearchClient.emitDocuments(emitData);
+            bulkProcessor.index(openSearchClient.getBulkItems(emitData));
             LOG.info("successfully emitted {} docs", emitData.size());
         } catch (TikaClientException e) {
             LOG.warn("problem emitting docs", e);
@@ -95,7 +107,7 @@ public class OpenSearchEmitter extends AbstractEmitter implements Initializable
         }
         try {
             LOG.debug("about to emit one doc");
-            openSearchClient.emitDocument(emitKey, metadataList);
+            bulkProcessor.index(openSearchClient.getBulkItems(emitKey, metadataList));
             LOG.info("successfully emitted one doc");
         } catch (TikaClientException e) {
             LOG.warn("problem emitting doc", e);
@@ -219,6 +231,72 @@ public class OpenSearchEmitter extends AbstractEmitter implements Initializable
     }
 
 
+    /**
+     * Maximum number of documents, including embedded documents, in a single
+     * bulk request. Larger batches are split and sent in parallel.
+     *
+     * @param maxBulkDocs
+     */
+    @Field
+    public void setMaxBulkDocs(int maxBulkDocs) {
+        this.maxBulkDocs = maxBulkDocs;
+    }
+
+    /**
+     * Maximum size in bytes of the body of a single bulk request before it is
+     * compressed. A document larger than this is sent on its own.
+     *
+     * @param maxBulkBytes
+     */
+    @Field
+    public void setMaxBulkBytes(long maxBulkBytes) {
+        this.maxBulkBytes = maxBulkBytes;
+    }
+
+    /**
+     * Maximum number of bulk requests in flight at once. This is halved
+     * each time OpenSearch responds with a 429 and grows back as requests
+     * succeed.
+     *
+     * @param maxConcurrentBulkRequests
+     */
+    @Field
+    public void setMaxConcurrentBulkRequests(int maxConcurrentBulkRequests) {
+        this.maxConcurrentBulkRequests = maxConcurrentBulkRequests;
+    }
+
+    /**
+     * Number of times documents that failed with a 429 or a 5xx are retried
+     * before the emit fails.
+     *
+     * @param maxBulkRetries
+     */
+    @Field
+    public void setMaxBulkRetries(int maxBulkRetries) {
+        this.maxBulkRetries = maxBulkRetries;
+    }
+
+    /**
+     * Backoff before the first retry; this doubles with each retry.
+     *
+     * @param bulkRetryBackoffMillis
+     */
+    @Field
+    public void setBulkRetryBackoffMillis(long bulkRetryBackoffMillis) {
+        this.bulkRetryBackoffMillis = bulkRetryBackoffMillis;
+    }
+
+    /**
+     * Gzip the bodies of bulk requests. OpenSearch must have
+     * <code>http.compression</code> enabled.
+     *
+     * @param compressBulkRequests
+     */
+    @Field
+    public void setCompressBulkRequests(boolean compressBulkRequests) {
+        this.compressBulkRequests = compressBulkRequests;
+    }
+
     @Override
     public void initialize(Map<String, Param> params) throws TikaConfigException {
         if (StringUtils.isBlank(openSearchUrl)) {
@@ -229,6 +307,15 @@ public class OpenSearchEmitter extends AbstractEmitter implements Initializable
                             httpClientFactory.build(), attachmentStrategy, updateStrategy,
                             embeddedFileFieldName);
         }
+        if (maxBulkDocs < 1 || maxBulkBytes < 1 || maxConcurrentBulkRequests < 1 ||
+                maxBulkRetries < 0 || bulkRetryBackoffMillis < 0) {
+            throw new TikaConfigException("maxBulkDocs, maxBulkBytes and " +
+                    "maxConcurrentBulkRequests must be > 0; maxBulkRetries and " +
+                    "bulkRetryBackoffMillis must be >= 0");
+        }
+        bulkProcessor = new OpenSearchBulkProcessor(openSearchClient, maxBulkDocs, maxBulkBytes,
+                maxConcurrentBulkRequests, maxBulkRetries, bulkRetryBackoffMillis,
+                compressBulkRequests);
     }
 
     @Override
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.emitter.opensearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.client.TikaClientException;
+import org.apache.tika.metadata.Metadata;
+
+public class OpenSearchBulkProcessorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testChunking() throws Exception {
+        MockClient client = new MockClient();
+        OpenSearchBulkProcessor processor =
+                new OpenSearchBulkProcessor(client, 3, Long.MAX_VALUE, 2, 0, 0, true);
+        processor.index(items(client, 10));
+        //4 requests of at most 3 docs each
+        assertEquals(4, client.requests.get());
+        assertEquals(10, client.indexed.size());
+
+        //a body limit that fits two docs
+        client = new MockClient();
+        List<BulkItem> items = items(client, 6);
+        processor = new OpenSearchBulkProcessor(client, 100, items.get(0).getLength() * 2L + 1,
+                2, 0, 0, false);
+        processor.index(items);
+        assertEquals(3, client.requests.get());
+        assertEquals(6, client.indexed.size());
+    }
+
+    @Test
+    public void testRetryOnlyThrottledItems() throws Exception {
+        MockClient client = new MockClient();
+        client.throttle.add("doc-1");
+        client.throttle.add("doc-3");
+        OpenSearchBulkProcessor processor =
+                new OpenSearchBulkProcessor(client, 100, Long.MAX_VALUE, 4, 3, 1, true);
+        processor.index(items(client, 5));
+        assertEquals(2, client.requests.get());
+        //the second request only carried the two that were throttled
+        assertEquals(List.of(5, 2), client.sizes);
+        assertEquals(5, client.indexed.size());
+        //halved by the 429s, then up by one
+        assertEquals(3, processor.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        MockClient client = new MockClient();
+        client.reject.add("doc-2");
+        OpenSearchBulkProcessor processor =
+                new OpenSearchBulkProcessor(client, 2, Long.MAX_VALUE, 2, 3, 1, false);
+        TikaClientException e = assertThrows(TikaClientException.class,
+                () -> processor.index(items(client, 4)));
+        assertTrue(e.getMessage().contains("1 of 4"), e.getMessage());
+        assertTrue(e.getMessage().contains("doc-2"), e.getMessage());
+        //the others made it and weren't resent
+        assertEquals(3, client.indexed.size());
+        assertEquals(2, client.requests.get());
+
+        //always throttled
+        MockClient throttled = new MockClient();
+        throttled.throttle.add("doc-0");
+        throttled.alwaysThrottle = true;
+        OpenSearchBulkProcessor retrying =
+                new OpenSearchBulkProcessor(throttled, 2, Long.MAX_VALUE, 2, 2, 1, false);
+        e = assertThrows(TikaClientException.class,
+                () -> retrying.index(items(throttled, 1)));
+        assertTrue(e.getMessage().contains("gave up after 3 attempts"), e.getMessage());
+        assertEquals(3, throttled.requests.get());
+    }
+
+    private static List<BulkItem> items(OpenSearchClient client, int n) throws IOException {
+        List<BulkItem> items = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Metadata metadata = new Metadata();
+            metadata.set("title", "title " + i);
+            items.addAll(client.getBulkItems("doc-" + i, Collections.singletonList(metadata)));
+        }
+        return items;
+    }
+
+    private static class MockClient extends OpenSearchClient {
+
+        private final AtomicInteger requests = new AtomicInteger(0);
+        private final List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        private final Set<String> indexed = Collections.synchronizedSet(new HashSet<>());
+        private final Set<String> throttle = new HashSet<>();
+        private final Set<String> reject = new HashSet<>();
+        private volatile boolean alwaysThrottle = false;
+
+        MockClient() {
+            super("http://localhost:9200/test", null,
+                    OpenSearchEmitter.AttachmentStrategy.SEPARATE_DOCUMENTS,
+                    OpenSearchEmitter.UpdateStrategy.OVERWRITE,
+                    OpenSearchEmitter.DEFAULT_EMBEDDED_FILE_FIELD_NAME);
+        }
+
+        @Override
+        public JsonResponse postBulk(byte[] body, boolean gzipped) throws IOException {
+            requests.incrementAndGet();
+            InputStream is = new ByteArrayInputStream(body);
+            if (gzipped) {
+                is = new GZIPInputStream(is);
+            }
+            String[] lines = IOUtils.toString(is, StandardCharsets.UTF_8).split("\n");
+            sizes.add(lines.length / 2);
+            ObjectNode root = MAPPER.createObjectNode();
+            ArrayNode items = root.putArray("items");
+            boolean errors = false;
+            for (int i = 0; i < lines.length; i += 2) {
+                String id = MAPPER.readTree(lines[i]).path("index").path("_id").asText();
+                ObjectNode result = items.addObject().putObject("index");
+                result.put("_id", id);
+                if (reject.contains(id)) {
+                    result.put("status", 400);
+                    result.putObject("error").put("type", "mapper_parsing_exception");
+                    errors = true;
+                } else if (throttle.contains(id)) {
+                    result.put("status", 429);
+                    errors = true;
+                    if (!alwaysThrottle) {
+                        throttle.remove(id);
+                    }
+                } else {
+                    result.put("status", 201);
+                    indexed.add(id);
+                }
+            }
+            root.put("errors", errors);
+            return new JsonResponse(200, root);
+        }
+    }
+}
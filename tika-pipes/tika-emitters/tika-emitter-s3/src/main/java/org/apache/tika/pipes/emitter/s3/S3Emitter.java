@@ -29,6 +29,9 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.ClientConfiguration;
@@ -42,6 +45,7 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -91,6 +95,16 @@ import org.apache.tika.utils.StringUtils;
  *                  &lt;!-- optional; default is 'true'-- whether to copy the
  *                     json to a local file before putting to s3 --&gt;
  *                  &lt;param name="spoolToTemp" type="bool"&gt;true&lt;/param&gt;
+ *                  &lt;!-- optional; default is 'false'-- whether to stream the
+ *                     json, and streams without files, to s3 in a multipart
+ *                     upload, which takes precedence over spoolToTemp --&gt;
+ *                  &lt;param name="streamUpload" type="bool"&gt;false&lt;/param&gt;
+ *                  &lt;!-- optional; default is 8388608 (8 MB); size of the
+ *                     parts of a streamed upload; s3 requires at least 5 MB --&gt;
+ *                  &lt;param name="uploadPartSize" type="int"&gt;8388608&lt;/param&gt;
+ *                  &lt;!-- optional; default is 2; number of parts of a
+ *                     streamed upload that are uploaded at the same time --&gt;
+ *                  &lt;param name="maxUploadPartsInFlight" type="int"&gt;2&lt;/param&gt;
  *              &lt;/params&gt;
  *          &lt;/emitter&gt;
  *      &lt;/emitters&gt;
@@ -111,7 +125,12 @@ public class S3Emitter extends AbstractEmitter implements Initializable, StreamE
     private String prefix = null;
     private int maxConnections = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
     private boolean pathStyleAccessEnabled = false;
+    private boolean streamUpload = false;
+    private int uploadPartSize = 8 * 1024 * 1024;
+    private int maxUploadPartsInFlight = 2;
     private AmazonS3 s3Client;
+    private S3MultipartOutputStream.PartBufferPool partBufferPool;
+    private ExecutorService partExecutor;
 
     /**
      * Requires the src-bucket/path/to/my/file.txt in the {@link TikaCoreProperties#SOURCE_PATH}.
@@ -126,7 +145,18 @@ public class S3Emitter extends AbstractEmitter implements Initializable, StreamE
             throw new TikaEmitterException("metadata list must not be null or of size 0");
         }
 
-        if (!spoolToTemp) {
+        if (streamUpload) {
+            S3MultipartOutputStream os = newUploadStream(getObjectPath(emitKey), new Metadata());
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+                JsonMetadataList.toJson(metadataList, writer);
+                //this completes the upload
+                writer.close();
+            } catch (IOException | RuntimeException e) {
+                os.abort();
+                throw new TikaEmitterException("can't stream json to s3", e);
+            }
+        } else if (!spoolToTemp) {
             UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream
                     .builder()
                     .get();
@@ -163,29 +193,16 @@ public class S3Emitter extends AbstractEmitter implements Initializable, StreamE
     @Override
     public void emit(String path, InputStream is, Metadata userMetadata, ParseContext parseContext) throws IOException, TikaEmitterException {
 
-        if (!StringUtils.isBlank(prefix)) {
-            path = prefix + "/" + path;
-        }
-
-        if (!StringUtils.isBlank(fileExtension)) {
-            path += "." + fileExtension;
-        }
+        path = getObjectPath(path);
 
         LOGGER.debug("about to emit to target bucket: ({}) path:({})", bucket, path);
 
-        ObjectMetadata objectMetadata = new ObjectMetadata();
-        for (String n : userMetadata.names()) {
-            String[] vals = userMetadata.getValues(n);
-            if (vals.length > 1) {
-                LOGGER.warn("Can only write the first value for key {}. I see {} values.", n, vals.length);
-            }
-            objectMetadata.addUserMetadata(n, vals[0]);
-        }
         //In practice, sending a file is more robust
         //We ran into stream reset issues during digesting, and aws doesn't
         //like putObjects for streams without lengths
         if (is instanceof TikaInputStream) {
             if (((TikaInputStream) is).hasFile()) {
+                ObjectMetadata objectMetadata = getObjectMetadata(userMetadata);
                 try {
                     PutObjectRequest putObjectRequest = new PutObjectRequest(bucket, path, ((TikaInputStream) is).getFile()).withMetadata(objectMetadata);
                     s3Client.putObject(putObjectRequest);
@@ -195,13 +212,52 @@ public class S3Emitter extends AbstractEmitter implements Initializable, StreamE
                 return;
             }
         }
+        if (streamUpload) {
+            S3MultipartOutputStream os = newUploadStream(path, userMetadata);
+            try {
+                IOUtils.copy(is, os);
+                os.close();
+            } catch (IOException | RuntimeException e) {
+                os.abort();
+                throw e;
+            }
+            return;
+        }
         try {
-            s3Client.putObject(bucket, path, is, objectMetadata);
+            s3Client.putObject(bucket, path, is, getObjectMetadata(userMetadata));
         } catch (AmazonClientException e) {
             throw new IOException("problem writing s3object", e);
         }
     }
 
+    private String getObjectPath(String path) {
+        if (!StringUtils.isBlank(prefix)) {
+            path = prefix + "/" + path;
+        }
+
+        if (!StringUtils.isBlank(fileExtension)) {
+            path += "." + fileExtension;
+        }
+        return path;
+    }
+
+    private ObjectMetadata getObjectMetadata(Metadata userMetadata) {
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        for (String n : userMetadata.names()) {
+            String[] vals = userMetadata.getValues(n);
+            if (vals.length > 1) {
+                LOGGER.warn("Can only write the first value for key {}. I see {} values.", n, vals.length);
+            }
+            objectMetadata.addUserMetadata(n, vals[0]);
+        }
+        return objectMetadata;
+    }
+
+    private S3MultipartOutputStream newUploadStream(String path, Metadata userMetadata) {
+        return new S3MultipartOutputStream(s3Client, bucket, path, getObjectMetadata(userMetadata),
+                partBufferPool, maxUploadPartsInFlight, partExecutor);
+    }
+
     /**
      * Whether or not to spool the metadatalist to a tmp file before putting object.
      * Default: <code>true</code>.  If this is set to <code>false</code>,
@@ -214,6 +270,41 @@ public class S3Emitter extends AbstractEmitter implements Initializable, StreamE
         this.spoolToTemp = spoolToTemp;
     }
 
+    /**
+     * Whether to stream the json, and streams that aren't backed by files,
+     * to s3 in a multipart upload as they are written, rather than copying
+     * them to memory or a tmp file first. Default: <code>false</code>.
+     *
+     * @param streamUpload
+     */
+    @Field
+    public void setStreamUpload(boolean streamUpload) {
+        this.streamUpload = streamUpload;
+    }
+
+    /**
+     * Size of the parts of a streamed upload. Each upload holds up to
+     * <code>maxUploadPartsInFlight + 1</code> parts in memory.
+     * S3 requires at least 5 MB. Default: 8 MB.
+     *
+     * @param uploadPartSize
+     */
+    @Field
+    public void setUploadPartSize(int uploadPartSize) {
+        this.uploadPartSize = uploadPartSize;
+    }
+
+    /**
+     * Number of parts of a streamed upload that are uploaded at the same
+     * time. Default: 2.
+     *
+     * @param maxUploadPartsInFlight
+     */
+    @Field
+    public void setMaxUploadPartsInFlight(int maxUploadPartsInFlight) {
+        this.maxUploadPartsInFlight = maxUploadPartsInFlight;
+    }
+
     @Field
     public void setRegion(String region) {
         this.region = region;
@@ -320,12 +411,38 @@ public class S3Emitter extends AbstractEmitter implements Initializable, StreamE
         } catch (AmazonClientException e) {
             throw new TikaConfigException("can't initialize s3 emitter", e);
         }
+        if (streamUpload) {
+            initStreamUpload();
+        }
+    }
+
+    private void initStreamUpload() {
+        partBufferPool = new S3MultipartOutputStream.PartBufferPool(uploadPartSize,
+                maxUploadPartsInFlight + 1);
+        AtomicInteger threadCount = new AtomicInteger(0);
+        partExecutor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "s3-emitter-part-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    //for testing against a stand-in for s3
+    void setS3Client(AmazonS3 s3Client) {
+        this.s3Client = s3Client;
+        if (streamUpload && partExecutor == null) {
+            initStreamUpload();
+        }
     }
 
     @Override
     public void checkInitialization(InitializableProblemHandler problemHandler) throws TikaConfigException {
         mustNotBeEmpty("bucket", this.bucket);
         mustNotBeEmpty("region", this.region);
+        if (streamUpload && (uploadPartSize < 5 * 1024 * 1024 || maxUploadPartsInFlight < 1)) {
+            throw new TikaConfigException("uploadPartSize must be at least 5 MB and " +
+                    "maxUploadPartsInFlight must be > 0");
+        }
     }
 
     @Field
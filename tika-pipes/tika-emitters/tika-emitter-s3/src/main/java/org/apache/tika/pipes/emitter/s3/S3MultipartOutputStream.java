@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.emitter.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads what is written to it as the parts of a multipart upload, each
+ * part as soon as its buffer has filled, so that neither the heap nor the
+ * local disk ever holds the whole object.
+ * <p>
+ * At most <code>maxPartsInFlight</code> parts are uploaded at a time; once
+ * they are all in flight, writing waits for one of them to finish. An
+ * object that fits into a single part is put with one request instead.
+ * <p>
+ * The upload is completed by {@link #close()}. If anything goes wrong, or
+ * if {@link #abort()} is called, the upload is aborted and nothing is
+ * written to the bucket. This is not thread safe.
+ */
+class S3MultipartOutputStream extends OutputStream {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3MultipartOutputStream.class);
+
+    private final AmazonS3 s3Client;
+    private final String bucket;
+    private final String key;
+    private final ObjectMetadata objectMetadata;
+    private final PartBufferPool bufferPool;
+    private final ExecutorService executor;
+    //parts being uploaded
+    private final Semaphore inFlight;
+    private final List<Future<PartETag>> parts = new ArrayList<>();
+    private byte[] buffer;
+    private int position = 0;
+    private String uploadId = null;
+    private boolean closed = false;
+    private boolean aborted = false;
+
+    S3MultipartOutputStream(AmazonS3 s3Client, String bucket, String key,
+                            ObjectMetadata objectMetadata, PartBufferPool bufferPool,
+                            int maxPartsInFlight, ExecutorService executor) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.objectMetadata = objectMetadata;
+        this.bufferPool = bufferPool;
+        this.executor = executor;
+        this.inFlight = new Semaphore(maxPartsInFlight);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureBuffer();
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureBuffer();
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void ensureBuffer() throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+        if (buffer != null && position == buffer.length) {
+            uploadPart();
+        }
+        if (buffer == null) {
+            buffer = bufferPool.take();
+            position = 0;
+        }
+    }
+
+    private void uploadPart() throws IOException {
+        checkParts();
+        if (uploadId == null) {
+            try {
+                uploadId = s3Client.initiateMultipartUpload(
+                        new InitiateMultipartUploadRequest(bucket, key, objectMetadata))
+                        .getUploadId();
+            } catch (AmazonClientException e) {
+                abort();
+                throw new IOException("problem starting multipart upload", e);
+            }
+        }
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            abort();
+            throw new InterruptedIOException("interrupted waiting for a part to upload");
+        }
+        byte[] part = buffer;
+        int length = position;
+        int partNumber = parts.size() + 1;
+        String id = uploadId;
+        buffer = null;
+        parts.add(executor.submit(() -> {
+            try {
+                return s3Client.uploadPart(new UploadPartRequest()
+                        .withBucketName(bucket)
+                        .withKey(key)
+                        .withUploadId(id)
+                        .withPartNumber(partNumber)
+                        .withInputStream(new ByteArrayInputStream(part, 0, length))
+                        .withPartSize(length))
+                        .getPartETag();
+            } finally {
+                bufferPool.release(part);
+                inFlight.release();
+            }
+        }));
+    }
+
+    /**
+     * Fails early if a part that has already finished failed.
+     */
+    private void checkParts() throws IOException {
+        for (Future<PartETag> part : parts) {
+            if (part.isDone()) {
+                getPart(part);
+            }
+        }
+    }
+
+    private PartETag getPart(Future<PartETag> part) throws IOException {
+        try {
+            return part.get();
+        } catch (ExecutionException e) {
+            abort();
+            throw new IOException("problem uploading part", e.getCause());
+        } catch (InterruptedException e) {
+            abort();
+            throw new InterruptedIOException("interrupted waiting for a part to upload");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (aborted) {
+            throw new IOException("upload was aborted");
+        } else if (closed) {
+            return;
+        }
+        if (uploadId == null) {
+            putObject();
+            return;
+        }
+        if (position > 0) {
+            uploadPart();
+        }
+        releaseBuffer();
+        List<PartETag> etags = new ArrayList<>();
+        for (Future<PartETag> part : parts) {
+            etags.add(getPart(part));
+        }
+        etags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+        try {
+            s3Client.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+        } catch (AmazonClientException e) {
+            abort();
+            throw new IOException("problem completing multipart upload", e);
+        }
+        closed = true;
+    }
+
+    private void putObject() throws IOException {
+        int length = position;
+        byte[] bytes = buffer == null ? new byte[0] : buffer;
+        objectMetadata.setContentLength(length);
+        try {
+            s3Client.putObject(bucket, key, new ByteArrayInputStream(bytes, 0, length),
+                    objectMetadata);
+        } catch (AmazonClientException e) {
+            throw new IOException("problem writing s3object", e);
+        } finally {
+            releaseBuffer();
+            closed = true;
+        }
+    }
+
+    /**
+     * Aborts the upload, if one has been started, without waiting for the
+     * parts in flight. This may be called more than once.
+     */
+    void abort() {
+        closed = true;
+        aborted = true;
+        releaseBuffer();
+        for (Future<PartETag> part : parts) {
+            part.cancel(true);
+        }
+        if (uploadId != null) {
+            try {
+                s3Client.abortMultipartUpload(
+                        new AbortMultipartUploadRequest(bucket, key, uploadId));
+            } catch (AmazonClientException e) {
+                LOGGER.warn("problem aborting multipart upload of {}", key, e);
+            }
+            uploadId = null;
+        }
+    }
+
+    private void releaseBuffer() {
+        if (buffer != null) {
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Part buffers that are kept between uploads, up to a maximum number.
+     */
+    static class PartBufferPool {
+
+        private final int partSize;
+        private final int maxRetained;
+        private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger retained = new AtomicInteger(0);
+
+        PartBufferPool(int partSize, int maxRetained) {
+            this.partSize = partSize;
+            this.maxRetained = maxRetained;
+        }
+
+        byte[] take() {
+            byte[] buffer = free.poll();
+            if (buffer == null) {
+                return new byte[partSize];
+            }
+            retained.decrementAndGet();
+            return buffer;
+        }
+
+        void release(byte[] buffer) {
+            if (retained.incrementAndGet() <= maxRetained) {
+                free.add(buffer);
+            } else {
+                retained.decrementAndGet();
+            }
+        }
+    }
+}
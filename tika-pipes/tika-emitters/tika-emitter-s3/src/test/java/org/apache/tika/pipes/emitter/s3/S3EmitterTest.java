@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.emitter.s3;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.emitter.TikaEmitterException;
+import org.apache.tika.serialization.JsonMetadataList;
+
+public class S3EmitterTest {
+
+    @Test
+    public void testStreamUpload() throws Exception {
+        InMemoryS3 s3 = new InMemoryS3();
+        S3Emitter emitter = newEmitter(s3);
+        List<Metadata> metadataList = metadataList(20000);
+        emitter.emit("doc", metadataList, new ParseContext());
+
+        assertArrayEquals(json(metadataList), s3.objects.get("doc.json"));
+        assertTrue(s3.partsUploaded.get() > 10);
+        assertTrue(s3.maxInFlight.get() <= 2);
+        assertEquals(0, s3.puts.get());
+    }
+
+    @Test
+    public void testSinglePart() throws Exception {
+        InMemoryS3 s3 = new InMemoryS3();
+        S3Emitter emitter = newEmitter(s3);
+        List<Metadata> metadataList = metadataList(10);
+        emitter.emit("doc", metadataList, new ParseContext());
+
+        assertArrayEquals(json(metadataList), s3.objects.get("doc.json"));
+        assertEquals(1, s3.puts.get());
+        assertEquals(0, s3.partsUploaded.get());
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        InMemoryS3 s3 = new InMemoryS3();
+        s3.failPart = 3;
+        S3Emitter emitter = newEmitter(s3);
+        assertThrows(TikaEmitterException.class,
+                () -> emitter.emit("doc", metadataList(20000), new ParseContext()));
+        assertEquals(1, s3.aborted.get());
+        assertTrue(s3.objects.isEmpty());
+    }
+
+    private static S3Emitter newEmitter(InMemoryS3 s3) {
+        S3Emitter emitter = new S3Emitter();
+        emitter.setBucket("bucket");
+        emitter.setStreamUpload(true);
+        //smaller than s3 allows, so that the test makes many parts
+        emitter.setUploadPartSize(1000);
+        emitter.setMaxUploadPartsInFlight(2);
+        emitter.setS3Client((AmazonS3) Proxy.newProxyInstance(S3EmitterTest.class.getClassLoader(),
+                new Class[]{AmazonS3.class}, s3));
+        return emitter;
+    }
+
+    private static List<Metadata> metadataList(int contentLength) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < contentLength; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.TIKA_CONTENT, sb.toString());
+        return List.of(metadata);
+    }
+
+    private static byte[] json(List<Metadata> metadataList) throws Exception {
+        StringWriter writer = new StringWriter();
+        JsonMetadataList.toJson(metadataList, writer);
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A stand-in for s3 that keeps the objects in memory.
+     */
+    private static class InMemoryS3 implements InvocationHandler {
+
+        private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        private final Map<String, SortedMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+        private final AtomicInteger uploadIds = new AtomicInteger(0);
+        private final AtomicInteger puts = new AtomicInteger(0);
+        private final AtomicInteger partsUploaded = new AtomicInteger(0);
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+        private final AtomicInteger maxInFlight = new AtomicInteger(0);
+        private final AtomicInteger aborted = new AtomicInteger(0);
+        private volatile int failPart = -1;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "putObject":
+                    objects.put((String) args[1], ((InputStream) args[2]).readAllBytes());
+                    puts.incrementAndGet();
+                    return new PutObjectResult();
+                case "initiateMultipartUpload":
+                    InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+                    String uploadId = ((InitiateMultipartUploadRequest) args[0]).getKey() + "-" +
+                            uploadIds.incrementAndGet();
+                    uploads.put(uploadId, new TreeMap<>());
+                    initiated.setUploadId(uploadId);
+                    return initiated;
+                case "uploadPart":
+                    return uploadPart((UploadPartRequest) args[0]);
+                case "completeMultipartUpload":
+                    CompleteMultipartUploadRequest complete = (CompleteMultipartUploadRequest) args[0];
+                    SortedMap<Integer, byte[]> parts = uploads.remove(complete.getUploadId());
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    for (PartETag etag : complete.getPartETags()) {
+                        bos.write(parts.get(etag.getPartNumber()));
+                    }
+                    objects.put(complete.getKey(), bos.toByteArray());
+                    return new CompleteMultipartUploadResult();
+                case "abortMultipartUpload":
+                    uploads.remove(((AbortMultipartUploadRequest) args[0]).getUploadId());
+                    aborted.incrementAndGet();
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private UploadPartResult uploadPart(UploadPartRequest request) throws Exception {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                if (request.getPartNumber() == failPart) {
+                    throw new IllegalStateException("part failed");
+                }
+                Thread.sleep(5);
+                byte[] bytes = request.getInputStream().readAllBytes();
+                assertEquals(request.getPartSize(), bytes.length);
+                uploads.get(request.getUploadId()).put(request.getPartNumber(), bytes);
+                partsUploaded.incrementAndGet();
+                UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag-" + request.getPartNumber());
+                return result;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
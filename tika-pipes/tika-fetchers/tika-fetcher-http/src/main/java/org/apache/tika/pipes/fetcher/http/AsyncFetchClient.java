@@ -0,0 +1,453 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.apache.http.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.metadata.Metadata;
+
+/**
+ * Sends the {@link HttpFetcher}'s requests asynchronously, so that waiting on
+ * many slow hosts doesn't take a thread per request, and spools the bodies
+ * to temporary files.
+ * <p>
+ * At most <code>maxInFlightPerHost</code> requests are sent to a host at a
+ * time; the rest wait in a queue, without a thread. Over HTTP/2 they are
+ * multiplexed over one connection. Over HTTP/1.1 each takes a connection
+ * of its own, so once a host has answered with HTTP/1.1, it is sent at most
+ * <code>maxConnectionsPerHost</code> at a time. Until a host has answered,
+ * the lower of the two applies.
+ * <p>
+ * If there's a {@link ValidatorCache}, the validators of a URL's cached
+ * response are sent with the request, and a 304 is answered with the
+ * cached body.
+ * <p>
+ * Once more than <code>maxHosts</code> hosts have been seen, the hosts that
+ * have nothing in flight or waiting are forgotten, along with their
+ * latencies.
+ */
+class AsyncFetchClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncFetchClient.class);
+
+    //set by the client itself
+    private static final Set<String> RESTRICTED_HEADERS =
+            Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final HttpClient client;
+    private final Executor executor;
+    private final int maxInFlightPerHost;
+    private final int maxConnectionsPerHost;
+    private final int maxRedirects;
+    private final Duration requestTimeout;
+    private final long maxSpoolSize;
+    private final int maxErrMsgSize;
+    private final ValidatorCache validatorCache;
+    static final int DEFAULT_MAX_HOSTS = 10000;
+
+    //the map is bounded by evicting idle hosts
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    //responses whose temporary files haven't been closed yet
+    private final AtomicInteger openSpools = new AtomicInteger(0);
+    private int maxHosts = DEFAULT_MAX_HOSTS;
+
+    AsyncFetchClient(HttpClient client, Executor executor, int maxInFlightPerHost,
+                     int maxConnectionsPerHost,
+                     int maxRedirects, long requestTimeoutMillis, long maxSpoolSize,
+                     int maxErrMsgSize, ValidatorCache validatorCache) {
+        this.client = client;
+        this.executor = executor;
+        this.maxInFlightPerHost = maxInFlightPerHost;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxRedirects = maxRedirects;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+        this.maxSpoolSize = maxSpoolSize;
+        this.maxErrMsgSize = maxErrMsgSize;
+        this.validatorCache = validatorCache;
+    }
+
+    /**
+     * @param headers the request headers
+     * @param ranged  whether this is for a range, which isn't cached
+     */
+    CompletableFuture<Response> fetch(URI uri, Header[] headers, boolean ranged,
+                                      Metadata metadata) {
+        return send(uri, headers, ranged, 0, metadata, !ranged);
+    }
+
+    private CompletableFuture<Response> send(URI uri, Header[] headers, boolean ranged,
+                                             int redirects, Metadata metadata,
+                                             boolean conditional) {
+        ValidatorCache.Entry cached =
+                conditional && validatorCache != null ? validatorCache.get(uri) : null;
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder =
+                    HttpRequest.newBuilder(uri).GET().timeout(requestTimeout);
+            for (Header header : headers) {
+                if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                    builder.header(header.getName(), header.getValue());
+                }
+            }
+            if (cached != null && cached.etag != null) {
+                builder.header("If-None-Match", cached.etag);
+            }
+            if (cached != null && cached.lastModified != null) {
+                builder.header("If-Modified-Since", cached.lastModified);
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new IOException("bad request: " + uri, e));
+        }
+        AtomicReference<CompletableFuture<Void>> turn = new AtomicReference<>();
+        Host host = hosts.compute(hostKey(uri), (k, h) -> {
+            Host theHost = h == null ? new Host(k) : h;
+            //under the key's lock, so that an idle host can't be evicted in between
+            turn.set(theHost.acquire());
+            return theHost;
+        });
+        if (hosts.size() > maxHosts) {
+            evictIdleHosts();
+        }
+        Spool spool = new Spool(metadata);
+        return turn.get().thenCompose(v -> {
+            long start = System.nanoTime();
+            try {
+                return client.sendAsync(request, info -> {
+                    host.latency.record((System.nanoTime() - start) / 1_000_000);
+                    host.setVersion(info.version());
+                    return spool.subscriber(info.statusCode());
+                }).whenComplete((response, t) -> host.release());
+            } catch (RuntimeException e) {
+                host.release();
+                throw e;
+            }
+        }).thenComposeAsync(response -> {
+            int code = response.statusCode();
+            Optional<String> location = response.headers().firstValue("Location");
+            if (code >= 300 && code < 400 && code != 304 && location.isPresent() &&
+                    redirects < maxRedirects) {
+                spool.close();
+                return send(uri.resolve(location.get()), headers, ranged, redirects + 1,
+                        metadata, !ranged);
+            }
+            if (code == 304 && cached != null) {
+                try {
+                    if (!validatorCache.copyBody(cached, spool.getPath())) {
+                        //evicted since
+                        spool.close();
+                        return send(uri, headers, ranged, redirects, metadata, false);
+                    }
+                } catch (IOException e) {
+                    spool.close();
+                    return CompletableFuture.failedFuture(e);
+                }
+            } else if (code >= 200 && code < 300 && !ranged && validatorCache != null &&
+                    !spool.truncated) {
+                cache(response, spool);
+            }
+            return CompletableFuture.completedFuture(
+                    new Response(response, redirects, spool, cached));
+            //rather than on the common pool, where the client completes its futures
+        }, executor).whenComplete((response, t) -> {
+            if (t != null) {
+                spool.close();
+            }
+        });
+    }
+
+    private void cache(HttpResponse<Void> response, Spool spool) {
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+        if (etag == null && lastModified == null) {
+            return;
+        }
+        try {
+            validatorCache.put(response.uri(), etag, lastModified,
+                    response.headers().firstValue("Content-Type").orElse(null),
+                    response.headers().firstValue("Content-Encoding").orElse(null),
+                    spool.getPath());
+        } catch (IOException e) {
+            LOG.warn("couldn't cache {}", response.uri(), e);
+        }
+    }
+
+    private void evictIdleHosts() {
+        for (String key : hosts.keySet()) {
+            if (hosts.size() <= maxHosts) {
+                return;
+            }
+            hosts.computeIfPresent(key, (k, h) -> h.isIdle() ? null : h);
+        }
+    }
+
+    void setMaxHosts(int maxHosts) {
+        this.maxHosts = maxHosts;
+    }
+
+    /**
+     * @return the number of responses whose temporary files haven't been
+     * closed, for testing
+     */
+    int getOpenSpools() {
+        return openSpools.get();
+    }
+
+    /**
+     * @return the latencies to the response headers, by host
+     */
+    Map<String, LatencyHistogram> getLatencyHistograms() {
+        Map<String, LatencyHistogram> latencies = new TreeMap<>();
+        for (Host host : hosts.values()) {
+            latencies.put(host.name, host.latency);
+        }
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    private static String hostKey(URI uri) {
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return uri.getHost() + ":" + port;
+    }
+
+    /**
+     * The requests in flight to a host, and those waiting for them.
+     */
+    private class Host {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final ArrayDeque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+        private int inFlight = 0;
+        private int limit = Math.min(maxInFlightPerHost, maxConnectionsPerHost);
+
+        private Host(String name) {
+            this.name = name;
+        }
+
+        private synchronized boolean isIdle() {
+            return inFlight == 0 && waiting.isEmpty();
+        }
+
+        private CompletableFuture<Void> acquire() {
+            synchronized (this) {
+                if (inFlight < limit) {
+                    inFlight++;
+                    return CompletableFuture.completedFuture(null);
+                }
+                CompletableFuture<Void> turn = new CompletableFuture<>();
+                waiting.add(turn);
+                return turn;
+            }
+        }
+
+        private void release() {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = inFlight <= limit ? waiting.poll() : null;
+                if (next == null) {
+                    inFlight--;
+                }
+            }
+            //hands over this request's place
+            if (next != null) {
+                next.complete(null);
+            }
+        }
+
+        private void setVersion(HttpClient.Version version) {
+            List<CompletableFuture<Void>> started = new ArrayList<>();
+            synchronized (this) {
+                int newLimit = version == HttpClient.Version.HTTP_2 ? maxInFlightPerHost :
+                        Math.min(maxInFlightPerHost, maxConnectionsPerHost);
+                if (newLimit == limit) {
+                    return;
+                }
+                limit = newLimit;
+                while (inFlight < limit && !waiting.isEmpty()) {
+                    inFlight++;
+                    started.add(waiting.poll());
+                }
+            }
+            for (CompletableFuture<Void> turn : started) {
+                turn.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Writes a successful response's body to a temporary file, up to
+     * <code>maxSpoolSize</code>, or keeps the start of an error response's
+     * body for the message.
+     */
+    private class Spool implements Consumer<Optional<byte[]>> {
+        private final TemporaryResources tmp = new TemporaryResources();
+        private final Metadata metadata;
+        private Path path;
+        private OutputStream os;
+        private ByteArrayOutputStream error;
+        private long written = 0;
+        private boolean truncated = false;
+
+        private Spool(Metadata metadata) {
+            this.metadata = metadata;
+            openSpools.incrementAndGet();
+            //closing the temporary resources is idempotent, whoever does it
+            tmp.addResource(openSpools::decrementAndGet);
+        }
+
+        private Path getPath() throws IOException {
+            if (path == null) {
+                path = tmp.createTempFile(metadata);
+            }
+            return path;
+        }
+
+        private HttpResponse.BodySubscriber<Void> subscriber(int code) {
+            if (code >= 300 && code < 400) {
+                return HttpResponse.BodySubscribers.discarding();
+            }
+            if (code < 200 || code > 299) {
+                error = new ByteArrayOutputStream();
+            }
+            return HttpResponse.BodySubscribers.ofByteArrayConsumer(this);
+        }
+
+        @Override
+        public void accept(Optional<byte[]> bytes) {
+            try {
+                if (error != null) {
+                    bytes.ifPresent(b -> error.write(b, 0,
+                            (int) Math.max(0, Math.min(b.length, maxErrMsgSize - error.size()))));
+                } else if (bytes.isPresent()) {
+                    write(bytes.get());
+                } else if (os != null) {
+                    os.close();
+                } else {
+                    //empty body
+                    getPath();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            if (os == null) {
+                os = Files.newOutputStream(getPath());
+            }
+            int len = bytes.length;
+            if (maxSpoolSize > -1 && written + len > maxSpoolSize) {
+                len = (int) (maxSpoolSize - written);
+                truncated = true;
+            }
+            os.write(bytes, 0, len);
+            written += len;
+        }
+
+        private String getErrorMessage() {
+            return error == null ? "" : error.toString(StandardCharsets.UTF_8);
+        }
+
+        private void close() {
+            try {
+                if (os != null) {
+                    os.close();
+                }
+                tmp.close();
+            } catch (IOException e) {
+                LOG.warn("couldn't delete temporary file", e);
+            }
+        }
+    }
+
+    /**
+     * A response whose body, if it was successful, has been spooled.
+     */
+    class Response {
+        final HttpResponse<Void> response;
+        final int redirects;
+        private final Spool spool;
+        //the cached response that a 304 was answered with
+        final ValidatorCache.Entry cached;
+
+        private Response(HttpResponse<Void> response, int redirects, Spool spool,
+                         ValidatorCache.Entry cached) {
+            this.response = response;
+            this.redirects = redirects;
+            this.spool = spool;
+            this.cached = response.statusCode() == 304 ? cached : null;
+        }
+
+        boolean isSuccess() {
+            int code = response.statusCode();
+            return (code >= 200 && code < 300) || cached != null;
+        }
+
+        boolean isTruncated() {
+            return spool.truncated;
+        }
+
+        Path getPath() throws IOException {
+            return spool.getPath();
+        }
+
+        TemporaryResources getTemporaryResources() {
+            return spool.tmp;
+        }
+
+        String getErrorMessage() {
+            return spool.getErrorMessage();
+        }
+
+        void close() {
+            spool.close();
+        }
+    }
+}
@@ -23,10 +23,12 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.security.PrivateKey;
 import java.util.ArrayList;
@@ -38,7 +40,16 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -76,6 +87,7 @@ import org.apache.tika.metadata.Property;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.fetcher.AbstractFetcher;
+import org.apache.tika.pipes.fetcher.AsyncFetcher;
 import org.apache.tika.pipes.fetcher.RangeFetcher;
 import org.apache.tika.pipes.fetcher.config.FetcherConfigContainer;
 import org.apache.tika.pipes.fetcher.http.config.HttpFetcherConfig;
@@ -86,9 +98,12 @@ import org.apache.tika.pipes.fetcher.http.jwt.JwtSecretCreds;
 import org.apache.tika.utils.StringUtils;
 
 /**
- * Based on Apache httpclient
+ * Based on Apache httpclient.
+ * <p>
+ * In async mode, requests are sent with the JDK's client instead, which
+ * uses HTTP/2 where the server supports it; see {@link #fetchAsync}.
  */
-public class HttpFetcher extends AbstractFetcher implements Initializable, RangeFetcher {
+public class HttpFetcher extends AbstractFetcher implements Initializable, RangeFetcher, AsyncFetcher {
     public HttpFetcher() {
 
     }
@@ -156,6 +171,8 @@ public class HttpFetcher extends AbstractFetcher implements Initializable, Range
 
     JwtGenerator jwtGenerator;
 
+    AsyncFetchClient asyncClient;
+
     @Override
     public InputStream fetch(String fetchKey, Metadata metadata, ParseContext parseContext) throws IOException, TikaException {
         HttpFetcherConfig additionalHttpFetcherConfig = getAdditionalHttpFetcherConfig(parseContext);
@@ -168,9 +185,189 @@ public class HttpFetcher extends AbstractFetcher implements Initializable, Range
         get.setConfig(requestConfig);
         setHttpRequestHeaders(metadata, get);
         putAdditionalHeadersOnRequest(additionalHttpFetcherConfig, get);
+        if (asyncClient != null) {
+            return waitFor(executeAsync(get, metadata, false));
+        }
         return execute(get, metadata, httpClient, true);
     }
 
+    @Override
+    public boolean isAsync() {
+        return asyncClient != null;
+    }
+
+    /**
+     * Fetches without holding a thread while waiting for the server, so that
+     * many fetches can be in flight at once. This must be in async mode.
+     * <p>
+     * A pipelined PipesServer fetches its files this way. Otherwise, the
+     * pipes go through {@link #fetch(String, Metadata, ParseContext)}, which
+     * waits on this future; async mode still gives them HTTP/2, the per-host
+     * limits and the validator cache. Ranged fetches always wait.
+     * <p>
+     * The future fails with an {@link IOException} for a status code
+     * outside the 200 range, other than a 304 that was answered from the
+     * validator cache, or with a {@link TikaTimeoutException} after the
+     * overall timeout.
+     */
+    @Override
+    public CompletableFuture<InputStream> fetchAsync(String fetchKey, Metadata metadata,
+                                                     ParseContext parseContext)
+            throws IOException, TikaException {
+        if (asyncClient == null) {
+            throw new IllegalStateException("not in async mode");
+        }
+        HttpFetcherConfig additionalHttpFetcherConfig = getAdditionalHttpFetcherConfig(parseContext);
+        HttpGet get = new HttpGet(fetchKey);
+        setHttpRequestHeaders(metadata, get);
+        putAdditionalHeadersOnRequest(additionalHttpFetcherConfig, get);
+        return executeAsync(get, metadata, false);
+    }
+
+    private CompletableFuture<InputStream> executeAsync(HttpGet get, Metadata metadata,
+                                                        boolean ranged) throws IOException {
+        URI uri;
+        try {
+            uri = new URI(get.getURI().toString());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        CompletableFuture<InputStream> pending = new CompletableFuture<>();
+        asyncClient.fetch(uri, get.getAllHeaders(), ranged, metadata)
+                .whenComplete((response, t) -> {
+                    if (t != null) {
+                        pending.completeExceptionally(t);
+                    } else if (pending.isDone()) {
+                        //timed out or cancelled while this was on its way
+                        response.close();
+                    } else {
+                        complete(pending, uri, response, metadata);
+                    }
+                });
+        CompletableFuture<InputStream> future = pending;
+        long overallTimeout = httpFetcherConfig.getOverallTimeout() == null ? -1 :
+                httpFetcherConfig.getOverallTimeout();
+        if (overallTimeout > -1) {
+            future = future.orTimeout(overallTimeout, TimeUnit.MILLISECONDS)
+                    .exceptionally(t -> {
+                        if (t instanceof TimeoutException) {
+                            throw new CompletionException(new TikaTimeoutException(
+                                    "Overall timeout after " + overallTimeout + "ms"));
+                        }
+                        throw t instanceof CompletionException ? (CompletionException) t :
+                                new CompletionException(t);
+                    });
+            //so that a late response is closed if the caller gives up
+            future.whenComplete((is, t) -> {
+                if (t instanceof CancellationException) {
+                    pending.cancel(false);
+                }
+            });
+        }
+        return future;
+    }
+
+    private void complete(CompletableFuture<InputStream> future, URI uri,
+                          AsyncFetchClient.Response response, Metadata metadata) {
+        InputStream is;
+        try {
+            is = toInputStream(uri, response, metadata);
+        } catch (CompletionException e) {
+            future.completeExceptionally(e.getCause());
+            return;
+        }
+        if (!future.complete(is)) {
+            //timed out or cancelled in the meantime, so nobody will close it
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    private InputStream toInputStream(URI uri, AsyncFetchClient.Response response,
+                                      Metadata metadata) {
+        java.net.http.HttpResponse<Void> r = response.response;
+        try {
+            updateMetadata(uri, response, metadata);
+            int code = r.statusCode();
+            LOG.info("Fetch id {} status code {}", uri, code);
+            if (!response.isSuccess()) {
+                throw new IOException("bad status code: " + code + " :: " +
+                        response.getErrorMessage());
+            }
+            if (response.isTruncated()) {
+                metadata.set(HTTP_FETCH_TRUNCATED, "true");
+            }
+            return TikaInputStream.get(response.getPath(), metadata,
+                    response.getTemporaryResources());
+        } catch (IOException e) {
+            response.close();
+            throw new CompletionException(e);
+        }
+    }
+
+    private void updateMetadata(URI uri, AsyncFetchClient.Response response,
+                                Metadata metadata) {
+        java.net.http.HttpResponse<Void> r = response.response;
+        java.net.http.HttpHeaders headers = r.headers();
+        metadata.set(HTTP_STATUS_CODE, r.statusCode());
+        String contentEncoding = headers.firstValue("Content-Encoding").orElse(
+                response.cached == null ? null : response.cached.contentEncoding);
+        if (contentEncoding != null) {
+            metadata.set(HTTP_CONTENT_ENCODING, contentEncoding);
+        }
+        String contentType = headers.firstValue("Content-Type").orElse(
+                response.cached == null ? null : response.cached.contentType);
+        if (contentType != null) {
+            metadata.set(HTTP_CONTENT_TYPE, contentType);
+        }
+        if (httpFetcherConfig.getHttpHeaders() != null) {
+            for (String h : httpFetcherConfig.getHttpHeaders()) {
+                for (String value : headers.allValues(h)) {
+                    metadata.add(HTTP_HEADER_PREFIX + h, value);
+                }
+            }
+        }
+        metadata.set(HTTP_NUM_REDIRECTS, response.redirects);
+        if (response.redirects == 0) {
+            metadata.set(HTTP_TARGET_URL, uri.toString());
+        } else {
+            try {
+                URL u = r.uri().toURL();
+                metadata.set(HTTP_TARGET_URL, u.toString());
+                metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, u.getFile());
+            } catch (MalformedURLException | IllegalArgumentException e) {
+                //swallow
+            }
+        }
+    }
+
+    private static InputStream waitFor(CompletableFuture<InputStream> future)
+            throws IOException, TikaException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof TikaException) {
+                throw (TikaException) cause;
+            }
+            throw new TikaException("problem fetching", cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw new TikaException("interrupted", e);
+        } catch (CancellationException e) {
+            throw new TikaException("cancelled", e);
+        }
+    }
+
+    /**
+     * @return in async mode, the latencies from sending requests to getting
+     * the response headers, by host and port; otherwise, nothing
+     */
+    public Map<String, LatencyHistogram> getLatencyHistograms() {
+        return asyncClient == null ? Map.of() : asyncClient.getLatencyHistograms();
+    }
+
     private void setHttpRequestHeaders(Metadata metadata, HttpGet get) {
         if (!StringUtils.isBlank(userAgent)) {
             get.setHeader(USER_AGENT, userAgent);
@@ -217,6 +414,9 @@ public class HttpFetcher extends AbstractFetcher implements Initializable, Range
         putAdditionalHeadersOnRequest(additionalHttpFetcherConfig, get);
 
         get.setHeader("Range", "bytes=" + startRange + "-" + endRange);
+        if (asyncClient != null) {
+            return waitFor(executeAsync(get, metadata, true));
+        }
         return execute(get, metadata, httpClient, true);
     }
 
@@ -591,6 +791,44 @@ public class HttpFetcher extends AbstractFetcher implements Initializable, Range
         httpFetcherConfig.setUserAgent(userAgent);
     }
 
+    /**
+     * Sends requests with the JDK's asynchronous client, which uses HTTP/2
+     * where the server supports it, instead of one blocking request per
+     * thread. Only basic authentication is supported in this mode, and the
+     * target IP address isn't captured.
+     * <p>
+     * Default is <code>false</code>.
+     */
+    @Field
+    public void setAsync(boolean async) {
+        httpFetcherConfig.setAsync(async);
+    }
+
+    /**
+     * In async mode, the maximum number of requests in flight to a host.
+     * Over HTTP/1.1, this is also limited by maxConnectionsPerRoute.
+     */
+    @Field
+    public void setMaxInFlightPerHost(int maxInFlightPerHost) {
+        httpFetcherConfig.setMaxInFlightPerHost(maxInFlightPerHost);
+    }
+
+    /**
+     * In async mode, keeps the responses that had an ETag or Last-Modified
+     * header in this directory, and sends those validators the next time
+     * the same URL is fetched; if the server answers 304, the cached body
+     * is returned.
+     */
+    @Field
+    public void setValidatorCacheDirectory(String validatorCacheDirectory) {
+        httpFetcherConfig.setValidatorCacheDirectory(validatorCacheDirectory);
+    }
+
+    @Field
+    public void setValidatorCacheMaxBytes(long validatorCacheMaxBytes) {
+        httpFetcherConfig.setValidatorCacheMaxBytes(validatorCacheMaxBytes);
+    }
+
     @Field
     public void setJwtIssuer(String jwtIssuer) {
         httpFetcherConfig.setJwtIssuer(jwtIssuer);
@@ -649,6 +887,9 @@ public class HttpFetcher extends AbstractFetcher implements Initializable, Range
         HttpClientFactory cp = httpClientFactory.copy();
         cp.setDisableContentCompression(true);
         noCompressHttpClient = cp.build();
+        if (Boolean.TRUE.equals(httpFetcherConfig.getAsync())) {
+            initAsyncClient();
+        }
 
         if (!StringUtils.isBlank(httpFetcherConfig.getJwtPrivateKeyBase64())) {
             PrivateKey key = JwtPrivateKeyCreds.convertBase64ToPrivateKey(httpFetcherConfig.getJwtPrivateKeyBase64());
@@ -661,8 +902,40 @@ public class HttpFetcher extends AbstractFetcher implements Initializable, Range
         }
     }
 
+    private void initAsyncClient() throws TikaConfigException {
+        ValidatorCache validatorCache = null;
+        if (!StringUtils.isBlank(httpFetcherConfig.getValidatorCacheDirectory())) {
+            try {
+                validatorCache = new ValidatorCache(
+                        Paths.get(httpFetcherConfig.getValidatorCacheDirectory()),
+                        httpFetcherConfig.getValidatorCacheMaxBytes());
+            } catch (IOException e) {
+                throw new TikaConfigException("couldn't open validator cache", e);
+            }
+        }
+        //runs the client's callbacks, which spool the bodies
+        AtomicInteger threadCount = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                    Thread t = new Thread(r, "http-fetcher-async-" + threadCount.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                });
+        asyncClient = new AsyncFetchClient(httpClientFactory.buildAsync(executor), executor,
+                httpFetcherConfig.getMaxInFlightPerHost(),
+                httpClientFactory.getMaxConnectionsPerRoute(),
+                Math.max(0, httpFetcherConfig.getMaxRedirects()),
+                httpClientFactory.getRequestTimeout(),
+                httpFetcherConfig.getMaxSpoolSize(),
+                httpFetcherConfig.getMaxErrMsgSize(), validatorCache);
+    }
+
     @Override
     public void checkInitialization(InitializableProblemHandler problemHandler) throws TikaConfigException {
+        if (Boolean.TRUE.equals(httpFetcherConfig.getAsync()) &&
+                httpFetcherConfig.getMaxInFlightPerHost() < 1) {
+            throw new TikaConfigException("maxInFlightPerHost must be > 0");
+        }
         if (!StringUtils.isBlank(httpFetcherConfig.getJwtSecret()) && !StringUtils.isBlank(httpFetcherConfig.getJwtPrivateKeyBase64())) {
             throw new TikaConfigException("Both JWT secret and JWT private key base 64 were " + "specified. Only one or the other is supported");
         }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in fixed buckets. This is thread safe.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets in milliseconds; there is one more
+     * bucket for anything longer.
+     */
+    public static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000,
+            2000, 5000, 10000, 30000, 60000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+    private final AtomicLong sumMillis = new AtomicLong(0);
+
+    public void record(long millis) {
+        int i = 0;
+        while (i < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[i]) {
+            i++;
+        }
+        counts.incrementAndGet(i);
+        sumMillis.addAndGet(millis);
+    }
+
+    /**
+     * @return the number of latencies in each bucket, not cumulative
+     */
+    public long[] getCounts() {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (long c : getCounts()) {
+            count += c;
+        }
+        return count;
+    }
+
+    public long getSumMillis() {
+        return sumMillis.get();
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the upper bound of the bucket that the quantile falls into,
+     * {@link Long#MAX_VALUE} if it is the last, or -1 if nothing has been
+     * recorded
+     */
+    public long getQuantileMillis(double quantile) {
+        long[] counts = getCounts();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BUCKET_BOUNDS_MILLIS[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + getCount() + ", sumMillis=" + getSumMillis() +
+                ", p50<=" + getQuantileMillis(0.5) + ", p99<=" + getQuantileMillis(0.99) + "}";
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.mime.HexCoDec;
+
+/**
+ * The bodies of responses that had an ETag or a Last-Modified header, with
+ * those validators, so that the next request for the same URL can be a
+ * conditional GET. The least recently used are deleted once the bodies take
+ * up more than <code>maxBytes</code>. This is thread safe.
+ */
+class ValidatorCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ValidatorCache.class);
+
+    private static final int MAGIC = 0x544b5643;
+    private static final int VERSION = 1;
+    private static final String BODY = ".body";
+    private static final String META = ".meta";
+
+    private final Path directory;
+    private final long maxBytes;
+    //sizes of the entries, least recently used first
+    private final LinkedHashMap<String, Long> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    ValidatorCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        List<Path> bodies = new ArrayList<>();
+        Map<Path, FileTime> modified = new HashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(BODY)) {
+                    bodies.add(p);
+                    modified.put(p, Files.getLastModifiedTime(p));
+                } else if (!name.endsWith(META)) {
+                    //left over from a put that didn't finish
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+        bodies.sort(Comparator.comparing(modified::get));
+        for (Path body : bodies) {
+            String name = body.getFileName().toString();
+            add(name.substring(0, name.length() - BODY.length()), Files.size(body));
+        }
+        evict();
+    }
+
+    /**
+     * @return the cached response for this URL, or <code>null</code>
+     */
+    Entry get(URI uri) {
+        String key = key(uri);
+        synchronized (lru) {
+            if (lru.get(key) == null) {
+                return null;
+            }
+        }
+        try (DataInputStream is = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(directory.resolve(key + META))))) {
+            if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+                return null;
+            }
+            return new Entry(key, readString(is), readString(is), readString(is),
+                    readString(is));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("couldn't read validators for {}", uri, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the body has been evicted since the
+     * entry was read
+     */
+    boolean copyBody(Entry entry, Path target) throws IOException {
+        Path body = directory.resolve(entry.key + BODY);
+        try {
+            Files.copy(body, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        try {
+            Files.setLastModifiedTime(body, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            //evicted since
+        }
+        return true;
+    }
+
+    void put(URI uri, String etag, String lastModified, String contentType,
+             String contentEncoding, Path body) throws IOException {
+        String key = key(uri);
+        Path tmpBody = Files.createTempFile(directory, key, ".tmp");
+        Path tmpMeta = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.copy(body, tmpBody, StandardCopyOption.REPLACE_EXISTING);
+            try (DataOutputStream os = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpMeta)))) {
+                os.writeInt(MAGIC);
+                os.writeInt(VERSION);
+                writeString(os, etag);
+                writeString(os, lastModified);
+                writeString(os, contentType);
+                writeString(os, contentEncoding);
+            }
+            long size = Files.size(tmpBody);
+            synchronized (lru) {
+                Files.move(tmpBody, directory.resolve(key + BODY),
+                        StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmpMeta, directory.resolve(key + META),
+                        StandardCopyOption.REPLACE_EXISTING);
+                add(key, size);
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(tmpBody);
+            Files.deleteIfExists(tmpMeta);
+        }
+    }
+
+    private void add(String key, long size) {
+        Long previous = lru.put(key, size);
+        bytes += size - (previous == null ? 0 : previous);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = lru.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            try {
+                Files.deleteIfExists(directory.resolve(e.getKey() + META));
+                Files.deleteIfExists(directory.resolve(e.getKey() + BODY));
+            } catch (IOException ex) {
+                LOG.debug("couldn't evict {}", e.getKey(), ex);
+                continue;
+            }
+            bytes -= e.getValue();
+            it.remove();
+        }
+    }
+
+    private static String key(URI uri) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(uri.toString().getBytes(StandardCharsets.UTF_8));
+            return new String(HexCoDec.encode(digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream os, String s) throws IOException {
+        os.writeBoolean(s != null);
+        if (s != null) {
+            os.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream is) throws IOException {
+        return is.readBoolean() ? is.readUTF() : null;
+    }
+
+    static class Entry {
+        private final String key;
+        final String etag;
+        final String lastModified;
+        final String contentType;
+        final String contentEncoding;
+
+        private Entry(String key, String etag, String lastModified, String contentType,
+                      String contentEncoding) {
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+        }
+    }
+}
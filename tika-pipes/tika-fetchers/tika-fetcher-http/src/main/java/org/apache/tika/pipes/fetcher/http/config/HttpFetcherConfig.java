@@ -45,6 +45,10 @@ public class HttpFetcherConfig extends AbstractConfig {
     private int jwtExpiresInSeconds;
     private String jwtSecret;
     private String jwtPrivateKeyBase64;
+    private Boolean async = false;
+    private Integer maxInFlightPerHost = 32;
+    private String validatorCacheDirectory;
+    private Long validatorCacheMaxBytes = 1024L * 1024 * 1024;
 
 
     public String getUserName() {
@@ -253,4 +257,40 @@ public class HttpFetcherConfig extends AbstractConfig {
         this.jwtPrivateKeyBase64 = jwtPrivateKeyBase64;
         return this;
     }
+
+    public Boolean getAsync() {
+        return async;
+    }
+
+    public HttpFetcherConfig setAsync(Boolean async) {
+        this.async = async;
+        return this;
+    }
+
+    public Integer getMaxInFlightPerHost() {
+        return maxInFlightPerHost;
+    }
+
+    public HttpFetcherConfig setMaxInFlightPerHost(Integer maxInFlightPerHost) {
+        this.maxInFlightPerHost = maxInFlightPerHost;
+        return this;
+    }
+
+    public String getValidatorCacheDirectory() {
+        return validatorCacheDirectory;
+    }
+
+    public HttpFetcherConfig setValidatorCacheDirectory(String validatorCacheDirectory) {
+        this.validatorCacheDirectory = validatorCacheDirectory;
+        return this;
+    }
+
+    public Long getValidatorCacheMaxBytes() {
+        return validatorCacheMaxBytes;
+    }
+
+    public HttpFetcherConfig setValidatorCacheMaxBytes(Long validatorCacheMaxBytes) {
+        this.validatorCacheMaxBytes = validatorCacheMaxBytes;
+        return this;
+    }
 }
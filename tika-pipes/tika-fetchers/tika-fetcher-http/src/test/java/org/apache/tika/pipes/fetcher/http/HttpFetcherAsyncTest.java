@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.TikaTimeoutException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+
+public class HttpFetcherAsyncTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    @TempDir
+    private Path tmpDir;
+
+    private HttpServer server;
+    private String base;
+    private final AtomicInteger notModified = new AtomicInteger(0);
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicInteger maxInFlight = new AtomicInteger(0);
+    private volatile CountDownLatch slow = new CountDownLatch(0);
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/doc", exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            respond(exchange, 200, "hello world");
+        });
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/doc");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> respond(exchange, 404, "not here"));
+        server.createContext("/slow", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                slow.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                //respond anyway
+            }
+            inFlight.decrementAndGet();
+            respond(exchange, 200, "slow");
+        });
+        server.start();
+        base = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConditionalGet() throws Exception {
+        HttpFetcher fetcher = newFetcher(32);
+        Metadata metadata = new Metadata();
+        assertEquals("hello world", fetch(fetcher, base + "/doc", metadata));
+        assertEquals("200", metadata.get(HttpFetcher.HTTP_STATUS_CODE));
+
+        metadata = new Metadata();
+        assertEquals("hello world", fetch(fetcher, base + "/doc", metadata));
+        assertEquals("304", metadata.get(HttpFetcher.HTTP_STATUS_CODE));
+        assertEquals("text/plain", metadata.get(HttpFetcher.HTTP_CONTENT_TYPE));
+        assertEquals(1, notModified.get());
+
+        LatencyHistogram latency =
+                fetcher.getLatencyHistograms().get("localhost:" + server.getAddress().getPort());
+        assertEquals(2, latency.getCount());
+    }
+
+    @Test
+    public void testRedirectAndErrors() throws Exception {
+        HttpFetcher fetcher = newFetcher(32);
+        Metadata metadata = new Metadata();
+        assertEquals("hello world", fetch(fetcher, base + "/redirect", metadata));
+        assertEquals("1", metadata.get(HttpFetcher.HTTP_NUM_REDIRECTS));
+        assertEquals(base + "/doc", metadata.get(HttpFetcher.HTTP_TARGET_URL));
+
+        Metadata missing = new Metadata();
+        IOException e = assertThrows(IOException.class,
+                () -> fetch(fetcher, base + "/missing", missing));
+        assertTrue(e.getMessage().contains("not here"));
+        assertEquals("404", missing.get(HttpFetcher.HTTP_STATUS_CODE));
+    }
+
+    @Test
+    public void testMaxInFlightPerHost() throws Exception {
+        slow = new CountDownLatch(1);
+        HttpFetcher fetcher = newFetcher(2);
+        List<CompletableFuture<InputStream>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(fetcher.fetchAsync(base + "/slow", new Metadata(), new ParseContext()));
+        }
+        Thread.sleep(500);
+        slow.countDown();
+        for (CompletableFuture<InputStream> future : futures) {
+            try (InputStream is = future.get(30, TimeUnit.SECONDS)) {
+                assertEquals("slow", IOUtils.toString(is, StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(2, maxInFlight.get());
+        assertEquals(0, fetcher.asyncClient.getOpenSpools());
+    }
+
+    @Test
+    public void testOverallTimeout() throws Exception {
+        slow = new CountDownLatch(1);
+        HttpFetcher fetcher = newFetcher(2);
+        fetcher.setOverallTimeout(200);
+        TikaException e = assertThrows(TikaException.class,
+                () -> fetch(fetcher, base + "/slow", new Metadata()));
+        assertTrue(e.getCause() instanceof TikaTimeoutException);
+
+        //the response arrives after the timeout, and its temporary file is closed
+        slow.countDown();
+        long deadline = System.currentTimeMillis() + 30000;
+        while (fetcher.asyncClient.getOpenSpools() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, fetcher.asyncClient.getOpenSpools());
+        assertEquals(0, inFlight.get());
+    }
+
+    @Test
+    public void testMaxHosts() throws Exception {
+        HttpFetcher fetcher = newFetcher(2);
+        fetcher.asyncClient.setMaxHosts(1);
+        int port = server.getAddress().getPort();
+        assertEquals("hello world", fetch(fetcher, base + "/doc", new Metadata()));
+        assertEquals("hello world",
+                fetch(fetcher, "http://127.0.0.1:" + port + "/doc", new Metadata()));
+        //the first host was idle, so it was forgotten
+        assertEquals(1, fetcher.getLatencyHistograms().size());
+        assertFalse(fetcher.getLatencyHistograms().containsKey("localhost:" + port));
+        assertEquals(0, fetcher.asyncClient.getOpenSpools());
+    }
+
+    private HttpFetcher newFetcher(int maxInFlightPerHost) throws Exception {
+        HttpFetcher fetcher = new HttpFetcher();
+        fetcher.setName("http");
+        fetcher.setAsync(true);
+        fetcher.setMaxRedirects(5);
+        fetcher.setMaxInFlightPerHost(maxInFlightPerHost);
+        fetcher.setValidatorCacheDirectory(tmpDir.resolve("validators").toString());
+        fetcher.initialize(Collections.emptyMap());
+        return fetcher;
+    }
+
+    private static String fetch(HttpFetcher fetcher, String url, Metadata metadata)
+            throws Exception {
+        try (InputStream is = fetcher.fetch(url, metadata, new ParseContext())) {
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -20,13 +20,25 @@ import static org.apache.tika.config.TikaConfig.mustNotBeEmpty;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.ClientConfiguration;
@@ -40,6 +52,7 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +71,7 @@ import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.fetcher.AbstractFetcher;
 import org.apache.tika.pipes.fetcher.RangeFetcher;
+import org.apache.tika.pipes.fetcher.VersionedFetcher;
 import org.apache.tika.pipes.fetcher.s3.config.S3FetcherConfig;
 import org.apache.tika.utils.StringUtils;
 
@@ -65,8 +79,14 @@ import org.apache.tika.utils.StringUtils;
  * Fetches files from s3. Example file: s3://my_bucket/path/to/my_file.pdf
  * The bucket must be specified via the tika-config or before
  * initialization, and the fetch key is "path/to/my_file.pdf".
+ * <p>
+ * If <code>downloadThreads</code> is more than one and the file is spooled
+ * to a temp file, objects larger than <code>downloadPartSize</code> are
+ * fetched in ranges, up to <code>downloadThreads</code> at a time, which are
+ * written into the temp file at their offsets.
  */
-public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFetcher {
+public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFetcher,
+        VersionedFetcher {
     public S3Fetcher() {
 
     }
@@ -89,10 +109,13 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
 
         setExtractUserMetadata(s3FetcherConfig.isExtractUserMetadata());
         setPathStyleAccessEnabled(s3FetcherConfig.isPathStyleAccessEnabled());
+        setDownloadPartSize(s3FetcherConfig.getDownloadPartSize());
+        setDownloadThreads(s3FetcherConfig.getDownloadThreads());
     }
 
     private static final Logger LOGGER = LoggerFactory.getLogger(S3Fetcher.class);
     private static final String PREFIX = "s3";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
     //Do not retry if there's an AmazonS3Exception with this error code
     private static final Set<String> NO_RETRY_ERROR_CODES = new HashSet<>();
@@ -129,6 +152,10 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
 
     private long maxLength = -1;
     private boolean pathStyleAccessEnabled = false;
+    private long downloadPartSize = 16 * 1024 * 1024;
+    private int downloadThreads = 1;
+    //shared by the fetches, see getPartExecutor()
+    private ExecutorService partExecutor;
 
     @Override
     public InputStream fetch(String fetchKey, Metadata metadata, ParseContext parseContext) throws TikaException, IOException {
@@ -159,7 +186,7 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
                 LOGGER.debug("total to fetch {}", elapsed);
                 return is;
             } catch (AmazonS3Exception e) {
-                if (e.getErrorCode() != null && NO_RETRY_ERROR_CODES.contains(e.getErrorCode())) {
+                if (isNoRetry(e)) {
                     LOGGER.warn("Hit a no retry error code. Not retrying." + tries, e);
                     throw new IOException(e);
                 }
@@ -172,12 +199,7 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
                 LOGGER.warn("client exception fetching on retry=" + tries, e);
                 ex = e;
             }
-            LOGGER.warn("sleeping for {} seconds before retry", throttleSeconds[tries]);
-            try {
-                Thread.sleep(throttleSeconds[tries]);
-            } catch (InterruptedException e) {
-                throw new RuntimeException("interrupted");
-            }
+            throttle(tries);
             LOGGER.debug("trying to re-initialize S3 client");
             initialize(new HashMap<>());
         } while (++tries < throttleSeconds.length);
@@ -185,21 +207,78 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
         throw ex;
     }
 
+    /**
+     * @return the object's version id if the bucket is versioned, or else
+     * its ETag
+     */
+    @Override
+    public String getVersion(String fetchKey, Metadata metadata, ParseContext parseContext)
+            throws IOException {
+        String theFetchKey = StringUtils.isBlank(prefix) ? fetchKey : prefix + fetchKey;
+        ObjectMetadata objectMetadata;
+        try {
+            synchronized (clientLock) {
+                objectMetadata = s3Client.getObjectMetadata(bucket, theFetchKey);
+            }
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw new IOException(e);
+        } catch (AmazonClientException e) {
+            throw new IOException(e);
+        }
+        if (!StringUtils.isBlank(objectMetadata.getVersionId())) {
+            return objectMetadata.getVersionId();
+        }
+        return objectMetadata.getETag();
+    }
+
+    private static boolean isNoRetry(AmazonS3Exception e) {
+        return e.getErrorCode() != null && NO_RETRY_ERROR_CODES.contains(e.getErrorCode());
+    }
+
+    private void throttle(int tries) {
+        LOGGER.warn("sleeping for {} seconds before retry", throttleSeconds[tries]);
+        try {
+            Thread.sleep(throttleSeconds[tries]);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("interrupted");
+        }
+    }
+
     private InputStream _fetch(String fetchKey, Metadata metadata,
                                Long startRange, Long endRange) throws IOException {
         TemporaryResources tmp = null;
         try {
             long start = System.currentTimeMillis();
             GetObjectRequest objectRequest = new GetObjectRequest(bucket, fetchKey);
+            boolean inParts = false;
             if (startRange != null && endRange != null
                     && startRange > -1 && endRange > -1) {
                 objectRequest.withRange(startRange, endRange);
+            } else if (spoolToTemp && downloadThreads > 1) {
+                //the first part's response tells us how long the object is
+                objectRequest.withRange(0, downloadPartSize - 1);
+                inParts = true;
             }
             S3Object s3Object = null;
-            synchronized (clientLock) {
-                s3Object = s3Client.getObject(objectRequest);
+            try {
+                synchronized (clientLock) {
+                    s3Object = s3Client.getObject(objectRequest);
+                }
+            } catch (AmazonS3Exception e) {
+                //an empty object has no ranges
+                if (!inParts || e.getStatusCode() != 416) {
+                    throw e;
+                }
+                inParts = false;
+                synchronized (clientLock) {
+                    s3Object = s3Client.getObject(new GetObjectRequest(bucket, fetchKey));
+                }
             }
-            long length = s3Object.getObjectMetadata().getContentLength();
+            long length = inParts ? s3Object.getObjectMetadata().getInstanceLength() :
+                    s3Object.getObjectMetadata().getContentLength();
             metadata.set(Metadata.CONTENT_LENGTH, Long.toString(length));
             if (maxLength > -1) {
                 if (length > maxLength) {
@@ -214,7 +293,15 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
                     metadata.add(PREFIX + ":" + e.getKey(), e.getValue());
                 }
             }
-            if (!spoolToTemp) {
+            if (inParts && length > downloadPartSize) {
+                start = System.currentTimeMillis();
+                tmp = new TemporaryResources();
+                Path tmpPath = tmp.createTempFile(FilenameUtils.getSuffixFromPath(fetchKey));
+                fetchInParts(fetchKey, s3Object, length, tmpPath);
+                LOGGER.debug("took {} ms to fetch {} bytes in parts", System.currentTimeMillis() - start,
+                        length);
+                return TikaInputStream.get(tmpPath, metadata, tmp);
+            } else if (!spoolToTemp) {
                 return TikaInputStream.get(s3Object.getObjectContent());
             } else {
                 start = System.currentTimeMillis();
@@ -235,6 +322,220 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
         }
     }
 
+    /**
+     * Writes the first part from its response, which is already open, on
+     * this thread, and fetches the others on up to
+     * <code>downloadThreads - 1</code> more threads, each taking the next
+     * part that nobody has taken yet. The other parts are requested from the
+     * same version of the object as the first, so that a file that is
+     * overwritten during the fetch isn't spliced together from two versions.
+     */
+    private void fetchInParts(String fetchKey, S3Object first, long length, Path path)
+            throws IOException {
+        int numParts = (int) ((length + downloadPartSize - 1) / downloadPartSize);
+        ObjectMetadata objectMetadata = first.getObjectMetadata();
+        PartRequests requests = new PartRequests(fetchKey, objectMetadata.getVersionId(),
+                objectMetadata.getETag(), numParts);
+        List<Future<Void>> futures = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            boolean success = false;
+            try {
+                //preallocate the file so that the parts can be written in any order
+                channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+                ExecutorService executor = getPartExecutor();
+                for (int i = 1; i < Math.min(downloadThreads, numParts); i++) {
+                    futures.add(executor.submit(() -> {
+                        fetchParts(requests, channel, length);
+                        return null;
+                    }));
+                }
+                try (InputStream is = first.getObjectContent()) {
+                    long copied = copy(is, channel, 0, downloadPartSize);
+                    if (copied != downloadPartSize) {
+                        throw new IOException("expected " + downloadPartSize +
+                                " bytes from 0 but got " + copied);
+                    }
+                }
+                fetchParts(requests, channel, length);
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof IOException) {
+                            throw (IOException) cause;
+                        } else if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
+                        throw new IOException(cause);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException("interrupted");
+                    }
+                }
+                success = true;
+            } finally {
+                if (!success) {
+                    //the other threads must be done with the channel before it is closed
+                    requests.stopped = true;
+                    awaitQuietly(futures);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the part fetches that are still running, which stop after
+     * their current part once {@link PartRequests#stopped} is set.
+     */
+    private static void awaitQuietly(List<Future<Void>> futures) {
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                //the first failure is the one that is thrown
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void fetchParts(PartRequests requests, FileChannel channel, long length)
+            throws IOException {
+        int part;
+        while (!requests.stopped && (part = requests.nextPart.getAndIncrement()) < requests.numParts) {
+            long start = part * downloadPartSize;
+            long end = Math.min(length, start + downloadPartSize) - 1;
+            fetchPart(requests, channel, start, end);
+        }
+    }
+
+    /**
+     * Retries a part as {@link #fetch(String, long, long, Metadata, ParseContext)}
+     * retries a file, but without re-initializing the client, which the other
+     * parts are using. If a part runs out of retries, or the object has
+     * changed since the first part, the exception is thrown to the fetch,
+     * which retries the whole file.
+     */
+    private void fetchPart(PartRequests requests, FileChannel channel, long start, long end)
+            throws IOException {
+        int tries = 0;
+        while (true) {
+            try {
+                S3Object s3Object;
+                synchronized (clientLock) {
+                    s3Object = s3Client.getObject(requests.newRequest(bucket, start, end));
+                }
+                if (s3Object == null) {
+                    //the ETag constraint wasn't met
+                    throw new ObjectChangedException(requests.fetchKey);
+                }
+                try (InputStream is = s3Object.getObjectContent()) {
+                    long copied = copy(is, channel, start, end - start + 1);
+                    if (copied != end - start + 1) {
+                        throw new IOException("expected " + (end - start + 1) +
+                                " bytes from " + start + " but got " + copied);
+                    }
+                }
+                return;
+            } catch (ObjectChangedException e) {
+                throw e;
+            } catch (AmazonS3Exception e) {
+                if (isNoRetry(e) || tries >= throttleSeconds.length || requests.stopped) {
+                    throw e;
+                }
+                LOGGER.warn("client exception fetching part at " + start + " on retry=" + tries, e);
+            } catch (AmazonClientException | IOException e) {
+                if (tries >= throttleSeconds.length || requests.stopped ||
+                        Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                LOGGER.warn("client exception fetching part at " + start + " on retry=" + tries, e);
+            }
+            throttle(tries++);
+        }
+    }
+
+    private static long copy(InputStream is, FileChannel channel, long position, long max)
+            throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long copied = 0;
+        int read;
+        while (copied < max &&
+                (read = is.read(buffer, 0, (int) Math.min(buffer.length, max - copied))) != -1) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer, position + copied + byteBuffer.position());
+            }
+            copied += read;
+        }
+        return copied;
+    }
+
+    /**
+     * The parts of one fetch after the first, and the version of the
+     * object that they are requested from
+     */
+    private static class PartRequests {
+        private final String fetchKey;
+        private final String versionId;
+        private final String eTag;
+        private final int numParts;
+        private final AtomicInteger nextPart = new AtomicInteger(1);
+        //set if the fetch has failed, so that the other threads stop
+        private volatile boolean stopped = false;
+
+        private PartRequests(String fetchKey, String versionId, String eTag, int numParts) {
+            this.fetchKey = fetchKey;
+            this.versionId = versionId;
+            this.eTag = eTag;
+            this.numParts = numParts;
+        }
+
+        private GetObjectRequest newRequest(String bucket, long start, long end) {
+            GetObjectRequest request;
+            if (!StringUtils.isBlank(versionId)) {
+                request = new GetObjectRequest(bucket, fetchKey, versionId);
+            } else {
+                request = new GetObjectRequest(bucket, fetchKey);
+                if (!StringUtils.isBlank(eTag)) {
+                    request.withMatchingETagConstraint(eTag);
+                }
+            }
+            return request.withRange(start, end);
+        }
+    }
+
+    private static class ObjectChangedException extends IOException {
+        private ObjectChangedException(String fetchKey) {
+            super("the object changed while it was fetched in parts: " + fetchKey);
+        }
+    }
+
+    /**
+     * The part fetches of all of the fetches share <code>downloadThreads - 1</code>
+     * daemon threads. Fetchers aren't closed, so the threads go away once
+     * they have been idle for a minute. If the threads are busy with another
+     * fetch's parts, a fetch still fetches its own parts on its own thread.
+     */
+    private ExecutorService getPartExecutor() {
+        synchronized (clientLock) {
+            if (partExecutor == null) {
+                AtomicInteger threadCount = new AtomicInteger(0);
+                int numThreads = Math.max(1, downloadThreads - 1);
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads,
+                        60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                            Thread t = new Thread(r, "s3-fetcher-part-" + threadCount.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        });
+                executor.allowCoreThreadTimeOut(true);
+                partExecutor = executor;
+            }
+            return partExecutor;
+        }
+    }
+
     @Field
     public void setSpoolToTemp(boolean spoolToTemp) {
         this.spoolToTemp = spoolToTemp;
@@ -326,6 +627,26 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
         this.maxLength = maxLength;
     }
 
+    /**
+     * @param downloadPartSize size of the ranges that large objects are
+     *                         fetched in if <code>downloadThreads</code> is
+     *                         more than one
+     */
+    @Field
+    public void setDownloadPartSize(long downloadPartSize) {
+        this.downloadPartSize = downloadPartSize;
+    }
+
+    /**
+     * @param downloadThreads number of ranges of an object to fetch at the
+     *                        same time. Each is a connection, so this may
+     *                        call for more <code>maxConnections</code>.
+     */
+    @Field
+    public void setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
+    }
+
     /**
      * @deprecated use {@link #setThrottleSeconds(String)}
      * @param sleepBeforeRetryMillis -- amount of time in millis to sleep if there was a failure
@@ -384,7 +705,7 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
                 } else {
                     amazonS3ClientBuilder.withRegion(region);
                 }
-                s3Client = amazonS3ClientBuilder.build();
+                s3Client = buildClient(amazonS3ClientBuilder);
             }
         } catch (AmazonClientException e) {
             throw new TikaConfigException("can't initialize s3 fetcher", e);
@@ -397,11 +718,19 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
         }
     }
 
+    //this is package private so that tests can use a stub client
+    AmazonS3 buildClient(AmazonS3ClientBuilder builder) {
+        return builder.build();
+    }
+
     @Override
     public void checkInitialization(InitializableProblemHandler problemHandler)
             throws TikaConfigException {
         mustNotBeEmpty("bucket", this.bucket);
         mustNotBeEmpty("region", this.region);
+        if (downloadPartSize < 1) {
+            throw new TikaConfigException("downloadPartSize must be > 0");
+        }
     }
 
     @Field
@@ -34,6 +34,8 @@ public class S3FetcherConfig extends AbstractConfig {
     private String endpointConfigurationService;
     private boolean pathStyleAccessEnabled;
     private long[] throttleSeconds;
+    private long downloadPartSize = 16 * 1024 * 1024;
+    private int downloadThreads = 1;
 
     public boolean isSpoolToTemp() {
         return spoolToTemp;
@@ -169,4 +171,22 @@ public class S3FetcherConfig extends AbstractConfig {
         this.throttleSeconds = throttleSeconds;
         return this;
     }
+
+    public long getDownloadPartSize() {
+        return downloadPartSize;
+    }
+
+    public S3FetcherConfig setDownloadPartSize(long downloadPartSize) {
+        this.downloadPartSize = downloadPartSize;
+        return this;
+    }
+
+    public int getDownloadThreads() {
+        return downloadThreads;
+    }
+
+    public S3FetcherConfig setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
+        return this;
+    }
 }
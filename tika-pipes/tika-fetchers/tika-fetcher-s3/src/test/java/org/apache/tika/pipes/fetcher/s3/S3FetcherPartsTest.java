@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher.s3;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+
+/**
+ * Tests fetching in parts against a stub client
+ */
+public class S3FetcherPartsTest {
+
+    private static final String KEY = "path/to/file.txt";
+
+    @Test
+    public void testParts() throws Exception {
+        //the last part is short
+        StubS3 s3 = new StubS3(bytes(35), null);
+        assertArrayEquals(s3.content, fetch(s3, 10, 3, new long[0]));
+        assertEquals(List.of("0-9", "10-19", "20-29", "30-34"), s3.sortedRanges());
+
+        //the last part is full
+        s3 = new StubS3(bytes(30), null);
+        Metadata metadata = new Metadata();
+        assertArrayEquals(s3.content, fetch(s3, 10, 2, new long[0], metadata));
+        assertEquals(List.of("0-9", "10-19", "20-29"), s3.sortedRanges());
+        assertEquals("30", metadata.get(Metadata.CONTENT_LENGTH));
+    }
+
+    @Test
+    public void testPartRetry() throws Exception {
+        StubS3 s3 = new StubS3(bytes(35), null);
+        s3.failOnce.add("20-29");
+        assertArrayEquals(s3.content, fetch(s3, 10, 3, new long[]{0}));
+        assertEquals(List.of("0-9", "10-19", "20-29", "20-29", "30-34"), s3.sortedRanges());
+    }
+
+    @Test
+    public void testSmallAndEmpty() throws Exception {
+        StubS3 s3 = new StubS3(bytes(7), null);
+        assertArrayEquals(s3.content, fetch(s3, 10, 3, new long[0]));
+        assertEquals(List.of("0-9"), s3.sortedRanges());
+
+        //an empty object has no ranges, so it falls back to a full get
+        s3 = new StubS3(new byte[0], null);
+        assertArrayEquals(new byte[0], fetch(s3, 10, 3, new long[0]));
+        assertEquals(List.of("0-9", "all"), s3.sortedRanges());
+    }
+
+    @Test
+    public void testObjectChanged() throws Exception {
+        byte[] changed = "the new version of the file".getBytes(UTF_8);
+        StubS3 s3 = new StubS3(bytes(35), null);
+        s3.changeTo = changed;
+        //without a retry, the fetch fails
+        assertThrows(IOException.class, () -> fetch(s3, 10, 2, new long[]{0}));
+
+        //with a retry, the whole file comes from the new version
+        StubS3 retried = new StubS3(bytes(35), null);
+        retried.changeTo = changed;
+        assertArrayEquals(changed, fetch(retried, 10, 2, new long[]{0, 0}));
+        for (GetObjectRequest request : retried.requests) {
+            if (request.getRange()[0] > 0) {
+                assertEquals(1, request.getMatchingETagConstraints().size());
+            }
+        }
+    }
+
+    @Test
+    public void testVersionPinned() throws Exception {
+        StubS3 s3 = new StubS3(bytes(35), "v1");
+        s3.changeTo = "the new version of the file".getBytes(UTF_8);
+        byte[] original = s3.content;
+        assertArrayEquals(original, fetch(s3, 10, 3, new long[0]));
+        for (GetObjectRequest request : s3.requests) {
+            if (request.getRange()[0] > 0) {
+                assertEquals("v1", request.getVersionId());
+                assertTrue(request.getMatchingETagConstraints().isEmpty());
+            } else {
+                assertNull(request.getVersionId());
+            }
+        }
+    }
+
+    private static byte[] fetch(StubS3 s3, long partSize, int threads, long[] throttleSeconds)
+            throws Exception {
+        return fetch(s3, partSize, threads, throttleSeconds, new Metadata());
+    }
+
+    private static byte[] fetch(StubS3 s3, long partSize, int threads, long[] throttleSeconds,
+                                Metadata metadata) throws Exception {
+        S3Fetcher fetcher = new S3Fetcher() {
+            @Override
+            AmazonS3 buildClient(AmazonS3ClientBuilder builder) {
+                return s3.client;
+            }
+        };
+        fetcher.setBucket("bucket");
+        fetcher.setRegion("us-east-1");
+        fetcher.setCredentialsProvider("key_secret");
+        fetcher.setAccessKey("key");
+        fetcher.setSecretKey("secret");
+        fetcher.setSpoolToTemp(true);
+        fetcher.setDownloadPartSize(partSize);
+        fetcher.setDownloadThreads(threads);
+        fetcher.setThrottleSeconds(throttleSeconds);
+        fetcher.initialize(Collections.emptyMap());
+        try (InputStream is = fetcher.fetch(KEY, metadata, new ParseContext())) {
+            return is.readAllBytes();
+        }
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+
+    /**
+     * Serves one object, which can be replaced by a new version after the
+     * first request
+     */
+    private static class StubS3 {
+        private final String versionId;
+        private final AmazonS3 client;
+        private final List<GetObjectRequest> requests = Collections.synchronizedList(new ArrayList<>());
+        private final Set<String> failOnce = ConcurrentHashMap.newKeySet();
+        private volatile byte[] content;
+        private volatile String eTag;
+        private volatile byte[] changeTo;
+        private final byte[] original;
+
+        StubS3(byte[] content, String versionId) {
+            this.content = content;
+            this.original = content;
+            this.versionId = versionId;
+            this.eTag = "etag-" + Arrays.hashCode(content);
+            this.client = (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(),
+                    new Class[]{AmazonS3.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("getObject") && args.length == 1 &&
+                                args[0] instanceof GetObjectRequest) {
+                            return getObject((GetObjectRequest) args[0]);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        private synchronized S3Object getObject(GetObjectRequest request) {
+            requests.add(request);
+            long[] range = request.getRange();
+            if (range != null && failOnce.remove(range[0] + "-" + range[1])) {
+                AmazonS3Exception e = new AmazonS3Exception("try again");
+                e.setStatusCode(500);
+                throw e;
+            }
+            byte[] served = content;
+            String servedETag = eTag;
+            if (request.getVersionId() != null) {
+                if (!request.getVersionId().equals(versionId)) {
+                    AmazonS3Exception e = new AmazonS3Exception("no such version");
+                    e.setStatusCode(404);
+                    throw e;
+                }
+                served = original;
+                servedETag = "etag-" + Arrays.hashCode(original);
+            } else if (!request.getMatchingETagConstraints().isEmpty() &&
+                    !request.getMatchingETagConstraints().contains(eTag)) {
+                return null;
+            }
+            if (changeTo != null) {
+                //the object is overwritten after this request
+                content = changeTo;
+                eTag = "etag-" + Arrays.hashCode(changeTo);
+                changeTo = null;
+            }
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setHeader("ETag", servedETag);
+            if (versionId != null) {
+                metadata.setHeader("x-amz-version-id", versionId);
+            }
+            byte[] body = served;
+            if (range != null) {
+                if (served.length == 0) {
+                    AmazonS3Exception e = new AmazonS3Exception("InvalidRange");
+                    e.setStatusCode(416);
+                    throw e;
+                }
+                int end = (int) Math.min(range[1], served.length - 1);
+                body = Arrays.copyOfRange(served, (int) range[0], end + 1);
+                metadata.setHeader("Content-Range",
+                        "bytes " + range[0] + "-" + end + "/" + served.length);
+            }
+            metadata.setContentLength(body.length);
+            S3Object s3Object = new S3Object();
+            s3Object.setObjectMetadata(metadata);
+            s3Object.setObjectContent(new ByteArrayInputStream(body));
+            return s3Object;
+        }
+
+        private List<String> sortedRanges() {
+            List<String> ranges = new ArrayList<>();
+            synchronized (requests) {
+                for (GetObjectRequest request : requests) {
+                    long[] range = request.getRange();
+                    ranges.add(range == null ? "all" : range[0] + "-" + range[1]);
+                }
+            }
+            Collections.sort(ranges);
+            return ranges;
+        }
+    }
+}
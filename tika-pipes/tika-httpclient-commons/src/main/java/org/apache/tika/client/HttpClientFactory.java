@@ -17,6 +17,10 @@
 package org.apache.tika.client;
 
 import java.io.UnsupportedEncodingException;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
@@ -26,10 +30,12 @@ import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
@@ -260,15 +266,7 @@ public class HttpClientFactory {
     public HttpClient build() throws TikaConfigException {
         LOG.info("http client does not verify ssl at this point.  " +
                 "If you need that, please open a ticket.");
-        TrustStrategy acceptingTrustStrategy = (cert, authType) -> true;
-        SSLContext sslContext = null;
-        try {
-            sslContext =
-                    SSLContexts.custom().loadTrustMaterial(
-                            null, acceptingTrustStrategy).build();
-        } catch (NoSuchAlgorithmException | KeyManagementException | KeyStoreException e) {
-            throw new TikaConfigException("", e);
-        }
+        SSLContext sslContext = buildSSLContext();
         SSLConnectionSocketFactory sslsf =
                 new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
 
@@ -298,6 +296,60 @@ public class HttpClientFactory {
                 .build();
     }
 
+    /**
+     * Builds a JDK client that sends its requests asynchronously and uses
+     * HTTP/2 where the server supports it, multiplexing the requests to a
+     * host over one connection. It doesn't follow redirects; the caller
+     * must, so that it can apply its own limits.
+     * <p>
+     * Unlike {@link #build()}, this only supports basic authentication.
+     * It doesn't verify certificates either, but it does verify host names
+     * unless the <code>jdk.internal.httpclient.disableHostnameVerification</code>
+     * system property is set.
+     *
+     * @param executor runs the client's callbacks
+     */
+    public java.net.http.HttpClient buildAsync(Executor executor) throws TikaConfigException {
+        java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_2)
+                .followRedirects(java.net.http.HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .sslContext(buildSSLContext())
+                .executor(executor);
+        if (!StringUtils.isBlank(proxyHost)) {
+            builder.proxy(ProxySelector.of(new InetSocketAddress(proxyHost, proxyPort)));
+        }
+        if (!StringUtils.isBlank(userName) || !StringUtils.isBlank(password)) {
+            if (StringUtils.isBlank(userName) || StringUtils.isBlank(password)) {
+                throw new IllegalArgumentException(
+                        "can't have one of 'username', " + "'password' null and the other not");
+            }
+            if (!authScheme.equals("basic")) {
+                throw new TikaConfigException("only basic authentication is supported by " +
+                        "the async client: " + authScheme);
+            }
+            PasswordAuthentication credentials = new PasswordAuthentication(decrypt(userName),
+                    decrypt(password).toCharArray());
+            builder.authenticator(new Authenticator() {
+                @Override
+                protected PasswordAuthentication getPasswordAuthentication() {
+                    return credentials;
+                }
+            });
+        }
+        return builder.build();
+    }
+
+    private SSLContext buildSSLContext() throws TikaConfigException {
+        TrustStrategy acceptingTrustStrategy = (cert, authType) -> true;
+        try {
+            return SSLContexts.custom().loadTrustMaterial(
+                    null, acceptingTrustStrategy).build();
+        } catch (NoSuchAlgorithmException | KeyManagementException | KeyStoreException e) {
+            throw new TikaConfigException("", e);
+        }
+    }
+
     private void addProxy(HttpClientBuilder builder) {
         if (!StringUtils.isBlank(proxyHost)) {
             HttpHost proxy = new HttpHost(proxyHost, proxyPort);
@@ -16,16 +16,27 @@
  */
 package org.apache.tika.pipes.pipesiterator.kafka;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,9 +67,11 @@ public class KafkaPipesIterator extends PipesIterator implements Initializable {
     int pollDelayMs = 100;
     int emitMax = -1;
     int groupInitialRebalanceDelayMs = 3000;
+    int numConsumers = 1;
+    int maxEmptyPolls = 50;
 
     private Properties props;
-    private KafkaConsumer<String, String> consumer;
+    private Consumer<String, String> consumer;
 
 
     @Field
@@ -102,7 +115,8 @@ public class KafkaPipesIterator extends PipesIterator implements Initializable {
     }
 
     /**
-     * If the kafka pipe iterator will keep polling for more documents until it returns an empty result.
+     * If the kafka pipe iterator will keep polling for more documents until it has caught up
+     * (see {@link #setMaxEmptyPolls(int)}).
      * If you set emitMax is set to > 0, it will stop polling if the number of documents you
      * have emitted so far > emitMax.
      */
@@ -111,6 +125,28 @@ public class KafkaPipesIterator extends PipesIterator implements Initializable {
         this.emitMax = emitMax;
     }
 
+    /**
+     * Number of consumers in the group that poll in parallel, each on its
+     * own thread. Kafka assigns each partition of the topic to one of
+     * them, so there's no point in having more consumers than partitions.
+     */
+    @Field
+    public void setNumConsumers(int numConsumers) {
+        this.numConsumers = numConsumers;
+    }
+
+    /**
+     * A consumer that has been assigned partitions stops at the first poll
+     * that returns nothing once it has read up to their end offsets. One
+     * that hasn't, e.g. while the group is rebalancing, or that is behind
+     * but keeps getting nothing, stops after this many consecutive empty
+     * polls of <code>pollDelayMs</code> each. The default is 50.
+     */
+    @Field
+    public void setMaxEmptyPolls(int maxEmptyPolls) {
+        this.maxEmptyPolls = maxEmptyPolls;
+    }
+
     private void safePut(Properties props, String key, Object val) {
         if (val != null) {
             props.put(key, val);
@@ -126,10 +162,15 @@ public class KafkaPipesIterator extends PipesIterator implements Initializable {
         safePut(props, ConsumerConfig.GROUP_ID_CONFIG, groupId);
         safePut(props, ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset);
         safePut(props, "group.inital.rebalance.delay.ms", groupInitialRebalanceDelayMs);
-        consumer = new KafkaConsumer<>(props);
+        consumer = buildConsumer(props);
         consumer.subscribe(Arrays.asList(topic));
     }
 
+    //this is package private so that tests can use mock consumers
+    Consumer<String, String> buildConsumer(Properties props) {
+        return new KafkaConsumer<>(props);
+    }
+
     private Object serializerClass(String className, Class defaultClass) {
         try {
             return className == null ? defaultClass : Class.forName(className);
@@ -147,28 +188,106 @@ public class KafkaPipesIterator extends PipesIterator implements Initializable {
     }
 
     @Override
-    protected void enqueue() throws InterruptedException, TimeoutException {
+    protected void enqueue() throws IOException, InterruptedException, TimeoutException {
+        long start = System.currentTimeMillis();
+        AtomicInteger count = new AtomicInteger(0);
+        if (numConsumers <= 1) {
+            consume(consumer, count, start);
+        } else {
+            enqueueInParallel(count, start);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        LOGGER.info("Finished enqueuing {} files in {} ms", count.get(), elapsed);
+    }
+
+    private void enqueueInParallel(AtomicInteger count, long start)
+            throws IOException, InterruptedException, TimeoutException {
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        ExecutorService executorService = Executors.newFixedThreadPool(numConsumers, r -> {
+            Thread t = new Thread(r, "kafka-pipes-iterator-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            futures.add(executorService.submit(() -> {
+                consume(consumer, count, start);
+                return null;
+            }));
+            for (int i = 1; i < numConsumers; i++) {
+                futures.add(executorService.submit(() -> {
+                    //consumers aren't thread safe, so each thread gets its own
+                    try (Consumer<String, String> c = buildConsumer(props)) {
+                        c.subscribe(Arrays.asList(topic));
+                        consume(c, count, start);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof TimeoutException) {
+                        throw (TimeoutException) e.getCause();
+                    } else if (e.getCause() instanceof InterruptedException) {
+                        throw (InterruptedException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void consume(Consumer<String, String> consumer, AtomicInteger count, long start)
+            throws InterruptedException, TimeoutException {
         String fetcherName = getFetcherName();
         String emitterName = getEmitterName();
-        long start = System.currentTimeMillis();
-        int count = 0;
         HandlerConfig handlerConfig = getHandlerConfig();
-        ConsumerRecords<String, String> records;
+        int emptyPolls = 0;
 
-        do {
-            records = consumer.poll(Duration.ofMillis(pollDelayMs));
+        while (emitMax <= 0 || count.get() < emitMax) {
+            ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(pollDelayMs));
+            if (records.isEmpty()) {
+                if (++emptyPolls >= maxEmptyPolls || isCaughtUp(consumer)) {
+                    return;
+                }
+                continue;
+            }
+            emptyPolls = 0;
             for (ConsumerRecord<String, String> r : records) {
                 long elapsed = System.currentTimeMillis() - start;
                 if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("adding ({}) {} in {} ms", count, r.key(), elapsed);
+                    LOGGER.debug("adding ({}) {} in {} ms", count.get(), r.key(), elapsed);
                 }
                 ParseContext parseContext = new ParseContext();
                 parseContext.set(HandlerConfig.class, handlerConfig);
                 tryToAdd(new FetchEmitTuple(r.key(), new FetchKey(fetcherName, r.key()), new EmitKey(emitterName, r.key()), new Metadata(), parseContext, getOnParseException()));
-                ++count;
+                count.incrementAndGet();
             }
-        } while ((emitMax > 0 || count < emitMax) && !records.isEmpty());
-        long elapsed = System.currentTimeMillis() - start;
-        LOGGER.info("Finished enqueuing {} files in {} ms", count, elapsed);
+        }
+    }
+
+    /**
+     * @return whether the consumer has partitions and has read up to their
+     * end offsets. A consumer without partitions hasn't necessarily caught
+     * up: with more than one consumer, it may just be waiting for a
+     * rebalance to give it some.
+     */
+    private static boolean isCaughtUp(Consumer<String, String> consumer) {
+        Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.isEmpty()) {
+            return false;
+        }
+        Map<TopicPartition, Long> endOffsets = consumer.endOffsets(assignment);
+        for (TopicPartition tp : assignment) {
+            Long endOffset = endOffsets.get(tp);
+            if (endOffset != null && consumer.position(tp) < endOffset) {
+                return false;
+            }
+        }
+        return true;
     }
 }
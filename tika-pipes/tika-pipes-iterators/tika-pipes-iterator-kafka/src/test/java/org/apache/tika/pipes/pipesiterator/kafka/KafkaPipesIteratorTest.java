@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.pipesiterator.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.pipes.FetchEmitTuple;
+
+public class KafkaPipesIteratorTest {
+
+    private static final String TOPIC = "tika";
+
+    @Test
+    public void testConsumersSplitPartitions() throws Exception {
+        int numConsumers = 3;
+        int recordsPerPartition = 5;
+        List<MockConsumer<String, String>> consumers = Collections.synchronizedList(new ArrayList<>());
+        KafkaPipesIterator it = new KafkaPipesIterator() {
+            @Override
+            Consumer<String, String> buildConsumer(Properties props) {
+                MockConsumer<String, String> consumer =
+                        new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+                int partition;
+                synchronized (consumers) {
+                    partition = consumers.size();
+                    consumers.add(consumer);
+                }
+                //what the group coordinator would do: one partition per consumer
+                consumer.schedulePollTask(() -> {
+                    TopicPartition tp = new TopicPartition(TOPIC, partition);
+                    consumer.rebalance(Collections.singletonList(tp));
+                    consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+                    consumer.updateEndOffsets(Collections.singletonMap(tp, (long) recordsPerPartition));
+                    for (int i = 0; i < recordsPerPartition; i++) {
+                        consumer.addRecord(new ConsumerRecord<>(TOPIC, partition, i,
+                                "p" + partition + "-" + i, ""));
+                    }
+                });
+                return consumer;
+            }
+        };
+        it.setFetcherName("fetcher");
+        it.setEmitterName("emitter");
+        it.setTopic(TOPIC);
+        it.setBootstrapServers("localhost:9092");
+        it.setGroupId("tika");
+        it.setNumConsumers(numConsumers);
+        it.initialize(Collections.emptyMap());
+
+        Set<String> keys = new HashSet<>();
+        for (FetchEmitTuple t : it) {
+            assertTrue(keys.add(t.getFetchKey().getFetchKey()));
+        }
+        assertEquals(numConsumers * recordsPerPartition, keys.size());
+        for (int p = 0; p < numConsumers; p++) {
+            for (int i = 0; i < recordsPerPartition; i++) {
+                assertTrue(keys.contains("p" + p + "-" + i));
+            }
+        }
+
+        assertEquals(numConsumers, consumers.size());
+        Set<TopicPartition> assigned = new HashSet<>();
+        for (MockConsumer<String, String> consumer : consumers) {
+            assertEquals(Set.of(TOPIC), consumer.subscription());
+            assertEquals(1, consumer.assignment().size());
+            assigned.addAll(consumer.assignment());
+        }
+        assertEquals(numConsumers, assigned.size());
+        //the extra consumers are closed by the threads that made them
+        for (int i = 1; i < numConsumers; i++) {
+            assertTrue(consumers.get(i).closed());
+        }
+    }
+
+    @Test
+    public void testEmptyPollsDuringRebalance() throws Exception {
+        int recordsPerPartition = 5;
+        List<MockConsumer<String, String>> consumers = Collections.synchronizedList(new ArrayList<>());
+        KafkaPipesIterator it = new KafkaPipesIterator() {
+            @Override
+            Consumer<String, String> buildConsumer(Properties props) {
+                MockConsumer<String, String> consumer =
+                        new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+                int index;
+                synchronized (consumers) {
+                    index = consumers.size();
+                    consumers.add(consumer);
+                }
+                if (index > 0) {
+                    //the group has only one partition, so this consumer never gets any
+                    return consumer;
+                }
+                //the partition is only assigned after a few empty polls
+                consumer.schedulePollTask(() -> {
+                });
+                consumer.schedulePollTask(() -> {
+                });
+                consumer.schedulePollTask(() -> {
+                    TopicPartition tp = new TopicPartition(TOPIC, 0);
+                    consumer.rebalance(Collections.singletonList(tp));
+                    consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+                    consumer.updateEndOffsets(Collections.singletonMap(tp, (long) recordsPerPartition));
+                    for (int i = 0; i < recordsPerPartition; i++) {
+                        consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, i, "p0-" + i, ""));
+                    }
+                });
+                return consumer;
+            }
+        };
+        it.setFetcherName("fetcher");
+        it.setEmitterName("emitter");
+        it.setTopic(TOPIC);
+        it.setBootstrapServers("localhost:9092");
+        it.setGroupId("tika");
+        it.setNumConsumers(2);
+        it.setPollDelayMs(10);
+        it.setMaxEmptyPolls(5);
+        it.initialize(Collections.emptyMap());
+
+        Set<String> keys = new HashSet<>();
+        for (FetchEmitTuple t : it) {
+            assertTrue(keys.add(t.getFetchKey().getFetchKey()));
+        }
+        assertEquals(recordsPerPartition, keys.size());
+        assertEquals(2, consumers.size());
+        assertTrue(consumers.get(1).assignment().isEmpty());
+    }
+}
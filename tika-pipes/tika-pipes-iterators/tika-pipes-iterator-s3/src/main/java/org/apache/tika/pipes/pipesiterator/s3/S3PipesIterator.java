@@ -200,7 +200,10 @@ public class S3PipesIterator extends PipesIterator implements Initializable {
             //TODO -- allow user specified metadata as the "id"?
             ParseContext parseContext = new ParseContext();
             parseContext.set(HandlerConfig.class, handlerConfig);
-            tryToAdd(new FetchEmitTuple(summary.getKey(), new FetchKey(fetcherName, summary.getKey()), new EmitKey(emitterName, summary.getKey()), new Metadata(), parseContext,
+            //the size lets an AsyncProcessor put the object into a lane before it is fetched
+            Metadata metadata = new Metadata();
+            metadata.set(Metadata.CONTENT_LENGTH, Long.toString(summary.getSize()));
+            tryToAdd(new FetchEmitTuple(summary.getKey(), new FetchKey(fetcherName, summary.getKey()), new EmitKey(emitterName, summary.getKey()), metadata, parseContext,
                     getOnParseException()));
             count++;
         }
@@ -55,6 +55,16 @@ public class JsonStreamingSerializer implements AutoCloseable {
         JsonMetadata.writeMetadataObject(metadata, jsonGenerator, false);
     }
 
+    /**
+     * Writes what has been added so far through to the underlying writer
+     * and flushes it.
+     */
+    public void flush() throws IOException {
+        if (jsonGenerator != null) {
+            jsonGenerator.flush();
+        }
+    }
+
     @Override
     public void close() throws IOException {
         jsonGenerator.writeEndArray();
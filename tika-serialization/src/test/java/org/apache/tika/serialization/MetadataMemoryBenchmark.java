@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.serialization;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.tika.metadata.Metadata;
+
+/**
+ * Compares the heap held by recursive metadata lists in the default and
+ * the compact {@link Metadata} storage layout. Pass the recursive metadata
+ * JSON files (as written by /rmeta or tika-app -J) or directories of them
+ * to use; the default is the extracts used by the tika-eval tests.
+ * <p>
+ * Two cases are measured: copies of the lists that share the key strings,
+ * like metadata that is set through {@link org.apache.tika.metadata.Property}
+ * constants, and lists that are read from JSON again, so that every
+ * instance has its own key strings, like keys that parsers build at runtime.
+ */
+public class MetadataMemoryBenchmark {
+
+    private static final int COPIES = 2000;
+
+    public static void main(String[] args) throws Exception {
+        List<String> json = new ArrayList<>();
+        if (args.length > 0) {
+            for (String arg : args) {
+                collect(new File(arg), json);
+            }
+        } else {
+            collect(new File("../tika-eval/tika-eval-app/src/test/resources/test-dirs"), json);
+        }
+        List<List<Metadata>> templates = new ArrayList<>();
+        int instances = 0;
+        for (Iterator<String> it = json.iterator(); it.hasNext(); ) {
+            List<Metadata> list;
+            try {
+                list = JsonMetadataList.fromJson(new StringReader(it.next()));
+            } catch (IOException e) {
+                // Not a recursive metadata list
+                it.remove();
+                continue;
+            }
+            templates.add(list);
+            instances += list.size();
+        }
+        System.out.printf(Locale.ROOT, "%d lists with %d metadata instances, %d copies%n",
+                templates.size(), instances, COPIES);
+
+        for (boolean reparse : new boolean[]{false, true}) {
+            System.out.println(reparse ? "own keys (read from JSON)" : "shared keys (copied)");
+            for (boolean compact : new boolean[]{false, true}) {
+                Metadata.setCompactStorage(compact);
+                long before = usedMemory();
+                List<List<Metadata>> retained = new ArrayList<>();
+                for (int i = 0; i < COPIES; i++) {
+                    if (reparse) {
+                        for (String s : json) {
+                            retained.add(JsonMetadataList.fromJson(new StringReader(s)));
+                        }
+                    } else {
+                        for (List<Metadata> template : templates) {
+                            retained.add(copy(template));
+                        }
+                    }
+                }
+                long used = usedMemory() - before;
+                System.out.printf(Locale.ROOT, "  %-8s %10d KB, %6d bytes per metadata%n",
+                        compact ? "compact" : "default", used / 1024,
+                        used / ((long) COPIES * instances));
+                if (retained.size() < 0) {
+                    // Keeps the lists alive until they have been measured
+                    System.out.println(retained);
+                }
+            }
+        }
+        Metadata.setCompactStorage(false);
+    }
+
+    private static List<Metadata> copy(List<Metadata> list) {
+        List<Metadata> copy = new ArrayList<>(list.size());
+        for (Metadata metadata : list) {
+            Metadata m = new Metadata();
+            for (String name : metadata.names()) {
+                for (String value : metadata.getValues(name)) {
+                    m.add(name, value);
+                }
+            }
+            copy.add(m);
+        }
+        return copy;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void collect(File file, List<String> json) throws Exception {
+        if (file.isFile() && file.getName().endsWith(".json")) {
+            String s = new String(Files.readAllBytes(file.toPath()), UTF_8);
+            if (s.trim().startsWith("[")) {
+                json.add(s);
+            }
+        } else if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collect(child, json);
+                }
+            }
+        }
+    }
+}
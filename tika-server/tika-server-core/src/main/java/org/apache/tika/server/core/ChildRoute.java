@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where {@link TikaServerProxy} can reach one of the forked children and
+ * how busy that child is. The child's watchdog sets the port once the child
+ * is up and clears it before the child is stopped or restarted.
+ */
+class ChildRoute {
+
+    static final int UNAVAILABLE = -1;
+
+    private final String id;
+    private volatile int port = UNAVAILABLE;
+    private volatile int numTasks = 0;
+    private final AtomicInteger connections = new AtomicInteger(0);
+
+    ChildRoute(String id) {
+        this.id = id;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    boolean isAvailable() {
+        return port != UNAVAILABLE;
+    }
+
+    void setAvailable(int port) {
+        this.numTasks = 0;
+        this.port = port;
+    }
+
+    void setUnavailable() {
+        this.port = UNAVAILABLE;
+    }
+
+    /**
+     * @param numTasks the number of tasks the child reported in its last status
+     */
+    void setNumTasks(int numTasks) {
+        this.numTasks = numTasks;
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    void connected() {
+        connections.incrementAndGet();
+    }
+
+    void disconnected() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * The child's last reported tasks plus the connections that are open to
+     * it now, which covers the requests that arrived since that report.
+     */
+    int getLoad() {
+        return numTasks + connections.get();
+    }
+
+    /**
+     * @return the available route with the lowest load, or <code>null</code>
+     * if none is available
+     */
+    static ChildRoute leastLoaded(List<ChildRoute> routes) {
+        ChildRoute best = null;
+        for (ChildRoute route : routes) {
+            if (!route.isAvailable()) {
+                continue;
+            }
+            if (best == null || route.getLoad() < best.getLoad() ||
+                    (route.getLoad() == best.getLoad() &&
+                            route.getConnections() < best.getConnections())) {
+                best = route;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return "ChildRoute{" + "id='" + id + '\'' + ", port=" + port + ", numTasks=" + numTasks +
+                ", connections=" + connections.get() + '}';
+    }
+}
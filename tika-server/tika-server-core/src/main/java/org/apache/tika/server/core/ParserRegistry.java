@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.helpers.DefaultHandler;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.DigestingParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+
+/**
+ * Builds the parser that the resources share once per {@link TikaConfig}
+ * and digester rather than once per request. The parsers are thread safe,
+ * and the per-request settings from the headers, e.g. via
+ * {@link ParseContextConfig}, go into each request's {@link ParseContext},
+ * so they don't need a parser of their own.
+ */
+public class ParserRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParserRegistry.class);
+
+    private final Parser parser;
+
+    public ParserRegistry(TikaConfig tikaConfig, DigestingParser.Digester digester) {
+        this.parser = buildParser(tikaConfig, digester);
+    }
+
+    private static Parser buildParser(TikaConfig tikaConfig, DigestingParser.Digester digester) {
+        Parser parser = new AutoDetectParser(tikaConfig);
+        if (digester == null) {
+            return parser;
+        }
+        boolean skipContainer = tikaConfig.getAutoDetectParserConfig().getDigesterFactory() != null &&
+                tikaConfig.getAutoDetectParserConfig().getDigesterFactory().isSkipContainerDocument();
+        return new DigestingParser(parser, digester, skipContainer);
+    }
+
+    public Parser getParser() {
+        return parser;
+    }
+
+    /**
+     * Parses the files in a directory so that the parsers' classes are loaded
+     * and their code has been compiled before the first request arrives.
+     * Files that fail to parse are logged and skipped.
+     *
+     * @param directory  the files to parse; subdirectories are ignored
+     * @param iterations the number of times to parse each file
+     * @return the number of files that were parsed without an exception
+     */
+    public int warmUp(Path directory, int iterations) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        long start = System.currentTimeMillis();
+        int parsed = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (Path file : files) {
+                if (warmUp(file)) {
+                    parsed++;
+                }
+            }
+        }
+        LOG.info("warmed up the parsers with {} of {} files in {} ms", parsed,
+                files.size() * iterations, System.currentTimeMillis() - start);
+        return parsed;
+    }
+
+    private boolean warmUp(Path file) {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getFileName().toString());
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(Parser.class, parser);
+        try (InputStream is = TikaInputStream.get(file, metadata)) {
+            parser.parse(is, new DefaultHandler(), metadata, parseContext);
+            return true;
+        } catch (Exception e) {
+            LOG.debug("couldn't parse warm up file {}", file, e);
+            return false;
+        }
+    }
+}
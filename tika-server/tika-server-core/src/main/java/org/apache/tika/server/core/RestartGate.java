@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared by the watchdogs of the children behind a {@link TikaServerProxy}
+ * so that their planned restarts, e.g. after maxFiles, take turns. It counts
+ * the children that are down or starting; a planned restart only goes ahead
+ * when that count is zero, otherwise the child keeps serving and its watchdog
+ * tries again on the next pulse. Unplanned restarts, after a crash or a
+ * timeout, can't wait and are only counted.
+ */
+class RestartGate {
+
+    private final AtomicInteger down = new AtomicInteger(0);
+
+    /**
+     * @return <code>true</code> if no other child is down or starting; the
+     * caller is then counted as down and must call {@link #up()} once its
+     * child is back
+     */
+    boolean tryPlannedRestart() {
+        return down.compareAndSet(0, 1);
+    }
+
+    /**
+     * Counts a child that went down without asking first
+     */
+    void down() {
+        down.incrementAndGet();
+    }
+
+    void up() {
+        down.decrementAndGet();
+    }
+
+    int getDown() {
+        return down.get();
+    }
+}
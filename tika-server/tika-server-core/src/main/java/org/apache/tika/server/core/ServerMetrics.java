@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * Request and parse metrics for the /metrics endpoint. Everything is kept
+ * in {@link LongAdder}s so that recording doesn't contend on the request
+ * path; the output is in the Prometheus text format.
+ */
+public class ServerMetrics {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * Upper bounds of the buckets in milliseconds; there is one more
+     * bucket for anything longer.
+     */
+    public static final long[] BUCKET_BOUNDS_MILLIS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000,
+            10000, 30000, 60000, 120000, 300000};
+
+    static final String UNKNOWN = "unknown";
+
+    private final Map<String, Histogram> requests = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> bytesIn = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> bytesOut = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> parsesByType = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> parsesByParser = new ConcurrentHashMap<>();
+
+    public void recordRequest(String endpoint, long millis) {
+        requests.computeIfAbsent(endpoint, k -> new Histogram()).record(millis);
+    }
+
+    /**
+     * @return the counter of request bytes read for this endpoint
+     */
+    public LongAdder getBytesIn(String endpoint) {
+        return bytesIn.computeIfAbsent(endpoint, k -> new LongAdder());
+    }
+
+    /**
+     * @return the counter of response bytes written for this endpoint
+     */
+    public LongAdder getBytesOut(String endpoint) {
+        return bytesOut.computeIfAbsent(endpoint, k -> new LongAdder());
+    }
+
+    /**
+     * Records the parse time under the detected type and under the parser
+     * that was used, which is the last one in {@link TikaCoreProperties#TIKA_PARSED_BY}.
+     */
+    public void recordParse(Metadata metadata, long millis) {
+        String contentType = UNKNOWN;
+        MediaType mediaType = MediaType.parse(metadata.get(Metadata.CONTENT_TYPE));
+        if (mediaType != null) {
+            contentType = mediaType
+                    .getBaseType()
+                    .toString();
+        }
+        String parser = UNKNOWN;
+        String[] parsedBy = metadata.getValues(TikaCoreProperties.TIKA_PARSED_BY);
+        if (parsedBy.length > 0) {
+            parser = parsedBy[parsedBy.length - 1];
+        }
+        parsesByType.computeIfAbsent(contentType, k -> new Histogram()).record(millis);
+        parsesByParser.computeIfAbsent(parser, k -> new Histogram()).record(millis);
+    }
+
+    public Map<String, Histogram> getRequestHistograms() {
+        return Collections.unmodifiableMap(requests);
+    }
+
+    public Map<String, Histogram> getParseHistogramsByType() {
+        return Collections.unmodifiableMap(parsesByType);
+    }
+
+    public Map<String, Histogram> getParseHistogramsByParser() {
+        return Collections.unmodifiableMap(parsesByParser);
+    }
+
+    /**
+     * Appends all of these metrics in the Prometheus text format
+     */
+    public void write(StringBuilder sb) {
+        writeHistograms(sb, "tika_server_request_duration_seconds", "Time to handle a request, including writing the response", "endpoint", requests);
+        writeCounters(sb, "tika_server_request_bytes_total", "Bytes read from request bodies", "endpoint", bytesIn);
+        writeCounters(sb, "tika_server_response_bytes_total", "Bytes written to response bodies, before compression", "endpoint", bytesOut);
+        writeHistograms(sb, "tika_server_parse_duration_seconds", "Time to parse a file, by detected type", "content_type", parsesByType);
+        writeHistograms(sb, "tika_server_parser_duration_seconds", "Time to parse a file, by parser", "parser", parsesByParser);
+    }
+
+    public static void writeCounter(StringBuilder sb, String name, String help, long value) {
+        writeHeader(sb, name, help, "counter");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    public static void writeGauge(StringBuilder sb, String name, String help, long value) {
+        writeHeader(sb, name, help, "gauge");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Merges the metrics of the children behind a {@link TikaServerProxy}
+     * and adds a <code>child</code> label to each sample. The samples of a
+     * metric are kept together under one HELP and TYPE, as the text format
+     * requires.
+     *
+     * @param metricsByChild the text of each child's /metrics by child id
+     */
+    public static void writeChildren(StringBuilder sb, Map<String, String> metricsByChild) {
+        Map<String, MetricFamily> families = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : metricsByChild.entrySet()) {
+            MetricFamily family = null;
+            for (String line : e.getValue().split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith("#")) {
+                    String[] parts = line.split(" ", 4);
+                    if (parts.length < 3) {
+                        continue;
+                    }
+                    String rest = parts.length == 4 ? parts[3] : "";
+                    family = families.computeIfAbsent(parts[2], MetricFamily::new);
+                    if ("HELP".equals(parts[1]) && family.help == null) {
+                        family.help = rest;
+                    } else if ("TYPE".equals(parts[1]) && family.type == null) {
+                        family.type = rest;
+                    }
+                    continue;
+                }
+                int end = 0;
+                while (end < line.length() && line.charAt(end) != '{' && line.charAt(end) != ' ') {
+                    end++;
+                }
+                if (end == line.length()) {
+                    continue;
+                }
+                String name = line.substring(0, end);
+                //a histogram's _bucket, _sum and _count belong to the family before them
+                if (family == null || !name.startsWith(family.name)) {
+                    family = families.computeIfAbsent(name, MetricFamily::new);
+                }
+                StringBuilder samples = family.samples;
+                samples.append(name);
+                appendLabel(samples, "child", e.getKey());
+                if (line.charAt(end) == '{') {
+                    if (end + 1 < line.length() && line.charAt(end + 1) != '}') {
+                        samples.append(',');
+                    }
+                    samples.append(line, end + 1, line.length());
+                } else {
+                    samples.append('}').append(line, end, line.length());
+                }
+                samples.append('\n');
+            }
+        }
+        for (MetricFamily family : families.values()) {
+            if (family.help != null) {
+                sb.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            }
+            if (family.type != null) {
+                sb.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            }
+            sb.append(family.samples);
+        }
+    }
+
+    private static void writeCounters(StringBuilder sb, String name, String help, String label, Map<String, LongAdder> counters) {
+        writeHeader(sb, name, help, "counter");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(counters).entrySet()) {
+            sb.append(name);
+            appendLabel(sb, label, e.getKey());
+            sb.append("} ").append(e.getValue().sum()).append('\n');
+        }
+    }
+
+    private static void writeHistograms(StringBuilder sb, String name, String help, String label, Map<String, Histogram> histograms) {
+        writeHeader(sb, name, help, "histogram");
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            //take the snapshot first so that the +Inf bucket and the count agree
+            long[] counts = e.getValue().getCounts();
+            long sumMillis = e.getValue().getSumMillis();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                sb.append(name).append("_bucket");
+                appendLabel(sb, label, e.getKey());
+                sb.append(",le=\"");
+                if (i < BUCKET_BOUNDS_MILLIS.length) {
+                    sb.append(BUCKET_BOUNDS_MILLIS[i] / 1000.0);
+                } else {
+                    sb.append("+Inf");
+                }
+                sb.append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append(name).append("_sum");
+            appendLabel(sb, label, e.getKey());
+            sb.append("} ").append(sumMillis / 1000.0).append('\n');
+            sb.append(name).append("_count");
+            appendLabel(sb, label, e.getKey());
+            sb.append("} ").append(cumulative).append('\n');
+        }
+    }
+
+    static void writeHeader(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Opens the label set and appends the first label; the caller closes it
+     */
+    static void appendLabel(StringBuilder sb, String label, String value) {
+        sb.append('{').append(label).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static class MetricFamily {
+        private final String name;
+        private String help;
+        private String type;
+        private final StringBuilder samples = new StringBuilder();
+
+        MetricFamily(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Counts durations in the buckets of {@link #BUCKET_BOUNDS_MILLIS}.
+     * This is thread safe.
+     */
+    public static class Histogram {
+
+        private final LongAdder[] counts = new LongAdder[BUCKET_BOUNDS_MILLIS.length + 1];
+        private final LongAdder sumMillis = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        public void record(long millis) {
+            int i = 0;
+            while (i < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[i]) {
+                i++;
+            }
+            counts[i].increment();
+            sumMillis.add(millis);
+        }
+
+        /**
+         * @return the number of durations in each bucket, not cumulative
+         */
+        public long[] getCounts() {
+            long[] copy = new long[counts.length];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = counts[i].sum();
+            }
+            return copy;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (long c : getCounts()) {
+                count += c;
+            }
+            return count;
+        }
+
+        public long getSumMillis() {
+            return sumMillis.sum();
+        }
+    }
+}
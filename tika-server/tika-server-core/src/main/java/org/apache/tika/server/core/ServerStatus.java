@@ -19,21 +19,29 @@ package org.apache.tika.server.core;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Tasks and status of this server. This is on the request path, so nothing
+ * here takes a lock.
+ */
 public class ServerStatus {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServerStatus.class);
     private final String serverId;
     private final int numRestarts;
+    private final int numTimeouts;
+    private final int numOOMs;
 
     private final boolean isLegacy;
-    private AtomicLong counter = new AtomicLong(0);
-    private Map<Long, TaskStatus> tasks = new HashMap<>();
-    private STATUS status = STATUS.OPERATING;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final AtomicLong counter = new AtomicLong(0);
+    private final Map<Long, TaskStatus> tasks = new ConcurrentHashMap<>();
+    private volatile STATUS status = STATUS.OPERATING;
     private volatile long lastStarted = Instant
             .now()
             .toEpochMilli();
@@ -43,12 +51,22 @@ public class ServerStatus {
     }
 
     public ServerStatus(String serverId, int numRestarts, boolean isLegacy) {
+        this(serverId, numRestarts, 0, 0, isLegacy);
+    }
+
+    /**
+     * @param numTimeouts how many of the restarts were after a timeout
+     * @param numOOMs     how many of the restarts were after an OutOfMemoryError
+     */
+    public ServerStatus(String serverId, int numRestarts, int numTimeouts, int numOOMs, boolean isLegacy) {
         this.serverId = serverId;
         this.numRestarts = numRestarts;
+        this.numTimeouts = numTimeouts;
+        this.numOOMs = numOOMs;
         this.isLegacy = isLegacy;
     }
 
-    public synchronized long start(TASK task, String fileName, long timeoutMillis) {
+    public long start(TASK task, String fileName, long timeoutMillis) {
         long taskId = counter.incrementAndGet();
         Instant now = Instant.now();
         lastStarted = now.toEpochMilli();
@@ -62,26 +80,30 @@ public class ServerStatus {
      * @param taskId
      * @throws IllegalArgumentException if there is no task by that taskId in the collection
      */
-    public synchronized void complete(long taskId) throws IllegalArgumentException {
+    public void complete(long taskId) throws IllegalArgumentException {
         TaskStatus status = tasks.remove(taskId);
         if (status == null) {
             throw new IllegalArgumentException("TaskId is not in map:" + taskId);
         }
     }
 
-    public synchronized STATUS getStatus() {
+    public STATUS getStatus() {
         return status;
     }
 
-    public synchronized void setStatus(STATUS status) {
+    public void setStatus(STATUS status) {
         this.status = status;
     }
 
-    public synchronized Map<Long, TaskStatus> getTasks() {
+    public Map<Long, TaskStatus> getTasks() {
         return new HashMap<>(tasks);
     }
 
-    public synchronized long getFilesProcessed() {
+    public int getNumActiveTasks() {
+        return tasks.size();
+    }
+
+    public long getFilesProcessed() {
         return counter.get();
     }
 
@@ -94,7 +116,7 @@ public class ServerStatus {
     /**
      * @return true if this is legacy, otherwise whether or not status == OPERATING.
      */
-    public synchronized boolean isOperating() {
+    public boolean isOperating() {
         if (isLegacy) {
             return true;
         }
@@ -109,6 +131,18 @@ public class ServerStatus {
         return numRestarts;
     }
 
+    public int getNumTimeouts() {
+        return numTimeouts;
+    }
+
+    public int getNumOOMs() {
+        return numOOMs;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
     enum DIRECTIVES {
         PING((byte) 0), PING_ACTIVE_SERVER_TASKS((byte) 1), SHUTDOWN((byte) 2);
 
@@ -42,7 +42,7 @@ public class ServerStatusWatcher implements Runnable {
     private final InputStream fromParent;
     private final TikaServerConfig tikaServerConfig;
     private final Path forkedStatusPath;
-    private final ByteBuffer statusBuffer = ByteBuffer.allocate(16);
+    private final ByteBuffer statusBuffer = ByteBuffer.allocate(24);
     private volatile boolean shuttingDown = false;
 
     public ServerStatusWatcher(ServerStatus serverStatus, InputStream inputStream, Path forkedStatusPath, TikaServerConfig tikaServerConfig) throws InterruptedException {
@@ -100,9 +100,8 @@ public class ServerStatusWatcher implements Runnable {
                         statusBuffer.putInt(8, serverStatus
                                 .getStatus()
                                 .getInt());
-                        statusBuffer.putInt(12, serverStatus
-                                .getTasks()
-                                .size());
+                        statusBuffer.putInt(12, serverStatus.getNumActiveTasks());
+                        statusBuffer.putLong(16, serverStatus.getFilesProcessed());
                         channel.write(statusBuffer);
                         channel.force(true);
                         return;
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.io.output.ProxyOutputStream;
+
+/**
+ * Records the latency and the bytes in and out of each request in
+ * {@link ServerMetrics}, by the path template of the resource method that
+ * handled it, e.g. <code>/rmeta/stream{handler}</code>. The regular
+ * expressions of the template's parameters are left out, and the values
+ * never go in, so there is one label per resource method.
+ * If there is a response body, the latency includes writing it, which is
+ * when the streaming endpoints do their parsing. Requests that don't match
+ * a resource aren't recorded.
+ */
+@Provider
+public class TikaMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final String ENDPOINT = TikaMetricsFilter.class.getName() + ".endpoint";
+    private static final String STARTED = TikaMetricsFilter.class.getName() + ".started";
+
+    private final ServerMetrics metrics;
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    public TikaMetricsFilter(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        String endpoint = resourceInfo == null ? ServerMetrics.UNKNOWN :
+                getEndpoint(resourceInfo.getResourceClass(), resourceInfo.getResourceMethod());
+        requestContext.setProperty(ENDPOINT, endpoint);
+        requestContext.setProperty(STARTED, System.nanoTime());
+        InputStream is = requestContext.getEntityStream();
+        if (is != null) {
+            requestContext.setEntityStream(new CountingInputStream(is, metrics.getBytesIn(endpoint)));
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        //with a body, this is recorded once the body has been written
+        if (!responseContext.hasEntity()) {
+            record(requestContext.getProperty(ENDPOINT), requestContext.getProperty(STARTED));
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        Object endpoint = context.getProperty(ENDPOINT);
+        if (endpoint == null) {
+            context.proceed();
+            return;
+        }
+        context.setOutputStream(new CountingOutputStream(context.getOutputStream(), metrics.getBytesOut((String) endpoint)));
+        try {
+            context.proceed();
+        } finally {
+            record(endpoint, context.getProperty(STARTED));
+        }
+    }
+
+    private void record(Object endpoint, Object started) {
+        if (endpoint == null || started == null) {
+            return;
+        }
+        metrics.recordRequest((String) endpoint, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - (Long) started));
+    }
+
+    static String getEndpoint(Class<?> resourceClass, Method resourceMethod) {
+        if (resourceClass == null) {
+            return ServerMetrics.UNKNOWN;
+        }
+        Path path = resourceClass.getAnnotation(Path.class);
+        if (path == null) {
+            return resourceClass.getSimpleName();
+        }
+        String template = "/" + path.value();
+        Path methodPath = resourceMethod == null ? null : resourceMethod.getAnnotation(Path.class);
+        if (methodPath != null) {
+            template += "/" + methodPath.value();
+        }
+        String endpoint = stripRegexes(template).replaceAll("/{2,}", "/");
+        return endpoint.length() > 1 && endpoint.endsWith("/") ?
+                endpoint.substring(0, endpoint.length() - 1) : endpoint;
+    }
+
+    /**
+     * @return the template with <code>{name : regex}</code> parameters
+     * turned into <code>{name}</code>. The regex may have braces of its own.
+     */
+    private static String stripRegexes(String template) {
+        StringBuilder sb = new StringBuilder();
+        int depth = 0;
+        boolean inRegex = false;
+        for (char c : template.toCharArray()) {
+            if (c == '{') {
+                if (depth++ == 0) {
+                    inRegex = false;
+                    sb.append(c);
+                    continue;
+                }
+            } else if (c == '}') {
+                if (--depth == 0) {
+                    sb.append(c);
+                    continue;
+                }
+            } else if (c == ':' && depth == 1) {
+                inRegex = true;
+                continue;
+            }
+            if (depth == 0 || (!inRegex && !Character.isWhitespace(c))) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static class CountingInputStream extends ProxyInputStream {
+        private final LongAdder bytes;
+
+        CountingInputStream(InputStream is, LongAdder bytes) {
+            super(is);
+            this.bytes = bytes;
+        }
+
+        @Override
+        protected void afterRead(int n) {
+            if (n > 0) {
+                bytes.add(n);
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends ProxyOutputStream {
+        private final LongAdder bytes;
+
+        CountingOutputStream(OutputStream os, LongAdder bytes) {
+            super(os);
+            this.bytes = bytes;
+        }
+
+        @Override
+        protected void beforeWrite(int n) {
+            bytes.add(n);
+        }
+    }
+}
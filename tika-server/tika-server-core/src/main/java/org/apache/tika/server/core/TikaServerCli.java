@@ -97,6 +97,10 @@ public class TikaServerCli {
     private static void mainLoop(TikaServerConfig tikaServerConfig) throws Exception {
 
         List<PortIdPair> portIdPairs = getPortIdPairs(tikaServerConfig);
+        if (tikaServerConfig.getNumChildren() > 1) {
+            childrenLoop(tikaServerConfig, portIdPairs);
+            return;
+        }
 
         ExecutorService executorService = Executors.newFixedThreadPool(portIdPairs.size());
         ExecutorCompletionService<WatchDogResult> executorCompletionService = new ExecutorCompletionService<>(executorService);
@@ -106,10 +110,72 @@ public class TikaServerCli {
             executorCompletionService.submit(watcher);
             WATCHERS.add(watcher);
         }
+        waitForWatchers(executorService, executorCompletionService, portIdPairs.size());
+    }
+
+    /**
+     * Runs numChildren forked processes on internal ports behind a
+     * {@link TikaServerProxy} on the one public port. Child i first
+     * restarts after (i + 1) / numChildren of maxFiles and every maxFiles
+     * after that, so the children's restarts are spread out, and a
+     * {@link RestartGate} holds back a restart while another child is down.
+     */
+    private static void childrenLoop(TikaServerConfig tikaServerConfig, List<PortIdPair> portIdPairs) throws Exception {
+        if (portIdPairs.size() != 1) {
+            throw new IllegalArgumentException("can only specify one port with numChildren > 1: " + tikaServerConfig.getPort());
+        }
+        int port = portIdPairs.get(0).port;
+        String idBase = portIdPairs.get(0).id;
+        int numChildren = tikaServerConfig.getNumChildren();
+
+        RestartGate restartGate = new RestartGate();
+        List<ChildRoute> routes = new ArrayList<>();
+        for (int i = 0; i < numChildren; i++) {
+            routes.add(new ChildRoute(idBase + "-" + i));
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(numChildren);
+        ExecutorCompletionService<WatchDogResult> executorCompletionService = new ExecutorCompletionService<>(executorService);
+        try (TikaServerProxy proxy = new TikaServerProxy(tikaServerConfig.getHost(), port, routes, tikaServerConfig.getMaxForkedStartupMillis(),
+                isMetricsEnabled(tikaServerConfig))) {
+            for (int i = 0; i < numChildren; i++) {
+                TikaServerWatchDog watcher = new TikaServerWatchDog(port, routes.get(i).getId(), tikaServerConfig, routes.get(i),
+                        restartGate, getFirstMaxFiles(tikaServerConfig.getMaxFiles(), i, numChildren));
+                executorCompletionService.submit(watcher);
+                WATCHERS.add(watcher);
+            }
+            proxy.start();
+            waitForWatchers(executorService, executorCompletionService, numChildren);
+        }
+    }
+
+    /**
+     * @return maxFiles for the first child of child <code>i</code>:
+     * (i + 1) / numChildren of maxFiles, but at least 1, or maxFiles if
+     * that is negative
+     */
+    static long getFirstMaxFiles(long maxFiles, int i, int numChildren) {
+        return maxFiles < 0 ? maxFiles : Math.max(1, maxFiles * (i + 1) / numChildren);
+    }
+
+    /**
+     * Whether the forked processes serve /metrics, see TikaServerProcess#loadCoreProviders
+     */
+    private static boolean isMetricsEnabled(TikaServerConfig tikaServerConfig) {
+        if (tikaServerConfig
+                .getEndpoints()
+                .isEmpty()) {
+            return tikaServerConfig.isEnableUnsecureFeatures();
+        }
+        return tikaServerConfig
+                .getEndpoints()
+                .contains("metrics");
+    }
 
+    private static void waitForWatchers(ExecutorService executorService, ExecutorCompletionService<WatchDogResult> executorCompletionService,
+                                        int numWatchers) throws Exception {
         int finished = 0;
         try {
-            while (finished < portIdPairs.size()) {
+            while (finished < numWatchers) {
                 Future<WatchDogResult> future = executorCompletionService.poll(1, TimeUnit.MINUTES);
                 if (future != null) {
                     LOG.debug("main loop future is available");
@@ -79,8 +79,8 @@ public class TikaServerConfig extends ConfigBase {
                     "drive or a webpage from your intranet and/or send malicious content to\n" + " your emitter endpoints.  See CVE-2015-3271.\n" +
                     "Please make sure you know what you are doing.";
     private static final List<String> ONLY_IN_FORK_MODE = Arrays.asList(
-            new String[]{"taskTimeoutMillis", "taskPulseMillis", "maxFiles", "javaPath", "maxRestarts", "numRestarts", "forkedStatusFile", "maxForkedStartupMillis",
-                    "tmpFilePrefix"});
+            new String[]{"taskTimeoutMillis", "taskPulseMillis", "maxFiles", "javaPath", "maxRestarts", "numRestarts", "numTimeouts", "numOOMs", "forkedStatusFile",
+                    "maxForkedStartupMillis", "tmpFilePrefix", "numChildren"});
     private static Pattern SYS_PROPS = Pattern.compile("\\$\\{sys:([-_0-9A-Za-z]+)\\}");
     /*
 TODO: integrate these settings:
@@ -98,6 +98,7 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
  */
     private int maxRestarts = -1;
     private long maxFiles = 100000;
+    private int numChildren = 1;
     private long taskTimeoutMillis = DEFAULT_TASK_TIMEOUT_MILLIS;
     private long minimumTimeoutMillis = DEFAULT_MINIMUM_TIMEOUT_MILLIS;
     private long taskPulseMillis = DEFAULT_TASK_PULSE_MILLIS;
@@ -122,11 +123,15 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
     //debug or info only
     private String logLevel = "";
     private Path configPath;
+    private Path warmUpDirectory;
+    private int warmUpIterations = 1;
     private List<String> endpoints = new ArrayList<>();
     //these should only be set in the forked process
     //and they are automatically set by the forking process
     private String forkedStatusFile;
     private int numRestarts = 0;
+    private int numTimeouts = 0;
+    private int numOOMs = 0;
 
     private boolean preventStopMethod = false;
 
@@ -176,6 +181,21 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
             settings.add("numRestarts");
         }
 
+        if (commandLine.hasOption("numTimeouts")) {
+            config.setNumTimeouts(Integer.parseInt(commandLine.getOptionValue("numTimeouts")));
+            settings.add("numTimeouts");
+        }
+
+        if (commandLine.hasOption("numOOMs")) {
+            config.setNumOOMs(Integer.parseInt(commandLine.getOptionValue("numOOMs")));
+            settings.add("numOOMs");
+        }
+
+        if (commandLine.hasOption("maxFiles")) {
+            config.setMaxFiles(Long.parseLong(commandLine.getOptionValue("maxFiles")));
+            settings.add("maxFiles");
+        }
+
         if (commandLine.hasOption("forkedStatusFile")) {
             config.setForkedStatusFile(commandLine.getOptionValue("forkedStatusFile"));
             settings.add("forkedStatusFile");
@@ -378,10 +398,14 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
     }
 
     public List<String> getForkedProcessArgs(int port, String id) {
+        return getForkedProcessArgs(getHost(), port, id);
+    }
+
+    public List<String> getForkedProcessArgs(String host, int port, String id) {
         //these are the arguments for the forked process
         List<String> args = new ArrayList<>();
         args.add("-h");
-        args.add(getHost());
+        args.add(host);
         args.add("-p");
         args.add(Integer.toString(port));
         args.add("-i");
@@ -515,6 +539,48 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
         this.configPath = Paths.get(path);
     }
 
+    public Path getWarmUpDirectory() {
+        return warmUpDirectory;
+    }
+
+    /**
+     * Directory of files to parse before the server accepts requests so that
+     * the first requests don't pay for class loading and JIT compilation.
+     *
+     * @param warmUpDirectory
+     */
+    public void setWarmUpDirectory(String warmUpDirectory) {
+        this.warmUpDirectory = Paths.get(warmUpDirectory);
+    }
+
+    public int getWarmUpIterations() {
+        return warmUpIterations;
+    }
+
+    /**
+     * Number of times to parse each file in the warm up directory
+     *
+     * @param warmUpIterations
+     */
+    public void setWarmUpIterations(int warmUpIterations) {
+        this.warmUpIterations = warmUpIterations;
+    }
+
+    public int getNumChildren() {
+        return numChildren;
+    }
+
+    /**
+     * Number of forked processes to run behind the one port. If this is
+     * greater than 1, the forking process listens on the port and relays
+     * each connection to the least loaded child.
+     *
+     * @param numChildren
+     */
+    public void setNumChildren(int numChildren) {
+        this.numChildren = numChildren;
+    }
+
     public int getDigestMarkLimit() {
         return digestMarkLimit;
     }
@@ -597,6 +663,14 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
         return numRestarts;
     }
 
+    public int getNumTimeouts() {
+        return numTimeouts;
+    }
+
+    public int getNumOOMs() {
+        return numOOMs;
+    }
+
     /******
      * these should only be used in the commandline for a forked process
      ******/
@@ -606,6 +680,14 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
         this.numRestarts = numRestarts;
     }
 
+    private void setNumTimeouts(int numTimeouts) {
+        this.numTimeouts = numTimeouts;
+    }
+
+    private void setNumOOMs(int numOOMs) {
+        this.numOOMs = numOOMs;
+    }
+
     public String getForkedStatusFile() {
         return forkedStatusFile;
     }
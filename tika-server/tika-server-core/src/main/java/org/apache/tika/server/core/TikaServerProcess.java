@@ -76,6 +76,7 @@ import org.apache.tika.server.core.resource.TikaDetectors;
 import org.apache.tika.server.core.resource.TikaMimeTypes;
 import org.apache.tika.server.core.resource.TikaParsers;
 import org.apache.tika.server.core.resource.TikaResource;
+import org.apache.tika.server.core.resource.TikaServerMetrics;
 import org.apache.tika.server.core.resource.TikaServerResource;
 import org.apache.tika.server.core.resource.TikaServerStatus;
 import org.apache.tika.server.core.resource.TikaVersion;
@@ -111,6 +112,9 @@ public class TikaServerProcess {
                 "Not allowed in -noFork: temporary file used to communicate " + "with forking process -- do not use this! " + "Should only be invoked by forking process.");
         options.addOption("tmpFilePrefix", true, "Not allowed in -noFork: prefix for temp file - for debugging only");
         options.addOption("numRestarts", true, "Not allowed in -noFork: number of times that " + "the forked server has had to be restarted.");
+        options.addOption("numTimeouts", true, "Not allowed in -noFork: number of times that " + "the forked server has been restarted after a timeout.");
+        options.addOption("numOOMs", true, "Not allowed in -noFork: number of times that " + "the forked server has been restarted after an OutOfMemoryError.");
+        options.addOption("maxFiles", true, "Not allowed in -noFork: overrides maxFiles in the config; " + "set by the forking process for each of several children.");
         return options;
     }
 
@@ -222,10 +226,14 @@ public class TikaServerProcess {
         if (tikaServerConfig.isNoFork()) {
             serverStatus = new ServerStatus(serverId, 0, true);
         } else {
-            serverStatus = new ServerStatus(serverId, tikaServerConfig.getNumRestarts(), false);
+            serverStatus = new ServerStatus(serverId, tikaServerConfig.getNumRestarts(), tikaServerConfig.getNumTimeouts(), tikaServerConfig.getNumOOMs(), false);
             System.setOut(System.err);
         }
         TikaResource.init(tika, tikaServerConfig, digester, inputStreamFactory, serverStatus);
+        if (tikaServerConfig.getWarmUpDirectory() != null) {
+            TikaResource.getParserRegistry().warmUp(tikaServerConfig.getWarmUpDirectory(),
+                    tikaServerConfig.getWarmUpIterations());
+        }
         JAXRSServerFactoryBean sf = new JAXRSServerFactoryBean();
 
         List<ResourceProvider> resourceProviders = new ArrayList<>();
@@ -316,6 +324,7 @@ public class TikaServerProcess {
         writers.addAll(loadWriterServices());
         writers.add(new TikaServerParseExceptionMapper(tikaServerConfig.isReturnStackTrace()));
         writers.add(new JSONObjWriter());
+        writers.add(new TikaMetricsFilter(serverStatus.getMetrics()));
 
         TikaLoggingFilter logFilter = null;
         if (!StringUtils.isBlank(tikaServerConfig.getLogLevel())) {
@@ -374,6 +383,7 @@ public class TikaServerProcess {
                     addPipesResource = true;
                 }
                 resourceProviders.add(new SingletonResourceProvider(new TikaServerStatus(serverStatus)));
+                resourceProviders.add(new SingletonResourceProvider(new TikaServerMetrics(serverStatus)));
             }
         } else {
             for (String endPoint : tikaServerConfig.getEndpoints()) {
@@ -405,6 +415,8 @@ public class TikaServerProcess {
                     addAsyncResource = true;
                 } else if ("status".equals(endPoint)) {
                     resourceProviders.add(new SingletonResourceProvider(new TikaServerStatus(serverStatus)));
+                } else if ("metrics".equals(endPoint)) {
+                    resourceProviders.add(new SingletonResourceProvider(new TikaServerMetrics(serverStatus)));
                 }
             }
         }
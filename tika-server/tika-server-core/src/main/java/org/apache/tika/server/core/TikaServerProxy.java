@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens on the public port when the watchdog runs more than one forked
+ * child and relays each connection to the least loaded child that is up,
+ * see {@link ChildRoute#leastLoaded(List)}. Connections are relayed byte for
+ * byte, so requests on a keep-alive connection all go to the same child.
+ * <p>
+ * If no child is up, e.g. while the only child restarts, a connection waits
+ * up to <code>maxWaitMillis</code> for one before it is closed.
+ * <p>
+ * If the children serve /metrics, a connection that starts with a request
+ * for /metrics is answered by the proxy itself with the metrics of all of the children that are up, each
+ * sample with a <code>child</code> label, see
+ * {@link ServerMetrics#writeChildren(StringBuilder, Map)}. The connection is
+ * closed after that response. A request for /metrics later on a keep-alive
+ * connection goes to that connection's child like any other request.
+ */
+class TikaServerProxy implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TikaServerProxy.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long ROUTE_POLL_MILLIS = 50;
+    private static final int METRICS_TIMEOUT_MILLIS = 10000;
+    private static final byte[] METRICS_REQUEST = "GET /metrics".getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerSocket serverSocket;
+    private final List<ChildRoute> routes;
+    private final long maxWaitMillis;
+    private final boolean answerMetrics;
+    private final ExecutorService executorService;
+    private volatile boolean closed = false;
+
+    /**
+     * @param answerMetrics whether the children serve /metrics, in which case
+     *                      the proxy answers requests for it
+     */
+    TikaServerProxy(String host, int port, List<ChildRoute> routes, long maxWaitMillis,
+                    boolean answerMetrics) throws IOException {
+        this.routes = routes;
+        this.maxWaitMillis = maxWaitMillis;
+        this.answerMetrics = answerMetrics;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(new InetSocketAddress(host, port));
+        AtomicInteger threadCount = new AtomicInteger(0);
+        this.executorService = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "tika-server-proxy-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void start() {
+        Thread acceptor = new Thread(this::accept, "tika-server-proxy-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOG.info("relaying {} to {} forked children", serverSocket.getLocalSocketAddress(),
+                routes.size());
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket client = serverSocket.accept();
+                executorService.execute(() -> relay(client));
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.warn("problem accepting connection", e);
+                }
+            }
+        }
+    }
+
+    private void relay(Socket client) {
+        Set<ChildRoute> refused = new HashSet<>();
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        try {
+            PushbackInputStream fromClient = new PushbackInputStream(client.getInputStream(),
+                    METRICS_REQUEST.length + 1);
+            if (answerMetrics && isMetricsRequest(fromClient)) {
+                writeMetrics(fromClient, client.getOutputStream());
+                return;
+            }
+            while (!closed) {
+                ChildRoute route = waitForRoute(refused, deadline);
+                if (route == null) {
+                    LOG.warn("no forked child available after {} ms; closing connection",
+                            maxWaitMillis);
+                    return;
+                }
+                Socket child = connect(route);
+                if (child == null) {
+                    refused.add(route);
+                    continue;
+                }
+                route.connected();
+                try {
+                    relay(client, fromClient, child);
+                } finally {
+                    route.disconnected();
+                }
+                return;
+            }
+        } catch (InterruptedException e) {
+            //closing
+        } catch (IOException e) {
+            LOG.debug("problem reading from client", e);
+        } finally {
+            closeQuietly(client);
+        }
+    }
+
+    /**
+     * Reads only as much of the request as it takes to tell whether it is a
+     * GET for /metrics and then pushes that back.
+     */
+    private static boolean isMetricsRequest(PushbackInputStream is) throws IOException {
+        byte[] read = new byte[METRICS_REQUEST.length + 1];
+        int n = 0;
+        boolean matches = true;
+        while (matches && n < read.length) {
+            int b = is.read();
+            if (b == -1) {
+                break;
+            }
+            read[n] = (byte) b;
+            if (n < METRICS_REQUEST.length) {
+                matches = b == METRICS_REQUEST[n];
+            } else {
+                matches = b == ' ' || b == '?';
+            }
+            n++;
+        }
+        is.unread(read, 0, n);
+        return matches && n == read.length;
+    }
+
+    private void writeMetrics(InputStream fromClient, OutputStream toClient) throws IOException {
+        //skip the request line and headers; a GET has no body
+        int newLines = 0;
+        while (newLines < 2) {
+            int b = fromClient.read();
+            if (b == -1) {
+                break;
+            } else if (b == '\n') {
+                newLines++;
+            } else if (b != '\r') {
+                newLines = 0;
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        ServerMetrics.writeHeader(sb, "tika_server_child_up", "Whether the forked child answered this scrape", "gauge");
+        Map<String, String> metricsByChild = new LinkedHashMap<>();
+        for (ChildRoute route : routes) {
+            String metrics = readMetrics(route);
+            sb.append("tika_server_child_up");
+            ServerMetrics.appendLabel(sb, "child", route.getId());
+            sb.append("} ").append(metrics == null ? 0 : 1).append('\n');
+            if (metrics != null) {
+                metricsByChild.put(route.getId(), metrics);
+            }
+        }
+        ServerMetrics.writeChildren(sb, metricsByChild);
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        String headers = "HTTP/1.1 200 OK\r\n" + "Content-Type: " + ServerMetrics.CONTENT_TYPE + "\r\n" +
+                "Content-Length: " + body.length + "\r\n" + "Connection: close\r\n\r\n";
+        toClient.write(headers.getBytes(StandardCharsets.US_ASCII));
+        toClient.write(body);
+        toClient.flush();
+    }
+
+    /**
+     * @return the child's /metrics, or <code>null</code> if it is not up or
+     * didn't answer
+     */
+    private static String readMetrics(ChildRoute route) {
+        int port = route.getPort();
+        if (port == ChildRoute.UNAVAILABLE) {
+            return null;
+        }
+        HttpURLConnection connection = null;
+        try {
+            URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, "/metrics");
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(METRICS_TIMEOUT_MILLIS);
+            if (connection.getResponseCode() != 200) {
+                LOG.debug("{} answered /metrics with {}", route, connection.getResponseCode());
+                return null;
+            }
+            try (InputStream is = connection.getInputStream()) {
+                return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            LOG.debug("couldn't read /metrics from {}", route, e);
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @param refused routes that refused this connection; they are tried
+     * again only once no other route is available since their child may
+     * have been restarted on another port in the meantime
+     */
+    private ChildRoute waitForRoute(Set<ChildRoute> refused, long deadline)
+            throws InterruptedException {
+        while (true) {
+            List<ChildRoute> candidates = new ArrayList<>(routes);
+            candidates.removeAll(refused);
+            ChildRoute route = ChildRoute.leastLoaded(candidates);
+            if (route != null) {
+                return route;
+            }
+            refused.clear();
+            if (closed || System.currentTimeMillis() >= deadline) {
+                return null;
+            }
+            Thread.sleep(ROUTE_POLL_MILLIS);
+        }
+    }
+
+    private static Socket connect(ChildRoute route) {
+        int port = route.getPort();
+        if (port == ChildRoute.UNAVAILABLE) {
+            return null;
+        }
+        Socket child = new Socket();
+        try {
+            child.setTcpNoDelay(true);
+            child.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                    CONNECT_TIMEOUT_MILLIS);
+            return child;
+        } catch (IOException e) {
+            LOG.debug("couldn't connect to {}", route, e);
+            closeQuietly(child);
+            return null;
+        }
+    }
+
+    private void relay(Socket client, InputStream fromClient, Socket child) throws InterruptedException {
+        CountDownLatch fromChild = new CountDownLatch(1);
+        try {
+            client.setTcpNoDelay(true);
+            InputStream is = child.getInputStream();
+            executorService.execute(() -> {
+                try {
+                    pump(is, child, client);
+                } finally {
+                    fromChild.countDown();
+                }
+            });
+            pump(fromClient, client, child);
+            fromChild.await();
+        } catch (IOException e) {
+            LOG.debug("problem relaying connection", e);
+        } finally {
+            closeQuietly(child);
+        }
+    }
+
+    /**
+     * Copies until <code>from</code> is half closed and then half closes
+     * <code>to</code>. If either fails, both are closed, which also ends the
+     * pump in the other direction.
+     */
+    private static void pump(InputStream is, Socket from, Socket to) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            OutputStream os = to.getOutputStream();
+            int read = is.read(buffer);
+            while (read != -1) {
+                os.write(buffer, 0, read);
+                os.flush();
+                read = is.read(buffer);
+            }
+            to.shutdownOutput();
+        } catch (IOException e) {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //swallow
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            serverSocket.close();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -27,6 +27,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.net.BindException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -79,17 +81,52 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
     private final int port;
     private final String id;
     private final TikaServerConfig tikaServerConfig;
+    //only set if this is one of several children behind a TikaServerProxy
+    private final ChildRoute childRoute;
+    private final RestartGate restartGate;
+    private final long firstMaxFiles;
+    //maxFiles of the current child; the watchdog restarts children behind a proxy itself
+    private long childMaxFiles = -1;
+    //whether this watchdog's child is counted as down in the restartGate
+    private boolean countedAsDown = false;
     private final Object[] forkedStatusLock = new Object[0];
     private volatile FORKED_STATUS forkedStatus = FORKED_STATUS.INITIALIZING;
     private volatile Instant lastPing = null;
     private ForkedProcess forkedProcess = null;
     private int restarts = 0;
+    //restarts after a timeout or an OOM, passed to the forked process for its metrics
+    private int timeouts = 0;
+    private int ooms = 0;
     private volatile boolean shutDown = false;
 
     TikaServerWatchDog(int port, String id, TikaServerConfig tikaServerConfig) {
+        this(port, id, tikaServerConfig, null, null, tikaServerConfig.getMaxFiles());
+    }
+
+    /**
+     * Watchdog for one of several children behind a {@link TikaServerProxy}.
+     * The child listens on an internal port on the loopback interface and is
+     * added to the proxy's routes via <code>childRoute</code> while it is up.
+     * <p>
+     * The watchdog, rather than the child, restarts the child once it has
+     * processed maxFiles: it waits until no other child is down or starting,
+     * see {@link RestartGate}, takes the child out of the proxy's routes and
+     * gives the child's running tasks up to taskTimeoutMillis to finish.
+     *
+     * @param restartGate   shared by the watchdogs of all of the children
+     * @param firstMaxFiles maxFiles for the first child that this watchdog
+     *                      starts. The children get different values so
+     *                      that their restarts are spread out instead of
+     *                      all of them restarting at the same time.
+     */
+    TikaServerWatchDog(int port, String id, TikaServerConfig tikaServerConfig, ChildRoute childRoute,
+                       RestartGate restartGate, long firstMaxFiles) {
         this.port = port;
         this.id = id;
         this.tikaServerConfig = tikaServerConfig;
+        this.childRoute = childRoute;
+        this.restartGate = restartGate;
+        this.firstMaxFiles = firstMaxFiles;
     }
 
     private static void redirectIO(final InputStream src, final PrintStream targ) {
@@ -145,6 +182,8 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
 
                 try {
                     if (mustRestart) {
+                        countAsDown();
+                        childMaxFiles = restarts == 0 ? firstMaxFiles : tikaServerConfig.getMaxFiles();
                         forkedProcess = startForkedProcess(restarts++);
                         if (forkedProcess == null) {
                             if (!shutDown) {
@@ -154,23 +193,39 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
                             }
                         }
                         setForkedStatus(FORKED_STATUS.RUNNING);
+                        if (childRoute != null) {
+                            childRoute.setAvailable(forkedProcess.port);
+                        }
+                        countAsUp();
                         mustRestart = false;
                     }
                     boolean exited = forkedProcess.process.waitFor(tikaServerConfig.getTaskPulseMillis(), TimeUnit.MILLISECONDS);
                     if (exited) {
-                        LOG.info("forked process exited with exit value {}", forkedProcess.process.exitValue());
-                        closeForkedProcess(forkedProcess);
+                        int exitValue = forkedProcess.process.exitValue();
+                        LOG.info("forked process exited with exit value {}", exitValue);
+                        if (exitValue == ServerStatus.STATUS.TIMEOUT.getShutdownCode()) {
+                            timeouts++;
+                        } else if (exitValue == ServerStatus.STATUS.ERROR.getShutdownCode()) {
+                            ooms++;
+                        }
+                        closeChild(forkedProcess);
                         mustRestart = true;
                     } else {
                         ForkedStatus status = forkedProcess.readStatus();
+                        if (childRoute != null && status.numTasks >= 0) {
+                            childRoute.setNumTasks(status.numTasks);
+                        }
                         if (status.status == FORKED_STATUS.FAILED_COMMUNICATION.ordinal()) {
                             LOG.info("failed to read from status file. Restarting now.");
-                            closeForkedProcess(forkedProcess);
+                            closeChild(forkedProcess);
                             mustRestart = true;
                         } else if (status.status == FORKED_STATUS.SHUTTING_DOWN.ordinal()) {
                             LOG.info("Forked process is in shutting down mode.  Will wait a bit");
+                            if (childRoute != null) {
+                                childRoute.setUnavailable();
+                            }
                             forkedProcess.process.waitFor(tikaServerConfig.getTaskTimeoutMillis(), TimeUnit.MILLISECONDS);
-                            closeForkedProcess(forkedProcess);
+                            closeChild(forkedProcess);
                             mustRestart = true;
                         } else {
                             long elapsed = Duration
@@ -178,7 +233,14 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
                                     .toMillis();
                             if (elapsed > tikaServerConfig.getTaskTimeoutMillis()) {
                                 LOG.info("{} ms have elapsed since forked process " + "last updated status. " + "Shutting down and restarting.", elapsed);
-                                closeForkedProcess(forkedProcess);
+                                timeouts++;
+                                closeChild(forkedProcess);
+                                mustRestart = true;
+                            } else if (isRestartDue(status) && restartGate.tryPlannedRestart()) {
+                                countedAsDown = true;
+                                LOG.info("{} has processed {} files. Restarting it.", id, status.filesProcessed);
+                                drain(forkedProcess);
+                                closeChild(forkedProcess);
                                 mustRestart = true;
                             }
                         }
@@ -188,20 +250,70 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
                 }
             }
         } finally {
+            //don't hold up the other children's restarts once this one is gone for good
+            countAsUp();
             setForkedStatus(FORKED_STATUS.SHUTTING_DOWN);
             LOG.debug("about to shutdown");
             if (forkedProcess != null) {
                 LOG.info("about to shutdown process");
-                closeForkedProcess(forkedProcess);
+                closeChild(forkedProcess);
+            }
+        }
+    }
+
+    private boolean isRestartDue(ForkedStatus status) {
+        return childRoute != null && childMaxFiles >= 0 && status.filesProcessed >= childMaxFiles;
+    }
+
+    /**
+     * Takes the child out of the proxy's routes and waits up to
+     * taskTimeoutMillis for a status without running tasks that the child
+     * wrote after that
+     */
+    private void drain(ForkedProcess forkedProcess) throws Exception {
+        childRoute.setUnavailable();
+        long started = System.currentTimeMillis();
+        while (System.currentTimeMillis() - started < tikaServerConfig.getTaskTimeoutMillis()) {
+            if (forkedProcess.process.waitFor(tikaServerConfig.getTaskPulseMillis(), TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            ForkedStatus status = forkedProcess.readStatus();
+            if (status.timestamp >= started && status.numTasks <= 0) {
+                return;
             }
         }
+        LOG.warn("{} still has running tasks after {} ms. Restarting it anyway.", id, tikaServerConfig.getTaskTimeoutMillis());
+    }
+
+    private void countAsDown() {
+        if (restartGate != null && !countedAsDown) {
+            restartGate.down();
+            countedAsDown = true;
+        }
+    }
+
+    private void countAsUp() {
+        if (countedAsDown) {
+            restartGate.up();
+            countedAsDown = false;
+        }
+    }
+
+    /**
+     * Takes the child out of the proxy's routes before closing it
+     */
+    private void closeChild(ForkedProcess forkedProcess) throws DoNotRestartException, InterruptedException {
+        if (childRoute != null) {
+            childRoute.setUnavailable();
+        }
+        closeForkedProcess(forkedProcess);
     }
 
     public synchronized void close() throws DoNotRestartException, InterruptedException {
         setForkedStatus(FORKED_STATUS.SHUTTING_DOWN);
         LOG.debug("received 'close()'; about to shutdown");
         shutDown();
-        closeForkedProcess(forkedProcess);
+        closeChild(forkedProcess);
     }
 
     private synchronized ForkedProcess startForkedProcess(int restarts) throws Exception {
@@ -211,17 +323,24 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
         //a chance to release the port
         int maxBind = 30;
         while (consecutiveRestarts < maxBind && !shutDown) {
+            int forkedPort = childRoute == null ? port : findFreePort();
             try {
-                ForkedProcess forkedProcess = new ForkedProcess(restarts);
+                ForkedProcess forkedProcess = new ForkedProcess(restarts, forkedPort);
                 FORKED_PROCESSES.add(forkedProcess);
                 return forkedProcess;
             } catch (BindException e) {
-                LOG.warn("WatchDog observes bind exception on retry {}. " + "Will retry {} times.", consecutiveRestarts, maxBind);
                 consecutiveRestarts++;
-                Thread.sleep(1000);
                 if (consecutiveRestarts >= maxBind) {
                     throw e;
                 }
+                if (childRoute == null) {
+                    LOG.warn("WatchDog observes bind exception on retry {}. " + "Will retry {} times.", consecutiveRestarts, maxBind);
+                    Thread.sleep(1000);
+                } else {
+                    //something else took the port after findFreePort(); there's
+                    //no point in waiting for it, so try another one right away
+                    LOG.warn("{} couldn't bind port {}. Retrying on another port.", id, forkedPort);
+                }
             }
         }
         if (shutDown) {
@@ -231,6 +350,22 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
     }
 
 
+    /**
+     * The port is free when this returns but may be taken before the child
+     * binds it. The child then exits with {@link TikaServerProcess#BIND_EXCEPTION}
+     * and {@link #startForkedProcess(int)} tries again with a new port.
+     */
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    //package private so that tests can start stub children that write to the status file
+    Process startChild(ProcessBuilder builder, Path forkedStatusFile) throws IOException {
+        return builder.start();
+    }
+
     public void shutDown() {
         shutDown = true;
     }
@@ -249,16 +384,18 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
         private final long timestamp;
         private final int status;
         private final int numTasks;
+        private final long filesProcessed;
 
-        public ForkedStatus(long timestamp, int status, int numTasks) {
+        public ForkedStatus(long timestamp, int status, int numTasks, long filesProcessed) {
             this.timestamp = timestamp;
             this.status = status;
             this.numTasks = numTasks;
+            this.filesProcessed = filesProcessed;
         }
 
         @Override
         public String toString() {
-            return "ForkedStatus{" + "timestamp=" + timestamp + ", status=" + status + ", numTasks=" + numTasks + '}';
+            return "ForkedStatus{" + "timestamp=" + timestamp + ", status=" + status + ", numTasks=" + numTasks + ", filesProcessed=" + filesProcessed + '}';
         }
     }
 
@@ -275,12 +412,14 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
 
     private class ForkedProcess {
         private final Process process;
+        private final int port;
         //        private final DataOutputStream toForked;
         private final Path forkedStatusFile;
-        private final ByteBuffer statusBuffer = ByteBuffer.allocate(16);
+        private final ByteBuffer statusBuffer = ByteBuffer.allocate(24);
 
-        private ForkedProcess(int numRestarts) throws Exception {
+        private ForkedProcess(int numRestarts, int port) throws Exception {
             String prefix = tikaServerConfig.getTempFilePrefix();
+            this.port = port;
 
             this.forkedStatusFile = Files.createTempFile(prefix, "");
             this.process = startProcess(numRestarts, forkedStatusFile);
@@ -331,14 +470,15 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
             try (FileChannel fc = FileChannel.open(forkedStatusFile, READ, WRITE)) {
 
                 while (elapsed < tikaServerConfig.getTaskTimeoutMillis()) {
-                    try (FileLock lock = fc.tryLock(0, 16, true)) {
+                    try (FileLock lock = fc.tryLock(0, 24, true)) {
                         if (lock != null) {
                             ((Buffer) statusBuffer).position(0);
                             fc.read(statusBuffer);
                             long timestamp = statusBuffer.getLong(0);
                             int status = statusBuffer.getInt(8);
                             int numTasks = statusBuffer.getInt(12);
-                            return new ForkedStatus(timestamp, status, numTasks);
+                            long filesProcessed = statusBuffer.getLong(16);
+                            return new ForkedStatus(timestamp, status, numTasks, filesProcessed);
                         }
                     } catch (OverlappingFileLockException e) {
                         //swallow
@@ -349,7 +489,7 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
                             .toMillis();
                 }
             }
-            return new ForkedStatus(-1, FORKED_STATUS.FAILED_COMMUNICATION.ordinal(), -1);
+            return new ForkedStatus(-1, FORKED_STATUS.FAILED_COMMUNICATION.ordinal(), -1, -1);
         }
 
         private void close() throws DoNotRestartException, InterruptedException {
@@ -387,7 +527,17 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
             List<String> argList = new ArrayList<>();
             String javaPath = tikaServerConfig.getJavaPath();
             List<String> jvmArgs = tikaServerConfig.getForkedJvmArgs();
-            List<String> forkedArgs = tikaServerConfig.getForkedProcessArgs(port, id);
+            List<String> forkedArgs;
+            if (childRoute == null) {
+                forkedArgs = tikaServerConfig.getForkedProcessArgs(port, id);
+            } else {
+                forkedArgs = tikaServerConfig.getForkedProcessArgs(InetAddress
+                        .getLoopbackAddress()
+                        .getHostAddress(), port, id);
+                //the watchdog restarts the child after childMaxFiles, see isRestartDue()
+                forkedArgs.add("-maxFiles");
+                forkedArgs.add("-1");
+            }
             forkedArgs.add("-forkedStatusFile");
             forkedArgs.add(ProcessUtils.escapeCommandLine(forkedStatusFile
                     .toAbsolutePath()
@@ -409,6 +559,10 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
 
             argList.add("-numRestarts");
             argList.add(Integer.toString(numRestarts));
+            argList.add("-numTimeouts");
+            argList.add(Integer.toString(timeouts));
+            argList.add("-numOOMs");
+            argList.add(Integer.toString(ooms));
             LOG.debug("forked process commandline: " + argList.toString());
             builder.command(argList);
             //now overwrite with the specific server id
@@ -417,7 +571,7 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
             builder
                     .environment()
                     .put(TIKA_SERVER_ID_ENV, id);
-            Process process = builder.start();
+            Process process = startChild(builder, forkedStatusFile);
             PROCESSES.add(process);
             //redirect stdout to parent stderr to avoid error msgs
             //from maven during build: Corrupted STDOUT by directly writing to
@@ -17,11 +17,14 @@
 
 package org.apache.tika.server.core.resource;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.tika.server.core.resource.TikaResource.fillMetadata;
 import static org.apache.tika.server.core.resource.TikaResource.fillParseContext;
 import static org.apache.tika.server.core.resource.TikaResource.getConfig;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.util.List;
 
 import jakarta.ws.rs.Consumes;
@@ -35,27 +38,52 @@ import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
 import org.apache.cxf.jaxrs.ext.multipart.Attachment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metadata.filter.MetadataFilter;
 import org.apache.tika.metadata.listfilter.MetadataListFilter;
+import org.apache.tika.metadata.listfilter.NoOpListFilter;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
 import org.apache.tika.parser.RecursiveParserWrapper;
 import org.apache.tika.pipes.HandlerConfig;
+import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
 import org.apache.tika.sax.BasicContentHandlerFactory;
+import org.apache.tika.sax.ContentHandlerFactory;
 import org.apache.tika.sax.RecursiveParserWrapperHandler;
+import org.apache.tika.serialization.JsonStreamingSerializer;
 import org.apache.tika.server.core.MetadataList;
 import org.apache.tika.server.core.TikaServerParseException;
+import org.apache.tika.utils.ExceptionUtils;
 
 @Path("/rmeta")
 public class RecursiveMetadataResource {
 
     protected static final String HANDLER_TYPE_PARAM = "handler";
     protected static final BasicContentHandlerFactory.HANDLER_TYPE DEFAULT_HANDLER_TYPE = BasicContentHandlerFactory.HANDLER_TYPE.XML;
+    /**
+     * Key in the last object of a streamed response: {@link #STREAM_STATUS_OK}
+     * if the parse finished or {@link #STREAM_STATUS_EXCEPTION}
+     */
+    public static final String STREAM_STATUS = "X-TIKA:stream_status";
+    /**
+     * Key in the last object of a streamed response with the exception that
+     * ended the parse; this is the stack trace if returnStackTrace is set
+     */
+    public static final String STREAM_EXCEPTION = "X-TIKA:stream_exception";
+    public static final String STREAM_STATUS_OK = "ok";
+    public static final String STREAM_STATUS_EXCEPTION = "exception";
     private static final Logger LOG = LoggerFactory.getLogger(RecursiveMetadataResource.class);
 
     public static List<Metadata> parseMetadata(InputStream is, Metadata metadata, MultivaluedMap<String, String> httpHeaders, UriInfo info, HandlerConfig handlerConfig)
@@ -90,6 +118,66 @@ public class RecursiveMetadataResource {
         return metadataListFilter.filter(handler.getMetadataList());
     }
 
+    /**
+     * Like {@link #parseMetadata(InputStream, Metadata, MultivaluedMap, UriInfo, HandlerConfig)},
+     * but writes each document's metadata to the response as soon as the
+     * {@link RecursiveParserWrapper} is done with it. The embedded documents
+     * come first and the container document comes last, followed by an object
+     * with the {@link #STREAM_STATUS}. Because earlier documents are already
+     * written, they don't get {@link TikaCoreProperties#FINAL_EMBEDDED_RESOURCE_PATH}.
+     * <p>
+     * {@link MetadataListFilter}s need the whole list, so if one is configured
+     * the list is built as for /rmeta and written once the parse is done.
+     */
+    public static StreamingOutput streamMetadata(InputStream is, Metadata metadata, MultivaluedMap<String, String> httpHeaders, UriInfo info,
+                                                 HandlerConfig handlerConfig) {
+        final ParseContext context = new ParseContext();
+        Parser parser = TikaResource.createParser();
+
+        RecursiveParserWrapper wrapper = new RecursiveParserWrapper(parser);
+        fillMetadata(parser, metadata, httpHeaders);
+        fillParseContext(httpHeaders, metadata, context);
+        TikaResource.logRequest(LOG, "/rmeta/stream", metadata);
+
+        BasicContentHandlerFactory contentHandlerFactory =
+                new BasicContentHandlerFactory(handlerConfig.getType(), handlerConfig.getWriteLimit(), handlerConfig.isThrowOnWriteLimitReached(), context);
+        MetadataListFilter metadataListFilter = context.get(MetadataListFilter.class, getConfig().getMetadataListFilter());
+        MetadataFilter metadataFilter = getConfig().getMetadataFilter();
+
+        return outputStream -> {
+            JsonStreamingSerializer serializer = new JsonStreamingSerializer(new OutputStreamWriter(outputStream, UTF_8));
+            Metadata status = new Metadata();
+            status.set(STREAM_STATUS, STREAM_STATUS_OK);
+            AbstractRecursiveParserWrapperHandler handler;
+            if (metadataListFilter instanceof NoOpListFilter) {
+                handler = new StreamingHandler(contentHandlerFactory, handlerConfig.getMaxEmbeddedResources(), metadataFilter, serializer);
+            } else {
+                handler = new RecursiveParserWrapperHandler(contentHandlerFactory, handlerConfig.getMaxEmbeddedResources(), metadataFilter);
+            }
+            try {
+                TikaResource.parse(wrapper, LOG, "/rmeta/stream", is, handler, metadata, context);
+            } catch (TikaServerParseException e) {
+                LOG.debug("server parse exception", e);
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                if (!WriteLimitReachedException.isWriteLimitReached(cause)) {
+                    status.set(STREAM_STATUS, STREAM_STATUS_EXCEPTION);
+                    status.set(STREAM_EXCEPTION, TikaResource.isReturnStackTrace() ? ExceptionUtils.getStackTrace(cause) : cause.toString());
+                }
+            }
+            if (handler instanceof RecursiveParserWrapperHandler) {
+                try {
+                    for (Metadata m : metadataListFilter.filter(((RecursiveParserWrapperHandler) handler).getMetadataList())) {
+                        serializer.add(m);
+                    }
+                } catch (TikaException e) {
+                    throw new IOException(e);
+                }
+            }
+            serializer.add(status);
+            serializer.close();
+        };
+    }
+
     static HandlerConfig buildHandlerConfig(MultivaluedMap<String, String> httpHeaders, String handlerTypeName, HandlerConfig.PARSE_MODE parseMode) {
         int writeLimit = -1;
         if (httpHeaders.containsKey("writeLimit")) {
@@ -174,8 +262,87 @@ public class RecursiveMetadataResource {
                 .build();
     }
 
+    /**
+     * Same as {@link #getMetadata(InputStream, HttpHeaders, UriInfo, String)}, but
+     * writes each document's metadata as soon as it has been parsed instead of
+     * building the whole list first, so that containers with many embedded
+     * documents don't have to fit in memory. The response is a JSON array in
+     * the order that the documents finished: the embedded documents and then
+     * the container document, followed by a status object with
+     * {@link #STREAM_STATUS} and, if the parse failed, {@link #STREAM_EXCEPTION}.
+     * Because the status code has been sent before the parse finishes, clients
+     * should check the status object. Note that
+     * {@link org.apache.tika.serialization.JsonMetadataList#fromJson(java.io.Reader)}
+     * moves the last object to the front when it is not an embedded document,
+     * so look for the status object by its key rather than its position.
+     * <p>
+     * /rmeta/stream (default: xml)<br/>
+     * /rmeta/stream/text   (store the content as text)<br/>
+     *
+     * @param info            uri info
+     * @param handlerTypeName which type of handler to use
+     * @return the metadata objects, one at a time
+     * @throws Exception
+     */
+    @PUT
+    @Produces("application/json")
+    @Path("stream{" + HANDLER_TYPE_PARAM + " : (\\w+)?}")
+    public StreamingOutput getMetadataStream(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info, @PathParam(HANDLER_TYPE_PARAM) String handlerTypeName)
+            throws Exception {
+        Metadata metadata = new Metadata();
+        return streamMetadata(TikaResource.getInputStream(is, metadata, httpHeaders, info), metadata, httpHeaders.getRequestHeaders(), info,
+                buildHandlerConfig(httpHeaders.getRequestHeaders(), handlerTypeName, HandlerConfig.PARSE_MODE.RMETA));
+    }
+
     private MetadataList parseMetadataToMetadataList(InputStream is, Metadata metadata, MultivaluedMap<String, String> httpHeaders, UriInfo info, HandlerConfig handlerConfig)
             throws Exception {
         return new MetadataList(parseMetadata(is, metadata, httpHeaders, info, handlerConfig));
     }
+
+    /**
+     * Writes each document's metadata as soon as the document has been parsed
+     */
+    private static class StreamingHandler extends AbstractRecursiveParserWrapperHandler {
+
+        private final MetadataFilter metadataFilter;
+        private final JsonStreamingSerializer serializer;
+
+        StreamingHandler(ContentHandlerFactory contentHandlerFactory, int maxEmbeddedResources, MetadataFilter metadataFilter, JsonStreamingSerializer serializer) {
+            super(contentHandlerFactory, maxEmbeddedResources);
+            this.metadataFilter = metadataFilter;
+            this.serializer = serializer;
+        }
+
+        @Override
+        public void endEmbeddedDocument(ContentHandler contentHandler, Metadata metadata) throws SAXException {
+            super.endEmbeddedDocument(contentHandler, metadata);
+            write(contentHandler, metadata);
+        }
+
+        @Override
+        public void endDocument(ContentHandler contentHandler, Metadata metadata) throws SAXException {
+            super.endDocument(contentHandler, metadata);
+            write(contentHandler, metadata);
+        }
+
+        private void write(ContentHandler contentHandler, Metadata metadata) throws SAXException {
+            //same as RecursiveParserWrapperHandler
+            if (!contentHandler.getClass().equals(DefaultHandler.class)) {
+                String content = contentHandler.toString();
+                if (content != null && !content.isBlank()) {
+                    metadata.add(TikaCoreProperties.TIKA_CONTENT, content);
+                    metadata.add(TikaCoreProperties.TIKA_CONTENT_HANDLER, contentHandler.getClass().getSimpleName());
+                }
+            }
+            try {
+                metadataFilter.filter(metadata);
+                if (metadata.size() > 0) {
+                    serializer.add(metadata);
+                    serializer.flush();
+                }
+            } catch (TikaException | IOException e) {
+                throw new SAXException(e);
+            }
+        }
+    }
 }
@@ -30,6 +30,7 @@ import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.transform.OutputKeys;
@@ -69,7 +70,6 @@ import org.apache.tika.exception.TikaException;
 import org.apache.tika.exception.WriteLimitReachedException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
-import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.DigestingParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
@@ -82,6 +82,7 @@ import org.apache.tika.sax.boilerpipe.BoilerpipeContentHandler;
 import org.apache.tika.server.core.CompositeParseContextConfig;
 import org.apache.tika.server.core.InputStreamFactory;
 import org.apache.tika.server.core.ParseContextConfig;
+import org.apache.tika.server.core.ParserRegistry;
 import org.apache.tika.server.core.ServerStatus;
 import org.apache.tika.server.core.TikaServerConfig;
 import org.apache.tika.server.core.TikaServerParseException;
@@ -99,6 +100,7 @@ public class TikaResource {
     private static DigestingParser.Digester DIGESTER = null;
     private static InputStreamFactory INPUTSTREAM_FACTORY = null;
     private static ServerStatus SERVER_STATUS = null;
+    private static ParserRegistry PARSER_REGISTRY = null;
 
     private static ParseContextConfig PARSE_CONTEXT_CONFIG = new CompositeParseContextConfig();
 
@@ -110,32 +112,30 @@ public class TikaResource {
         DIGESTER = digester;
         INPUTSTREAM_FACTORY = inputStreamFactory;
         SERVER_STATUS = serverStatus;
+        PARSER_REGISTRY = new ParserRegistry(config, digester);
     }
 
 
-    @SuppressWarnings("serial")
+    /**
+     * @return the parser that all requests share; it is built once per
+     * config and digester, see {@link ParserRegistry}
+     */
     public static Parser createParser() {
-        final Parser parser = new AutoDetectParser(TIKA_CONFIG);
-
-        if (DIGESTER != null) {
-            boolean skipContainer = false;
-            if (TIKA_CONFIG
-                    .getAutoDetectParserConfig()
-                    .getDigesterFactory() != null && TIKA_CONFIG
-                    .getAutoDetectParserConfig()
-                    .getDigesterFactory()
-                    .isSkipContainerDocument()) {
-                skipContainer = true;
-            }
-            return new DigestingParser(parser, DIGESTER, skipContainer);
-        }
-        return parser;
+        return PARSER_REGISTRY.getParser();
+    }
+
+    public static ParserRegistry getParserRegistry() {
+        return PARSER_REGISTRY;
     }
 
     public static TikaConfig getConfig() {
         return TIKA_CONFIG;
     }
 
+    static boolean isReturnStackTrace() {
+        return TIKA_SERVER_CONFIG.isReturnStackTrace();
+    }
+
     public static String detectFilename(MultivaluedMap<String, String> httpHeaders) {
 
         String disposition = httpHeaders.getFirst("Content-Disposition");
@@ -359,6 +359,7 @@ public class TikaResource {
         long timeoutMillis = getTaskTimeout(parseContext);
 
         long taskId = SERVER_STATUS.start(ServerStatus.TASK.PARSE, fileName, timeoutMillis);
+        long started = System.nanoTime();
         try {
             parser.parse(inputStream, handler, metadata, parseContext);
         } catch (SAXException e) {
@@ -377,6 +378,9 @@ public class TikaResource {
             throw e;
         } finally {
             SERVER_STATUS.complete(taskId);
+            SERVER_STATUS
+                    .getMetrics()
+                    .recordParse(metadata, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
             inputStream.close();
         }
     }
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core.resource;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+import org.apache.tika.server.core.ServerMetrics;
+import org.apache.tika.server.core.ServerStatus;
+
+/**
+ * The server's status and {@link ServerMetrics} in the Prometheus text format.
+ * The restarts, timeouts and OOMs are counted by the forking process and
+ * passed to each new forked process.
+ * <p>
+ * With more than one forked child, a scrape of the public port is answered
+ * by the proxy in the forking process with the metrics of every child, each
+ * labelled with the child's id.
+ */
+@Path("/metrics")
+public class TikaServerMetrics {
+    private final ServerStatus serverStatus;
+
+    public TikaServerMetrics(ServerStatus serverStatus) {
+        this.serverStatus = serverStatus;
+    }
+
+    @GET
+    @Produces(ServerMetrics.CONTENT_TYPE)
+    public String getMetrics() {
+        StringBuilder sb = new StringBuilder();
+        ServerMetrics.writeCounter(sb, "tika_server_files_processed_total", "Tasks started since this server started", serverStatus.getFilesProcessed());
+        ServerMetrics.writeGauge(sb, "tika_server_active_tasks", "Tasks that are running now", serverStatus.getNumActiveTasks());
+        ServerMetrics.writeGauge(sb, "tika_server_millis_since_last_parse_started", "Milliseconds since the last task started", serverStatus.getMillisSinceLastParseStarted());
+        ServerMetrics.writeCounter(sb, "tika_server_restarts_total", "Times that the forked server has been restarted", serverStatus.getNumRestarts());
+        ServerMetrics.writeCounter(sb, "tika_server_timeouts_total", "Restarts after a task timed out", serverStatus.getNumTimeouts());
+        ServerMetrics.writeCounter(sb, "tika_server_ooms_total", "Restarts after an OutOfMemoryError", serverStatus.getNumOOMs());
+        serverStatus
+                .getMetrics()
+                .write(sb);
+        return sb.toString();
+    }
+}
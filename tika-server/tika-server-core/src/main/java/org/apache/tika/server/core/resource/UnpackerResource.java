@@ -25,10 +25,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 
 import jakarta.ws.rs.PUT;
@@ -42,8 +45,7 @@ import jakarta.ws.rs.core.UriInfo;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.mutable.MutableInt;
@@ -67,6 +69,7 @@ import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
 import org.apache.tika.sax.BodyContentHandler;
 import org.apache.tika.sax.RichTextContentHandler;
+import org.apache.tika.server.core.writer.ArchiveEntrySource;
 
 @Path("/unpack")
 public class UnpackerResource {
@@ -77,6 +80,9 @@ public class UnpackerResource {
 
     private static final long DEFAULT_MAX_ATTACHMENT_BYTES = 100 * 1024 * 1024;
 
+    //the text for /unpack/all is spilled to a temp file once it gets larger than this
+    private static final int TEXT_SPILL_THRESHOLD = 1024 * 1024;
+
     private static final Logger LOG = LoggerFactory.getLogger(UnpackerResource.class);
 
     public static void metadataToCsv(Metadata metadata, OutputStream outputStream) throws IOException {
@@ -96,18 +102,30 @@ public class UnpackerResource {
     @Path("/{id:(/.*)?}")
     @PUT
     @Produces({"application/zip", "application/x-tar"})
-    public Map<String, byte[]> unpack(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info) throws Exception {
+    public ArchiveEntrySource unpack(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info) throws Exception {
         return process(TikaResource.getInputStream(is, new Metadata(), httpHeaders, info), httpHeaders, info, false);
     }
 
     @Path("/all{id:(/.*)?}")
     @PUT
     @Produces({"application/zip", "application/x-tar"})
-    public Map<String, byte[]> unpackAll(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info) throws Exception {
+    public ArchiveEntrySource unpackAll(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info) throws Exception {
         return process(TikaResource.getInputStream(is, new Metadata(), httpHeaders, info), httpHeaders, info, true);
     }
 
-    private Map<String, byte[]> process(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info, boolean saveAll) throws Exception {
+    /**
+     * The parse runs while the archive is written: each embedded document
+     * goes into the archive as soon as it has been extracted, so the
+     * documents don't need to fit in memory together.
+     * <p>
+     * This also means that an error, e.g. an embedded document over
+     * unpackMaxBytes, only becomes an error status (422 for the limit) while
+     * the response hasn't been committed yet, i.e. while what was written so
+     * far fits in the response buffer. Once an earlier entry has filled that
+     * buffer, the client has already been sent a 200 and gets a truncated
+     * archive; the error is only logged.
+     */
+    private ArchiveEntrySource process(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info, boolean saveAll) throws Exception {
         Metadata metadata = new Metadata();
         ParseContext pc = new ParseContext();
         long unpackMaxBytes = DEFAULT_MAX_ATTACHMENT_BYTES;
@@ -134,52 +152,71 @@ public class UnpackerResource {
         //even though we aren't currently parsing embedded documents,
         //we need to add this to allow for "inline" use of other parsers.
         pc.set(Parser.class, parser);
-        ContentHandler ch;
-        UnsynchronizedByteArrayOutputStream text = UnsynchronizedByteArrayOutputStream
-                .builder()
-                .get();
-
-        if (saveAll) {
-            ch = new BodyContentHandler(new RichTextContentHandler(new OutputStreamWriter(text, UTF_8)));
-        } else {
-            ch = new DefaultHandler();
-        }
-
-        Map<String, byte[]> files = new HashMap<>();
-        MutableInt count = new MutableInt();
-
-        pc.set(EmbeddedDocumentExtractor.class, new MyEmbeddedDocumentExtractor(count, files, unpackMaxBytes));
-
-        TikaResource.parse(parser, LOG, info.getPath(), is, ch, metadata, pc);
-
-        if (count.intValue() == 0 && !saveAll) {
-            throw new WebApplicationException(Response.Status.NO_CONTENT);
-        }
+        final Parser finalParser = parser;
+        final long finalUnpackMaxBytes = unpackMaxBytes;
+
+        return sink -> {
+            DeferredFileOutputStream text = null;
+            Writer textWriter = null;
+            ContentHandler ch;
+            if (saveAll) {
+                text = DeferredFileOutputStream
+                        .builder()
+                        .setThreshold(TEXT_SPILL_THRESHOLD)
+                        .setPrefix("apache-tika-unpack-")
+                        .setSuffix(".tmp")
+                        .get();
+                textWriter = new OutputStreamWriter(text, UTF_8);
+                ch = new BodyContentHandler(new RichTextContentHandler(textWriter));
+            } else {
+                ch = new DefaultHandler();
+            }
 
-        if (saveAll) {
-            files.put(TEXT_FILENAME, text.toByteArray());
+            MutableInt count = new MutableInt();
+            pc.set(EmbeddedDocumentExtractor.class, new MyEmbeddedDocumentExtractor(count, sink, finalUnpackMaxBytes));
+            try {
+                TikaResource.parse(finalParser, LOG, info.getPath(), is, ch, metadata, pc);
 
-            UnsynchronizedByteArrayOutputStream metaStream = UnsynchronizedByteArrayOutputStream
-                    .builder()
-                    .get();
-            metadataToCsv(metadata, metaStream);
+                if (count.intValue() == 0 && !saveAll) {
+                    throw new WebApplicationException(Response.Status.NO_CONTENT);
+                }
 
-            files.put(META_FILENAME, metaStream.toByteArray());
-        }
+                if (saveAll) {
+                    textWriter.close();
+                    try (InputStream textStream = text.toInputStream()) {
+                        sink.putEntry(TEXT_FILENAME, textStream);
+                    }
 
-        return files;
+                    UnsynchronizedByteArrayOutputStream metaStream = UnsynchronizedByteArrayOutputStream
+                            .builder()
+                            .get();
+                    metadataToCsv(metadata, metaStream);
+                    try (InputStream metaInputStream = metaStream.toInputStream()) {
+                        sink.putEntry(META_FILENAME, metaInputStream);
+                    }
+                }
+            } finally {
+                if (text != null) {
+                    text.close();
+                    if (!text.isInMemory()) {
+                        Files.deleteIfExists(text.getPath());
+                    }
+                }
+            }
+        };
     }
 
     private static class MyEmbeddedDocumentExtractor implements EmbeddedDocumentExtractor {
         private final MutableInt count;
-        private final Map<String, byte[]> zout;
+        private final ArchiveEntrySource.Sink sink;
+        private final Set<String> names = new HashSet<>();
 
         private final long unpackMaxBytes;
         private final EmbeddedStreamTranslator embeddedStreamTranslator = new DefaultEmbeddedStreamTranslator();
 
-        MyEmbeddedDocumentExtractor(MutableInt count, Map<String, byte[]> zout, long unpackMaxBytes) {
+        MyEmbeddedDocumentExtractor(MutableInt count, ArchiveEntrySource.Sink sink, long unpackMaxBytes) {
             this.count = count;
-            this.zout = zout;
+            this.sink = sink;
             this.unpackMaxBytes = unpackMaxBytes;
         }
 
@@ -189,19 +226,9 @@ public class UnpackerResource {
 
         @Override
         public void parseEmbedded(TikaInputStream tis, ContentHandler contentHandler, Metadata metadata, boolean b) throws SAXException, IOException {
-            UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream
-                    .builder()
-                    .get();
-
-            BoundedInputStream bis = new BoundedInputStream(unpackMaxBytes, tis);
-            IOUtils.copy(bis, bos);
-            if (bis.hasHitBound()) {
-                throw new IOException(new TikaMemoryLimitException(
-                        "An attachment is longer than " + "'unpackMaxBytes' (default=100MB, actual=" + unpackMaxBytes + "). " + "If you need to increase this " +
-                                "limit, add a header to your request, such as: unpackMaxBytes: " + "1073741824.  There is a hard limit of 2GB."));
+            if (tis.hasLength() && tis.getLength() >= unpackMaxBytes) {
+                throw unpackMaxBytesException();
             }
-            byte[] data = bos.toByteArray();
-
             String name = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
             String contentType = metadata.get(org.apache.tika.metadata.HttpHeaders.CONTENT_TYPE);
 
@@ -224,26 +251,50 @@ public class UnpackerResource {
                     LOG.warn("Unexpected MimeTypeException", e);
                 }
             }
-            try (TikaInputStream is = TikaInputStream.get(data)) {
-                if (embeddedStreamTranslator.shouldTranslate(is, metadata)) {
-                    InputStream translated = embeddedStreamTranslator.translate(UnsynchronizedByteArrayInputStream.builder().setByteArray(data).get(), metadata);
-                    UnsynchronizedByteArrayOutputStream bos2 = UnsynchronizedByteArrayOutputStream
-                            .builder()
-                            .get();
-                    IOUtils.copy(translated, bos2);
-                    data = bos2.toByteArray();
+
+            //the bound is checked as the bytes go into the archive
+            BoundedInputStream bis = new BoundedInputStream(unpackMaxBytes, tis);
+            final InputStream data = embeddedStreamTranslator.shouldTranslate(tis, metadata) ? embeddedStreamTranslator.translate(bis, metadata) : bis;
+            PushbackInputStream pushback = new PushbackInputStream(new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    int c = data.read();
+                    checkBound(bis);
+                    return c;
+                }
+
+                @Override
+                public int read(byte[] buffer, int off, int len) throws IOException {
+                    int read = data.read(buffer, off, len);
+                    checkBound(bis);
+                    return read;
                 }
+            });
+            int first = pushback.read();
+            if (first == -1) {
+                return;
             }
+            pushback.unread(first);
 
-            final String finalName = getFinalName(name, zout);
+            final String finalName = getFinalName(name);
+            names.add(finalName);
+            count.increment();
+            sink.putEntry(finalName, pushback);
+        }
 
-            if (data.length > 0) {
-                zout.put(finalName, data);
-                count.increment();
+        private void checkBound(BoundedInputStream bis) throws IOException {
+            if (bis.hasHitBound()) {
+                throw unpackMaxBytesException();
             }
         }
 
-        private String getFinalName(String name, Map<String, byte[]> zout) {
+        private IOException unpackMaxBytesException() {
+            return new IOException(new TikaMemoryLimitException(
+                    "An attachment is longer than " + "'unpackMaxBytes' (default=100MB, actual=" + unpackMaxBytes + "). " + "If you need to increase this " +
+                            "limit, add a header to your request, such as: unpackMaxBytes: " + "1073741824.  There is a hard limit of 2GB."));
+        }
+
+        private String getFinalName(String name) {
             name = name.replaceAll("\u0000", " ");
             String normalizedName = FilenameUtils.normalize(name);
 
@@ -259,7 +310,7 @@ public class UnpackerResource {
             if (prefixLength > -1) {
                 normalizedName = normalizedName.substring(prefixLength);
             }
-            if (zout.containsKey(normalizedName)) {
+            if (names.contains(normalizedName)) {
                 return UUID
                         .randomUUID()
                         .toString() + "-" + normalizedName;
@@ -18,9 +18,11 @@
 package org.apache.tika.server.core.writer;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.file.Files;
 import java.util.Map;
 
 import jakarta.ws.rs.Produces;
@@ -31,10 +33,15 @@ import jakarta.ws.rs.ext.MessageBodyWriter;
 import jakarta.ws.rs.ext.Provider;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 
 @Provider
 @Produces("application/x-tar")
-public class TarWriter implements MessageBodyWriter<Map<String, byte[]>> {
+public class TarWriter implements MessageBodyWriter<Object> {
+
+    //streamed entries larger than this are spilled to a temp file
+    private static final int SPILL_THRESHOLD = 1024 * 1024;
+
     private static void tarStoreBuffer(TarArchiveOutputStream zip, String name, byte[] dataBuffer) throws IOException {
         TarArchiveEntry entry = new TarArchiveEntry(name);
 
@@ -47,20 +54,56 @@ public class TarWriter implements MessageBodyWriter<Map<String, byte[]>> {
         zip.closeArchiveEntry();
     }
 
+    /**
+     * A tar header needs the entry's size, so a streamed entry is buffered
+     * before it is written, on disk if it is large.
+     */
+    private static void tarStoreStream(TarArchiveOutputStream zip, String name, InputStream data) throws IOException {
+        DeferredFileOutputStream buffer = DeferredFileOutputStream
+                .builder()
+                .setThreshold(SPILL_THRESHOLD)
+                .setPrefix("apache-tika-unpack-")
+                .setSuffix(".tmp")
+                .get();
+        try {
+            try (OutputStream os = buffer) {
+                data.transferTo(os);
+            }
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(buffer.getByteCount());
+            zip.putArchiveEntry(entry);
+            if (buffer.isInMemory()) {
+                zip.write(buffer.getData());
+            } else {
+                Files.copy(buffer.getPath(), zip);
+            }
+            zip.closeArchiveEntry();
+        } finally {
+            if (!buffer.isInMemory()) {
+                Files.deleteIfExists(buffer.getPath());
+            }
+        }
+    }
+
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
-        return Map.class.isAssignableFrom(type);
+        return Map.class.isAssignableFrom(type) || ArchiveEntrySource.class.isAssignableFrom(type);
     }
 
-    public long getSize(Map<String, byte[]> stringMap, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    public long getSize(Object parts, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return -1;
     }
 
-    public void writeTo(Map<String, byte[]> parts, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+    @SuppressWarnings("unchecked")
+    public void writeTo(Object parts, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
                         OutputStream entityStream) throws IOException, WebApplicationException {
         TarArchiveOutputStream zip = new TarArchiveOutputStream(entityStream);
 
-        for (Map.Entry<String, byte[]> entry : parts.entrySet()) {
-            tarStoreBuffer(zip, entry.getKey(), entry.getValue());
+        if (parts instanceof ArchiveEntrySource) {
+            ((ArchiveEntrySource) parts).writeEntries((name, data) -> tarStoreStream(zip, name, data));
+        } else {
+            for (Map.Entry<String, byte[]> entry : ((Map<String, byte[]>) parts).entrySet()) {
+                tarStoreBuffer(zip, entry.getKey(), entry.getValue());
+            }
         }
 
         zip.close();
@@ -18,12 +18,14 @@
 package org.apache.tika.server.core.writer;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.Map;
 import java.util.UUID;
 import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipOutputStream;
@@ -39,7 +41,7 @@ import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
 @Provider
 @Produces("application/zip")
-public class ZipWriter implements MessageBodyWriter<Map<String, byte[]>> {
+public class ZipWriter implements MessageBodyWriter<Object> {
     private static void zipStoreBuffer(ZipArchiveOutputStream zip, String name, byte[] dataBuffer) throws IOException {
         ZipEntry zipEntry = new ZipEntry(name != null ? name : UUID
                 .randomUUID()
@@ -65,22 +67,50 @@ public class ZipWriter implements MessageBodyWriter<Map<String, byte[]>> {
         zip.closeArchiveEntry();
     }
 
+    /**
+     * The size and crc of a streamed entry aren't known until its data has been
+     * written, so it can't be STORED. It is DEFLATED without compression instead,
+     * which lets them follow the data.
+     */
+    private static void zipStoreStream(ZipArchiveOutputStream zip, String name, InputStream data) throws IOException {
+        ZipArchiveEntry zipEntry = new ZipArchiveEntry(name != null ? name : UUID
+                .randomUUID()
+                .toString());
+        zipEntry.setMethod(ZipEntry.DEFLATED);
+        try {
+            zip.putArchiveEntry(zipEntry);
+        } catch (ZipException ex) {
+            if (name != null) {
+                zipStoreStream(zip, "x-" + name, data);
+                return;
+            }
+        }
+        data.transferTo(zip);
+        zip.closeArchiveEntry();
+    }
+
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
-        return Map.class.isAssignableFrom(type);
+        return Map.class.isAssignableFrom(type) || ArchiveEntrySource.class.isAssignableFrom(type);
     }
 
-    public long getSize(Map<String, byte[]> stringMap, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    public long getSize(Object parts, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return -1;
     }
 
-    public void writeTo(Map<String, byte[]> parts, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+    @SuppressWarnings("unchecked")
+    public void writeTo(Object parts, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
                         OutputStream entityStream) throws IOException, WebApplicationException {
         ZipArchiveOutputStream zip = new ZipArchiveOutputStream(entityStream);
 
         zip.setMethod(ZipArchiveOutputStream.STORED);
+        zip.setLevel(Deflater.NO_COMPRESSION);
 
-        for (Map.Entry<String, byte[]> entry : parts.entrySet()) {
-            zipStoreBuffer(zip, entry.getKey(), entry.getValue());
+        if (parts instanceof ArchiveEntrySource) {
+            ((ArchiveEntrySource) parts).writeEntries((name, data) -> zipStoreStream(zip, name, data));
+        } else {
+            for (Map.Entry<String, byte[]> entry : ((Map<String, byte[]>) parts).entrySet()) {
+                zipStoreBuffer(zip, entry.getKey(), entry.getValue());
+            }
         }
 
         zip.close();
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.DigestingParser;
+
+public class ParserRegistryTest {
+
+    @TempDir
+    private Path tmpDir;
+
+    @Test
+    public void testShared() throws Exception {
+        ParserRegistry registry = new ParserRegistry(TikaConfig.getDefaultConfig(), null);
+        assertTrue(registry.getParser() instanceof AutoDetectParser);
+        assertSame(registry.getParser(), registry.getParser());
+
+        DigestingParser.Digester digester = (is, metadata, parseContext) -> {
+        };
+        registry = new ParserRegistry(TikaConfig.getDefaultConfig(), digester);
+        assertTrue(registry.getParser() instanceof DigestingParser);
+        assertSame(registry.getParser(), registry.getParser());
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        Files.write(tmpDir.resolve("a.txt"), "hello world".getBytes(StandardCharsets.UTF_8));
+        Files.write(tmpDir.resolve("b.xml"), "<a>b</a>".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectory(tmpDir.resolve("subdir"));
+        ParserRegistry registry = new ParserRegistry(TikaConfig.getDefaultConfig(), null);
+        assertEquals(6, registry.warmUp(tmpDir, 3));
+    }
+}
@@ -72,6 +72,26 @@ public class RecursiveMetadataResourceTest extends CXFTestBase {
         assertContains("null pointer message", metadata.get(TikaCoreProperties.CONTAINER_EXCEPTION));
 
     }
+
+    @Test
+    public void testNPEStream() throws Exception {
+        Response response = WebClient
+                .create(endPoint + META_PATH + "/stream")
+                .accept("application/json")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_NULL_POINTER));
+
+        Reader reader = new InputStreamReader((InputStream) response.getEntity(), UTF_8);
+        List<Metadata> metadataList = JsonMetadataList.fromJson(reader);
+        assertEquals(2, metadataList.size());
+        Metadata metadata = metadataList.get(0);
+        assertEquals("Nikolai Lobachevsky", metadata.get("author"));
+        assertContains("some content", metadata.get(TikaCoreProperties.TIKA_CONTENT));
+        assertContains("null pointer message", metadata.get(TikaCoreProperties.CONTAINER_EXCEPTION));
+
+        Metadata status = metadataList.get(1);
+        assertEquals(RecursiveMetadataResource.STREAM_STATUS_EXCEPTION, status.get(RecursiveMetadataResource.STREAM_STATUS));
+        assertContains("TikaException", status.get(RecursiveMetadataResource.STREAM_EXCEPTION));
+    }
     /*
     @Test
     public void testWriteLimitInAll() throws Exception {
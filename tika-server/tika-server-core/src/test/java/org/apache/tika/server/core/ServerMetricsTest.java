@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+
+public class ServerMetricsTest {
+
+    @Test
+    public void testPrometheusFormat() throws Exception {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.recordRequest("/tika", 3);
+        metrics.recordRequest("/tika", 700);
+        metrics.recordRequest("/tika", 1_000_000);
+        metrics.getBytesIn("/tika").add(100);
+        metrics.getBytesOut("/tika").add(20);
+
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        metadata.add(TikaCoreProperties.TIKA_PARSED_BY, "org.apache.tika.parser.DefaultParser");
+        metadata.add(TikaCoreProperties.TIKA_PARSED_BY, "org.apache.tika.parser.csv.TextAndCSVParser");
+        metrics.recordParse(metadata, 42);
+        metrics.recordParse(new Metadata(), 1);
+
+        StringBuilder sb = new StringBuilder();
+        metrics.write(sb);
+        String text = sb.toString();
+        assertTrue(text.contains("# TYPE tika_server_request_duration_seconds histogram\n"));
+        assertTrue(text.contains("tika_server_request_duration_seconds_bucket{endpoint=\"/tika\",le=\"0.005\"} 1\n"));
+        assertTrue(text.contains("tika_server_request_duration_seconds_bucket{endpoint=\"/tika\",le=\"1.0\"} 2\n"));
+        assertTrue(text.contains("tika_server_request_duration_seconds_bucket{endpoint=\"/tika\",le=\"300.0\"} 2\n"));
+        assertTrue(text.contains("tika_server_request_duration_seconds_bucket{endpoint=\"/tika\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("tika_server_request_duration_seconds_sum{endpoint=\"/tika\"} 1000.703\n"));
+        assertTrue(text.contains("tika_server_request_duration_seconds_count{endpoint=\"/tika\"} 3\n"));
+        assertTrue(text.contains("tika_server_request_bytes_total{endpoint=\"/tika\"} 100\n"));
+        assertTrue(text.contains("tika_server_response_bytes_total{endpoint=\"/tika\"} 20\n"));
+        assertTrue(text.contains("tika_server_parse_duration_seconds_count{content_type=\"text/plain\"} 1\n"));
+        assertTrue(text.contains("tika_server_parse_duration_seconds_count{content_type=\"unknown\"} 1\n"));
+        assertTrue(text.contains(
+                "tika_server_parser_duration_seconds_count{parser=\"org.apache.tika.parser.csv.TextAndCSVParser\"} 1\n"));
+        assertTrue(text.contains("tika_server_parser_duration_seconds_count{parser=\"unknown\"} 1\n"));
+    }
+
+    @Test
+    public void testLabelEscaping() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.getBytesIn("a\"b\\c\nd").increment();
+        StringBuilder sb = new StringBuilder();
+        metrics.write(sb);
+        assertTrue(sb.toString().contains("tika_server_request_bytes_total{endpoint=\"a\\\"b\\\\c\\nd\"} 1\n"));
+    }
+
+    @Test
+    public void testWriteChildren() {
+        ServerMetrics a = new ServerMetrics();
+        a.recordRequest("/tika", 3);
+        ServerMetrics b = new ServerMetrics();
+        b.recordRequest("/tika", 700);
+        Map<String, String> metricsByChild = new LinkedHashMap<>();
+        metricsByChild.put("a", childMetrics(a, 5));
+        metricsByChild.put("b", childMetrics(b, 7));
+
+        StringBuilder sb = new StringBuilder();
+        ServerMetrics.writeChildren(sb, metricsByChild);
+        String text = sb.toString();
+        String counter = "# HELP tika_server_files_processed_total Tasks started\n" +
+                "# TYPE tika_server_files_processed_total counter\n" +
+                "tika_server_files_processed_total{child=\"a\"} 5\n" +
+                "tika_server_files_processed_total{child=\"b\"} 7\n";
+        assertTrue(text.contains(counter), text);
+        assertTrue(text.contains(
+                "tika_server_request_duration_seconds_bucket{child=\"a\",endpoint=\"/tika\",le=\"0.005\"} 1\n" +
+                "tika_server_request_duration_seconds_bucket{child=\"a\",endpoint=\"/tika\",le=\"0.01\"} 1\n"), text);
+        assertTrue(text.contains("tika_server_request_duration_seconds_count{child=\"b\",endpoint=\"/tika\"} 1\n"));
+        //each family's header is written once, before all of its samples
+        assertEquals(1, count(text, "# TYPE tika_server_request_duration_seconds histogram\n"));
+        int lastA = text.lastIndexOf("tika_server_request_duration_seconds_count{child=\"a\"");
+        int firstB = text.indexOf("tika_server_request_duration_seconds_bucket{child=\"b\"");
+        assertTrue(lastA < firstB);
+        assertTrue(firstB < text.indexOf("# HELP tika_server_request_bytes_total"));
+    }
+
+    private static String childMetrics(ServerMetrics metrics, long filesProcessed) {
+        StringBuilder sb = new StringBuilder();
+        ServerMetrics.writeCounter(sb, "tika_server_files_processed_total", "Tasks started", filesProcessed);
+        metrics.write(sb);
+        return sb.toString();
+    }
+
+    private static int count(String text, String s) {
+        int count = 0;
+        int i = text.indexOf(s);
+        while (i > -1) {
+            count++;
+            i = text.indexOf(s, i + 1);
+        }
+        return count;
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        ServerMetrics metrics = new ServerMetrics();
+        int numThreads = 10;
+        int requests = 1000;
+        ExecutorService service = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(service.submit(() -> {
+                    for (int j = 0; j < requests; j++) {
+                        metrics.recordRequest("/rmeta", j % 100);
+                        metrics.getBytesIn("/rmeta").add(2);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            service.shutdownNow();
+        }
+        ServerMetrics.Histogram histogram = metrics.getRequestHistograms().get("/rmeta");
+        assertEquals(numThreads * requests, histogram.getCount());
+        assertEquals(numThreads * 2L * requests, metrics.getBytesIn("/rmeta").sum());
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import jakarta.ws.rs.Path;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.server.core.resource.RecursiveMetadataResource;
+import org.apache.tika.server.core.resource.TikaVersion;
+import org.apache.tika.server.core.resource.UnpackerResource;
+
+public class TikaMetricsFilterTest {
+
+    @Test
+    public void testEndpoints() {
+        assertEquals(Set.of("/rmeta/form{handler}", "/rmeta/{handler}", "/rmeta/stream{handler}"),
+                endpoints(RecursiveMetadataResource.class));
+        assertEquals(Set.of("/unpack/{id}", "/unpack/all{id}"), endpoints(UnpackerResource.class));
+        //a resource method without a path of its own
+        assertEquals("/version", TikaMetricsFilter.getEndpoint(TikaVersion.class, null));
+        assertEquals(ServerMetrics.UNKNOWN, TikaMetricsFilter.getEndpoint(null, null));
+    }
+
+    private static Set<String> endpoints(Class<?> resourceClass) {
+        Set<String> endpoints = new HashSet<>();
+        for (Method method : resourceClass.getMethods()) {
+            if (method.isAnnotationPresent(Path.class)) {
+                endpoints.add(TikaMetricsFilter.getEndpoint(resourceClass, method));
+            }
+        }
+        return endpoints;
+    }
+}
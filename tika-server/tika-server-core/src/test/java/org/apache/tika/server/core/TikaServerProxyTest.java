@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TikaServerProxyTest {
+
+    private final List<ServerSocket> children = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (ServerSocket child : children) {
+            child.close();
+        }
+    }
+
+    @Test
+    public void testLeastLoaded() {
+        ChildRoute a = new ChildRoute("a");
+        ChildRoute b = new ChildRoute("b");
+        List<ChildRoute> routes = List.of(a, b);
+        assertNull(ChildRoute.leastLoaded(routes));
+
+        a.setAvailable(1);
+        b.setAvailable(2);
+        a.setNumTasks(3);
+        assertSame(b, ChildRoute.leastLoaded(routes));
+        b.connected();
+        b.connected();
+        b.connected();
+        b.connected();
+        assertSame(a, ChildRoute.leastLoaded(routes));
+        a.setUnavailable();
+        assertSame(b, ChildRoute.leastLoaded(routes));
+    }
+
+    @Test
+    public void testRestartGate() {
+        RestartGate gate = new RestartGate();
+        //all children are starting
+        gate.down();
+        gate.down();
+        assertFalse(gate.tryPlannedRestart());
+        gate.up();
+        assertFalse(gate.tryPlannedRestart());
+        gate.up();
+        assertTrue(gate.tryPlannedRestart());
+        //only one planned restart at a time
+        assertFalse(gate.tryPlannedRestart());
+        //a crash is counted even while another child restarts
+        gate.down();
+        assertEquals(2, gate.getDown());
+        gate.up();
+        gate.up();
+        assertTrue(gate.tryPlannedRestart());
+    }
+
+    @Test
+    public void testRelay() throws Exception {
+        ChildRoute a = new ChildRoute("a");
+        ChildRoute b = new ChildRoute("b");
+        a.setAvailable(startChild("a"));
+        b.setAvailable(startChild("b"));
+        a.setNumTasks(10);
+        try (TikaServerProxy proxy = new TikaServerProxy("localhost", 0, List.of(a, b), 5000, true)) {
+            proxy.start();
+            assertEquals("b: hello", request(proxy.getPort(), "hello"));
+
+            //a child that goes away is taken out of the routes by its watchdog
+            b.setUnavailable();
+            assertEquals("a: hello", request(proxy.getPort(), "hello"));
+
+            //connections wait for a child to come back
+            a.setUnavailable();
+            Thread restart = new Thread(() -> {
+                try {
+                    Thread.sleep(500);
+                    a.setAvailable(startChild("a2"));
+                } catch (Exception e) {
+                    //the request will fail
+                }
+            });
+            restart.start();
+            assertEquals("a2: again", request(proxy.getPort(), "again"));
+            restart.join();
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        ChildRoute a = new ChildRoute("a");
+        ChildRoute b = new ChildRoute("b");
+        ChildRoute c = new ChildRoute("c");
+        a.setAvailable(startMetricsChild(3));
+        b.setAvailable(startMetricsChild(4));
+        try (TikaServerProxy proxy = new TikaServerProxy("localhost", 0, List.of(a, b, c), 5000, true)) {
+            proxy.start();
+            HttpURLConnection connection = (HttpURLConnection) new URL("http",
+                    InetAddress.getLoopbackAddress().getHostAddress(), proxy.getPort(),
+                    "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(ServerMetrics.CONTENT_TYPE, connection.getContentType());
+            String text = new String(connection.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(text.contains("tika_server_child_up{child=\"a\"} 1\n"), text);
+            assertTrue(text.contains("tika_server_child_up{child=\"b\"} 1\n"), text);
+            assertTrue(text.contains("tika_server_child_up{child=\"c\"} 0\n"), text);
+            assertTrue(text.contains("# TYPE tika_server_files_processed_total counter\n" +
+                    "tika_server_files_processed_total{child=\"a\"} 3\n" +
+                    "tika_server_files_processed_total{child=\"b\"} 4\n"), text);
+
+            //anything else is still relayed
+            assertEquals("a: GET /metricsx", request(proxy.getPort(), "GET /metricsx"));
+        }
+    }
+
+    /**
+     * @return the port of a child that answers each HTTP request with its
+     * files processed counter
+     */
+    private int startMetricsChild(long filesProcessed) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        children.add(serverSocket);
+        StringBuilder sb = new StringBuilder();
+        ServerMetrics.writeCounter(sb, "tika_server_files_processed_total", "Tasks started", filesProcessed);
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        Thread thread = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept();
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                        OutputStream os = socket.getOutputStream()) {
+                    String line = reader.readLine();
+                    if (line.startsWith("GET /metricsx")) {
+                        os.write(("a: " + line + "\n").getBytes(StandardCharsets.UTF_8));
+                        continue;
+                    }
+                    while (line != null && !line.isEmpty()) {
+                        line = reader.readLine();
+                    }
+                    os.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length +
+                            "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    os.write(body);
+                } catch (IOException e) {
+                    //closed
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the port of a child that answers each line with its name
+     */
+    private int startChild(String name) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        children.add(serverSocket);
+        Thread thread = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept();
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                        OutputStream os = socket.getOutputStream()) {
+                    String line = reader.readLine();
+                    os.write((name + ": " + line + "\n").getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    //closed
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return serverSocket.getLocalPort();
+    }
+
+    private static String request(int port, String line) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            writer.println(line);
+            return reader.readLine();
+        }
+    }
+}
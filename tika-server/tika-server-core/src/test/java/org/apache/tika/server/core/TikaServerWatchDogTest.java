@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class TikaServerWatchDogTest {
+
+    //more than the first maxFiles of the children, less than maxFiles
+    private static final long FILES_PROCESSED = 10;
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, StubChild> children = new ConcurrentHashMap<>();
+
+    @Test
+    public void testFirstMaxFiles() {
+        List<Long> firstMaxFiles = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            firstMaxFiles.add(TikaServerCli.getFirstMaxFiles(100, i, 4));
+        }
+        assertEquals(List.of(25L, 50L, 75L, 100L), firstMaxFiles);
+        assertEquals(1, TikaServerCli.getFirstMaxFiles(2, 0, 4));
+        assertEquals(-1, TikaServerCli.getFirstMaxFiles(-1, 3, 4));
+    }
+
+    @Test
+    public void testRollingRestart() throws Exception {
+        TikaServerConfig config = TikaServerConfig.load();
+        config.setTaskPulseMillis(50);
+        config.setTaskTimeoutMillis(10000);
+        config.setMaxFiles(1000);
+        RestartGate restartGate = new RestartGate();
+        List<String> ids = List.of("a", "b");
+        ExecutorService executorService = Executors.newFixedThreadPool(ids.size());
+        List<String> snapshot;
+        try {
+            for (String id : ids) {
+                //both children are due for a restart as soon as they are up
+                executorService.submit(new StubWatchDog(id, config, new RecordingRoute(id), restartGate, 5));
+            }
+            long start = System.currentTimeMillis();
+            while (count(" available") < 2 * ids.size()) {
+                assertTrue(System.currentTimeMillis() - start < 60000, events.toString());
+                Thread.sleep(50);
+            }
+            snapshot = new ArrayList<>(events);
+        } finally {
+            executorService.shutdownNow();
+            assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        for (String id : ids) {
+            int down = snapshot.indexOf(id + " unavailable");
+            int idle = snapshot.indexOf(id + " idle");
+            int destroyed = snapshot.indexOf(id + " destroyed");
+            int up = snapshot.lastIndexOf(id + " available");
+            //the draining child is out of the routes, and done with its tasks, before it is closed
+            assertTrue(down > -1 && down < idle, snapshot.toString());
+            assertTrue(idle < destroyed, snapshot.toString());
+            assertTrue(destroyed < up, snapshot.toString());
+        }
+        //the second child's restart only starts once the first child is back
+        String first = snapshot.indexOf("a unavailable") < snapshot.indexOf("b unavailable") ? "a" : "b";
+        String second = first.equals("a") ? "b" : "a";
+        assertTrue(snapshot.lastIndexOf(first + " available") < snapshot.indexOf(second + " unavailable"),
+                snapshot.toString());
+        assertEquals(0, restartGate.getDown());
+    }
+
+    private int count(String suffix) {
+        synchronized (events) {
+            return (int) events.stream().filter(e -> e.endsWith(suffix)).count();
+        }
+    }
+
+    private class StubWatchDog extends TikaServerWatchDog {
+        private final String id;
+
+        StubWatchDog(String id, TikaServerConfig config, ChildRoute childRoute, RestartGate restartGate,
+                     long firstMaxFiles) {
+            super(-1, id, config, childRoute, restartGate, firstMaxFiles);
+            this.id = id;
+        }
+
+        @Override
+        Process startChild(ProcessBuilder builder, Path forkedStatusFile) {
+            StubChild child = new StubChild(id, forkedStatusFile);
+            children.put(id, child);
+            return child;
+        }
+    }
+
+    private class RecordingRoute extends ChildRoute {
+
+        RecordingRoute(String id) {
+            super(id);
+        }
+
+        @Override
+        void setAvailable(int port) {
+            super.setAvailable(port);
+            events.add(getId() + " available");
+        }
+
+        @Override
+        void setUnavailable() {
+            if (isAvailable()) {
+                events.add(getId() + " unavailable");
+                children.get(getId()).finishTasks();
+            }
+            super.setUnavailable();
+        }
+    }
+
+    /**
+     * Writes a status with a running task every few ms, like a child does,
+     * until it is destroyed. Its task finishes a while after it is taken out
+     * of the routes.
+     */
+    private class StubChild extends Process {
+        private final String id;
+        private final Path statusFile;
+        private final CountDownLatch destroyed = new CountDownLatch(1);
+        private volatile int numTasks = 1;
+
+        StubChild(String id, Path statusFile) {
+            this.id = id;
+            this.statusFile = statusFile;
+            Thread writer = new Thread(this::writeStatus, "stub child " + id);
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        void finishTasks() {
+            Thread finisher = new Thread(() -> {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                events.add(id + " idle");
+                numTasks = 0;
+            });
+            finisher.setDaemon(true);
+            finisher.start();
+        }
+
+        private void writeStatus() {
+            ByteBuffer buffer = ByteBuffer.allocate(24);
+            try (FileChannel channel = FileChannel.open(statusFile, StandardOpenOption.WRITE)) {
+                //starting up
+                if (destroyed.await(200, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                do {
+                    buffer.putLong(0, System.currentTimeMillis());
+                    buffer.putInt(8, ServerStatus.STATUS.OPERATING.getInt());
+                    buffer.putInt(12, numTasks);
+                    buffer.putLong(16, FILES_PROCESSED);
+                    buffer.rewind();
+                    try (FileLock lock = channel.tryLock()) {
+                        if (lock != null) {
+                            channel.write(buffer, 0);
+                        }
+                    } catch (OverlappingFileLockException e) {
+                        //the watchdog is reading it
+                    }
+                } while (!destroyed.await(20, TimeUnit.MILLISECONDS));
+            } catch (IOException e) {
+                //the watchdog has deleted the status file
+            } catch (InterruptedException e) {
+                //done
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            destroyed.await();
+            return 0;
+        }
+
+        @Override
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            return destroyed.await(timeout, unit);
+        }
+
+        @Override
+        public boolean isAlive() {
+            return destroyed.getCount() > 0;
+        }
+
+        @Override
+        public int exitValue() {
+            if (isAlive()) {
+                throw new IllegalThreadStateException("still running");
+            }
+            return 0;
+        }
+
+        @Override
+        public synchronized void destroy() {
+            if (isAlive()) {
+                events.add(id + " destroyed");
+                destroyed.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.standard;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.ws.rs.core.Response;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.serialization.JsonMetadataList;
+import org.apache.tika.server.core.CXFTestBase;
+import org.apache.tika.server.core.resource.RecursiveMetadataResource;
+import org.apache.tika.server.core.writer.MetadataListMessageBodyWriter;
+
+public class RecursiveMetadataListFilterTest extends CXFTestBase {
+
+    private static final String META_PATH = "/rmeta";
+
+    private static final String TEST_RECURSIVE_DOC = "test-documents/test_recursive_embedded.docx";
+
+    @Override
+    protected InputStream getTikaConfigInputStream() {
+        return getClass().getResourceAsStream("/config/tika-config-metadata-list-filter.xml");
+    }
+
+    @Override
+    protected void setUpResources(JAXRSServerFactoryBean sf) {
+        sf.setResourceClasses(RecursiveMetadataResource.class);
+        sf.setResourceProvider(RecursiveMetadataResource.class, new SingletonResourceProvider(new RecursiveMetadataResource()));
+    }
+
+    @Override
+    protected void setUpProviders(JAXRSServerFactoryBean sf) {
+        List<Object> providers = new ArrayList<>();
+        providers.add(new MetadataListMessageBodyWriter());
+        sf.setProviders(providers);
+    }
+
+    @Test
+    public void testListFilter() throws Exception {
+        List<Metadata> metadataList = put(META_PATH);
+        assertEquals(12, metadataList.size());
+        assertEquals("11", metadataList
+                .get(0)
+                .get("X-TIKA:attachment_count"));
+    }
+
+    @Test
+    public void testListFilterStream() throws Exception {
+        //a list filter needs the whole list, so the stream falls back to writing
+        //the filtered list in /rmeta's order once the parse is done
+        List<Metadata> metadataList = put(META_PATH + "/stream");
+        assertEquals(13, metadataList.size());
+        Metadata container = metadataList.get(0);
+        assertNull(container.get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH));
+        assertEquals("11", container.get("X-TIKA:attachment_count"));
+        assertEquals(RecursiveMetadataResource.STREAM_STATUS_OK, metadataList
+                .get(12)
+                .get(RecursiveMetadataResource.STREAM_STATUS));
+    }
+
+    private List<Metadata> put(String path) throws Exception {
+        Response response = WebClient
+                .create(endPoint + path)
+                .accept("application/json")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_RECURSIVE_DOC));
+        assertEquals(200, response.getStatus());
+        Reader reader = new InputStreamReader((InputStream) response.getEntity(), UTF_8);
+        return JsonMetadataList.fromJson(reader);
+    }
+}
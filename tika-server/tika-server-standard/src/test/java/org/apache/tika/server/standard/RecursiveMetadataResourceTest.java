@@ -19,6 +19,7 @@ package org.apache.tika.server.standard;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -27,8 +28,13 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import jakarta.ws.rs.core.MultivaluedHashMap;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
@@ -43,6 +49,7 @@ import org.apache.tika.TikaTest;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.OfficeOpenXMLExtended;
 import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.serialization.JsonMetadata;
 import org.apache.tika.serialization.JsonMetadataList;
 import org.apache.tika.server.core.CXFTestBase;
 import org.apache.tika.server.core.config.DocumentSelectorConfig;
@@ -52,6 +59,7 @@ import org.apache.tika.server.core.writer.MetadataListMessageBodyWriter;
 public class RecursiveMetadataResourceTest extends CXFTestBase {
 
     private static final String FORM_PATH = "/form";
+    private static final String STREAM_PATH = "/stream";
     private static final String META_PATH = "/rmeta";
     private static final String TEXT_PATH = "/text";
     private static final String IGNORE_PATH = "/ignore";
@@ -307,6 +315,111 @@ public class RecursiveMetadataResourceTest extends CXFTestBase {
 
     }
 
+    @Test
+    public void testStreamOrder() throws Exception {
+        List<Metadata> metadataList = stream("");
+        assertEquals(13, metadataList.size());
+
+        //the status object is last
+        Metadata status = metadataList.remove(12);
+        assertEquals(RecursiveMetadataResource.STREAM_STATUS_OK, status.get(RecursiveMetadataResource.STREAM_STATUS));
+        assertNull(status.get(RecursiveMetadataResource.STREAM_EXCEPTION));
+
+        //the container is just before it
+        Metadata container = metadataList.get(11);
+        assertNull(container.get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH));
+        assertEquals("Microsoft Office Word", container.get(OfficeOpenXMLExtended.APPLICATION));
+
+        //each embedded document comes before the document that it is embedded in
+        Set<String> paths = new HashSet<>();
+        for (int i = 0; i < 11; i++) {
+            String path = metadataList
+                    .get(i)
+                    .get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH);
+            assertNotNull(path);
+            paths.add(path);
+            for (int j = 0; j < i; j++) {
+                String earlier = metadataList
+                        .get(j)
+                        .get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH);
+                assertFalse(path.startsWith(earlier + "/"), earlier + " came before " + path);
+            }
+        }
+
+        //the same documents as /rmeta
+        Response response = WebClient
+                .create(endPoint + META_PATH)
+                .accept("application/json")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_RECURSIVE_DOC));
+        List<Metadata> expected = JsonMetadataList.fromJson(new InputStreamReader((InputStream) response.getEntity(), UTF_8));
+        Set<String> expectedPaths = new HashSet<>();
+        for (Metadata m : expected.subList(1, expected.size())) {
+            expectedPaths.add(m.get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH));
+        }
+        assertEquals(expectedPaths, paths);
+    }
+
+    @Test
+    public void testStreamHandlerTypes() throws Exception {
+        //default is xml
+        List<Metadata> metadataList = stream("");
+        assertTrue(getContent(metadataList, "/embed1.zip/embed2.zip/embed3.zip/embed3.txt")
+                .startsWith("<html xmlns=\"http://www.w3.org/1999/xhtml\">"));
+
+        metadataList = stream(XML_PATH);
+        assertTrue(getContent(metadataList, "/embed1.zip/embed2.zip/embed3.zip/embed3.txt")
+                .startsWith("<html xmlns=\"http://www.w3.org/1999/xhtml\">"));
+
+        metadataList = stream(TEXT_PATH);
+        assertEquals(13, metadataList.size());
+        assertTrue(getContent(metadataList, "/embed1.zip/embed2.zip/embed3.zip/embed3.txt").startsWith("embed_3"));
+        assertFalse(getContent(metadataList, null).contains("<html"));
+
+        metadataList = stream(IGNORE_PATH);
+        assertEquals(13, metadataList.size());
+        for (Metadata m : metadataList) {
+            assertNull(m.get(TikaCoreProperties.TIKA_CONTENT));
+        }
+        assertEquals(RecursiveMetadataResource.STREAM_STATUS_OK, metadataList
+                .get(12)
+                .get(RecursiveMetadataResource.STREAM_STATUS));
+    }
+
+    private List<Metadata> stream(String handlerPath) throws Exception {
+        Response response = WebClient
+                .create(endPoint + META_PATH + STREAM_PATH + handlerPath)
+                .accept("application/json")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_RECURSIVE_DOC));
+        assertEquals(200, response.getStatus());
+        //JsonMetadataList.fromJson() would move the status object to the front
+        List<Metadata> metadataList = new ArrayList<>();
+        try (JsonParser jParser = new JsonFactory().createParser(new InputStreamReader((InputStream) response.getEntity(), UTF_8))) {
+            assertEquals(JsonToken.START_ARRAY, jParser.nextToken());
+            while (jParser.nextToken() != JsonToken.END_ARRAY) {
+                metadataList.add(JsonMetadata.readMetadataObject(jParser));
+            }
+        }
+        return metadataList;
+    }
+
+    /**
+     * @param path the embedded resource path, or <code>null</code> for the container
+     */
+    private static String getContent(List<Metadata> metadataList, String path) {
+        for (Metadata m : metadataList) {
+            if (m.get(RecursiveMetadataResource.STREAM_STATUS) != null) {
+                continue;
+            }
+            String p = m.get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH);
+            if (path == null ? p == null : path.equals(p)) {
+                return m
+                        .get(TikaCoreProperties.TIKA_CONTENT)
+                        .trim();
+            }
+        }
+        throw new AssertionError("couldn't find " + path);
+    }
+
     @Test
     public void testHandlerTypeInMultipartXML() throws Exception {
         //default unspecified
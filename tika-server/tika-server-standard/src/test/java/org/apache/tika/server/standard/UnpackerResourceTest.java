@@ -17,6 +17,8 @@
 
 package org.apache.tika.server.standard;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -25,14 +27,31 @@ import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import javax.imageio.ImageIO;
 
 import jakarta.ws.rs.core.Response;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.cxf.jaxrs.client.WebClient;
 import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
@@ -168,6 +187,20 @@ public class UnpackerResourceTest extends CXFTestBase {
         assertEquals(204, response.getStatus());
     }
 
+    @Test
+    public void test204Tar() throws Exception {
+        //the parse runs as the archive is written, but nothing has been written yet
+        Response response = WebClient
+                .create(CXFTestBase.endPoint + UNPACKER_PATH)
+                .type("xxx/xxx")
+                .accept("application/x-tar")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_DOC_WAV));
+
+        assertEquals(204, response.getStatus());
+        InputStream is = (InputStream) response.getEntity();
+        assertTrue(is == null || is.read() == -1);
+    }
+
     @Test
     public void testExeDOCX() throws Exception {
         String TEST_DOCX_EXE = "test-documents/2exe.docx";
@@ -232,6 +265,108 @@ public class UnpackerResourceTest extends CXFTestBase {
         assertEquals(422, response.getStatus());
     }
 
+    @Test
+    public void testMaxBytesKnownLength() throws Exception {
+        //the images in pic.xls have a known length, so they're rejected before they're read
+        Response response = WebClient
+                .create(CXFTestBase.endPoint + UNPACKER_PATH)
+                .header(UnpackerResource.UNPACK_MAX_BYTES_KEY, 100)
+                .accept("application/zip")
+                .put(ClassLoader.getSystemResourceAsStream("test-documents/pic.xls"));
+        assertEquals(422, response.getStatus());
+    }
+
+    @Test
+    public void testMaxBytesStreaming() throws Exception {
+        //zip entries have no known length, so the bound is hit while the entry is copied
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("big.bin", randomBytes(10000));
+        Response response = WebClient
+                .create(CXFTestBase.endPoint + UNPACKER_PATH)
+                .type("application/zip")
+                .header(UnpackerResource.UNPACK_MAX_BYTES_KEY, 1000)
+                .accept("application/x-tar")
+                .put(zip(entries));
+        assertEquals(422, response.getStatus());
+    }
+
+    @Test
+    public void testMaxBytesAfterFirstEntry() throws Exception {
+        //the first entry is larger than the response buffer, so the response
+        //has been committed by the time the second entry hits the bound
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("first.bin", randomBytes(200 * 1024));
+        entries.put("second.bin", randomBytes(1024 * 1024));
+        Response response = WebClient
+                .create(CXFTestBase.endPoint + UNPACKER_PATH)
+                .type("application/zip")
+                .header(UnpackerResource.UNPACK_MAX_BYTES_KEY, 300 * 1024)
+                .accept("application/zip")
+                .put(zip(entries));
+        assertEquals(200, response.getStatus());
+
+        Map<String, byte[]> data = new HashMap<>();
+        try (ZipArchiveInputStream zip = new ZipArchiveInputStream((InputStream) response.getEntity())) {
+            ZipArchiveEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                data.put(entry.getName(), zip.readAllBytes());
+            }
+        } catch (IOException e) {
+            //the archive is truncated
+        }
+        assertArrayEquals(entries.get("first.bin"), data.get("first.bin"));
+        assertFalse(Arrays.equals(entries.get("second.bin"), data.get("second.bin")));
+    }
+
+    @Test
+    public void testTarSpill() throws Exception {
+        //larger than the tar writer's in-memory buffer
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("small.bin", randomBytes(100));
+        entries.put("big.bin", randomBytes(1536 * 1024));
+        Set<String> tempFiles = unpackTempFiles();
+        Response response = WebClient
+                .create(CXFTestBase.endPoint + UNPACKER_PATH)
+                .type("application/zip")
+                .accept("application/x-tar")
+                .put(zip(entries));
+        assertEquals(200, response.getStatus());
+
+        Map<String, byte[]> data = new HashMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream((InputStream) response.getEntity())) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                byte[] bytes = tar.readAllBytes();
+                assertEquals(entry.getSize(), bytes.length);
+                data.put(entry.getName(), bytes);
+            }
+        }
+        assertEquals(entries.keySet(), data.keySet());
+        assertArrayEquals(entries.get("small.bin"), data.get("small.bin"));
+        assertArrayEquals(entries.get("big.bin"), data.get("big.bin"));
+        //the spilled entry's temp file is deleted once it's in the tar
+        assertEquals(tempFiles, unpackTempFiles());
+    }
+
+    @Test
+    public void testAllEntries() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.txt", "the first entry".getBytes(UTF_8));
+        entries.put("b.txt", "the second entry".getBytes(UTF_8));
+        Response response = WebClient
+                .create(CXFTestBase.endPoint + ALL_PATH)
+                .type("application/zip")
+                .accept("application/zip")
+                .put(zip(entries));
+        assertEquals(200, response.getStatus());
+
+        Map<String, byte[]> data = readZipArchiveBytes((InputStream) response.getEntity());
+        assertEquals(Set.of("a.txt", "b.txt", UnpackerResource.TEXT_FILENAME, UnpackerResource.META_FILENAME), data.keySet());
+        assertArrayEquals(entries.get("a.txt"), data.get("a.txt"));
+        assertArrayEquals(entries.get("b.txt"), data.get("b.txt"));
+        assertContains("Content-Type,application/zip", new String(data.get(UnpackerResource.META_FILENAME), UTF_8));
+    }
+
     @Test
     public void testPDFImages() throws Exception {
         Response response = WebClient
@@ -311,4 +446,31 @@ public class UnpackerResourceTest extends CXFTestBase {
             assertTrue(averageColor.getBlue() > 250);
         }
     }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bos)) {
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(e.getKey()));
+                zip.write(e.getValue());
+                zip.closeEntry();
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Set<String> unpackTempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files
+                    .map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith("apache-tika-unpack-"))
+                    .collect(Collectors.toSet());
+        }
+    }
 }